@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.connector;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.tomcat.util.buf.ByteChunk;
+
+/**
+ * Writes of bytes and characters through the connector's output buffer to a
+ * coyote response that discards the data.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class OutputBufferBenchmark {
+
+    @Param({"128", "8192", "65536"})
+    public int size;
+
+    private OutputBuffer outputBuffer;
+    private org.apache.coyote.Response coyoteResponse;
+    private byte[] bytes;
+    private String chars;
+
+    @Setup
+    public void setup() {
+        coyoteResponse = new org.apache.coyote.Response();
+        coyoteResponse.setOutputBuffer(new DiscardingOutputBuffer());
+        outputBuffer = new OutputBuffer();
+        outputBuffer.setResponse(coyoteResponse);
+        bytes = new byte[size];
+        Arrays.fill(bytes, (byte) 'x');
+        char[] c = new char[size];
+        Arrays.fill(c, 'x');
+        chars = new String(c);
+    }
+
+    @Benchmark
+    public void writeBytes() throws IOException {
+        outputBuffer.write(bytes, 0, bytes.length);
+        outputBuffer.flush();
+        recycle();
+    }
+
+    @Benchmark
+    public void writeChars() throws IOException {
+        // As done by Response.getWriter()
+        outputBuffer.checkConverter();
+        outputBuffer.write(chars);
+        outputBuffer.flush();
+        recycle();
+    }
+
+    private void recycle() {
+        outputBuffer.recycle();
+        coyoteResponse.recycle();
+    }
+
+
+    private static class DiscardingOutputBuffer implements org.apache.coyote.OutputBuffer {
+
+        private long bytesWritten;
+
+        @Override
+        public int doWrite(ByteChunk chunk) {
+            int len = chunk.getLength();
+            bytesWritten += len;
+            return len;
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+    }
+}
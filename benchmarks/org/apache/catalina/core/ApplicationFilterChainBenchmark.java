@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.GenericServlet;
+import javax.servlet.Servlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.apache.catalina.Globals;
+import org.apache.catalina.filters.TesterHttpServletRequest;
+import org.apache.catalina.filters.TesterHttpServletResponse;
+import org.apache.catalina.util.InstanceSupport;
+import org.apache.tomcat.SimpleInstanceManager;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+/**
+ * Assembly of the filter chain for a request and dispatch of a request
+ * through a chain of filters that each pass the request on to the end of the
+ * chain.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ApplicationFilterChainBenchmark {
+
+    @Param({"0", "5", "20"})
+    public int filterCount;
+
+    private ApplicationFilterChain chain;
+    private ServletRequest request;
+    private ServletResponse response;
+    private StandardWrapper wrapper;
+    private Servlet servlet;
+
+    @Setup
+    public void setup() throws Exception {
+        StandardEngine engine = new StandardEngine();
+        engine.setName("Catalina");
+        StandardHost host = new StandardHost();
+        host.setName("localhost");
+        engine.addChild(host);
+        StandardContext context = new StandardContext();
+        context.setName("/bench");
+        context.setPath("/bench");
+        context.setInstanceManager(new SimpleInstanceManager());
+        host.addChild(context);
+        wrapper = new StandardWrapper();
+        wrapper.setName("bench");
+        context.addChild(wrapper);
+        servlet = new NoOpServlet();
+
+        // A mix of the mapping styles found in typical applications
+        ApplicationFilterConfig[] filters = new ApplicationFilterConfig[filterCount];
+        for (int i = 0; i < filterCount; i++) {
+            FilterDef filterDef = new FilterDef();
+            filterDef.setFilterName("filter" + i);
+            filterDef.setFilterClass(PassThroughFilter.class.getName());
+            filterDef.setFilter(new PassThroughFilter());
+            filters[i] = new ApplicationFilterConfig(context, filterDef);
+            context.addFilterDef(filterDef);
+            FilterMap filterMap = new FilterMap();
+            filterMap.setFilterName(filterDef.getFilterName());
+            switch (i % 4) {
+                case 0:
+                    filterMap.addURLPattern("/*");
+                    break;
+                case 1:
+                    filterMap.addURLPattern("/bench/*");
+                    break;
+                case 2:
+                    filterMap.addURLPattern("*.do");
+                    break;
+                default:
+                    filterMap.addServletName(wrapper.getName());
+            }
+            context.addFilterMap(filterMap);
+        }
+        context.filterStart();
+
+        chain = new ApplicationFilterChain();
+        chain.setServlet(servlet);
+        chain.setSupport(new InstanceSupport(wrapper));
+        chain.setFilters(filters);
+
+        request = new TesterHttpServletRequest() {
+            @Override
+            public boolean isAsyncSupported() {
+                return false;
+            }
+        };
+        request.setAttribute(Globals.DISPATCHER_TYPE_ATTR, DispatcherType.REQUEST);
+        request.setAttribute(Globals.DISPATCHER_REQUEST_PATH_ATTR,
+                "/bench/index.do");
+        response = new TesterHttpServletResponse();
+    }
+
+    @Benchmark
+    public ApplicationFilterChain createFilterChain() {
+        return ApplicationFilterFactory.getInstance().createFilterChain(
+                request, wrapper, servlet);
+    }
+
+    @Benchmark
+    public void doFilter() throws IOException, ServletException {
+        chain.reuse();
+        chain.doFilter(request, response);
+    }
+
+
+    public static class PassThroughFilter implements Filter {
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+            // NO-OP
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response,
+                FilterChain chain) throws IOException, ServletException {
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+            // NO-OP
+        }
+    }
+
+
+    private static class NoOpServlet extends GenericServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+            // NO-OP
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.core.StandardContext;
+import org.apache.catalina.core.StandardHost;
+import org.apache.catalina.core.StandardWrapper;
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * Mapping of request URIs to wrappers for a host with a number of contexts
+ * each of which has exact, prefix, extension and default mappings.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MapperBenchmark {
+
+    private static final String HOST = "localhost";
+
+    @Param({"/app5/servlet/exact", "/app5/api/v1/users/42", "/app5/pages/index.jsp",
+            "/app5/static/css/site.css", "/missing/path"})
+    public String uri;
+
+    private Mapper mapper;
+    private MappingData mappingData;
+    private MessageBytes hostMB;
+    private MessageBytes uriMB;
+
+    @Setup
+    public void setup() throws Exception {
+        mapper = new Mapper();
+        Host host = new StandardHost();
+        host.setName(HOST);
+        mapper.addHost(HOST, new String[0], host);
+        mapper.setDefaultHostName(HOST);
+
+        for (int i = 0; i < 10; i++) {
+            String path = "/app" + i;
+            Context context = new StandardContext();
+            context.setName(path);
+            mapper.addContextVersion(HOST, host, path, "0", context,
+                    new String[] { "index.jsp" }, null, null);
+
+            List<WrapperMappingInfo> wrappers = new ArrayList<>();
+            wrappers.add(new WrapperMappingInfo("/", createWrapper("default"), false, false));
+            wrappers.add(new WrapperMappingInfo("*.jsp", createWrapper("jsp"), true, false));
+            wrappers.add(new WrapperMappingInfo("*.jspx", createWrapper("jspx"), true, false));
+            wrappers.add(new WrapperMappingInfo("/servlet/exact", createWrapper("exact"), false, false));
+            wrappers.add(new WrapperMappingInfo("/api/v1/*", createWrapper("api"), false, false));
+            wrappers.add(new WrapperMappingInfo("/api/v2/*", createWrapper("api2"), false, false));
+            for (int j = 0; j < 20; j++) {
+                wrappers.add(new WrapperMappingInfo("/servlet" + j, createWrapper("s" + j), false, false));
+                wrappers.add(new WrapperMappingInfo("/prefix" + j + "/*", createWrapper("p" + j), false, false));
+            }
+            mapper.addWrappers(HOST, path, "0", wrappers);
+        }
+
+        mappingData = new MappingData();
+        hostMB = MessageBytes.newInstance();
+        hostMB.setString(HOST);
+        hostMB.toChars();
+        uriMB = MessageBytes.newInstance();
+        uriMB.setString(uri);
+        uriMB.toChars();
+        uriMB.getCharChunk().setLimit(-1);
+    }
+
+    private static Wrapper createWrapper(String name) {
+        Wrapper wrapper = new StandardWrapper();
+        wrapper.setName(name);
+        return wrapper;
+    }
+
+    @Benchmark
+    public void map(Blackhole bh) throws Exception {
+        mappingData.recycle();
+        mapper.map(hostMB, uriMB, null, mappingData);
+        bh.consume(mappingData.wrapper);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http11;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.coyote.Request;
+import org.apache.tomcat.util.net.NioChannel;
+import org.apache.tomcat.util.net.NioEndpoint;
+import org.apache.tomcat.util.net.SSLSupport;
+import org.apache.tomcat.util.net.SendfileDataBase;
+import org.apache.tomcat.util.net.SendfileState;
+import org.apache.tomcat.util.net.SocketBufferHandler;
+import org.apache.tomcat.util.net.SocketWrapperBase;
+
+/**
+ * Parsing of the request line and headers of a typical browser request.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Http11InputBufferBenchmark {
+
+    private static final byte[] REQUEST = ("GET /examples/servlets/servlet/RequestInfoExample?a=1&b=2 HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:45.0) Gecko/20100101 Firefox/45.0\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+            "Accept-Language: en-GB,en;q=0.5\r\n" +
+            "Accept-Encoding: gzip, deflate\r\n" +
+            "Cookie: JSESSIONID=0123456789ABCDEF0123456789ABCDEF; theme=dark\r\n" +
+            "Connection: keep-alive\r\n" +
+            "Cache-Control: max-age=0\r\n" +
+            "\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+    private Request request;
+    private Http11InputBuffer inputBuffer;
+    private BytesSocketWrapper socketWrapper;
+
+    @Setup
+    public void setup() {
+        request = new Request();
+        inputBuffer = new Http11InputBuffer(request, 8 * 1024);
+        socketWrapper = new BytesSocketWrapper(REQUEST);
+        inputBuffer.init(socketWrapper);
+    }
+
+    @Benchmark
+    public void parseRequestLineAndHeaders(Blackhole bh) throws IOException {
+        socketWrapper.reset();
+        bh.consume(inputBuffer.parseRequestLine(false));
+        bh.consume(inputBuffer.parseHeaders());
+        bh.consume(request.getMimeHeaders().size());
+        inputBuffer.nextRequest();
+    }
+
+
+    /**
+     * Returns the same request bytes each time it is reset.
+     */
+    private static class BytesSocketWrapper extends SocketWrapperBase<NioChannel> {
+
+        private final byte[] data;
+        private int pos;
+
+        public BytesSocketWrapper(byte[] data) {
+            super(null, new NioEndpoint());
+            this.data = data;
+            socketBufferHandler = new SocketBufferHandler(8192, 8192, false);
+        }
+
+        public void reset() {
+            pos = 0;
+        }
+
+        @Override
+        public int read(boolean block, byte[] b, int off, int len) {
+            int n = Math.min(len, data.length - pos);
+            System.arraycopy(data, pos, b, off, n);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public boolean isReadyForRead() {
+            return pos < data.length;
+        }
+
+        @Override
+        protected void populateRemoteHost() {
+            remoteHost = "localhost";
+        }
+
+        @Override
+        protected void populateRemoteAddr() {
+            remoteAddr = "127.0.0.1";
+        }
+
+        @Override
+        protected void populateRemotePort() {
+            remotePort = 12345;
+        }
+
+        @Override
+        protected void populateLocalName() {
+            localName = "localhost";
+        }
+
+        @Override
+        protected void populateLocalAddr() {
+            localAddr = "127.0.0.1";
+        }
+
+        @Override
+        protected void populateLocalPort() {
+            localPort = 8080;
+        }
+
+        @Override
+        public boolean isReadPending() {
+            return false;
+        }
+
+        @Override
+        public boolean isWritePending() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            // NO-OP
+        }
+
+        @Override
+        protected void doWriteInternal(boolean block) {
+            // NO-OP
+        }
+
+        @Override
+        public void registerReadInterest() {
+            // NO-OP
+        }
+
+        @Override
+        public void registerWriteInterest() {
+            // NO-OP
+        }
+
+        @Override
+        public SendfileDataBase createSendfileData(String filename, long pos, long length) {
+            return null;
+        }
+
+        @Override
+        public SendfileState processSendfile(SendfileDataBase sendfileData) {
+            return SendfileState.DONE;
+        }
+
+        @Override
+        public void doClientAuth(SSLSupport sslSupport) {
+            // NO-OP
+        }
+
+        @Override
+        public SSLSupport getSslSupport(String clientCertProvider) {
+            return null;
+        }
+
+        @Override
+        public <A> CompletionState read(ByteBuffer[] dsts, int offset, int length,
+                boolean block, long timeout, TimeUnit unit, A attachment,
+                CompletionCheck check, CompletionHandler<Long, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <A> CompletionState write(ByteBuffer[] srcs, int offset, int length,
+                boolean block, long timeout, TimeUnit unit, A attachment,
+                CompletionCheck check, CompletionHandler<Long, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
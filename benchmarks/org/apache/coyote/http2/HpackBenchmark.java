@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+
+/**
+ * HPACK encoding and decoding of a typical set of response headers once the
+ * dynamic table has been populated.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HpackBenchmark {
+
+    private MimeHeaders headers;
+    private HpackEncoder encoder;
+    private HpackDecoder decoder;
+    private ByteBuffer encodeBuffer;
+    private ByteBuffer encoded;
+    private int emitted;
+
+    @Setup
+    public void setup() throws Exception {
+        headers = new MimeHeaders();
+        headers.addValue(":status").setString("200");
+        headers.addValue("content-type").setString("text/html;charset=UTF-8");
+        headers.addValue("content-length").setString("12345");
+        headers.addValue("date").setString("Tue, 15 Nov 1994 08:12:31 GMT");
+        headers.addValue("cache-control").setString("private, max-age=0");
+        headers.addValue("set-cookie").setString("JSESSIONID=0123456789ABCDEF; Path=/app; HttpOnly");
+        headers.addValue("x-custom-header").setString("some-value");
+
+        encoder = new HpackEncoder(4096);
+        encodeBuffer = ByteBuffer.allocate(4096);
+
+        decoder = new HpackDecoder(4096);
+        decoder.setHeaderEmitter(new HpackDecoder.HeaderEmitter() {
+            @Override
+            public void emitHeader(String name, String value, boolean neverIndex) {
+                emitted++;
+            }
+        });
+
+        // Populate the dynamic tables and capture the steady state block
+        ByteBuffer first = ByteBuffer.allocate(4096);
+        encoder.encode(headers, first);
+        first.flip();
+        decoder.decode(first);
+        encoded = ByteBuffer.allocate(4096);
+        encoder.encode(headers, encoded);
+        encoded.flip();
+    }
+
+    @Benchmark
+    public void encode(Blackhole bh) {
+        encodeBuffer.clear();
+        bh.consume(encoder.encode(headers, encodeBuffer));
+    }
+
+    @Benchmark
+    public void decode(Blackhole bh) throws HpackException {
+        encoded.rewind();
+        decoder.decode(encoded);
+        bh.consume(emitted);
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import org.apache.tomcat.util.buf.UDecoder;
+
+/**
+ * Decoding of query strings and form bodies.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ParametersBenchmark {
+
+    private static final byte[] SIMPLE = ("page=2&size=50&sort=name&order=asc&filter=active")
+            .getBytes(StandardCharsets.ISO_8859_1);
+
+    private static final byte[] ENCODED = ("q=caf%C3%A9+au+lait&name=J%C3%BCrgen+M%C3%BCller" +
+            "&redirect=http%3A%2F%2Flocalhost%3A8080%2Fapp%2Fpage%3Fa%3D1%26b%3D2&empty=&flag")
+            .getBytes(StandardCharsets.ISO_8859_1);
+
+    private Parameters parameters;
+
+    @Setup
+    public void setup() {
+        parameters = new Parameters();
+        parameters.setURLDecoder(new UDecoder());
+    }
+
+    @Benchmark
+    public void processSimple(Blackhole bh) {
+        parameters.recycle();
+        parameters.setEncoding("ISO-8859-1");
+        parameters.processParameters(SIMPLE, 0, SIMPLE.length);
+        bh.consume(parameters.getParameter("filter"));
+    }
+
+    @Benchmark
+    public void processEncoded(Blackhole bh) {
+        parameters.recycle();
+        parameters.setEncoding("UTF-8");
+        parameters.processParameters(ENCODED, 0, ENCODED.length);
+        bh.consume(parameters.getParameter("name"));
+    }
+}
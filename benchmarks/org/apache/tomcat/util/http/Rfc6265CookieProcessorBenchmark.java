@@ -0,0 +1,74 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.http;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.Cookie;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Parsing of Cookie request headers and generation of Set-Cookie response
+ * headers.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class Rfc6265CookieProcessorBenchmark {
+
+    private static final String COOKIE_HEADER =
+            "JSESSIONID=0123456789ABCDEF0123456789ABCDEF; theme=dark; " +
+            "_ga=GA1.2.1234567890.1234567890; lang=en-GB; consent=\"yes\"";
+
+    private Rfc6265CookieProcessor cookieProcessor;
+    private MimeHeaders headers;
+    private ServerCookies serverCookies;
+    private Cookie cookie;
+
+    @Setup
+    public void setup() {
+        cookieProcessor = new Rfc6265CookieProcessor();
+        headers = new MimeHeaders();
+        headers.addValue("Cookie").setString(COOKIE_HEADER);
+        serverCookies = new ServerCookies(8);
+        cookie = new Cookie("JSESSIONID", "0123456789ABCDEF0123456789ABCDEF");
+        cookie.setPath("/app");
+        cookie.setHttpOnly(true);
+        cookie.setSecure(true);
+        cookie.setMaxAge(3600);
+    }
+
+    @Benchmark
+    public void parseCookieHeader(Blackhole bh) {
+        serverCookies.recycle();
+        cookieProcessor.parseCookieHeader(headers, serverCookies);
+        bh.consume(serverCookies.getCookieCount());
+    }
+
+    @Benchmark
+    public String generateHeader() {
+        return cookieProcessor.generateHeader(cookie);
+    }
+}
@@ -273,6 +273,17 @@ public final class Globals {
      */
     public static final String JASPER_XML_BLOCK_EXTERNAL_INIT_PARAM =
             "org.apache.jasper.XML_BLOCK_EXTERNAL";
+
+
+    /**
+     * Name of the ServletContext init-param that determines if the JSP engine
+     * will record the results of scanning JARs for TLDs in the work directory
+     * and reuse them for unchanged JARs.
+     * <p>
+     * This must be kept in sync with org.apache.jasper.Constants
+     */
+    public static final String JASPER_USE_SCAN_INDEX_INIT_PARAM =
+            "org.apache.jasper.USE_SCAN_INDEX";
     public static final boolean IS_ORACLE_JVM;
     public static final boolean IS_IBM_JVM;
 
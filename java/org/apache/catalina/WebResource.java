@@ -18,6 +18,7 @@ package org.apache.catalina;
 
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.security.cert.Certificate;
 import java.util.jar.Manifest;
 
@@ -124,6 +125,18 @@ public interface WebResource {
      */
     byte[] getContent();
 
+    /**
+     * Obtain the cached binary content of this resource when it is held
+     * outside of the Java heap (e.g. in a direct or memory mapped buffer).
+     * Each call returns a new read-only buffer positioned at the start of the
+     * content.
+     *
+     * @return  The content or <code>null</code> if the content is not cached
+     *          outside of the Java heap in which case {@link #getContent()} or
+     *          {@link #getInputStream()} should be used
+     */
+    ByteBuffer getContentBuffer();
+
     /**
      * The time the file was created. If not available, the result of
      * {@link #getLastModified()} will be returned.
@@ -111,6 +111,22 @@ public interface WebResourceRoot extends Lifecycle {
      */
     WebResource[] getResources(String path);
 
+    /**
+     * Obtain a version of the resource at the given path with the given HTTP
+     * content coding (e.g. <code>gzip</code>) applied to its content. Encoded
+     * versions are created and held by the resource cache so they are only
+     * available when caching is allowed and the content of the resource is
+     * small enough to be cached.
+     *
+     * @param path      The path for the resource of interest relative to the
+     *                  root of the web application. It must start with '/'.
+     * @param encoding  The required content coding
+     *
+     * @return  The object that represents the encoded resource or
+     *          <code>null</code> if no encoded version is available
+     */
+    WebResource getEncodedResource(String path, String encoding);
+
     /**
      * Obtain the object that represents the class loader resource at the given
      * path. WEB-INF/classes is always searched prior to searching JAR files in
@@ -280,6 +296,12 @@ public interface WebResourceRoot extends Lifecycle {
      */
     WebResourceSet[] getPostResources();
 
+    /**
+     * Get the list of WebResourceSet configured to this web application
+     * as a 'Class' resource. These include the JARs in /WEB-INF/lib.
+     */
+    WebResourceSet[] getClassResources();
+
     /**
      * Obtain the web application this WebResourceRoot is associated with.
      */
@@ -362,6 +384,27 @@ public interface WebResourceRoot extends Lifecycle {
      */
     void setCacheObjectMaxSize(int cacheObjectMaxSize);
 
+    /**
+     * Get where the content of cached resources is held.
+     *
+     * @return  <code>heap</code>, <code>direct</code> or <code>mapped</code>
+     */
+    String getCacheContentStorage();
+
+    /**
+     * Set where the content of cached resources is held. Holding the content
+     * outside of the Java heap reduces the amount of long lived data the
+     * garbage collector has to process.
+     *
+     * @param cacheContentStorage   <code>heap</code> (the default) for byte
+     *                              arrays on the Java heap,
+     *                              <code>direct</code> for direct buffers or
+     *                              <code>mapped</code> for memory mapped
+     *                              files where possible and direct buffers
+     *                              otherwise
+     */
+    void setCacheContentStorage(String cacheContentStorage);
+
     /**
      * Has the track locked files feature been enabled?
      *
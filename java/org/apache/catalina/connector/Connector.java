@@ -168,6 +168,15 @@ public class Connector extends LifecycleMBeanBase  {
      * Flag to use IP-based virtual hosting.
      */
     protected boolean useIPVHosts = false;
+    /**
+     * Maximum number of request mapping results cached by the adapter. Zero
+     * disables the cache.
+     */
+    protected int mappingCacheSize = 0;
+    /**
+     * The mapping cache, if enabled.
+     */
+    private volatile MappingCache mappingCache = null;
     /**
      * Coyote Protocol handler class name.
      * Defaults to the Coyote HTTP/1.1 protocolHandler.
@@ -741,6 +750,11 @@ public class Connector extends LifecycleMBeanBase  {
          } else {
              this.URIEncodingLower = URIEncoding.toLowerCase(Locale.ENGLISH);
          }
+         // Cached mappings hold URIs decoded with the previous encoding
+         MappingCache mappingCache = this.mappingCache;
+         if (mappingCache != null) {
+             mappingCache.clear();
+         }
          setProperty("uRIEncoding", URIEncoding);
      }
 
@@ -817,6 +831,57 @@ public class Connector extends LifecycleMBeanBase  {
         setProperty("useIPVHosts", String.valueOf(useIPVHosts));
     }
 
+    /**
+     * @return the maximum number of request mapping results that are cached.
+     */
+    public int getMappingCacheSize() {
+        return mappingCacheSize;
+    }
+
+    /**
+     * Set the maximum number of request mapping results that are cached. The
+     * size is rounded up to the next power of two. Zero or less disables the
+     * cache.
+     *
+     * @param mappingCacheSize The new cache size
+     */
+    public void setMappingCacheSize(int mappingCacheSize) {
+        this.mappingCacheSize = mappingCacheSize;
+        if (mappingCacheSize > 0) {
+            mappingCache = new MappingCache(mappingCacheSize);
+        } else {
+            mappingCache = null;
+        }
+    }
+
+    MappingCache getMappingCache() {
+        return mappingCache;
+    }
+
+    /**
+     * @return the number of mapping cache lookups since the cache was
+     *         created.
+     */
+    public long getMappingCacheLookupCount() {
+        MappingCache mappingCache = this.mappingCache;
+        if (mappingCache == null) {
+            return 0;
+        }
+        return mappingCache.getLookupCount();
+    }
+
+    /**
+     * @return the number of mapping cache lookups that found a valid entry
+     *         since the cache was created.
+     */
+    public long getMappingCacheHitCount() {
+        MappingCache mappingCache = this.mappingCache;
+        if (mappingCache == null) {
+            return 0;
+        }
+        return mappingCache.getHitCount();
+    }
+
     public String getExecutorName() {
         Object obj = protocolHandler.getExecutor();
         if (obj instanceof org.apache.catalina.Executor) {
@@ -22,6 +22,8 @@ import org.apache.catalina.Host;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.authenticator.AuthenticatorBase;
 import org.apache.catalina.core.AsyncContextImpl;
+import org.apache.catalina.mapper.Mapper;
+import org.apache.catalina.mapper.MappingData;
 import org.apache.catalina.util.ServerInfo;
 import org.apache.catalina.util.SessionConfig;
 import org.apache.catalina.util.URLEncoder;
@@ -789,7 +791,39 @@ public class CoyoteAdapter implements Adapter {
 
         MessageBytes decodedURI = req.decodedURI();
 
-        if (undecodedURI.getType() == MessageBytes.T_BYTES) {
+        MessageBytes serverName;
+        if (connector.getUseIPVHosts()) {
+            serverName = req.localName();
+            if (serverName.isNull()) {
+                // well, they did ask for it
+                res.action(ActionCode.REQ_LOCAL_NAME_ATTRIBUTE, null);
+            }
+        } else {
+            serverName = req.serverName();
+        }
+
+        Mapper mapper = connector.getService().getMapper();
+        // Read before any mapping so that changes made to the mapper while
+        // this request is being mapped prevent the result from being cached
+        long mapperModificationCount = mapper.getModificationCount();
+        MappingCache mappingCache = null;
+        MappingCache.Entry cachedMapping = null;
+
+        if (undecodedURI.getType() == MessageBytes.T_BYTES &&
+                undecodedURI.getByteChunk().indexOf(';', 0) == -1) {
+            // URIs with path parameters are never cached since the
+            // parameters have to be parsed for every request
+            mappingCache = connector.getMappingCache();
+            if (mappingCache != null) {
+                cachedMapping = mappingCache.get(serverName,
+                        undecodedURI.getByteChunk(), mapperModificationCount);
+            }
+        }
+
+        if (cachedMapping != null) {
+            // The URI has already been decoded, normalized and mapped
+            cachedMapping.restoreDecodedURI(decodedURI);
+        } else if (undecodedURI.getType() == MessageBytes.T_BYTES) {
             // Copy the raw URI to the decodedURI
             decodedURI.duplicate(undecodedURI);
 
@@ -847,17 +881,6 @@ public class CoyoteAdapter implements Adapter {
         }
 
         // Request mapping.
-        MessageBytes serverName;
-        if (connector.getUseIPVHosts()) {
-            serverName = req.localName();
-            if (serverName.isNull()) {
-                // well, they did ask for it
-                res.action(ActionCode.REQ_LOCAL_NAME_ATTRIBUTE, null);
-            }
-        } else {
-            serverName = req.serverName();
-        }
-
         // Version for the second mapping loop and
         // Context that we expect to get for that version
         String version = null;
@@ -865,9 +888,16 @@ public class CoyoteAdapter implements Adapter {
         boolean mapRequired = true;
 
         while (mapRequired) {
-            // This will map the the latest version by default
-            connector.getService().getMapper().map(serverName, decodedURI,
-                    version, request.getMappingData());
+            if (cachedMapping != null) {
+                cachedMapping.restoreMappingData(request.getMappingData());
+                // Any further mapping for this request uses the mapper
+                cachedMapping = null;
+                mappingCache = null;
+            } else {
+                // This will map the the latest version by default
+                mapper.map(serverName, decodedURI, version,
+                        request.getMappingData());
+            }
 
             // If there is no context at this point, it is likely no ROOT context
             // has been deployed
@@ -953,6 +983,17 @@ public class CoyoteAdapter implements Adapter {
                 // Reset mapping
                 request.getMappingData().recycle();
                 mapRequired = true;
+                // Do not cache a mapping that was made while waiting
+                mappingCache = null;
+            }
+        }
+
+        if (mappingCache != null && version == null) {
+            MappingData mappingData = request.getMappingData();
+            if (mappingData.contexts == null && mappingData.redirectPath.isNull()
+                    && !mappingData.resourcesChecked) {
+                mappingCache.put(serverName, undecodedURI.getByteChunk(),
+                        decodedURI, mappingData, mapperModificationCount);
             }
         }
 
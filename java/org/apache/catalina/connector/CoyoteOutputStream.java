@@ -21,6 +21,7 @@ import org.apache.tomcat.util.res.StringManager;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.WriteListener;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Coyote implementation of the servlet output stream.
@@ -99,6 +100,24 @@ public class CoyoteOutputStream extends ServletOutputStream {
     }
 
 
+    /**
+     * Write the remaining content of the given buffer to the response. Unlike
+     * the other write methods, this avoids the need to copy content held
+     * outside of the Java heap into a byte array first.
+     *
+     * @param from The buffer containing the content to write
+     *
+     * @throws IOException An underlying IOException occurred
+     */
+    public void write(ByteBuffer from) throws IOException {
+        boolean nonBlocking = checkNonBlockingWrite();
+        ob.write(from);
+        if (nonBlocking) {
+            checkRegisterForWrite();
+        }
+    }
+
+
     /**
      * Will send the buffer to the client.
      */
@@ -0,0 +1,270 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.connector;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Host;
+import org.apache.catalina.Wrapper;
+import org.apache.catalina.mapper.MappingData;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.CharChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
+
+/**
+ * Bounded cache of request mapping results used by {@link CoyoteAdapter}.
+ * Entries are keyed on the server name and the raw, undecoded request URI and
+ * hold both the decoded and normalized URI and the resulting
+ * {@link MappingData}, so a hit skips URI decoding, normalization and the
+ * {@link org.apache.catalina.mapper.Mapper} entirely.
+ * <p>
+ * The cache is direct mapped: each key hashes to a single slot and a new entry
+ * simply replaces whatever occupied that slot. Lookups and updates are lock
+ * free. Entries record the modification count of the mapper they were
+ * computed against. The mapper changes whenever the MapperListener registers
+ * or removes a host, context or wrapper and the first lookup or update that
+ * sees a new modification count empties the whole cache. Entries therefore
+ * never keep an undeployed or reloaded context, and with it the web
+ * application class loader, reachable.
+ */
+final class MappingCache {
+
+    private final AtomicReferenceArray<Entry> entries;
+    private final int mask;
+    private final AtomicLong modificationCount = new AtomicLong(-1);
+
+    private final LongAdder lookupCount = new LongAdder();
+    private final LongAdder hitCount = new LongAdder();
+
+
+    MappingCache(int size) {
+        // Round up to a power of two so slots can be selected with a mask
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        entries = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+
+    int getSize() {
+        return entries.length();
+    }
+
+
+    long getLookupCount() {
+        return lookupCount.sum();
+    }
+
+
+    long getHitCount() {
+        return hitCount.sum();
+    }
+
+
+    /**
+     * @return the number of slots that currently hold an entry
+     */
+    int getEntryCount() {
+        int count = 0;
+        for (int i = 0; i < entries.length(); i++) {
+            if (entries.get(i) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+
+    void clear() {
+        for (int i = 0; i < entries.length(); i++) {
+            entries.set(i, null);
+        }
+    }
+
+
+    /**
+     * Look up the mapping for the given server name and raw URI.
+     *
+     * @param serverName        The server name used for host mapping
+     * @param uri               The undecoded request URI
+     * @param modificationCount The current modification count of the mapper
+     * @return the cached entry or <code>null</code> if there is no valid entry
+     */
+    Entry get(MessageBytes serverName, ByteChunk uri, long modificationCount) {
+        lookupCount.increment();
+        checkModificationCount(modificationCount);
+        int index = hash(serverName, uri) & mask;
+        Entry entry = entries.get(index);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.modificationCount != modificationCount) {
+            // Stale. Do not keep the old host, context and wrapper reachable.
+            entries.compareAndSet(index, entry, null);
+            return null;
+        }
+        if (uri.equals(entry.uri, 0, entry.uri.length) &&
+                serverName.equals(entry.serverName)) {
+            hitCount.increment();
+            return entry;
+        }
+        return null;
+    }
+
+
+    /**
+     * Store the result of a completed mapping.
+     *
+     * @param serverName        The server name used for host mapping
+     * @param uri               The undecoded request URI
+     * @param decodedURI        The decoded and normalized URI as left by the
+     *                          mapper
+     * @param mappingData       The mapping result
+     * @param modificationCount The modification count of the mapper read
+     *                          before the mapping was performed
+     */
+    void put(MessageBytes serverName, ByteChunk uri, MessageBytes decodedURI,
+            MappingData mappingData, long modificationCount) {
+        checkModificationCount(modificationCount);
+        if (this.modificationCount.get() != modificationCount) {
+            // The mapper has changed since this mapping was performed
+            return;
+        }
+        Entry entry = new Entry(serverName.toString(), uri, decodedURI,
+                mappingData, modificationCount);
+        int index = hash(serverName, uri) & mask;
+        entries.set(index, entry);
+        if (this.modificationCount.get() != modificationCount) {
+            // The cache was cleared concurrently and may have missed this
+            // entry
+            entries.compareAndSet(index, entry, null);
+        }
+    }
+
+
+    /**
+     * Empty the cache if the mapper has changed since it was last checked.
+     * The count is updated before the entries are removed so an entry that is
+     * added concurrently is either removed here or by the thread adding it.
+     */
+    private void checkModificationCount(long modificationCount) {
+        long current = this.modificationCount.get();
+        if (modificationCount > current &&
+                this.modificationCount.compareAndSet(current, modificationCount)) {
+            clear();
+        }
+    }
+
+
+    private static int hash(MessageBytes serverName, ByteChunk uri) {
+        int h = serverName.hashCode() * 31 + uri.hash();
+        // Spread the higher bits as the table is indexed by the lower ones
+        return h ^ (h >>> 16);
+    }
+
+
+    // --------------------------------------------------------- Entry Class
+
+    static final class Entry {
+
+        private final String serverName;
+        private final byte[] uri;
+        private final long modificationCount;
+
+        private final byte[] decodedBytes;
+        private final char[] decodedChars;
+
+        private final Host host;
+        private final Context context;
+        private final int contextSlashCount;
+        private final Wrapper wrapper;
+        private final boolean jspWildCard;
+        private final String contextPath;
+        private final String requestPath;
+        private final String wrapperPath;
+        private final String pathInfo;
+
+        private Entry(String serverName, ByteChunk uri, MessageBytes decodedURI,
+                MappingData mappingData, long modificationCount) {
+            this.serverName = serverName;
+            this.uri = copy(uri);
+            this.modificationCount = modificationCount;
+
+            this.decodedBytes = copy(decodedURI.getByteChunk());
+            CharChunk cc = decodedURI.getCharChunk();
+            this.decodedChars = new char[cc.getLength()];
+            System.arraycopy(cc.getBuffer(), cc.getStart(), decodedChars, 0,
+                    decodedChars.length);
+
+            this.host = mappingData.host;
+            this.context = mappingData.context;
+            this.contextSlashCount = mappingData.contextSlashCount;
+            this.wrapper = mappingData.wrapper;
+            this.jspWildCard = mappingData.jspWildCard;
+            this.contextPath = toString(mappingData.contextPath);
+            this.requestPath = toString(mappingData.requestPath);
+            this.wrapperPath = toString(mappingData.wrapperPath);
+            this.pathInfo = toString(mappingData.pathInfo);
+        }
+
+        /**
+         * Restore the decoded URI to the state it had after the original
+         * request was decoded, normalized and mapped.
+         */
+        void restoreDecodedURI(MessageBytes decodedURI) throws IOException {
+            ByteChunk bc = decodedURI.getByteChunk();
+            bc.allocate(decodedBytes.length, -1);
+            bc.append(decodedBytes, 0, decodedBytes.length);
+            CharChunk cc = decodedURI.getCharChunk();
+            cc.allocate(decodedChars.length, -1);
+            cc.append(decodedChars, 0, decodedChars.length);
+            decodedURI.setChars(cc.getBuffer(), cc.getStart(), cc.getLength());
+        }
+
+        void restoreMappingData(MappingData mappingData) {
+            mappingData.host = host;
+            mappingData.context = context;
+            mappingData.contextSlashCount = contextSlashCount;
+            mappingData.wrapper = wrapper;
+            mappingData.jspWildCard = jspWildCard;
+            mappingData.contextPath.setString(contextPath);
+            mappingData.requestPath.setString(requestPath);
+            mappingData.wrapperPath.setString(wrapperPath);
+            mappingData.pathInfo.setString(pathInfo);
+        }
+
+        private static byte[] copy(ByteChunk bc) {
+            byte[] result = new byte[bc.getLength()];
+            System.arraycopy(bc.getBuffer(), bc.getStart(), result, 0,
+                    result.length);
+            return result;
+        }
+
+        private static String toString(MessageBytes mb) {
+            if (mb.isNull()) {
+                return null;
+            }
+            return mb.toString();
+        }
+    }
+}
@@ -28,6 +28,7 @@ import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.security.AccessController;
 import java.security.PrivilegedActionException;
 import java.security.PrivilegedExceptionAction;
@@ -397,6 +398,58 @@ public class OutputBuffer extends Writer
     }
 
 
+    /**
+     * Write the remaining content of the given buffer. Content held outside
+     * of the Java heap is copied directly into the response buffer.
+     *
+     * @param from The buffer containing the content to write
+     *
+     * @throws IOException An underlying IOException occurred
+     */
+    public void write(ByteBuffer from) throws IOException {
+
+        if (suspended) {
+            return;
+        }
+
+        if (from.hasArray()) {
+            int len = from.remaining();
+            writeBytes(from.array(), from.arrayOffset() + from.position(), len);
+            from.position(from.position() + len);
+        } else {
+            writeBytes(from);
+        }
+
+    }
+
+
+    private void writeBytes(ByteBuffer from) throws IOException {
+
+        if (closed) {
+            return;
+        }
+
+        int len = from.remaining();
+        while (from.hasRemaining()) {
+            if (bb.getEnd() >= bb.getLimit()) {
+                bb.flushBuffer();
+            }
+            int n = Math.min(from.remaining(), bb.getLimit() - bb.getEnd());
+            bb.makeSpace(n);
+            from.get(bb.getBuffer(), bb.getEnd(), n);
+            bb.setEnd(bb.getEnd() + n);
+        }
+        bytesWritten += len;
+
+        // if called from within flush(), then immediately flush
+        // remaining bytes
+        if (doFlush) {
+            bb.flushBuffer();
+        }
+
+    }
+
+
     public void writeByte(int b)
         throws IOException {
 
@@ -2685,7 +2685,25 @@ public class Request
             }
             if (session != null) {
                 session.access();
-                return (session);
+                if (!session.isValid()) {
+                    // The Manager replaced or removed the session while this
+                    // request was accessing it so look it up again
+                    session.endAccess();
+                    try {
+                        session = manager.findSession(requestedSessionId);
+                    } catch (IOException e) {
+                        session = null;
+                    }
+                    if ((session != null) && !session.isValid()) {
+                        session = null;
+                    }
+                    if (session != null) {
+                        session.access();
+                    }
+                }
+                if (session != null) {
+                    return (session);
+                }
             }
         }
 
@@ -277,6 +277,10 @@ public class ApplicationContext
                 return "false";
             }
         }
+        if (Globals.JASPER_USE_SCAN_INDEX_INIT_PARAM.equals(name) &&
+                context.getUseScanIndex()) {
+            return "true";
+        }
         return parameters.get(name);
     }
 
@@ -297,6 +301,9 @@ public class ApplicationContext
         if (!context.getXmlBlockExternal()) {
             names.add(Globals.JASPER_XML_BLOCK_EXTERNAL_INIT_PARAM);
         }
+        if (context.getUseScanIndex()) {
+            names.add(Globals.JASPER_USE_SCAN_INDEX_INIT_PARAM);
+        }
         return Collections.enumeration(names);
     }
 
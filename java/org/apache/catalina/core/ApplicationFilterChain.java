@@ -42,6 +42,8 @@ import java.security.PrivilegedActionException;
 final class ApplicationFilterChain implements FilterChain {
 
     public static final int INCREMENT = 10;
+    private static final ApplicationFilterConfig[] NO_FILTERS =
+        new ApplicationFilterConfig[0];
     // Used to enforce requirements of SRV.8.2 / SRV.14.2.5.1
     private static final ThreadLocal<ServletRequest> lastServicedRequest;
     private static final ThreadLocal<ServletResponse> lastServicedResponse;
@@ -84,8 +86,7 @@ final class ApplicationFilterChain implements FilterChain {
     /**
      * Filters.
      */
-    private ApplicationFilterConfig[] filters =
-        new ApplicationFilterConfig[0];
+    private ApplicationFilterConfig[] filters = NO_FILTERS;
     /**
      * The int which is used to maintain the current position
      * in the filter chain.
@@ -308,8 +309,8 @@ final class ApplicationFilterChain implements FilterChain {
     void addFilter(ApplicationFilterConfig filterConfig) {
 
         // Prevent the same filter being added multiple times
-        for(ApplicationFilterConfig filter:filters)
-            if(filter==filterConfig)
+        for (int i = 0; i < n; i++)
+            if(filters[i]==filterConfig)
                 return;
 
         if (n == filters.length) {
@@ -323,14 +324,30 @@ final class ApplicationFilterChain implements FilterChain {
     }
 
 
+    /**
+     * Set the filters that will be executed in this chain, replacing any
+     * previously added. The array is not modified by the chain so it may be
+     * shared between chains, such as when it is obtained from a
+     * {@link CompiledFilterChain}.
+     *
+     * @param filters The filters to execute, in order
+     */
+    void setFilters(ApplicationFilterConfig[] filters) {
+
+        this.filters = filters;
+        this.n = filters.length;
+
+    }
+
+
     /**
      * Release references to the filters and wrapper executed by this chain.
      */
     void release() {
 
-        for (int i = 0; i < n; i++) {
-            filters[i] = null;
-        }
+        // The filters array may be shared with other chains so it is
+        // replaced rather than cleared
+        filters = NO_FILTERS;
         n = 0;
         pos = 0;
         servlet = null;
@@ -106,26 +106,62 @@ public final class ApplicationFilterFactory {
 
         filterChain.setServlet(servlet);
 
-        filterChain.setSupport
-            (((StandardWrapper)wrapper).getInstanceSupport());
+        StandardWrapper standardWrapper = (StandardWrapper) wrapper;
+        filterChain.setSupport(standardWrapper.getInstanceSupport());
 
-        // Acquire the filter mappings for this Context
+        // Filters are only (re)computed when the filter configuration of the
+        // Context has changed since the chain for this wrapper and dispatcher
+        // type was last compiled
         StandardContext context = (StandardContext) wrapper.getParent();
+        int generation = context.getFilterChainGeneration();
+        CompiledFilterChain compiledChain =
+                standardWrapper.getCompiledFilterChain(dispatcher);
+        if (compiledChain == null || compiledChain.getGeneration() != generation) {
+            compiledChain = compileFilterChain(context, wrapper.getName(),
+                    dispatcher, generation);
+            standardWrapper.setCompiledFilterChain(dispatcher, compiledChain);
+        }
+        filterChain.setFilters(compiledChain.getFilters(requestPath));
+
+        // Return the completed filter chain
+        return filterChain;
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+
+    /**
+     * Compute the filters that apply to the given servlet and dispatcher type.
+     * Path-mapped filters are added first, followed by filters that match on
+     * servlet name, each in the order of the filter mappings of the Context.
+     *
+     * @param context The Context the servlet belongs to
+     * @param servletName The name of the servlet
+     * @param dispatcher The dispatcher type
+     * @param generation The filter chain generation of the Context read
+     *                   before the filter mappings
+     */
+    private CompiledFilterChain compileFilterChain(StandardContext context,
+            String servletName, DispatcherType dispatcher, int generation) {
+
+        CompiledFilterChain.Builder builder =
+                new CompiledFilterChain.Builder(generation);
+
+        // Acquire the filter mappings for this Context
         FilterMap[] filterMaps = context.findFilterMaps();
 
         // If there are no filter mappings, we are done
         if ((filterMaps == null) || (filterMaps.length == 0))
-            return (filterChain);
-
-        // Acquire the information we will need to match filter mappings
-        String servletName = wrapper.getName();
+            return builder.build();
 
         // Add the relevant path-mapped filters to this filter chain
         for (int i = 0; i < filterMaps.length; i++) {
             if (!matchDispatcher(filterMaps[i] ,dispatcher)) {
                 continue;
             }
-            if (!matchFiltersURL(filterMaps[i], requestPath))
+            if (!filterMaps[i].getMatchAllUrlPatterns() &&
+                    filterMaps[i].getURLPatterns().length == 0)
                 continue;
             ApplicationFilterConfig filterConfig = (ApplicationFilterConfig)
                 context.findFilterConfig(filterMaps[i].getFilterName());
@@ -133,7 +169,7 @@ public final class ApplicationFilterFactory {
                 // FIXME - log configuration problem
                 continue;
             }
-            filterChain.addFilter(filterConfig);
+            builder.addUrlFilter(filterMaps[i], filterConfig);
         }
 
         // Add filters that match on servlet name second
@@ -149,96 +185,10 @@ public final class ApplicationFilterFactory {
                 // FIXME - log configuration problem
                 continue;
             }
-            filterChain.addFilter(filterConfig);
-        }
-
-        // Return the completed filter chain
-        return filterChain;
-    }
-
-
-    // -------------------------------------------------------- Private Methods
-
-
-    /**
-     * Return <code>true</code> if the context-relative request path
-     * matches the requirements of the specified filter mapping;
-     * otherwise, return <code>false</code>.
-     *
-     * @param filterMap Filter mapping being checked
-     * @param requestPath Context-relative request path of this request
-     */
-    private boolean matchFiltersURL(FilterMap filterMap, String requestPath) {
-
-        // Check the specific "*" special URL pattern, which also matches
-        // named dispatches
-        if (filterMap.getMatchAllUrlPatterns())
-            return true;
-
-        if (requestPath == null)
-            return false;
-
-        // Match on context relative request path
-        String[] testPaths = filterMap.getURLPatterns();
-
-        for (int i = 0; i < testPaths.length; i++) {
-            if (matchFiltersURL(testPaths[i], requestPath)) {
-                return true;
-            }
+            builder.addServletFilter(filterConfig);
         }
 
-        // No match
-        return false;
-
-    }
-
-
-    /**
-     * Return <code>true</code> if the context-relative request path
-     * matches the requirements of the specified filter mapping;
-     * otherwise, return <code>false</code>.
-     *
-     * @param testPath URL mapping being checked
-     * @param requestPath Context-relative request path of this request
-     */
-    private boolean matchFiltersURL(String testPath, String requestPath) {
-
-        if (testPath == null)
-            return false;
-
-        // Case 1 - Exact Match
-        if (testPath.equals(requestPath))
-            return true;
-
-        // Case 2 - Path Match ("/.../*")
-        if (testPath.equals("/*"))
-            return true;
-        if (testPath.endsWith("/*")) {
-            if (testPath.regionMatches(0, requestPath, 0,
-                                       testPath.length() - 2)) {
-                if (requestPath.length() == (testPath.length() - 2)) {
-                    return true;
-                } else return '/' == requestPath.charAt(testPath.length() - 2);
-            }
-            return false;
-        }
-
-        // Case 3 - Extension Match
-        if (testPath.startsWith("*.")) {
-            int slash = requestPath.lastIndexOf('/');
-            int period = requestPath.lastIndexOf('.');
-            if ((slash >= 0) && (period > slash)
-                && (period != requestPath.length() - 1)
-                && ((requestPath.length() - period)
-                    == (testPath.length() - 1))) {
-                return (testPath.regionMatches(2, requestPath, period + 1,
-                                               testPath.length() - 2));
-            }
-        }
-
-        // Case 4 - "Default" Match
-        return false; // NOTE - Not relevant for selecting filters
-
+        return builder.build();
     }
 
 
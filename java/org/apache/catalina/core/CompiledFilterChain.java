@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+/**
+ * The filters that apply to one {@link StandardWrapper} for one dispatcher
+ * type, pre-computed from the filter mappings of the parent Context by
+ * {@link ApplicationFilterFactory}. Instances are immutable apart from a
+ * single entry memo of the most recent path dependent result and are
+ * replaced whenever the filter mappings or filter definitions of the Context
+ * change.
+ * <p>
+ * Filters mapped by servlet name, and filters mapped to <code>*</code>, do
+ * not depend on the request path and are resolved once. The URL patterns of
+ * the remaining mappings are split into exact, prefix and extension patterns
+ * so that matching them against a request path is cheap.
+ */
+final class CompiledFilterChain {
+
+    private static final ApplicationFilterConfig[] NO_FILTERS =
+            new ApplicationFilterConfig[0];
+
+    private final int generation;
+    private final UrlFilter[] urlFilters;
+    private final ApplicationFilterConfig[] servletFilters;
+
+    /**
+     * The complete chain if it does not depend on the request path, otherwise
+     * <code>null</code>.
+     */
+    private final ApplicationFilterConfig[] fixedFilters;
+
+    private volatile PathFilters lastPathFilters = null;
+
+
+    private CompiledFilterChain(int generation, UrlFilter[] urlFilters,
+            ApplicationFilterConfig[] servletFilters) {
+        this.generation = generation;
+        this.urlFilters = urlFilters;
+        this.servletFilters = servletFilters;
+        boolean pathDependent = false;
+        for (UrlFilter urlFilter : urlFilters) {
+            if (!urlFilter.matchAll) {
+                pathDependent = true;
+                break;
+            }
+        }
+        if (pathDependent) {
+            fixedFilters = null;
+        } else {
+            fixedFilters = build(null);
+        }
+    }
+
+
+    /**
+     * @return the value of {@link StandardContext#getFilterChainGeneration()}
+     *         this chain was compiled against
+     */
+    int getGeneration() {
+        return generation;
+    }
+
+
+    /**
+     * Obtain the filters to execute, in order, for the given request path.
+     * The returned array must not be modified.
+     *
+     * @param requestPath The context relative request path or
+     *                    <code>null</code> for a named dispatch
+     * @return the filters to execute
+     */
+    ApplicationFilterConfig[] getFilters(String requestPath) {
+        if (fixedFilters != null) {
+            return fixedFilters;
+        }
+        PathFilters last = lastPathFilters;
+        if (last != null && (requestPath == null ? last.path == null :
+                requestPath.equals(last.path))) {
+            return last.filters;
+        }
+        ApplicationFilterConfig[] result = build(requestPath);
+        lastPathFilters = new PathFilters(requestPath, result);
+        return result;
+    }
+
+
+    private ApplicationFilterConfig[] build(String requestPath) {
+        int max = urlFilters.length + servletFilters.length;
+        if (max == 0) {
+            return NO_FILTERS;
+        }
+        ApplicationFilterConfig[] result = new ApplicationFilterConfig[max];
+        int n = 0;
+        for (UrlFilter urlFilter : urlFilters) {
+            if (urlFilter.matches(requestPath)) {
+                n = add(result, n, urlFilter.config);
+            }
+        }
+        for (ApplicationFilterConfig servletFilter : servletFilters) {
+            n = add(result, n, servletFilter);
+        }
+        if (n == 0) {
+            return NO_FILTERS;
+        }
+        if (n < max) {
+            ApplicationFilterConfig[] trimmed = new ApplicationFilterConfig[n];
+            System.arraycopy(result, 0, trimmed, 0, n);
+            result = trimmed;
+        }
+        return result;
+    }
+
+
+    /*
+     * Prevent the same filter being added multiple times
+     */
+    private static int add(ApplicationFilterConfig[] filters, int n,
+            ApplicationFilterConfig filterConfig) {
+        for (int i = 0; i < n; i++) {
+            if (filters[i] == filterConfig) {
+                return n;
+            }
+        }
+        filters[n] = filterConfig;
+        return n + 1;
+    }
+
+
+    // ---------------------------------------------------------- Builder class
+
+    static final class Builder {
+
+        private final int generation;
+        private final List<UrlFilter> urlFilters = new ArrayList<>();
+        private final List<ApplicationFilterConfig> servletFilters =
+                new ArrayList<>();
+
+        Builder(int generation) {
+            this.generation = generation;
+        }
+
+        /**
+         * Add a filter mapped by URL pattern. Mappings must be added in the
+         * order they should be applied.
+         */
+        void addUrlFilter(FilterMap filterMap,
+                ApplicationFilterConfig filterConfig) {
+            urlFilters.add(new UrlFilter(filterMap, filterConfig));
+        }
+
+        /**
+         * Add a filter mapped by servlet name. Mappings must be added in the
+         * order they should be applied.
+         */
+        void addServletFilter(ApplicationFilterConfig filterConfig) {
+            servletFilters.add(filterConfig);
+        }
+
+        CompiledFilterChain build() {
+            return new CompiledFilterChain(generation,
+                    urlFilters.toArray(new UrlFilter[urlFilters.size()]),
+                    servletFilters.toArray(
+                            new ApplicationFilterConfig[servletFilters.size()]));
+        }
+    }
+
+
+    // -------------------------------------------------------- UrlFilter class
+
+    private static final class UrlFilter {
+
+        private final ApplicationFilterConfig config;
+        /**
+         * Mapped to "*" which also matches named dispatches.
+         */
+        private final boolean matchAll;
+        /**
+         * Mapped to "/*" which matches any request path.
+         */
+        private final boolean matchAnyPath;
+        private final String[] exact;
+        private final String[] prefixes;
+        private final String[] extensions;
+
+        private UrlFilter(FilterMap filterMap, ApplicationFilterConfig config) {
+            this.config = config;
+            this.matchAll = filterMap.getMatchAllUrlPatterns();
+            boolean matchAnyPath = false;
+            List<String> exact = new ArrayList<>();
+            List<String> prefixes = new ArrayList<>();
+            List<String> extensions = new ArrayList<>();
+            for (String testPath : filterMap.getURLPatterns()) {
+                if (testPath == null) {
+                    continue;
+                }
+                if (testPath.equals("/*")) {
+                    matchAnyPath = true;
+                } else if (testPath.endsWith("/*")) {
+                    prefixes.add(testPath.substring(0, testPath.length() - 2));
+                } else if (testPath.startsWith("*.")) {
+                    extensions.add(testPath.substring(2));
+                } else {
+                    exact.add(testPath);
+                }
+            }
+            this.matchAnyPath = matchAnyPath;
+            this.exact = exact.toArray(new String[exact.size()]);
+            this.prefixes = prefixes.toArray(new String[prefixes.size()]);
+            this.extensions = extensions.toArray(new String[extensions.size()]);
+        }
+
+        private boolean matches(String requestPath) {
+            if (matchAll) {
+                return true;
+            }
+            if (requestPath == null) {
+                return false;
+            }
+            if (matchAnyPath) {
+                return true;
+            }
+            for (String testPath : exact) {
+                if (testPath.equals(requestPath)) {
+                    return true;
+                }
+            }
+            for (String prefix : prefixes) {
+                if (requestPath.startsWith(prefix) &&
+                        (requestPath.length() == prefix.length() ||
+                        requestPath.charAt(prefix.length()) == '/')) {
+                    return true;
+                }
+            }
+            if (extensions.length > 0) {
+                int slash = requestPath.lastIndexOf('/');
+                int period = requestPath.lastIndexOf('.');
+                if (slash >= 0 && period > slash &&
+                        period != requestPath.length() - 1) {
+                    int extensionLength = requestPath.length() - period - 1;
+                    for (String extension : extensions) {
+                        if (extension.length() == extensionLength &&
+                                requestPath.regionMatches(period + 1, extension,
+                                        0, extensionLength)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+
+    // ------------------------------------------------------ PathFilters class
+
+    private static final class PathFilters {
+
+        private final String path;
+        private final ApplicationFilterConfig[] filters;
+
+        private PathFilters(String path, ApplicationFilterConfig[] filters) {
+            this.path = path;
+            this.filters = filters;
+        }
+    }
+}
@@ -33,9 +33,12 @@ import java.io.File;
 import java.security.AccessController;
 import java.security.PrivilegedAction;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
@@ -200,6 +203,19 @@ public abstract class ContainerBase extends LifecycleMBeanBase
      */
     private int startStopThreads = 1;
 
+    /**
+     * Should children be started and stopped one at a time by the thread
+     * starting or stopping this container rather than in parallel by the
+     * start/stop executor? Intended to make debugging easier.
+     */
+    private boolean serialStartStop = false;
+
+    /**
+     * The time in milliseconds the most recent start of each child took,
+     * keyed by child name.
+     */
+    private final Map<String,Long> childStartTimes = new ConcurrentHashMap<>();
+
     @Override
     public int getStartStopThreads() {
         return startStopThreads;
@@ -221,6 +237,71 @@ public abstract class ContainerBase extends LifecycleMBeanBase
         }
     }
 
+    /**
+     * Return whether children are started and stopped serially by the thread
+     * starting or stopping this container.
+     */
+    public boolean getSerialStartStop() {
+        return serialStartStop;
+    }
+
+
+    /**
+     * Set whether children are started and stopped serially by the thread
+     * starting or stopping this container instead of in parallel by the
+     * start/stop executor. This makes startup easier to follow in a debugger
+     * at the expense of startup time.
+     *
+     * @param serialStartStop <code>true</code> to start and stop children
+     *                        serially
+     */
+    public void setSerialStartStop(boolean serialStartStop) {
+        boolean oldSerialStartStop = this.serialStartStop;
+        this.serialStartStop = serialStartStop;
+        support.firePropertyChange("serialStartStop", oldSerialStartStop,
+                this.serialStartStop);
+    }
+
+
+    /**
+     * Return the time in milliseconds the most recent start of each child of
+     * this container took, slowest first, in the form
+     * <code>name=time</code>.
+     */
+    public String[] getChildStartTimes() {
+        List<Map.Entry<String,Long>> entries =
+                new ArrayList<>(childStartTimes.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String,Long>>() {
+            @Override
+            public int compare(Map.Entry<String,Long> o1,
+                    Map.Entry<String,Long> o2) {
+                return o2.getValue().compareTo(o1.getValue());
+            }
+        });
+        String[] result = new String[entries.size()];
+        for (int i = 0; i < result.length; i++) {
+            Map.Entry<String,Long> entry = entries.get(i);
+            result[i] = entry.getKey() + "=" + entry.getValue();
+        }
+        return result;
+    }
+
+
+    /**
+     * Return the time in milliseconds the most recent start of the named
+     * child took or -1 if the child has not been started by this container.
+     *
+     * @param name The name of the child
+     */
+    public long getChildStartTime(String name) {
+        Long time = childStartTimes.get(name);
+        if (time == null) {
+            return -1;
+        }
+        return time.longValue();
+    }
+
+
     /**
      * Handles the special values.
      */
@@ -624,7 +705,7 @@ public abstract class ContainerBase extends LifecycleMBeanBase
             if ((getState().isAvailable() ||
                     LifecycleState.STARTING_PREP.equals(getState())) &&
                     startChildren) {
-                child.start();
+                startChild(child);
             }
         } catch (LifecycleException e) {
             log.error("ContainerBase.addChild: start: ", e);
@@ -712,6 +793,7 @@ public abstract class ContainerBase extends LifecycleMBeanBase
                 return;
             children.remove(child.getName());
         }
+        childStartTimes.remove(child.getName());
 
         try {
             if (child.getState().isAvailable()) {
@@ -802,9 +884,7 @@ public abstract class ContainerBase extends LifecycleMBeanBase
         for (int i = 0; i < children.length; i++) {
             //通过线程调用子容器的start方法，相当于children[i].start();
             //线程StartChildren是一个实现了Callable的内部类，主要作用就是用于调用子容器的Start方法
-            //results.add(startStopExecutor.submit(new StartChild(children[i])));
-            //为了方便调试，可以改成这样
-            children[i].start();
+            results.add(submitStartStop(new StartChild(children[i])));
         }
 
         //处理子容器启动线程的Future
@@ -863,7 +943,7 @@ public abstract class ContainerBase extends LifecycleMBeanBase
         Container[] children = findChildren();
         List<Future<Void>> results = new ArrayList<>();
         for (int i = 0; i < children.length; i++) {
-            results.add(startStopExecutor.submit(new StopChild(children[i])));
+            results.add(submitStartStop(new StopChild(children[i])));
         }
 
         boolean fail = false;
@@ -1214,7 +1294,40 @@ public abstract class ContainerBase extends LifecycleMBeanBase
 
     }
 
-    private static class StartChild implements Callable<Void> {
+    /**
+     * Run a child start or stop task on the start/stop executor or, in serial
+     * mode, immediately on the current thread. Either way any failure is
+     * reported through the returned Future.
+     */
+    private Future<Void> submitStartStop(Callable<Void> task) {
+        if (serialStartStop) {
+            FutureTask<Void> future = new FutureTask<>(task);
+            future.run();
+            return future;
+        }
+        return startStopExecutor.submit(task);
+    }
+
+
+    /**
+     * Start the given child, recording how long the start took.
+     */
+    private void startChild(Container child) throws LifecycleException {
+        long start = System.nanoTime();
+        try {
+            child.start();
+        } finally {
+            long time = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            childStartTimes.put(child.getName(), Long.valueOf(time));
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("containerBase.childStartTime",
+                        child.getName(), getName(), Long.valueOf(time)));
+            }
+        }
+    }
+
+
+    private class StartChild implements Callable<Void> {
 
         private Container child;
 
@@ -1224,7 +1337,7 @@ public abstract class ContainerBase extends LifecycleMBeanBase
 
         @Override
         public Void call() throws LifecycleException {
-            child.start();
+            startChild(child);
             return null;
         }
     }
@@ -57,6 +57,7 @@ import java.security.PrivilegedAction;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
@@ -101,6 +102,12 @@ public class StandardContext extends ContainerBase
      * defined in the deployment descriptor.
      */
     private final ContextFilterMaps filterMaps = new ContextFilterMaps();
+    /**
+     * Incremented whenever filter definitions, filter mappings or the started
+     * filters change so that filter chains compiled for the Wrappers of this
+     * Context can be discarded.
+     */
+    private final AtomicInteger filterChainGeneration = new AtomicInteger(0);
     private final Object instanceListenersLock = new Object();
     private final ReadWriteLock loaderLock = new ReentrantReadWriteLock();
     private final ReadWriteLock managerLock = new ReentrantReadWriteLock();
@@ -234,6 +241,15 @@ public class StandardContext extends ContainerBase
      */
     private boolean delegate = false;
     private boolean denyUncoveredHttpMethods;
+    /**
+     * Should web fragments and JARs be scanned for annotations in parallel?
+     */
+    private boolean parallelAnnotationScanning = false;
+    /**
+     * Should the results of scanning JARs for annotations and TLDs be
+     * recorded in the work directory and reused for unchanged JARs?
+     */
+    private boolean useScanIndex = false;
     /**
      * The display name of this web application.
      */
@@ -857,6 +873,51 @@ public class StandardContext extends ContainerBase
 
     }
 
+    /**
+     * Return whether web fragments and JARs are scanned for annotations in
+     * parallel when this web application starts.
+     */
+    public boolean getParallelAnnotationScanning() {
+        return parallelAnnotationScanning;
+    }
+
+    /**
+     * Set whether web fragments and JARs are scanned for annotations in
+     * parallel, using one thread per available processor, when this web
+     * application starts.
+     *
+     * @param parallelAnnotationScanning The new flag
+     */
+    public void setParallelAnnotationScanning(
+            boolean parallelAnnotationScanning) {
+        boolean oldParallelAnnotationScanning = this.parallelAnnotationScanning;
+        this.parallelAnnotationScanning = parallelAnnotationScanning;
+        support.firePropertyChange("parallelAnnotationScanning",
+                oldParallelAnnotationScanning,
+                this.parallelAnnotationScanning);
+    }
+
+    /**
+     * Return whether the results of scanning JARs for annotations and TLDs
+     * are recorded in the work directory and reused for unchanged JARs.
+     */
+    public boolean getUseScanIndex() {
+        return useScanIndex;
+    }
+
+    /**
+     * Set whether the results of scanning JARs for annotations and TLDs are
+     * recorded in the work directory and reused for unchanged JARs.
+     *
+     * @param useScanIndex The new flag
+     */
+    public void setUseScanIndex(boolean useScanIndex) {
+        boolean oldUseScanIndex = this.useScanIndex;
+        this.useScanIndex = useScanIndex;
+        support.firePropertyChange("useScanIndex", oldUseScanIndex,
+                this.useScanIndex);
+    }
+
     /**
      * Returns true if the internal naming support is used.
      */
@@ -2445,6 +2506,7 @@ public class StandardContext extends ContainerBase
         synchronized (filterDefs) {
             filterDefs.put(filterDef.getFilterName(), filterDef);
         }
+        filterChainGeneration.incrementAndGet();
         fireContainerEvent("addFilterDef", filterDef);
 
     }
@@ -2464,6 +2526,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // Add this filter mapping to our registered set
         filterMaps.add(filterMap);
+        filterChainGeneration.incrementAndGet();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -2482,6 +2545,7 @@ public class StandardContext extends ContainerBase
         validateFilterMap(filterMap);
         // Add this filter mapping to our registered set
         filterMaps.addBefore(filterMap);
+        filterChainGeneration.incrementAndGet();
         fireContainerEvent("addFilterMap", filterMap);
     }
 
@@ -3513,6 +3577,7 @@ public class StandardContext extends ContainerBase
         synchronized (filterDefs) {
             filterDefs.remove(filterDef.getFilterName());
         }
+        filterChainGeneration.incrementAndGet();
         fireContainerEvent("removeFilterDef", filterDef);
 
     }
@@ -3525,6 +3590,7 @@ public class StandardContext extends ContainerBase
     @Override
     public void removeFilterMap(FilterMap filterMap) {
         filterMaps.remove(filterMap);
+        filterChainGeneration.incrementAndGet();
         // Inform interested listeners
         fireContainerEvent("removeFilterMap", filterMap);
     }
@@ -4045,6 +4111,7 @@ public class StandardContext extends ContainerBase
                 }
             }
         }
+        filterChainGeneration.incrementAndGet();
 
         return ok;
     }
@@ -4071,10 +4138,20 @@ public class StandardContext extends ContainerBase
             }
             filterConfigs.clear();
         }
+        filterChainGeneration.incrementAndGet();
         return true;
 
     }
 
+    /**
+     * Return the current filter chain generation. The value changes whenever
+     * a filter definition or filter mapping is added or removed and whenever
+     * the filters are started or stopped.
+     */
+    int getFilterChainGeneration() {
+        return filterChainGeneration.get();
+    }
+
     /**
      * Find and return the initialized <code>FilterConfig</code> for the
      * specified filter name, if any; otherwise return <code>null</code>.
@@ -21,16 +21,28 @@ import org.apache.catalina.Executor;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.util.LifecycleMBeanBase;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.threads.LaneBindingExecutor;
 import org.apache.tomcat.util.threads.ResizableExecutor;
 import org.apache.tomcat.util.threads.TaskQueue;
 import org.apache.tomcat.util.threads.TaskThreadFactory;
 import org.apache.tomcat.util.threads.ThreadPoolExecutor;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.apache.tomcat.util.threads.WorkStealingExecutor;
 
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class StandardThreadExecutor extends LifecycleMBeanBase
-        implements Executor, ResizableExecutor {
+        implements Executor, ResizableExecutor, LaneBindingExecutor {
+
+    private static final Log log = LogFactory.getLog(StandardThreadExecutor.class);
+
+    private static final StringManager sm =
+        StringManager.getManager(Constants.Package);
 
     // ---------------------------------------------- Properties
     /**
@@ -91,6 +103,48 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     protected long threadRenewalDelay =
         org.apache.tomcat.util.threads.Constants.DEFAULT_THREAD_RENEWAL_DELAY;
 
+    /**
+     * Run each task on a new virtual thread instead of using a pool of
+     * platform threads?
+     */
+    protected boolean useVirtualThreads = false;
+
+    /**
+     * The executor used in place of {@link #executor} when virtual threads
+     * are in use
+     */
+    protected VirtualThreadExecutor virtualExecutor = null;
+
+    /**
+     * Use a {@link WorkStealingExecutor} with a task queue per submitting
+     * thread instead of a thread pool with a single shared queue?
+     */
+    protected boolean useWorkStealing = false;
+
+    /**
+     * Number of task queues used when work stealing is in use. Zero or less
+     * means one per poller of a default NIO connector.
+     */
+    protected int laneCount = 0;
+
+    /**
+     * Lane given to the next submitting thread that binds itself. Several
+     * connectors may share this executor and each numbers its pollers from
+     * zero, so the poller index alone would put them all on the same lanes.
+     */
+    private final AtomicInteger nextLane = new AtomicInteger();
+
+    /**
+     * Number of threads that have bound themselves to a lane.
+     */
+    private final AtomicInteger boundThreadCount = new AtomicInteger();
+
+    /**
+     * The executor used in place of {@link #executor} when work stealing is
+     * in use
+     */
+    protected WorkStealingExecutor workStealingExecutor = null;
+
     private TaskQueue taskqueue = null;
     // ---------------------------------------------- Constructors
     public StandardThreadExecutor() {
@@ -116,6 +170,29 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
     @Override
     protected void startInternal() throws LifecycleException {
 
+        if (useVirtualThreads) {
+            if (VirtualThreadExecutor.isSupported()) {
+                virtualExecutor = new VirtualThreadExecutor(namePrefix);
+                setState(LifecycleState.STARTING);
+                return;
+            }
+            log.warn(sm.getString("standardThreadExecutor.noVirtualThreads", getName()));
+        }
+
+        if (useWorkStealing) {
+            TaskThreadFactory tf = new TaskThreadFactory(namePrefix,daemon,getThreadPriority());
+            workStealingExecutor = new WorkStealingExecutor(
+                    getLaneCount(), getMinSpareThreads(),
+                    getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS, tf);
+            workStealingExecutor.setMaxQueueSize(maxQueueSize);
+            workStealingExecutor.setThreadRenewalDelay(threadRenewalDelay);
+            if (prestartminSpareThreads) {
+                workStealingExecutor.prestartAllCoreThreads();
+            }
+            setState(LifecycleState.STARTING);
+            return;
+        }
+
         taskqueue = new TaskQueue(maxQueueSize);
         TaskThreadFactory tf = new TaskThreadFactory(namePrefix,daemon,getThreadPriority());
         executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), maxIdleTime, TimeUnit.MILLISECONDS,taskqueue, tf);
@@ -142,6 +219,10 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         setState(LifecycleState.STOPPING);
         if ( executor != null ) executor.shutdownNow();
         executor = null;
+        if (virtualExecutor != null) virtualExecutor.shutdownNow();
+        virtualExecutor = null;
+        if (workStealingExecutor != null) workStealingExecutor.shutdownNow();
+        workStealingExecutor = null;
         taskqueue = null;
     }
 
@@ -154,7 +235,11 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
 
     @Override
     public void execute(Runnable command, long timeout, TimeUnit unit) {
-        if ( executor != null ) {
+        if (virtualExecutor != null) {
+            virtualExecutor.execute(command);
+        } else if (workStealingExecutor != null) {
+            workStealingExecutor.execute(command, timeout, unit);
+        } else if ( executor != null ) {
             executor.execute(command,timeout,unit);
         } else {
             throw new IllegalStateException("StandardThreadExecutor not started.");
@@ -164,7 +249,11 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
 
     @Override
     public void execute(Runnable command) {
-        if ( executor != null ) {
+        if (virtualExecutor != null) {
+            virtualExecutor.execute(command);
+        } else if (workStealingExecutor != null) {
+            workStealingExecutor.execute(command);
+        } else if ( executor != null ) {
             try {
                 executor.execute(command);
             } catch (RejectedExecutionException rx) {
@@ -178,6 +267,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.contextStopping();
         }
+        if (workStealingExecutor != null) {
+            workStealingExecutor.contextStopping();
+        }
     }
 
     public int getThreadPriority() {
@@ -197,6 +289,54 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         this.daemon = daemon;
     }
 
+    public boolean getUseVirtualThreads() {
+        return useVirtualThreads;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    public boolean getUseWorkStealing() {
+        return useWorkStealing;
+    }
+
+    public void setUseWorkStealing(boolean useWorkStealing) {
+        this.useWorkStealing = useWorkStealing;
+    }
+
+    @Override
+    public int getLaneCount() {
+        if (laneCount > 0) {
+            return laneCount;
+        }
+        // Matches the default poller count of the NIO connector
+        return Math.min(2, Runtime.getRuntime().availableProcessors());
+    }
+
+    public void setLaneCount(int laneCount) {
+        this.laneCount = laneCount;
+    }
+
+    /**
+     * Binds the current thread to the next lane in turn. The poller index is
+     * ignored so that the pollers of every connector sharing this executor
+     * are spread across the lanes. Does nothing unless work stealing is in
+     * use.
+     */
+    @Override
+    public void bindCurrentThread(int lane) {
+        WorkStealingExecutor workStealingExecutor = this.workStealingExecutor;
+        if (workStealingExecutor != null) {
+            workStealingExecutor.bindCurrentThread(nextLane.getAndIncrement());
+            boundThreadCount.incrementAndGet();
+        }
+    }
+
+    public int getBoundThreadCount() {
+        return boundThreadCount.get();
+    }
+
     public String getNamePrefix() {
         return namePrefix;
     }
@@ -214,6 +354,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.setKeepAliveTime(maxIdleTime, TimeUnit.MILLISECONDS);
         }
+        if (workStealingExecutor != null) {
+            workStealingExecutor.setKeepAliveTime(maxIdleTime, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -226,6 +369,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.setMaximumPoolSize(maxThreads);
         }
+        if (workStealingExecutor != null) {
+            workStealingExecutor.setMaximumPoolSize(maxThreads);
+        }
     }
 
     public int getMinSpareThreads() {
@@ -237,6 +383,9 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.setCorePoolSize(minSpareThreads);
         }
+        if (workStealingExecutor != null) {
+            workStealingExecutor.setCorePoolSize(minSpareThreads);
+        }
     }
 
     @Override
@@ -274,38 +423,82 @@ public class StandardThreadExecutor extends LifecycleMBeanBase
         if (executor != null) {
             executor.setThreadRenewalDelay(threadRenewalDelay);
         }
+        if (workStealingExecutor != null) {
+            workStealingExecutor.setThreadRenewalDelay(threadRenewalDelay);
+        }
     }
 
     // Statistics from the thread pool
     @Override
     public int getActiveCount() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getActiveCount();
+        }
+        if (workStealingExecutor != null) {
+            return workStealingExecutor.getActiveCount();
+        }
         return (executor != null) ? executor.getActiveCount() : 0;
     }
 
     public long getCompletedTaskCount() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getCompletedTaskCount();
+        }
+        if (workStealingExecutor != null) {
+            return workStealingExecutor.getCompletedTaskCount();
+        }
         return (executor != null) ? executor.getCompletedTaskCount() : 0;
     }
 
     public int getCorePoolSize() {
+        if (workStealingExecutor != null) {
+            return workStealingExecutor.getCorePoolSize();
+        }
         return (executor != null) ? executor.getCorePoolSize() : 0;
     }
 
     public int getLargestPoolSize() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getLargestPoolSize();
+        }
+        if (workStealingExecutor != null) {
+            return workStealingExecutor.getLargestPoolSize();
+        }
         return (executor != null) ? executor.getLargestPoolSize() : 0;
     }
 
     @Override
     public int getPoolSize() {
+        if (virtualExecutor != null) {
+            return virtualExecutor.getPoolSize();
+        }
+        if (workStealingExecutor != null) {
+            return workStealingExecutor.getPoolSize();
+        }
         return (executor != null) ? executor.getPoolSize() : 0;
     }
 
+    public long getStealCount() {
+        return (workStealingExecutor != null) ? workStealingExecutor.getStealCount() : 0;
+    }
+
     public int getQueueSize() {
+        if (virtualExecutor != null) {
+            // Tasks never wait for a thread
+            return 0;
+        }
+        if (workStealingExecutor != null) {
+            return workStealingExecutor.getQueueSize();
+        }
         return (executor != null) ? executor.getQueue().size() : -1;
     }
 
 
     @Override
     public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        if (workStealingExecutor != null) {
+            return workStealingExecutor.resizePool(corePoolSize, maximumPoolSize);
+        }
         if (executor == null)
             return false;
 
@@ -38,6 +38,7 @@ import java.io.PrintStream;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -183,6 +184,12 @@ public class StandardWrapper extends ContainerBase
      * Async support
      */
     protected boolean asyncSupported = false;
+    /**
+     * Filter chains compiled by {@link ApplicationFilterFactory}, indexed by
+     * dispatcher type.
+     */
+    private final AtomicReferenceArray<CompiledFilterChain> compiledFilterChains =
+            new AtomicReferenceArray<>(DispatcherType.values().length);
     /**
      * Enabled
      */
@@ -292,6 +299,20 @@ public class StandardWrapper extends ContainerBase
 
     }
 
+    CompiledFilterChain getCompiledFilterChain(DispatcherType dispatcher) {
+        if (dispatcher == null) {
+            return null;
+        }
+        return compiledFilterChains.get(dispatcher.ordinal());
+    }
+
+    void setCompiledFilterChain(DispatcherType dispatcher,
+            CompiledFilterChain compiledFilterChain) {
+        if (dispatcher != null) {
+            compiledFilterChains.set(dispatcher.ordinal(), compiledFilterChain);
+        }
+    }
+
     /**
      * Return the load-on-startup order value (negative value means
      * load on first call).
@@ -71,6 +71,9 @@ public class BackupManager extends ClusterManagerBase
      */
     public BackupManager() {
         super();
+        // Sessions are added to the replicated map by other nodes without
+        // passing through add() so they must all be examined for expiry
+        setFullExpiryScan(true);
     }
 
 
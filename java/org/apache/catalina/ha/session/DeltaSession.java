@@ -276,7 +276,7 @@ public class DeltaSession extends StandardSession implements Externalizable,Clus
 
 
     public void setMaxInactiveInterval(int interval, boolean addDeltaRequest) {
-        super.maxInactiveInterval = interval;
+        super.setMaxInactiveInterval(interval);
         if (addDeltaRequest && (deltaRequest != null)) {
             lock();
             try {
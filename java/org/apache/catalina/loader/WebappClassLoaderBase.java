@@ -25,6 +25,8 @@ import org.apache.tomcat.InstrumentableClassLoader;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.IntrospectionUtils;
 import org.apache.tomcat.util.res.StringManager;
+import org.apache.tomcat.util.scan.Jar;
+import org.apache.tomcat.util.scan.JarFactory;
 
 import java.io.*;
 import java.lang.instrument.ClassFileTransformer;
@@ -45,6 +47,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.Manifest;
@@ -266,6 +269,28 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
      */
     private List<URL> localRepositories = new ArrayList<>();
     private volatile LifecycleState state = LifecycleState.NEW;
+    /**
+     * The maximum number of resource paths that were looked up and not found
+     * to remember. Zero (the default) disables the negative lookup cache and
+     * the package index of the JARs in /WEB-INF/lib.
+     */
+    private volatile int lookupCacheSize = 0;
+    /**
+     * Resource paths that could not be found in any of the local
+     * repositories. Cleared when it reaches {@link #lookupCacheSize}.
+     */
+    private final Set<String> notFoundResources =
+            Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+    /**
+     * The directories, in the form <code>/org/apache/</code>, that contain at
+     * least one entry in one of the JARs in /WEB-INF/lib. <code>null</code> if
+     * the index has not been built or there are other class loader only
+     * resources that it does not cover.
+     */
+    private volatile Set<String> jarPackages = null;
+    private final AtomicLong lookupCacheHitCount = new AtomicLong();
+    private final AtomicLong lookupCacheMissCount = new AtomicLong();
+    private final AtomicLong jarProbeCount = new AtomicLong();
 
     /**
      * Construct a new ClassLoader with no defined repositories and no
@@ -529,6 +554,70 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
             clearReferencesHttpClientKeepAliveThread;
     }
 
+    /**
+     * Return the maximum number of resources that were not found that this
+     * class loader will remember.
+     */
+    public int getLookupCacheSize() {
+        return lookupCacheSize;
+    }
+
+    /**
+     * Set the maximum number of resources that were not found that this class
+     * loader will remember. When greater than zero, repeated lookups for the
+     * same missing class or resource are answered without consulting the
+     * {@link WebResourceRoot} and, if enabled before the class loader is
+     * started, lookups in packages that are not present in any JAR in
+     * /WEB-INF/lib do not search those JARs. The JAR index is not used if the
+     * web application has any other class loader only resources. Since missing
+     * resources are remembered until the class loader is stopped, classes and
+     * resources added to /WEB-INF/classes after they were first requested will
+     * not be found until the web application is reloaded.
+     *
+     * @param lookupCacheSize The new maximum size, zero to disable
+     */
+    public void setLookupCacheSize(int lookupCacheSize) {
+        this.lookupCacheSize = lookupCacheSize;
+        if (lookupCacheSize <= 0) {
+            notFoundResources.clear();
+        }
+    }
+
+    /**
+     * Return the number of lookups for classes and resources that were
+     * answered from the negative lookup cache.
+     */
+    public long getLookupCacheHitCount() {
+        return lookupCacheHitCount.get();
+    }
+
+    /**
+     * Return the number of lookups for classes and resources not previously
+     * loaded by this class loader that had to consult the web application's
+     * resources.
+     */
+    public long getLookupCacheMissCount() {
+        return lookupCacheMissCount.get();
+    }
+
+    /**
+     * Return the number of lookups that had to search the JARs in
+     * /WEB-INF/lib. Compare with {@link #getLookupCacheMissCount()} to
+     * determine how many lookups the package index avoided.
+     */
+    public long getJarProbeCount() {
+        return jarProbeCount.get();
+    }
+
+    /**
+     * Forget all the classes and resources that have been recorded as not
+     * found. Intended for use when classes or resources are added to
+     * /WEB-INF/classes without reloading the web application.
+     */
+    public void clearLookupCache() {
+        notFoundResources.clear();
+    }
+
     /**
      * Adds the specified class file transformer to this class loader. The
      * transformer will then be able to modify the bytecode of any classes
@@ -592,6 +681,8 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
         base.clearReferencesStopTimerThreads = this.clearReferencesStopTimerThreads;
         base.clearReferencesLogFactoryRelease = this.clearReferencesLogFactoryRelease;
         base.clearReferencesHttpClientKeepAliveThread = this.clearReferencesHttpClientKeepAliveThread;
+        base.lookupCacheSize = this.lookupCacheSize;
+        base.jarPackages = this.jarPackages;
         base.jarModificationTimes.putAll(this.jarModificationTimes);
         base.permissionList.addAll(this.permissionList);
         base.loaderPC.putAll(this.loaderPC);
@@ -1342,11 +1433,22 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
             localRepositories.add(classes.getURL());
         }
         WebResource[] jars = resources.listResources("/WEB-INF/lib");
+        List<WebResource> libJars = new ArrayList<>();
         for (WebResource jar : jars) {
             if (jar.getName().endsWith(".jar") && jar.isFile() && jar.canRead()) {
                 localRepositories.add(jar.getURL());
                 jarModificationTimes.put(
                         jar.getName(), Long.valueOf(jar.getLastModified()));
+                libJars.add(jar);
+            }
+        }
+        if (lookupCacheSize > 0) {
+            if (countClassLoaderOnlyResources() > libJars.size()) {
+                // The index only covers the JARs in /WEB-INF/lib
+                log.info(sm.getString("webappClassLoader.jarIndexDisabled",
+                        getContextName()));
+            } else {
+                jarPackages = indexJarPackages(libJars);
             }
         }
 
@@ -1382,6 +1484,8 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
         state = LifecycleState.STOPPING;
 
         resourceEntries.clear();
+        notFoundResources.clear();
+        jarPackages = null;
         jarModificationTimes.clear();
         resources = null;
 
@@ -2421,9 +2525,30 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
 
         boolean fileNeedConvert = false;
 
-        resource = resources.getClassLoaderResource(path);
+        if (lookupCacheSize > 0 && notFoundResources.contains(path)) {
+            lookupCacheHitCount.incrementAndGet();
+            return null;
+        }
+        lookupCacheMissCount.incrementAndGet();
+
+        Set<String> jarPackages = this.jarPackages;
+        if (jarPackages != null && !jarPackages.contains(
+                path.substring(0, path.lastIndexOf('/') + 1))) {
+            // None of the JARs can contain this resource and the index is
+            // only built when they are the only class loader only resource
+            // sets. Those are never used by getResource() so this lookup is
+            // limited to /WEB-INF/classes and any pre or post resources.
+            resource = resources.getResource("/WEB-INF/classes" + path);
+            if (resource.exists()) {
+                resource = resources.getClassLoaderResource(path);
+            }
+        } else {
+            jarProbeCount.incrementAndGet();
+            resource = resources.getClassLoaderResource(path);
+        }
 
         if (!resource.exists()) {
+            addNotFound(path);
             return null;
         }
 
@@ -2502,22 +2627,84 @@ public abstract class WebappClassLoaderBase extends URLClassLoader
             }
         }
 
-        // Add the entry in the local resource repository
-        synchronized (resourceEntries) {
-            // Ensures that all the threads which may be in a race to load
-            // a particular class all end up with the same ResourceEntry
-            // instance
-            ResourceEntry entry2 = resourceEntries.get(path);
-            if (entry2 == null) {
-                resourceEntries.put(path, entry);
-            } else {
-                entry = entry2;
-            }
+        // Add the entry in the local resource repository. Ensures that all the
+        // threads which may be in a race to load a particular class all end
+        // up with the same ResourceEntry instance without holding a lock
+        // across every resource path.
+        ResourceEntry entry2 = resourceEntries.putIfAbsent(path, entry);
+        if (entry2 != null) {
+            entry = entry2;
         }
 
         return entry;
     }
 
+    private void addNotFound(String path) {
+        int maxSize = lookupCacheSize;
+        if (maxSize <= 0) {
+            return;
+        }
+        if (notFoundResources.size() >= maxSize) {
+            // Simpler than tracking usage and frequently missed resources
+            // will be added again on their next lookup
+            notFoundResources.clear();
+        }
+        notFoundResources.add(path);
+    }
+
+    /**
+     * Count the class loader only resource sets. The root creates one for each
+     * JAR in /WEB-INF/lib so any more than that means other sets, such as a
+     * JAR added as a {@link WebResourceRoot.ResourceSetType#CLASSES_JAR}, are
+     * present and would not be covered by an index of the /WEB-INF/lib JARs.
+     */
+    private int countClassLoaderOnlyResources() {
+        int count = 0;
+        List<WebResourceSet> sets = new ArrayList<>();
+        sets.addAll(Arrays.asList(resources.getPreResources()));
+        sets.addAll(Arrays.asList(resources.getClassResources()));
+        sets.addAll(Arrays.asList(resources.getJarResources()));
+        sets.addAll(Arrays.asList(resources.getPostResources()));
+        for (WebResourceSet set : sets) {
+            if (set.getClassLoaderOnly()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Build the set of directories that contain at least one entry in one of
+     * the given JARs, including all parent directories.
+     *
+     * @return the index or <code>null</code> if one or more of the JARs could
+     *         not be read
+     */
+    private Set<String> indexJarPackages(List<WebResource> jars) {
+        Set<String> result = new HashSet<>();
+        result.add("/");
+        for (WebResource jar : jars) {
+            try (Jar j = JarFactory.newInstance(jar.getURL())) {
+                j.nextEntry();
+                String entryName = j.getEntryName();
+                while (entryName != null) {
+                    int pos = entryName.indexOf('/');
+                    while (pos > -1) {
+                        result.add('/' + entryName.substring(0, pos + 1));
+                        pos = entryName.indexOf('/', pos + 1);
+                    }
+                    j.nextEntry();
+                    entryName = j.getEntryName();
+                }
+            } catch (IOException ioe) {
+                log.warn(sm.getString("webappClassLoader.jarIndexFail",
+                        jar.getName(), getContextName()), ioe);
+                return null;
+            }
+        }
+        return result;
+    }
+
     /**
      * Returns true if the specified package name is sealed according to the
      * given manifest.
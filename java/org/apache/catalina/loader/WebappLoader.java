@@ -106,6 +106,11 @@ public class WebappLoader extends LifecycleMBeanBase
      * Classpath set in the loader.
      */
     private String classpath = null;
+    /**
+     * The maximum number of missing classes and resources that the class
+     * loader will remember. Zero disables the lookup cache.
+     */
+    private int lookupCacheSize = 0;
 
 
     /**
@@ -211,6 +216,32 @@ public class WebappLoader extends LifecycleMBeanBase
         this.loaderClass = loaderClass;
     }
 
+    /**
+     * Return the maximum number of missing classes and resources that will be
+     * remembered by the class loader.
+     */
+    public int getLookupCacheSize() {
+        return lookupCacheSize;
+    }
+
+    /**
+     * Set the maximum number of missing classes and resources that will be
+     * remembered by the class loader. Zero, the default, disables the lookup
+     * cache.
+     *
+     * @param lookupCacheSize The new maximum size
+     */
+    public void setLookupCacheSize(int lookupCacheSize) {
+        int oldLookupCacheSize = this.lookupCacheSize;
+        this.lookupCacheSize = lookupCacheSize;
+        support.firePropertyChange("lookupCacheSize",
+                Integer.valueOf(oldLookupCacheSize),
+                Integer.valueOf(this.lookupCacheSize));
+        if (classLoader != null) {
+            classLoader.setLookupCacheSize(lookupCacheSize);
+        }
+    }
+
     /**
      * Return the reloadable flag for this Loader.
      */
@@ -359,6 +390,7 @@ public class WebappLoader extends LifecycleMBeanBase
             classLoader = createClassLoader();
             classLoader.setResources(context.getResources());
             classLoader.setDelegate(this.delegate);
+            classLoader.setLookupCacheSize(this.lookupCacheSize);
 
             // Configure our repositories
             setClassPath();
@@ -19,7 +19,6 @@ package org.apache.catalina.mapper;
 import org.apache.catalina.*;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
-import org.apache.tomcat.util.buf.Ascii;
 import org.apache.tomcat.util.buf.CharChunk;
 import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.res.StringManager;
@@ -28,6 +27,7 @@ import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Mapper, which implements the servlet API mapping rules (which are derived
@@ -48,6 +48,14 @@ public final class Mapper {
     protected MappedHost[] hosts = new MappedHost[0];
 
 
+    /**
+     * Case insensitive index over {@link #hosts}, rebuilt whenever the hosts
+     * array changes.
+     */
+    private volatile MappingTrie<MappedHost> hostTrie =
+            new MappingTrie<>(hosts, true);
+
+
     /**
      * Default host name.
      */
@@ -62,6 +70,12 @@ public final class Mapper {
             new ConcurrentHashMap<>();
 
 
+    /**
+     * Incremented after every change to the mapping rules.
+     */
+    private final AtomicLong modificationCount = new AtomicLong(0);
+
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -119,60 +133,6 @@ public final class Mapper {
 
     }
 
-    /**
-     * Find a map element given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     */
-    private static final <T> int findIgnoreCase(MapElement<T>[] map, CharChunk name) {
-        return findIgnoreCase(map, name, name.getStart(), name.getEnd());
-    }
-
-    /**
-     * Find a map element given its name in a sorted array of map elements.
-     * This will return the index for the closest inferior or equal item in the
-     * given array.
-     */
-    private static final <T> int findIgnoreCase(MapElement<T>[] map, CharChunk name,
-                                  int start, int end) {
-
-        int a = 0;
-        int b = map.length - 1;
-
-        // Special cases: -1 and 0
-        if (b == -1) {
-            return -1;
-        }
-        if (compareIgnoreCase(name, start, end, map[0].name) < 0 ) {
-            return -1;
-        }
-        if (b == 0) {
-            return 0;
-        }
-
-        int i = 0;
-        while (true) {
-            i = (b + a) / 2;
-            int result = compareIgnoreCase(name, start, end, map[i].name);
-            if (result == 1) {
-                a = i;
-            } else if (result == 0) {
-                return i;
-            } else {
-                b = i;
-            }
-            if ((b - a) == 1) {
-                int result2 = compareIgnoreCase(name, start, end, map[b].name);
-                if (result2 < 0) {
-                    return a;
-                } else {
-                    return b;
-                }
-            }
-        }
-
-    }
-
     /**
      * Find a map element given its name in a sorted array of map elements.
      * This will return the index for the closest inferior or equal item in the
@@ -254,24 +214,6 @@ public final class Mapper {
         return null;
     }
 
-    /**
-     * Find a map element given its name in a sorted array of map elements. This
-     * will return the element that you were searching for. Otherwise it will
-     * return <code>null</code>.
-     * @see #findIgnoreCase(MapElement[], CharChunk)
-     */
-    private static final <T, E extends MapElement<T>> E exactFindIgnoreCase(
-            E[] map, CharChunk name) {
-        int pos = findIgnoreCase(map, name);
-        if (pos >= 0) {
-            E result = map[pos];
-            if (name.equalsIgnoreCase(result.name)) {
-                return result;
-            }
-        }
-        return null;
-    }
-
     /**
      * Compare given char chunk with String.
      * Return -1, 0 or +1 if inferior, equal, or superior to the String.
@@ -301,35 +243,6 @@ public final class Mapper {
         return result;
     }
 
-    /**
-     * Compare given char chunk with String ignoring case.
-     * Return -1, 0 or +1 if inferior, equal, or superior to the String.
-     */
-    private static final int compareIgnoreCase(CharChunk name, int start, int end,
-                                     String compareTo) {
-        int result = 0;
-        char[] c = name.getBuffer();
-        int len = compareTo.length();
-        if ((end - start) < len) {
-            len = end - start;
-        }
-        for (int i = 0; (i < len) && (result == 0); i++) {
-            if (Ascii.toLower(c[i + start]) > Ascii.toLower(compareTo.charAt(i))) {
-                result = 1;
-            } else if (Ascii.toLower(c[i + start]) < Ascii.toLower(compareTo.charAt(i))) {
-                result = -1;
-            }
-        }
-        if (result == 0) {
-            if (compareTo.length() > (end - start)) {
-                result = -1;
-            } else if (compareTo.length() < (end - start)) {
-                result = 1;
-            }
-        }
-        return result;
-    }
-
     /**
      * Find the position of the last slash in the given char chunk.
      */
@@ -423,6 +336,28 @@ public final class Mapper {
      */
     public void setDefaultHostName(String defaultHostName) {
         this.defaultHostName = defaultHostName;
+        modificationCount.incrementAndGet();
+    }
+
+    /**
+     * Obtain the number of changes made to the mapping rules so far. Callers
+     * that cache the results of {@link #map(MessageBytes, MessageBytes, String,
+     * MappingData)} can compare the value read before mapping with the current
+     * one to detect results that may be stale.
+     *
+     * @return the current modification count
+     */
+    public long getModificationCount() {
+        return modificationCount.get();
+    }
+
+    /**
+     * Replace the hosts array and the index built over it.
+     */
+    private void setHosts(MappedHost[] newHosts) {
+        hostTrie = new MappingTrie<>(newHosts, true);
+        hosts = newHosts;
+        modificationCount.incrementAndGet();
     }
 
     /**
@@ -437,7 +372,7 @@ public final class Mapper {
         MappedHost[] newHosts = new MappedHost[hosts.length + 1];
         MappedHost newHost = new MappedHost(name, host);
         if (insertMap(hosts, newHosts, newHost)) {
-            hosts = newHosts;
+            setHosts(newHosts);
             if (log.isDebugEnabled()) {
                 log.debug(sm.getString("mapper.addHost.success", name));
             }
@@ -487,7 +422,7 @@ public final class Mapper {
                 newHosts[j++] = newHosts[i];
             }
         }
-        hosts = Arrays.copyOf(newHosts, j);
+        setHosts(Arrays.copyOf(newHosts, j));
     }
 
     /**
@@ -511,7 +446,7 @@ public final class Mapper {
     private boolean addHostAliasImpl(MappedHost newAlias) {
         MappedHost[] newHosts = new MappedHost[hosts.length + 1];
         if (insertMap(hosts, newHosts, newAlias)) {
-            hosts = newHosts;
+            setHosts(newHosts);
             if (log.isDebugEnabled()) {
                 log.debug(sm.getString("mapper.addHostAlias.success",
                         newAlias.name, newAlias.getRealHostName()));
@@ -547,7 +482,7 @@ public final class Mapper {
         }
         MappedHost[] newHosts = new MappedHost[hosts.length - 1];
         if (removeMap(hosts, newHosts, alias)) {
-            hosts = newHosts;
+            setHosts(newHosts);
             hostMapping.getRealHost().removeAlias(hostMapping);
         }
 
@@ -564,6 +499,7 @@ public final class Mapper {
         for (MappedHost alias : realHost.getAliases()) {
             alias.contextList = newContextList;
         }
+        modificationCount.incrementAndGet();
     }
 
     /**
@@ -652,6 +588,7 @@ public final class Mapper {
                         contextObjectToContextVersionMap.put(context, newContextVersion);
                     }
                 }
+                modificationCount.incrementAndGet();
             }
         }
 
@@ -694,6 +631,7 @@ public final class Mapper {
                     }
                 } else {
                     context.versions = newContextVersions;
+                    modificationCount.incrementAndGet();
                 }
             }
         }
@@ -717,6 +655,7 @@ public final class Mapper {
             return;
         }
         contextVersion.markPaused();
+        modificationCount.incrementAndGet();
     }
 
     private ContextVersion findContextVersion(String hostName,
@@ -847,6 +786,7 @@ public final class Mapper {
                 }
             }
         }
+        modificationCount.incrementAndGet();
     }
 
     /**
@@ -929,6 +869,7 @@ public final class Mapper {
                 }
             }
         }
+        modificationCount.incrementAndGet();
     }
 
     /**
@@ -951,6 +892,7 @@ public final class Mapper {
                 newWelcomeResources, 0, len - 1);
         newWelcomeResources[len - 1] = welcomeFile;
         contextVersion.welcomeResources = newWelcomeResources;
+        modificationCount.incrementAndGet();
     }
 
     /**
@@ -984,6 +926,7 @@ public final class Mapper {
                         newWelcomeResources, match, len - match);
             }
             contextVersion.welcomeResources = newWelcomeResources;
+            modificationCount.incrementAndGet();
         }
     }
 
@@ -1001,6 +944,7 @@ public final class Mapper {
             return;
         }
         contextVersion.welcomeResources = new String[0];
+        modificationCount.incrementAndGet();
     }
 
     /**
@@ -1067,8 +1011,7 @@ public final class Mapper {
         uri.setLimit(-1);
 
         // Virtual host mapping
-        MappedHost[] hosts = this.hosts;
-        MappedHost mappedHost = exactFindIgnoreCase(hosts, host);
+        MappedHost mappedHost = hostTrie.get(host);
         if (mappedHost == null) {
             if (defaultHostName == null) {
                 return;
@@ -1081,47 +1024,7 @@ public final class Mapper {
         mappingData.host = mappedHost.object;
 
         // Context mapping
-        ContextList contextList = mappedHost.contextList;
-        MappedContext[] contexts = contextList.contexts;
-        int pos = find(contexts, uri);
-        if (pos == -1) {
-            return;
-        }
-
-        int lastSlash = -1;
-        int uriEnd = uri.getEnd();
-        int length = -1;
-        boolean found = false;
-        MappedContext context = null;
-        while (pos >= 0) {
-            context = contexts[pos];
-            if (uri.startsWith(context.name)) {
-                length = context.name.length();
-                if (uri.getLength() == length) {
-                    found = true;
-                    break;
-                } else if (uri.startsWithIgnoreCase("/", length)) {
-                    found = true;
-                    break;
-                }
-            }
-            if (lastSlash == -1) {
-                lastSlash = nthSlash(uri, contextList.nesting + 1);
-            } else {
-                lastSlash = lastSlash(uri);
-            }
-            uri.setEnd(lastSlash);
-            pos = find(contexts, uri);
-        }
-        uri.setEnd(uriEnd);
-
-        if (!found) {
-            if (contexts[0].name.equals("")) {
-                context = contexts[0];
-            } else {
-                context = null;
-            }
-        }
+        MappedContext context = mappedHost.contextList.trie.longestPathPrefix(uri);
         if (context == null) {
             return;
         }
@@ -1263,6 +1166,7 @@ public final class Mapper {
                         String pathStr = path.toString();
                         WebResource file =
                                 contextVersion.resources.getResource(pathStr);
+                        mappingData.resourcesChecked = true;
                         if (file != null && file.isFile()) {
                             internalMapExtensionWrapper(extensionWrappers, path,
                                                         mappingData, true);
@@ -1335,6 +1239,7 @@ public final class Mapper {
                 String pathStr = path.toString();
                 WebResource file =
                         contextVersion.resources.getResource(pathStr);
+                mappingData.resourcesChecked = true;
                 if (file != null && file.isDirectory()) {
                     // Note: this mutates the path: do not do any processing
                     // after this (since we set the redirectPath, there
@@ -1561,6 +1466,7 @@ public final class Mapper {
 
         public final MappedContext[] contexts;
         public final int nesting;
+        final MappingTrie<MappedContext> trie;
 
         public ContextList() {
             this(new MappedContext[0], 0);
@@ -1569,6 +1475,7 @@ public final class Mapper {
         private ContextList(MappedContext[] contexts, int nesting) {
             this.contexts = contexts;
             this.nesting = nesting;
+            this.trie = new MappingTrie<>(contexts, false);
         }
 
         public ContextList addContext(MappedContext mappedContext,
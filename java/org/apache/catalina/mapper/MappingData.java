@@ -41,6 +41,12 @@ public class MappingData {
     public Wrapper wrapper = null;
     public boolean jspWildCard = false;
 
+    /**
+     * Set if the result depended on the presence of static resources and may
+     * therefore change without the mapping rules themselves changing.
+     */
+    public boolean resourcesChecked = false;
+
     public void recycle() {
         host = null;
         context = null;
@@ -48,6 +54,7 @@ public class MappingData {
         contexts = null;
         wrapper = null;
         jspWildCard = false;
+        resourcesChecked = false;
         contextPath.recycle();
         requestPath.recycle();
         wrapperPath.recycle();
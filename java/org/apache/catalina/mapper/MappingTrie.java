@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.catalina.mapper.Mapper.MapElement;
+import org.apache.tomcat.util.buf.Ascii;
+import org.apache.tomcat.util.buf.CharChunk;
+
+/**
+ * Immutable, path compressed character trie over the names of a set of
+ * {@link MapElement}s. The {@link Mapper} uses it to resolve host names and
+ * context paths with a single pass over the request characters rather than
+ * repeated binary searches over progressively shorter prefixes of the URI.
+ * <p>
+ * A trie is never modified once built. The mapper builds a new one whenever
+ * the set of hosts or contexts it indexes changes and publishes it together
+ * with the sorted array it was built from.
+ *
+ * @param <E> The type of the indexed map elements
+ */
+final class MappingTrie<E extends MapElement<?>> {
+
+    private static final char[] EMPTY_CHARS = new char[0];
+
+    private final Node<E> root;
+    private final boolean ignoreCase;
+
+
+    /**
+     * Build a trie over the names of the given elements.
+     *
+     * @param elements   The elements to index
+     * @param ignoreCase <code>true</code> if names should be matched without
+     *                   regard to (ASCII) case. When two names differ only in
+     *                   case the first one in <code>elements</code> wins.
+     */
+    MappingTrie(E[] elements, boolean ignoreCase) {
+        this.ignoreCase = ignoreCase;
+        Builder<E> rootBuilder = new Builder<>();
+        for (E element : elements) {
+            Builder<E> current = rootBuilder;
+            String name = element.name;
+            for (int i = 0; i < name.length(); i++) {
+                char c = name.charAt(i);
+                if (ignoreCase) {
+                    c = (char) Ascii.toLower(c);
+                }
+                Builder<E> next = current.children.get(Character.valueOf(c));
+                if (next == null) {
+                    next = new Builder<>();
+                    current.children.put(Character.valueOf(c), next);
+                }
+                current = next;
+            }
+            if (current.value == null) {
+                current.value = element;
+            }
+        }
+        this.root = rootBuilder.build(EMPTY_CHARS);
+    }
+
+
+    /**
+     * Find the element whose name is exactly equal to the given characters.
+     *
+     * @param name The name to look up
+     * @return the matching element or <code>null</code> if none matches
+     */
+    E get(CharChunk name) {
+        char[] buf = name.getBuffer();
+        int pos = name.getStart();
+        int end = name.getEnd();
+        Node<E> node = root;
+        while (pos < end) {
+            node = node.child(toKey(buf[pos]));
+            if (node == null) {
+                return null;
+            }
+            pos = node.matchLabel(buf, pos, end, ignoreCase);
+            if (pos < 0) {
+                return null;
+            }
+        }
+        return node.value;
+    }
+
+
+    /**
+     * Find the element with the longest name that is a prefix of the given
+     * path and that ends at a path segment boundary, i.e. is followed either
+     * by the end of the path or by a <code>'/'</code>. An element with an
+     * empty name matches any path.
+     *
+     * @param path The path to look up
+     * @return the best matching element or <code>null</code> if none matches
+     */
+    E longestPathPrefix(CharChunk path) {
+        char[] buf = path.getBuffer();
+        int pos = path.getStart();
+        int end = path.getEnd();
+        Node<E> node = root;
+        E result = node.value;
+        while (pos < end) {
+            node = node.child(toKey(buf[pos]));
+            if (node == null) {
+                break;
+            }
+            pos = node.matchLabel(buf, pos, end, ignoreCase);
+            if (pos < 0) {
+                break;
+            }
+            if (node.value != null && (pos == end || buf[pos] == '/')) {
+                result = node.value;
+            }
+        }
+        return result;
+    }
+
+
+    private char toKey(char c) {
+        if (ignoreCase) {
+            return (char) Ascii.toLower(c);
+        }
+        return c;
+    }
+
+
+    // ------------------------------------------------------------ Node Class
+
+    private static final class Node<E> {
+
+        /**
+         * Characters on the edge leading to this node, including the first
+         * one that was used to select it from its parent.
+         */
+        private final char[] label;
+        private final char[] keys;
+        private final Node<E>[] children;
+        private final E value;
+
+        private Node(char[] label, char[] keys, Node<E>[] children, E value) {
+            this.label = label;
+            this.keys = keys;
+            this.children = children;
+            this.value = value;
+        }
+
+        private Node<E> child(char c) {
+            char[] keys = this.keys;
+            int low = 0;
+            int high = keys.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                char k = keys[mid];
+                if (k < c) {
+                    low = mid + 1;
+                } else if (k > c) {
+                    high = mid - 1;
+                } else {
+                    return children[mid];
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the position after the label if the characters starting at
+         *         <code>pos</code> match it, otherwise -1
+         */
+        private int matchLabel(char[] buf, int pos, int end,
+                boolean ignoreCase) {
+            char[] label = this.label;
+            if (end - pos < label.length) {
+                return -1;
+            }
+            for (int i = 0; i < label.length; i++) {
+                char c = buf[pos++];
+                if (ignoreCase) {
+                    c = (char) Ascii.toLower(c);
+                }
+                if (c != label[i]) {
+                    return -1;
+                }
+            }
+            return pos;
+        }
+    }
+
+
+    // --------------------------------------------------------- Builder Class
+
+    private static final class Builder<E> {
+
+        private final TreeMap<Character,Builder<E>> children = new TreeMap<>();
+        private E value;
+
+        private Node<E> build(char[] label) {
+            int size = children.size();
+            char[] keys = new char[size];
+            @SuppressWarnings("unchecked")
+            Node<E>[] nodes = (Node<E>[]) new Node<?>[size];
+            int i = 0;
+            for (Map.Entry<Character,Builder<E>> entry : children.entrySet()) {
+                // Collapse chains of single child nodes into one edge
+                StringBuilder childLabel = new StringBuilder();
+                childLabel.append(entry.getKey().charValue());
+                Builder<E> child = entry.getValue();
+                while (child.value == null && child.children.size() == 1) {
+                    Map.Entry<Character,Builder<E>> only =
+                            child.children.firstEntry();
+                    childLabel.append(only.getKey().charValue());
+                    child = only.getValue();
+                }
+                keys[i] = entry.getKey().charValue();
+                char[] chars = new char[childLabel.length()];
+                childLabel.getChars(0, chars.length, chars, 0);
+                nodes[i] = child.build(chars);
+                i++;
+            }
+            return new Node<>(label, keys, nodes, value);
+        }
+    }
+}
@@ -20,6 +20,7 @@ import org.apache.catalina.Context;
 import org.apache.catalina.Globals;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.connector.CoyoteOutputStream;
 import org.apache.catalina.connector.RequestFacade;
 import org.apache.catalina.connector.ResponseFacade;
 import org.apache.catalina.util.RequestUtil;
@@ -48,6 +49,7 @@ import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.security.AccessController;
 import java.util.*;
@@ -164,6 +166,26 @@ public class DefaultServlet extends HttpServlet {
      */
     protected boolean gzip = false;
 
+    /**
+     * Content codings, in order of preference, that the resource cache may
+     * apply to static resources and then serve from memory. By default, none.
+     */
+    protected String[] cacheEncodings = new String[0];
+
+    /**
+     * MIME types of the static resources that may be encoded by the resource
+     * cache.
+     */
+    protected String[] cacheEncodingMimeTypes = new String[] { "text/html",
+            "text/xml", "text/plain", "text/css", "text/javascript",
+            "application/javascript", "application/json", "image/svg+xml" };
+
+    /**
+     * Minimum size in bytes of the static resources that may be encoded by
+     * the resource cache.
+     */
+    protected int cacheEncodingMinSize = 1024;
+
     /**
      * The output buffer size to use when serving resources.
      */
@@ -250,6 +272,17 @@ public class DefaultServlet extends HttpServlet {
         if (getServletConfig().getInitParameter("gzip") != null)
             gzip = Boolean.parseBoolean(getServletConfig().getInitParameter("gzip"));
 
+        if (getServletConfig().getInitParameter("cacheEncodings") != null)
+            cacheEncodings = splitList(getServletConfig().getInitParameter("cacheEncodings"));
+
+        if (getServletConfig().getInitParameter("cacheEncodingMimeTypes") != null)
+            cacheEncodingMimeTypes =
+                splitList(getServletConfig().getInitParameter("cacheEncodingMimeTypes"));
+
+        if (getServletConfig().getInitParameter("cacheEncodingMinSize") != null)
+            cacheEncodingMinSize =
+                Integer.parseInt(getServletConfig().getInitParameter("cacheEncodingMinSize"));
+
         if (getServletConfig().getInitParameter("sendfileSize") != null)
             sendfileSize =
                 Integer.parseInt(getServletConfig().getInitParameter("sendfileSize")) * 1024;
@@ -724,25 +757,38 @@ public class DefaultServlet extends HttpServlet {
 
         boolean isError = response.getStatus() >= HttpServletResponse.SC_BAD_REQUEST;
 
+        // Find content type.
+        String contentType = resource.getMimeType();
+        if (contentType == null) {
+            contentType = getServletContext().getMimeType(resource.getName());
+            resource.setMimeType(contentType);
+        }
+
         boolean included = false;
-        // Check if the conditions specified in the optional If headers are
-        // satisfied.
+        boolean usingEncodedVersion = false;
         if (resource.isFile()) {
-            // Checking If headers
             included = (request.getAttribute(
                     RequestDispatcher.INCLUDE_CONTEXT_PATH) != null);
+
+            // Serve a version encoded by the resource cache if possible. This
+            // has to happen before the If headers are checked as the encoded
+            // version has its own ETag.
+            if (!included && !isError) {
+                WebResource encodedResource = getCacheEncodedResource(
+                        request, response, path, resource, contentType);
+                if (encodedResource != null) {
+                    resource = encodedResource;
+                    usingEncodedVersion = true;
+                }
+            }
+
+            // Check if the conditions specified in the optional If headers are
+            // satisfied.
             if (!included && !isError && !checkIfHeaders(request, response, resource)) {
                 return;
             }
         }
 
-        // Find content type.
-        String contentType = resource.getMimeType();
-        if (contentType == null) {
-            contentType = getServletContext().getMimeType(resource.getName());
-            resource.setMimeType(contentType);
-        }
-
         // These need to reflect the original resource, not the potentially
         // gzip'd version of the resource so get them now if they are going to
         // be needed later
@@ -756,21 +802,11 @@ public class DefaultServlet extends HttpServlet {
 
         // Serve a gzipped version of the file if present
         boolean usingGzippedVersion = false;
-        if (gzip && !included && resource.isFile() && !path.endsWith(".gz")) {
+        if (gzip && !included && !usingEncodedVersion && resource.isFile() &&
+                !path.endsWith(".gz")) {
             WebResource gzipResource = resources.getResource(path + ".gz");
             if (gzipResource.exists() && gzipResource.isFile()) {
-                Collection<String> varyHeaders = response.getHeaders("Vary");
-                boolean addRequired = true;
-                for (String varyHeader : varyHeaders) {
-                    if ("*".equals(varyHeader) ||
-                            "accept-encoding".equalsIgnoreCase(varyHeader)) {
-                        addRequired = false;
-                        break;
-                    }
-                }
-                if (addRequired) {
-                    response.addHeader("Vary", "accept-encoding");
-                }
+                addVaryAcceptEncoding(response);
                 if (checkIfGzip(request)) {
                     response.addHeader("Content-Encoding", "gzip");
                     resource = gzipResource;
@@ -827,7 +863,7 @@ public class DefaultServlet extends HttpServlet {
             } catch (IllegalStateException e) {
                 // If it fails, we try to get a Writer instead if we're
                 // trying to serve a text file
-                if (!usingGzippedVersion &&
+                if (!usingGzippedVersion && !usingEncodedVersion &&
                         ((contentType == null) ||
                                 (contentType.startsWith("text")) ||
                                 (contentType.endsWith("xml")) ||
@@ -908,14 +944,24 @@ public class DefaultServlet extends HttpServlet {
                                 contentLength, null)) {
                             // sendfile not possible so check if resource
                             // content is available directly
-                            byte[] resourceBody = resource.getContent();
-                            if (resourceBody == null) {
-                                // Resource content not available, use
-                                // inputstream
-                                renderResult = resource.getInputStream();
+                            ByteBuffer resourceBuffer = null;
+                            if (ostream instanceof CoyoteOutputStream) {
+                                resourceBuffer = resource.getContentBuffer();
+                            }
+                            if (resourceBuffer != null) {
+                                // Write content held outside of the heap
+                                // without copying it to the heap first
+                                ((CoyoteOutputStream) ostream).write(resourceBuffer);
                             } else {
-                                // Use the resource content directly
-                                ostream.write(resourceBody);
+                                byte[] resourceBody = resource.getContent();
+                                if (resourceBody == null) {
+                                    // Resource content not available, use
+                                    // inputstream
+                                    renderResult = resource.getInputStream();
+                                } else {
+                                    // Use the resource content directly
+                                    ostream.write(resourceBody);
+                                }
                             }
                         }
                     }
@@ -1816,6 +1862,147 @@ public class DefaultServlet extends HttpServlet {
         return true;
     }
 
+    /**
+     * Obtain a version of the resource encoded by the resource cache with one
+     * of the configured content codings that the user agent accepts. If the
+     * resource is eligible for encoding, a <code>Vary</code> header is added
+     * to the response whether or not an encoded version is served and, if one
+     * is, so is the <code>Content-Encoding</code> header.
+     *
+     * @param request       The servlet request we are processing
+     * @param response      The servlet response we are creating
+     * @param path          The path of the resource
+     * @param resource      The resource
+     * @param contentType   The content type of the resource
+     * @return the encoded resource or <code>null</code> if the original
+     *         resource should be served
+     */
+    protected WebResource getCacheEncodedResource(HttpServletRequest request,
+            HttpServletResponse response, String path, WebResource resource,
+            String contentType) {
+        if (cacheEncodings.length == 0 || contentType == null ||
+                resource.getContentLength() < cacheEncodingMinSize) {
+            return null;
+        }
+
+        int semicolon = contentType.indexOf(';');
+        String mimeType = (semicolon == -1 ? contentType :
+                contentType.substring(0, semicolon)).trim();
+        boolean eligible = false;
+        for (String cacheEncodingMimeType : cacheEncodingMimeTypes) {
+            if (cacheEncodingMimeType.equalsIgnoreCase(mimeType)) {
+                eligible = true;
+                break;
+            }
+        }
+        if (!eligible) {
+            return null;
+        }
+
+        addVaryAcceptEncoding(response);
+        for (String encoding : cacheEncodings) {
+            if (checkIfAcceptsEncoding(request, encoding)) {
+                WebResource encodedResource = resources.getEncodedResource(path, encoding);
+                if (encodedResource != null) {
+                    response.addHeader("Content-Encoding", encoding);
+                    return encodedResource;
+                }
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Add <code>Vary: accept-encoding</code> to the response unless it is
+     * already present.
+     *
+     * @param response  The servlet response we are creating
+     */
+    protected void addVaryAcceptEncoding(HttpServletResponse response) {
+        Collection<String> varyHeaders = response.getHeaders("Vary");
+        for (String varyHeader : varyHeaders) {
+            if ("*".equals(varyHeader) ||
+                    "accept-encoding".equalsIgnoreCase(varyHeader)) {
+                return;
+            }
+        }
+        response.addHeader("Vary", "accept-encoding");
+    }
+
+
+    /**
+     * Check if the user agent accepts the given content coding, either
+     * explicitly or via <code>*</code>, with a non-zero quality value.
+     *
+     * @param request   The servlet request we are processing
+     * @param encoding  The content coding
+     * @return boolean true if the user agent accepts the content coding
+     */
+    protected boolean checkIfAcceptsEncoding(HttpServletRequest request,
+            String encoding) {
+        boolean accepted = false;
+        Enumeration<String> headers = request.getHeaders("Accept-Encoding");
+        while (headers.hasMoreElements()) {
+            StringTokenizer codings = new StringTokenizer(headers.nextElement(), ",");
+            while (codings.hasMoreTokens()) {
+                String coding = codings.nextToken();
+                String quality = null;
+                int semicolon = coding.indexOf(';');
+                if (semicolon != -1) {
+                    quality = coding.substring(semicolon + 1).trim();
+                    coding = coding.substring(0, semicolon);
+                }
+                coding = coding.trim();
+                boolean exact = coding.equalsIgnoreCase(encoding);
+                if (!exact && !"*".equals(coding)) {
+                    continue;
+                }
+                boolean zero = quality != null && isZeroQuality(quality);
+                if (exact) {
+                    // An explicit entry takes precedence over *
+                    return !zero;
+                }
+                accepted = !zero;
+            }
+        }
+        return accepted;
+    }
+
+
+    private static boolean isZeroQuality(String parameter) {
+        int equals = parameter.indexOf('=');
+        if (equals == -1 ||
+                !"q".equalsIgnoreCase(parameter.substring(0, equals).trim())) {
+            return false;
+        }
+        String value = parameter.substring(equals + 1).trim();
+        if (value.length() == 0 || value.charAt(0) != '0') {
+            return false;
+        }
+        for (int i = 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c != '0' && !(i == 1 && c == '.')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+
+    private static String[] splitList(String value) {
+        List<String> values = new ArrayList<>();
+        StringTokenizer tokens = new StringTokenizer(value, ",");
+        while (tokens.hasMoreTokens()) {
+            String token = tokens.nextToken().trim();
+            if (token.length() > 0) {
+                values.add(token);
+            }
+        }
+        return values.toArray(new String[values.size()]);
+    }
+
+
     /**
      * Check if the user agent supports gzip encoding.
      *
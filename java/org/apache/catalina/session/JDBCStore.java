@@ -669,10 +669,7 @@ public class JDBCStore extends StoreBase {
      */
     private void remove(String id, Connection _conn) throws SQLException {
         if (preparedRemoveSql == null) {
-            String removeSql = "DELETE FROM " + sessionTable
-                    + " WHERE " + sessionIdCol + " = ?  AND "
-                    + sessionAppCol + " = ?";
-            preparedRemoveSql = _conn.prepareStatement(removeSql);
+            preparedRemoveSql = _conn.prepareStatement(getRemoveSql());
         }
 
         preparedRemoveSql.setString(1, id);
@@ -727,14 +724,14 @@ public class JDBCStore extends StoreBase {
      */
     @Override
     public void save(Session session) throws IOException {
-        ByteArrayOutputStream bos = null;
 
         synchronized (this) {
             int numberOfTries = 2;
+            SQLException failure = null;
             while (numberOfTries > 0) {
                 Connection _conn = getConnection();
                 if (_conn == null) {
-                    return;
+                    throw new IOException(sm.getString(getStoreName() + ".noConnection"));
                 }
 
                 try {
@@ -743,23 +740,12 @@ public class JDBCStore extends StoreBase {
                     // * Check if ID exists in database and if so use UPDATE.
                     remove(session.getIdInternal(), _conn);
 
-                    bos = new ByteArrayOutputStream();
-                    try (ObjectOutputStream oos =
-                            new ObjectOutputStream(new BufferedOutputStream(bos))) {
-                        ((StandardSession) session).writeObjectData(oos);
-                    }
-                    byte[] obs = bos.toByteArray();
+                    byte[] obs = serialize(session);
                     int size = obs.length;
                     try (ByteArrayInputStream bis = new ByteArrayInputStream(obs, 0, size);
                             InputStream in = new BufferedInputStream(bis, size)) {
                         if (preparedSaveSql == null) {
-                            String saveSql = "INSERT INTO " + sessionTable + " ("
-                               + sessionIdCol + ", " + sessionAppCol + ", "
-                               + sessionDataCol + ", " + sessionValidCol
-                               + ", " + sessionMaxInactiveCol + ", "
-                               + sessionLastAccessedCol
-                               + ") VALUES (?, ?, ?, ?, ?, ?)";
-                           preparedSaveSql = _conn.prepareStatement(saveSql);
+                           preparedSaveSql = _conn.prepareStatement(getSaveSql());
                         }
 
                         preparedSaveSql.setString(1, session.getIdInternal());
@@ -771,18 +757,22 @@ public class JDBCStore extends StoreBase {
                         preparedSaveSql.execute();
                         // Break out after the finally block
                         numberOfTries = 0;
+                        failure = null;
                     }
                 } catch (SQLException e) {
+                    failure = e;
                     manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
                     if (dbConnection != null)
                         close(dbConnection);
-                } catch (IOException e) {
-                    // Ignore
                 } finally {
                     release(_conn);
                 }
                 numberOfTries--;
             }
+            if (failure != null) {
+                throw new IOException(sm.getString(getStoreName() + ".saveFailed",
+                        session.getIdInternal(), sessionTable), failure);
+            }
         }
 
         if (manager.getContext().getLogger().isDebugEnabled()) {
@@ -791,6 +781,146 @@ public class JDBCStore extends StoreBase {
         }
     }
 
+    /**
+     * Save the specified Sessions into this Store using a single batch of
+     * statements in one transaction. Any previously saved information for the
+     * associated session identifiers is replaced.
+     *
+     * @param sessions Sessions to be saved
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void saveAll(Session[] sessions) throws IOException {
+
+        if (sessions.length == 0) {
+            return;
+        }
+
+        // Serialize before obtaining the lock
+        byte[][] data = new byte[sessions.length][];
+        for (int i = 0; i < sessions.length; i++) {
+            data[i] = serialize(sessions[i]);
+        }
+
+        synchronized (this) {
+            int numberOfTries = 2;
+            SQLException failure = null;
+            while (numberOfTries > 0) {
+                Connection _conn = getConnection();
+                if (_conn == null) {
+                    throw new IOException(sm.getString(getStoreName() + ".noConnection"));
+                }
+
+                boolean autoCommit = true;
+                try {
+                    autoCommit = _conn.getAutoCommit();
+                    _conn.setAutoCommit(false);
+                    try (PreparedStatement removeStmt = _conn.prepareStatement(getRemoveSql());
+                            PreparedStatement saveStmt = _conn.prepareStatement(getSaveSql())) {
+                        for (Session session : sessions) {
+                            removeStmt.setString(1, session.getIdInternal());
+                            removeStmt.setString(2, getName());
+                            removeStmt.addBatch();
+                        }
+                        removeStmt.executeBatch();
+                        for (int i = 0; i < sessions.length; i++) {
+                            Session session = sessions[i];
+                            saveStmt.setString(1, session.getIdInternal());
+                            saveStmt.setString(2, getName());
+                            saveStmt.setBinaryStream(3,
+                                    new ByteArrayInputStream(data[i]), data[i].length);
+                            saveStmt.setString(4, session.isValid() ? "1" : "0");
+                            saveStmt.setInt(5, session.getMaxInactiveInterval());
+                            saveStmt.setLong(6, session.getLastAccessedTime());
+                            saveStmt.addBatch();
+                        }
+                        saveStmt.executeBatch();
+                    }
+                    _conn.commit();
+                    // Break out after the finally block
+                    numberOfTries = 0;
+                    failure = null;
+                } catch (SQLException e) {
+                    failure = e;
+                    manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                    rollback(_conn);
+                    if (dbConnection != null)
+                        close(dbConnection);
+                } finally {
+                    restoreAutoCommit(_conn, autoCommit);
+                    release(_conn);
+                }
+                numberOfTries--;
+            }
+            if (failure != null) {
+                throw new IOException(sm.getString(getStoreName() + ".saveBatchFailed",
+                        Integer.valueOf(sessions.length), sessionTable), failure);
+            }
+        }
+
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".savingBatch",
+                    Integer.valueOf(sessions.length), sessionTable));
+        }
+    }
+
+    /**
+     * Remove the Sessions with the specified session identifiers from this
+     * Store, if present, using a single batch of statements.
+     *
+     * @param ids Session identifiers of the Sessions to be removed
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public void removeAll(String[] ids) throws IOException {
+
+        if (ids.length == 0) {
+            return;
+        }
+
+        synchronized (this) {
+            int numberOfTries = 2;
+            SQLException failure = null;
+            while (numberOfTries > 0) {
+                Connection _conn = getConnection();
+                if (_conn == null) {
+                    throw new IOException(sm.getString(getStoreName() + ".noConnection"));
+                }
+
+                try (PreparedStatement removeStmt = _conn.prepareStatement(getRemoveSql())) {
+                    for (String id : ids) {
+                        removeStmt.setString(1, id);
+                        removeStmt.setString(2, getName());
+                        removeStmt.addBatch();
+                    }
+                    removeStmt.executeBatch();
+                    // Break out after the finally block
+                    numberOfTries = 0;
+                    failure = null;
+                } catch (SQLException e) {
+                    failure = e;
+                    manager.getContext().getLogger().error(sm.getString(getStoreName() + ".SQLException", e));
+                    if (dbConnection != null)
+                        close(dbConnection);
+                } finally {
+                    release(_conn);
+                }
+                numberOfTries--;
+            }
+            if (failure != null) {
+                throw new IOException(sm.getString(getStoreName() + ".removeBatchFailed",
+                        Integer.valueOf(ids.length), sessionTable), failure);
+            }
+        }
+
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(getStoreName() + ".removingBatch",
+                    Integer.valueOf(ids.length), sessionTable));
+        }
+    }
+
     // --------------------------------------------------------- Protected Methods
 
     /**
@@ -1002,4 +1132,47 @@ public class JDBCStore extends StoreBase {
             close(dbConnection);
         }
     }
+
+
+    private String getSaveSql() {
+        return "INSERT INTO " + sessionTable + " ("
+                + sessionIdCol + ", " + sessionAppCol + ", "
+                + sessionDataCol + ", " + sessionValidCol
+                + ", " + sessionMaxInactiveCol + ", "
+                + sessionLastAccessedCol
+                + ") VALUES (?, ?, ?, ?, ?, ?)";
+    }
+
+    private String getRemoveSql() {
+        return "DELETE FROM " + sessionTable
+                + " WHERE " + sessionIdCol + " = ?  AND "
+                + sessionAppCol + " = ?";
+    }
+
+    private static byte[] serialize(Session session) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos =
+                new ObjectOutputStream(new BufferedOutputStream(bos))) {
+            ((StandardSession) session).writeObjectData(oos);
+        }
+        return bos.toByteArray();
+    }
+
+    private void rollback(Connection conn) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            // Ignore
+        }
+    }
+
+    private void restoreAutoCommit(Connection conn, boolean autoCommit) {
+        try {
+            if (!conn.isClosed() && conn.getAutoCommit() != autoCommit) {
+                conn.setAutoCommit(autoCommit);
+            }
+        } catch (SQLException e) {
+            // Ignore
+        }
+    }
 }
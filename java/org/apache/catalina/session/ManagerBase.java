@@ -154,6 +154,18 @@ public abstract class ManagerBase extends LifecycleMBeanBase
      */
     private int count = 0;
 
+    /**
+     * Should every active session be examined for expiry by
+     * {@link #processExpires()} rather than only those that are due?
+     */
+    private boolean fullExpiryScan = false;
+
+    /**
+     * Tracks when each active session is next due to be examined for expiry.
+     */
+    private final SessionTimerWheel expiryWheel =
+            new SessionTimerWheel(System.currentTimeMillis());
+
 
     // ------------------------------------------------------------- Properties
 
@@ -424,6 +436,31 @@ public abstract class ManagerBase extends LifecycleMBeanBase
                                    Integer.valueOf(this.processExpiresFrequency));
 
     }
+
+    /**
+     * Return <code>true</code> if every active session is examined for expiry
+     * each time expired sessions are processed.
+     */
+    public boolean getFullExpiryScan() {
+        return fullExpiryScan;
+    }
+
+    /**
+     * Configure whether every active session is examined for expiry each time
+     * expired sessions are processed. By default, only those sessions that
+     * could have expired since they were last examined are checked. A full
+     * scan is required if sessions may be added to {@link #sessions} without
+     * calling {@link #add(Session)}, e.g. by replication.
+     *
+     * @param fullExpiryScan <code>true</code> to examine every session
+     */
+    public void setFullExpiryScan(boolean fullExpiryScan) {
+        boolean oldFullExpiryScan = this.fullExpiryScan;
+        this.fullExpiryScan = fullExpiryScan;
+        support.firePropertyChange("fullExpiryScan",
+                                   Boolean.valueOf(oldFullExpiryScan),
+                                   Boolean.valueOf(this.fullExpiryScan));
+    }
     // --------------------------------------------------------- Public Methods
 
 
@@ -443,16 +480,10 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session[] sessions = findSessions();
-        int expireHere = 0 ;
 
         if(log.isDebugEnabled())
-            log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        for (int i = 0; i < sessions.length; i++) {
-            if (sessions[i]!=null && !sessions[i].isValid()) {
-                expireHere++;
-            }
-        }
+            log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + getActiveSessions());
+        int expireHere = expireSessions(timeNow);
         long timeEnd = System.currentTimeMillis();
         if(log.isDebugEnabled())
              log.debug("End expire sessions " + getName() + " processingTime " + (timeEnd - timeNow) + " expired sessions: " + expireHere);
@@ -460,6 +491,65 @@ public abstract class ManagerBase extends LifecycleMBeanBase
 
     }
 
+    /**
+     * Examine for expiry those sessions that could have expired by the given
+     * time, or every session if {@link #getFullExpiryScan()} is set. Sessions
+     * that have expired are invalidated by the check.
+     *
+     * @param timeNow The current time
+     *
+     * @return the number of sessions that were found to have expired
+     */
+    protected int expireSessions(long timeNow) {
+        int expired = 0;
+        if (fullExpiryScan) {
+            Session[] sessions = findSessions();
+            for (int i = 0; i < sessions.length; i++) {
+                if (sessions[i]!=null && !sessions[i].isValid()) {
+                    expired++;
+                }
+            }
+            return expired;
+        }
+
+        List<Session> due = expiryWheel.advance(timeNow);
+        for (Session session : due) {
+            boolean valid = true;
+            try {
+                valid = session.isValid();
+            } finally {
+                if (valid) {
+                    expiryWheel.reschedule(session);
+                } else {
+                    // Normally already removed when the session expired
+                    expiryWheel.remove(session);
+                    expired++;
+                }
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Start tracking the given session for expiry. Sub-classes that add
+     * sessions to {@link #sessions} directly should call this.
+     *
+     * @param session The session to track
+     */
+    protected void scheduleExpiry(Session session) {
+        expiryWheel.schedule(session);
+    }
+
+    /**
+     * Called when the maximum inactive interval of a session changes so that
+     * it is examined for expiry at the right time.
+     *
+     * @param session The session that changed
+     */
+    void maxInactiveIntervalChanged(Session session) {
+        expiryWheel.reschedule(session);
+    }
+
     @Override
     protected void initInternal() throws LifecycleException {
 
@@ -524,6 +614,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase
     public void add(Session session) {
 
         sessions.put(session.getIdInternal(), session);
+        expiryWheel.schedule(session);
         int size = getActiveSessions();
         if( size > maxActive ) {
             synchronized(maxActiveUpdateLock) {
@@ -678,6 +769,7 @@ public abstract class ManagerBase extends LifecycleMBeanBase
         if (session.getIdInternal() != null) {
             sessions.remove(session.getIdInternal());
         }
+        expiryWheel.remove(session);
     }
 
 
@@ -0,0 +1,433 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+
+/**
+ * Implementation of the <b>Manager</b> interface that keeps Sessions on the
+ * heap only while requests are using them. Shortly after the last request
+ * holding a Session has completed, the Session is serialized into the Store
+ * and removed from memory. It is restored from the Store when it is next
+ * requested.
+ * <p>
+ * By default the Store is an {@link OffHeapStore}, which holds the serialized
+ * Sessions outside of the Java heap, allowing many more idle Sessions to be
+ * held for a given heap size. An {@link OffHeapStore} does not retain its
+ * content across restarts so Sessions held in it are expired when this
+ * Manager is stopped.
+ */
+public final class OffHeapManager extends PersistentManagerBase {
+
+    private final Log log = LogFactory.getLog(OffHeapManager.class); // must not be static
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * The descriptive name of this Manager implementation (for logging).
+     */
+    private static final String name = "OffHeapManager";
+
+    /**
+     * The maximum number of released Sessions a request thread will swap out
+     * when it releases a Session. The remainder are swapped out by the
+     * background process.
+     */
+    private static final int SWAP_OUT_PER_RELEASE = 2;
+
+    /**
+     * The time, in milliseconds, that a Session must have been released by
+     * all requests before it is swapped out.
+     */
+    private int swapOutDelay = 1000;
+
+    /**
+     * Released Sessions, in the order in which they were released.
+     */
+    private final Queue<Release> released = new ArrayDeque<>();
+
+    private final AtomicLong swapOutCount = new AtomicLong();
+    private final AtomicLong swapOutFailures = new AtomicLong();
+
+
+    // ------------------------------------------------------------ Constructor
+
+    public OffHeapManager() {
+        super();
+        setStore(new OffHeapStore());
+        setSaveOnRestart(false);
+    }
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * Return the descriptive short name of this Manager implementation.
+     */
+    @Override
+    public String getName() {
+        return name;
+    }
+
+
+    /**
+     * Return the time, in milliseconds, that a Session must have been released
+     * by all requests before it is swapped out.
+     */
+    public int getSwapOutDelay() {
+        return swapOutDelay;
+    }
+
+
+    /**
+     * Set the time, in milliseconds, that a Session must have been released by
+     * all requests before it is swapped out.
+     *
+     * @param swapOutDelay The new delay
+     */
+    public void setSwapOutDelay(int swapOutDelay) {
+        int oldSwapOutDelay = this.swapOutDelay;
+        this.swapOutDelay = swapOutDelay;
+        support.firePropertyChange("swapOutDelay",
+                Integer.valueOf(oldSwapOutDelay),
+                Integer.valueOf(this.swapOutDelay));
+    }
+
+
+    /**
+     * Return the number of Sessions swapped out after being released.
+     */
+    public long getSwapOutCount() {
+        return swapOutCount.get();
+    }
+
+
+    /**
+     * Return the number of times a released Session could not be swapped out,
+     * usually because the Store was full.
+     */
+    public long getSwapOutFailures() {
+        return swapOutFailures.get();
+    }
+
+
+    /**
+     * Return the number of Sessions held in the Store.
+     */
+    public int getStoredSessions() {
+        Store store = getStore();
+        if (store == null) {
+            return 0;
+        }
+        try {
+            return store.getSize();
+        } catch (IOException e) {
+            log.warn(sm.getString("persistentManager.storeSizeException"));
+            return 0;
+        }
+    }
+
+
+    /**
+     * Return the size, in bytes, of the arena of the {@link OffHeapStore} or
+     * <code>-1</code> if a different Store is used.
+     */
+    public long getArenaSize() {
+        Store store = getStore();
+        if (store instanceof OffHeapStore) {
+            return ((OffHeapStore) store).getArenaSize();
+        }
+        return -1;
+    }
+
+
+    /**
+     * Return the number of bytes of the arena of the {@link OffHeapStore}
+     * allocated to Sessions or <code>-1</code> if a different Store is used.
+     */
+    public long getArenaUsed() {
+        Store store = getStore();
+        if (store instanceof OffHeapStore) {
+            return ((OffHeapStore) store).getArenaUsed();
+        }
+        return -1;
+    }
+
+
+    /**
+     * Return the total size, in bytes, of the serialized Sessions in the
+     * {@link OffHeapStore} or <code>-1</code> if a different Store is used.
+     */
+    public long getStoredBytes() {
+        Store store = getStore();
+        if (store instanceof OffHeapStore) {
+            return ((OffHeapStore) store).getStoredBytes();
+        }
+        return -1;
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * Swap out any released Sessions in addition to the usual background
+     * processing.
+     */
+    @Override
+    public void backgroundProcess() {
+        super.backgroundProcess();
+        swapOutReleased(System.currentTimeMillis(), -1);
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    /**
+     * Update the access times of the session without it counting as a request
+     * holding, and then releasing, the session.
+     */
+    @Override
+    protected void updateAccessTime(Session session) {
+        if (session instanceof OffHeapSession) {
+            ((OffHeapSession) session).updateAccessTime();
+        } else {
+            super.updateAccessTime(session);
+        }
+    }
+
+
+    @Override
+    protected StandardSession getNewSession() {
+        return new OffHeapSession(this);
+    }
+
+
+    /**
+     * Expire the Sessions held in an {@link OffHeapStore} since its content
+     * will be lost and then implement the requirements of
+     * {@link org.apache.catalina.util.LifecycleBase#stopInternal()}.
+     *
+     * @exception LifecycleException if this component detects a fatal error
+     *  that prevents this component from being used
+     */
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+
+        synchronized (released) {
+            released.clear();
+        }
+
+        Store store = getStore();
+        if (store instanceof OffHeapStore) {
+            String[] ids = ((OffHeapStore) store).keys();
+            for (String id : ids) {
+                try {
+                    Session session = swapIn(id);
+                    if (session != null && session.isValid()) {
+                        session.expire();
+                    }
+                } catch (IOException | RuntimeException e) {
+                    log.warn(sm.getString("offHeapManager.expireFailed", id), e);
+                }
+            }
+        }
+
+        super.stopInternal();
+    }
+
+
+    // -------------------------------------------------------- Package Methods
+
+    /**
+     * Called when the last request holding the given Session releases it.
+     *
+     * @param session The released Session
+     */
+    void sessionReleased(OffHeapSession session) {
+        if (getState() != LifecycleState.STARTED) {
+            return;
+        }
+        long timeNow = System.currentTimeMillis();
+        Release release = new Release(session, timeNow,
+                session.getAccessSequence());
+        synchronized (released) {
+            released.add(release);
+        }
+        swapOutReleased(timeNow, SWAP_OUT_PER_RELEASE);
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    /**
+     * Swap out Sessions that were released at least {@link #swapOutDelay}
+     * milliseconds ago.
+     *
+     * @param timeNow The current time
+     * @param max     The maximum number of released Sessions to process or
+     *                <code>-1</code> for no limit
+     */
+    private void swapOutReleased(long timeNow, int max) {
+        for (int i = 0; max < 0 || i < max; i++) {
+            Release release;
+            synchronized (released) {
+                release = released.peek();
+                if (release == null || timeNow - release.time < swapOutDelay) {
+                    return;
+                }
+                released.poll();
+            }
+            swapOutIfIdle(release);
+        }
+    }
+
+
+    private void swapOutIfIdle(Release release) {
+        OffHeapSession session = release.session;
+        Store store = getStore();
+        if (store == null) {
+            return;
+        }
+        synchronized (session) {
+            // Skip the Session if it has been used since this release, has
+            // been swapped out or removed or has expired
+            if (session.getAccessSequence() != release.accessSequence ||
+                    session.getHoldCount() > 0 ||
+                    getState() != LifecycleState.STARTED) {
+                return;
+            }
+            String id = session.getIdInternal();
+            if (id == null || sessions.get(id) != session || !session.isValid()) {
+                return;
+            }
+
+            session.passivate();
+            try {
+                store.save(session);
+            } catch (IOException e) {
+                swapOutFailures.incrementAndGet();
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("offHeapManager.swapOutFailed", id), e);
+                }
+                session.activate();
+                return;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug(sm.getString("offHeapManager.swapOut", id));
+            }
+            removeSuper(session);
+            // A request may have found the Session but not yet accessed it so
+            // it must not be recycled
+            session.setSwappedOut(true);
+            swapOutCount.incrementAndGet();
+        }
+    }
+
+
+    /**
+     * Called when a request accesses a Session that has been swapped out
+     * since the request found it. The Session is returned to this Manager
+     * unless it has since been loaded from, or removed from, the Store.
+     * <p>
+     * The caller must not hold the monitor of the Session. This method takes
+     * the swap in lock before the Session monitor, the same order as
+     * {@link #swapIn(String)} which may access a Session taken from the
+     * write-behind queue.
+     *
+     * @param session The accessed Session
+     * @return <code>true</code> if the Session is the one held by this
+     *         Manager for its ID, <code>false</code> if the Session has been
+     *         replaced by another instance or removed
+     */
+    boolean swapBackIn(OffHeapSession session) {
+        String id = session.getIdInternal();
+        if (id == null) {
+            return false;
+        }
+        Object swapInLock = getSwapInLock(id);
+        try {
+            synchronized (swapInLock) {
+                synchronized (session) {
+                    Session current = sessions.get(id);
+                    if (!session.isSwappedOut()) {
+                        return current == session;
+                    }
+                    session.setSwappedOut(false);
+                    if (current != null) {
+                        // Either this Session was taken back from the
+                        // write-behind queue or another instance was loaded
+                        // from the Store
+                        return current == session;
+                    }
+                    Store store = getStore();
+                    if (store == null || getState() != LifecycleState.STARTED) {
+                        return false;
+                    }
+                    if (store instanceof OffHeapStore) {
+                        if (!((OffHeapStore) store).discard(id)) {
+                            return false;
+                        }
+                    } else {
+                        try {
+                            if (store.load(id) == null) {
+                                return false;
+                            }
+                        } catch (ClassNotFoundException e) {
+                            return false;
+                        }
+                        store.remove(id);
+                    }
+                    if (log.isDebugEnabled()) {
+                        log.debug(sm.getString("offHeapManager.swapBackIn", id));
+                    }
+                    add(session);
+                    session.activate();
+                    return true;
+                }
+            }
+        } catch (IOException e) {
+            log.warn(sm.getString("offHeapManager.swapBackInFailed", id), e);
+            return false;
+        } finally {
+            removeSwapInLock(id);
+        }
+    }
+
+
+    private static final class Release {
+
+        private final OffHeapSession session;
+        private final long time;
+        private final int accessSequence;
+
+        private Release(OffHeapSession session, long time, int accessSequence) {
+            this.session = session;
+            this.time = time;
+            this.accessSequence = accessSequence;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.catalina.Manager;
+
+/**
+ * Session implementation used by {@link OffHeapManager}. It tracks the number
+ * of requests currently holding the session, regardless of whether
+ * <code>ACTIVITY_CHECK</code> is enabled, and tells the manager when the last
+ * of them releases it so that it can be swapped out of the heap.
+ */
+final class OffHeapSession extends StandardSession {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient AtomicInteger holdCount = new AtomicInteger();
+
+    /**
+     * Incremented whenever this session is accessed. Used by the manager to
+     * determine if the session has been used since it was released.
+     */
+    private final transient AtomicInteger accessSequence = new AtomicInteger();
+
+    /**
+     * Set when this session has been swapped out of the manager. A request
+     * may have found the session just before it was swapped out so it is
+     * never recycled and is returned to the manager if it is accessed.
+     */
+    private transient volatile boolean swappedOut = false;
+
+    /**
+     * Set when a request accessed this session after it had been swapped out
+     * and the manager now holds a different instance, or none, for its ID.
+     * The request must find the session again so this instance reports
+     * itself as invalid without being expired.
+     */
+    private transient volatile boolean detached = false;
+
+
+    OffHeapSession(Manager manager) {
+        super(manager);
+    }
+
+
+    @Override
+    public void access() {
+        super.access();
+        accessSequence.incrementAndGet();
+        holdCount.incrementAndGet();
+        if (manager instanceof OffHeapManager) {
+            boolean swapped;
+            synchronized (this) {
+                // The manager holds this monitor while it swaps the session
+                // out so this waits for any swap out in progress. The hold
+                // count prevents another swap out from starting.
+                swapped = swappedOut;
+            }
+            // The monitor is not held here as swapBackIn() must take the swap
+            // in lock first
+            if (swapped && !((OffHeapManager) manager).swapBackIn(this)) {
+                detached = true;
+            }
+        }
+    }
+
+
+    @Override
+    public boolean isValid() {
+        if (detached) {
+            // Never expire this instance as that would remove the session
+            // that the manager now holds for this ID
+            return false;
+        }
+        return super.isValid();
+    }
+
+
+    @Override
+    public void endAccess() {
+        super.endAccess();
+        if (holdCount.decrementAndGet() == 0 && manager instanceof OffHeapManager) {
+            ((OffHeapManager) manager).sessionReleased(this);
+        }
+    }
+
+
+    @Override
+    public void recycle() {
+        super.recycle();
+        holdCount.set(0);
+        detached = false;
+    }
+
+
+    /**
+     * Update the access times of this session, as if a request had used it,
+     * without the session being held or released.
+     */
+    void updateAccessTime() {
+        super.access();
+        accessSequence.incrementAndGet();
+        super.endAccess();
+    }
+
+
+    /**
+     * @return the number of requests currently holding this session
+     */
+    int getHoldCount() {
+        return holdCount.get();
+    }
+
+
+    /**
+     * @return a value that changes each time this session is accessed
+     */
+    int getAccessSequence() {
+        return accessSequence.get();
+    }
+
+
+    boolean isSwappedOut() {
+        return swappedOut;
+    }
+
+
+    void setSwappedOut(boolean swappedOut) {
+        this.swappedOut = swappedOut;
+    }
+}
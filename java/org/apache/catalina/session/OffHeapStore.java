@@ -0,0 +1,628 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.Loader;
+import org.apache.catalina.Session;
+import org.apache.catalina.util.CustomObjectInputStream;
+import org.apache.tomcat.util.buf.ByteBufferUtils;
+
+/**
+ * Concrete implementation of the <b>Store</b> interface that holds serialized
+ * Sessions outside of the Java heap, either in direct memory or in a memory
+ * mapped file. The arena is divided into fixed size blocks and each saved
+ * Session occupies a chain of blocks. Only the Session identifier, the
+ * location of its data and the timestamps required to check it for expiry are
+ * held on the heap.
+ * <p>
+ * The content of this Store is discarded when it is stopped.
+ */
+public final class OffHeapStore extends StoreBase {
+
+    // ----------------------------------------------------- Constants
+
+    /**
+     * The largest single buffer that will be allocated or mapped. Larger
+     * arenas are split into several buffers.
+     */
+    private static final int MAX_SEGMENT_SIZE = 1 << 30;
+
+
+    // ----------------------------------------------------- Instance Variables
+
+    /**
+     * Name to register for this Store, used for logging.
+     */
+    private static final String storeName = "offHeapStore";
+
+    /**
+     * The size, in bytes, of the arena.
+     */
+    private long arenaSize = 64 * 1024 * 1024;
+
+    /**
+     * The size, in bytes, of each block of the arena.
+     */
+    private int blockSize = 256;
+
+    /**
+     * The pathname of the file to map for the arena or <code>null</code> to
+     * use direct memory. This may be an absolute pathname, or a relative path
+     * that is resolved against the temporary work directory for this
+     * application.
+     */
+    private String file = null;
+
+    /*
+     * The arena and the index are guarded by this.
+     */
+    private ByteBuffer[] segments = null;
+    private int blocksPerSegment;
+    private int[] nextBlock = null;
+    private int freeHead;
+    private int freeBlocks;
+    private int totalBlocks;
+    private long storedBytes;
+    private File arenaFile = null;
+    private final Map<String,StoredSession> index = new HashMap<>();
+
+
+    // ------------------------------------------------------------- Properties
+
+    /**
+     * Return the size, in bytes, of the arena.
+     */
+    public long getArenaSize() {
+        return arenaSize;
+    }
+
+
+    /**
+     * Set the size, in bytes, of the arena. This takes effect when the Store
+     * is next started.
+     *
+     * @param arenaSize The new arena size
+     */
+    public void setArenaSize(long arenaSize) {
+        long oldArenaSize = this.arenaSize;
+        this.arenaSize = arenaSize;
+        support.firePropertyChange("arenaSize", Long.valueOf(oldArenaSize),
+                Long.valueOf(this.arenaSize));
+    }
+
+
+    /**
+     * Return the size, in bytes, of each block of the arena.
+     */
+    public int getBlockSize() {
+        return blockSize;
+    }
+
+
+    /**
+     * Set the size, in bytes, of each block of the arena. Each saved Session
+     * occupies at least one block. This takes effect when the Store is next
+     * started.
+     *
+     * @param blockSize The new block size
+     */
+    public void setBlockSize(int blockSize) {
+        int oldBlockSize = this.blockSize;
+        this.blockSize = blockSize;
+        support.firePropertyChange("blockSize", Integer.valueOf(oldBlockSize),
+                Integer.valueOf(this.blockSize));
+    }
+
+
+    /**
+     * Return the pathname of the file mapped for the arena, or
+     * <code>null</code> if direct memory is used.
+     */
+    public String getFile() {
+        return file;
+    }
+
+
+    /**
+     * Set the pathname of the file to map for the arena. If not set, the arena
+     * is allocated from direct memory. This takes effect when the Store is
+     * next started.
+     *
+     * @param file The new pathname
+     */
+    public void setFile(String file) {
+        String oldFile = this.file;
+        this.file = file;
+        support.firePropertyChange("file", oldFile, this.file);
+    }
+
+
+    /**
+     * Return the name for this Store, used for logging.
+     */
+    @Override
+    public String getStoreName() {
+        return storeName;
+    }
+
+
+    /**
+     * Return the number of bytes of the arena currently allocated to saved
+     * Sessions.
+     */
+    public synchronized long getArenaUsed() {
+        return (long) (totalBlocks - freeBlocks) * blockSize;
+    }
+
+
+    /**
+     * Return the total size, in bytes, of the serialized Sessions in this
+     * Store.
+     */
+    public synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+
+    /**
+     * Return the number of Sessions present in this Store.
+     */
+    @Override
+    public synchronized int getSize() {
+        return index.size();
+    }
+
+
+    // --------------------------------------------------------- Public Methods
+
+    /**
+     * Remove all of the Sessions in this Store.
+     */
+    @Override
+    public synchronized void clear() {
+        index.clear();
+        storedBytes = 0;
+        if (nextBlock != null) {
+            initFreeList();
+        }
+    }
+
+
+    /**
+     * Return an array containing the session identifiers of all Sessions
+     * currently saved in this Store.  If there are no such Sessions, a
+     * zero-length array is returned.
+     */
+    @Override
+    public synchronized String[] keys() {
+        return index.keySet().toArray(new String[index.size()]);
+    }
+
+
+    /**
+     * Load and return the Session associated with the specified session
+     * identifier from this Store, without removing it.  If there is no
+     * such stored Session, return <code>null</code>.
+     *
+     * @param id Session identifier of the session to load
+     *
+     * @exception ClassNotFoundException if a deserialization error occurs
+     * @exception IOException if an input/output error occurs
+     */
+    @Override
+    public Session load(String id) throws ClassNotFoundException, IOException {
+
+        byte[] data;
+        synchronized (this) {
+            StoredSession stored = index.get(id);
+            if (stored == null) {
+                return null;
+            }
+            data = new byte[stored.length];
+            int block = stored.firstBlock;
+            int off = 0;
+            while (off < data.length) {
+                int len = Math.min(blockSize, data.length - off);
+                ByteBuffer segment = position(block);
+                segment.get(data, off, len);
+                off += len;
+                block = nextBlock[block];
+            }
+        }
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(
+                    getStoreName() + ".loading", id,
+                    Integer.valueOf(data.length)));
+        }
+
+        ObjectInputStream ois = null;
+        Loader loader = null;
+        ClassLoader classLoader = null;
+        ClassLoader oldThreadContextCL = Thread.currentThread().getContextClassLoader();
+        try {
+            Context context = manager.getContext();
+            if (context != null)
+                loader = context.getLoader();
+            if (loader != null)
+                classLoader = loader.getClassLoader();
+            ByteArrayInputStream bis = new ByteArrayInputStream(data);
+            if (classLoader != null) {
+                Thread.currentThread().setContextClassLoader(classLoader);
+                ois = new CustomObjectInputStream(bis, classLoader);
+            } else {
+                ois = new ObjectInputStream(bis);
+            }
+
+            StandardSession session =
+                    (StandardSession) manager.createEmptySession();
+            session.readObjectData(ois);
+            session.setManager(manager);
+            return session;
+        } finally {
+            if (ois != null) {
+                try {
+                    ois.close();
+                } catch (IOException f) {
+                    // Ignore
+                }
+            }
+            Thread.currentThread().setContextClassLoader(oldThreadContextCL);
+        }
+    }
+
+
+    /**
+     * Remove the Session with the specified session identifier from
+     * this Store, if present.  If no such Session is present, this method
+     * takes no action.
+     *
+     * @param id Session identifier of the Session to be removed
+     */
+    @Override
+    public synchronized void remove(String id) {
+        StoredSession stored = index.remove(id);
+        if (stored != null) {
+            free(stored);
+        }
+    }
+
+
+    /**
+     * Remove the Session with the specified session identifier from this
+     * Store.
+     *
+     * @param id Session identifier of the Session to be removed
+     *
+     * @return <code>true</code> if the Session was present
+     */
+    synchronized boolean discard(String id) {
+        StoredSession stored = index.remove(id);
+        if (stored != null) {
+            free(stored);
+            return true;
+        }
+        return false;
+    }
+
+
+    /**
+     * Save the specified Session into this Store.  Any previously saved
+     * information for the associated session identifier is replaced.
+     *
+     * @param session Session to be saved
+     *
+     * @exception IOException if an input/output error occurs or there is
+     *            insufficient space in the arena
+     */
+    @Override
+    public void save(Session session) throws IOException {
+
+        String id = session.getIdInternal();
+        SessionBytes bytes = new SessionBytes();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            ((StandardSession) session).writeObjectData(oos);
+        }
+        int length = bytes.size();
+        byte[] data = bytes.getBuffer();
+
+        synchronized (this) {
+            if (nextBlock == null) {
+                throw new IOException(sm.getString("offHeapStore.notStarted"));
+            }
+            // Any previous copy is out of date so it is discarded even if
+            // there is no room for the new one
+            StoredSession old = index.remove(id);
+            if (old != null) {
+                free(old);
+            }
+            int needed = Math.max(1, (length + blockSize - 1) / blockSize);
+            if (needed > freeBlocks) {
+                throw new IOException(sm.getString("offHeapStore.full", id,
+                        Integer.valueOf(length)));
+            }
+
+            int first = freeHead;
+            int block = first;
+            int off = 0;
+            for (int i = 0; i < needed; i++) {
+                int len = Math.min(blockSize, length - off);
+                if (len > 0) {
+                    position(block).put(data, off, len);
+                    off += len;
+                }
+                if (i < needed - 1) {
+                    block = nextBlock[block];
+                }
+            }
+            freeHead = nextBlock[block];
+            nextBlock[block] = -1;
+            freeBlocks -= needed;
+            storedBytes += length;
+
+            index.put(id, new StoredSession(first, length,
+                    session.getThisAccessedTimeInternal(),
+                    session.getMaxInactiveInterval()));
+        }
+        if (manager.getContext().getLogger().isDebugEnabled()) {
+            manager.getContext().getLogger().debug(sm.getString(
+                    getStoreName() + ".saving", id, Integer.valueOf(length)));
+        }
+    }
+
+
+    // ------------------------------------------------------ Protected Methods
+
+    /**
+     * Return the identifiers of the saved Sessions that have been idle for
+     * longer than their maximum inactive interval, using the timestamps
+     * recorded when each Session was saved rather than loading it.
+     */
+    @Override
+    protected synchronized String[] expiredKeys() {
+        long timeNow = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        for (Map.Entry<String,StoredSession> entry : index.entrySet()) {
+            StoredSession stored = entry.getValue();
+            if (stored.maxInactiveInterval > 0) {
+                int timeIdle = (int) ((timeNow - stored.thisAccessedTime) / 1000L);
+                if (timeIdle >= stored.maxInactiveInterval) {
+                    expired.add(entry.getKey());
+                }
+            }
+        }
+        return expired.toArray(new String[expired.size()]);
+    }
+
+
+    /**
+     * Allocate the arena and implement the requirements
+     * of {@link org.apache.catalina.util.LifecycleBase#startInternal()}.
+     *
+     * @exception LifecycleException if the arena cannot be allocated
+     */
+    @Override
+    protected synchronized void startInternal() throws LifecycleException {
+
+        long blocks = blockSize > 0 ? arenaSize / blockSize : 0;
+        if (blocks < 1 || blocks > Integer.MAX_VALUE) {
+            throw new LifecycleException(sm.getString(
+                    "offHeapStore.invalidSize", Long.valueOf(arenaSize),
+                    Integer.valueOf(blockSize)));
+        }
+        totalBlocks = (int) blocks;
+        blocksPerSegment = Math.max(1, MAX_SEGMENT_SIZE / blockSize);
+        int segmentCount = (totalBlocks + blocksPerSegment - 1) / blocksPerSegment;
+        segments = new ByteBuffer[segmentCount];
+
+        try {
+            if (file == null) {
+                for (int i = 0; i < segmentCount; i++) {
+                    segments[i] = ByteBuffer.allocateDirect(segmentSize(i));
+                }
+            } else {
+                arenaFile = file();
+                try (RandomAccessFile raf = new RandomAccessFile(arenaFile, "rw");
+                        FileChannel channel = raf.getChannel()) {
+                    long position = 0;
+                    for (int i = 0; i < segmentCount; i++) {
+                        int size = segmentSize(i);
+                        segments[i] = channel.map(MapMode.READ_WRITE, position, size);
+                        position += size;
+                    }
+                }
+            }
+        } catch (IOException | OutOfMemoryError e) {
+            releaseSegments();
+            throw new LifecycleException(sm.getString(
+                    "offHeapStore.allocateFailed", Long.valueOf(arenaSize)), e);
+        }
+
+        nextBlock = new int[totalBlocks];
+        clear();
+
+        super.startInternal();
+    }
+
+
+    /**
+     * Release the arena, discarding any saved Sessions, and implement the
+     * requirements of
+     * {@link org.apache.catalina.util.LifecycleBase#stopInternal()}.
+     *
+     * @exception LifecycleException if this component detects a fatal error
+     *  that prevents this component from being used
+     */
+    @Override
+    protected synchronized void stopInternal() throws LifecycleException {
+
+        super.stopInternal();
+
+        index.clear();
+        storedBytes = 0;
+        nextBlock = null;
+        freeBlocks = 0;
+        totalBlocks = 0;
+        // The file can't be deleted on some platforms while it is mapped
+        releaseSegments();
+        if (arenaFile != null) {
+            if (!arenaFile.delete() && arenaFile.exists()) {
+                manager.getContext().getLogger().warn(sm.getString(
+                        "offHeapStore.deleteFailed", arenaFile));
+            }
+            arenaFile = null;
+        }
+    }
+
+
+    // -------------------------------------------------------- Private Methods
+
+    /*
+     * Free the direct memory or unmap the file used for the arena rather than
+     * waiting for the buffers to be garbage collected.
+     */
+    private void releaseSegments() {
+        ByteBuffer[] segments = this.segments;
+        this.segments = null;
+        if (segments == null) {
+            return;
+        }
+        for (ByteBuffer segment : segments) {
+            if (segment != null) {
+                ByteBufferUtils.cleanDirectBuffer(segment);
+            }
+        }
+    }
+
+
+    private int segmentSize(int segment) {
+        int blocks = Math.min(blocksPerSegment,
+                totalBlocks - segment * blocksPerSegment);
+        return blocks * blockSize;
+    }
+
+
+    private void initFreeList() {
+        for (int i = 0; i < totalBlocks - 1; i++) {
+            nextBlock[i] = i + 1;
+        }
+        nextBlock[totalBlocks - 1] = -1;
+        freeHead = 0;
+        freeBlocks = totalBlocks;
+    }
+
+
+    /*
+     * Return the segment that contains the given block, positioned at the
+     * start of the block. Must be called while holding the lock.
+     */
+    private ByteBuffer position(int block) {
+        ByteBuffer segment = segments[block / blocksPerSegment];
+        segment.position((block % blocksPerSegment) * blockSize);
+        return segment;
+    }
+
+
+    private void free(StoredSession stored) {
+        int block = stored.firstBlock;
+        int count = 1;
+        while (nextBlock[block] != -1) {
+            block = nextBlock[block];
+            count++;
+        }
+        nextBlock[block] = freeHead;
+        freeHead = stored.firstBlock;
+        freeBlocks += count;
+        storedBytes -= stored.length;
+    }
+
+
+    /**
+     * Return a File object representing the file to map for the arena.
+     */
+    private File file() throws IOException {
+        File result = new File(file);
+        if (!result.isAbsolute()) {
+            Context context = manager.getContext();
+            if (context != null) {
+                ServletContext servletContext = context.getServletContext();
+                File work = (File)
+                    servletContext.getAttribute(ServletContext.TEMPDIR);
+                result = new File(work, file);
+            } else {
+                throw new IllegalArgumentException
+                    ("Parent Container is not a Context");
+            }
+        }
+        File parent = result.getParentFile();
+        if (parent != null && !parent.mkdirs() && !parent.isDirectory()) {
+            throw new IOException(
+                    sm.getString("fileStore.createFailed", parent));
+        }
+        return result;
+    }
+
+
+    private static final class StoredSession {
+
+        private final int firstBlock;
+        private final int length;
+        private final long thisAccessedTime;
+        private final int maxInactiveInterval;
+
+        private StoredSession(int firstBlock, int length,
+                long thisAccessedTime, int maxInactiveInterval) {
+            this.firstBlock = firstBlock;
+            this.length = length;
+            this.thisAccessedTime = thisAccessedTime;
+            this.maxInactiveInterval = maxInactiveInterval;
+        }
+    }
+
+
+    /*
+     * Provides access to the serialized data without copying it.
+     */
+    private static final class SessionBytes extends ByteArrayOutputStream {
+
+        private SessionBytes() {
+            super(1024);
+        }
+
+        private byte[] getBuffer() {
+            return buf;
+        }
+    }
+}
@@ -89,6 +89,21 @@ public abstract class PersistentManagerBase extends ManagerBase
      * should not be forced out.
      */
     protected int maxIdleSwap = -1;
+    /**
+     * The maximum time in milliseconds that a write to the Store may be
+     * delayed so that it can be batched with others. Setting this to -1 means
+     * writes are made synchronously.
+     */
+    protected int writeBehindDelay = -1;
+    /**
+     * The number of queued writes that will trigger a batch to be written
+     * before the write behind delay has elapsed.
+     */
+    protected int writeBehindBatchSize = 100;
+    /**
+     * Writes to the Store waiting to be performed if write behind is enabled.
+     */
+    private volatile WriteBehindQueue writeBehindQueue = null;
 
     /**
      * Indicates how many seconds old a session can get, after its last use in a
@@ -190,6 +205,50 @@ public abstract class PersistentManagerBase extends ManagerBase
 
     }
 
+    /**
+     * The maximum time in milliseconds that a write to the Store may be
+     * delayed so that it can be batched with others, or -1 if writes are made
+     * synchronously.
+     */
+    public int getWriteBehindDelay() {
+        return writeBehindDelay;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds that a write to the Store, when a
+     * session is backed up, swapped out or removed, may be delayed so that it
+     * can be batched with others. Set it to -1 for writes to be made
+     * synchronously. This takes effect when the Manager is next started.
+     */
+    public void setWriteBehindDelay(int writeBehindDelay) {
+        int oldWriteBehindDelay = this.writeBehindDelay;
+        this.writeBehindDelay = writeBehindDelay;
+        support.firePropertyChange("writeBehindDelay",
+                                   Integer.valueOf(oldWriteBehindDelay),
+                                   Integer.valueOf(this.writeBehindDelay));
+    }
+
+    /**
+     * The number of queued writes that will trigger a batch to be written
+     * before the write behind delay has elapsed.
+     */
+    public int getWriteBehindBatchSize() {
+        return writeBehindBatchSize;
+    }
+
+    /**
+     * Sets the number of queued writes that will trigger a batch to be
+     * written before the write behind delay has elapsed. This takes effect
+     * when the Manager is next started.
+     */
+    public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+        int oldWriteBehindBatchSize = this.writeBehindBatchSize;
+        this.writeBehindBatchSize = writeBehindBatchSize;
+        support.firePropertyChange("writeBehindBatchSize",
+                                   Integer.valueOf(oldWriteBehindBatchSize),
+                                   Integer.valueOf(this.writeBehindBatchSize));
+    }
+
     /**
      * Return true, if the session id is loaded in memory
      * otherwise false is returned
@@ -279,6 +338,11 @@ public abstract class PersistentManagerBase extends ManagerBase
         if (store == null)
             return;
 
+        WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+        if (writeBehindQueue != null) {
+            writeBehindQueue.clear();
+        }
+
         try {
             if (SecurityUtil.isPackageProtectionEnabled()){
                 try{
@@ -304,16 +368,10 @@ public abstract class PersistentManagerBase extends ManagerBase
     public void processExpires() {
 
         long timeNow = System.currentTimeMillis();
-        Session[] sessions = findSessions();
-        int expireHere = 0 ;
         if(log.isDebugEnabled())
-             log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + sessions.length);
-        for (int i = 0; i < sessions.length; i++) {
-            if (!sessions[i].isValid()) {
-                expiredSessions.incrementAndGet();
-                expireHere++;
-            }
-        }
+             log.debug("Start expire sessions " + getName() + " at " + timeNow + " sessioncount " + getActiveSessions());
+        int expireHere = expireSessions(timeNow);
+        expiredSessions.addAndGet(expireHere);
         processPersistenceChecks();
         if (getStore() instanceof StoreBase) {
             ((StoreBase) getStore()).processExpires();
@@ -367,8 +425,7 @@ public abstract class PersistentManagerBase extends ManagerBase
                 if(session != null){
                    // To keep any external calling code from messing up the
                    // concurrency.
-                   session.access();
-                   session.endAccess();
+                   updateAccessTime(session);
                 }
             }
         }
@@ -473,6 +530,11 @@ public abstract class PersistentManagerBase extends ManagerBase
      * @param id Session's id to be removed
      */
     protected void removeSession(String id){
+        WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+        if (writeBehindQueue != null) {
+            writeBehindQueue.remove(id);
+            return;
+        }
         try {
             if (SecurityUtil.isPackageProtectionEnabled()){
                 try{
@@ -551,6 +613,11 @@ public abstract class PersistentManagerBase extends ManagerBase
         } catch (IOException e) {
             log.warn(sm.getString("persistentManager.storeKeysException"));
         }
+        // Sessions waiting to be written to the Store
+        WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+        if (writeBehindQueue != null) {
+            writeBehindQueue.addPendingIds(sessionIds);
+        }
         return sessionIds;
     }
 
@@ -566,23 +633,7 @@ public abstract class PersistentManagerBase extends ManagerBase
         if (store == null)
             return null;
 
-        Object swapInLock = null;
-
-        /*
-         * The purpose of this sync and these locks is to make sure that a
-         * session is only loaded once. It doesn't matter if the lock is removed
-         * and then another thread enters this method and tries to load the same
-         * session. That thread will re-create a swapIn lock for that session,
-         * quickly find that the session is already in sessions, use it and
-         * carry on.
-         */
-        synchronized (this) {
-            swapInLock = sessionSwapInLocks.get(id);
-            if (swapInLock == null) {
-                swapInLock = new Object();
-                sessionSwapInLocks.put(id, swapInLock);
-            }
-        }
+        Object swapInLock = getSwapInLock(id);
 
         Session session = null;
 
@@ -592,30 +643,42 @@ public abstract class PersistentManagerBase extends ManagerBase
             session = sessions.get(id);
 
             if (session == null) {
-                try {
-                    if (SecurityUtil.isPackageProtectionEnabled()){
-                        try {
-                            session = AccessController.doPrivileged(
-                                    new PrivilegedStoreLoad(id));
-                        } catch (PrivilegedActionException ex) {
-                            Exception e = ex.getException();
-                            log.error(sm.getString(
-                                    "persistentManager.swapInException", id),
-                                    e);
-                            if (e instanceof IOException){
-                                throw (IOException)e;
-                            } else if (e instanceof ClassNotFoundException) {
-                                throw (ClassNotFoundException)e;
+                // Then check for a session that is yet to be written to the
+                // Store. Its pending write is cancelled as it is about to be
+                // used again.
+                WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+                boolean removed = false;
+                if (writeBehindQueue != null) {
+                    session = writeBehindQueue.cancelSave(id);
+                    removed = writeBehindQueue.isRemoved(id);
+                }
+
+                if (session == null && !removed) {
+                    try {
+                        if (SecurityUtil.isPackageProtectionEnabled()){
+                            try {
+                                session = AccessController.doPrivileged(
+                                        new PrivilegedStoreLoad(id));
+                            } catch (PrivilegedActionException ex) {
+                                Exception e = ex.getException();
+                                log.error(sm.getString(
+                                        "persistentManager.swapInException", id),
+                                        e);
+                                if (e instanceof IOException){
+                                    throw (IOException)e;
+                                } else if (e instanceof ClassNotFoundException) {
+                                    throw (ClassNotFoundException)e;
+                                }
                             }
+                        } else {
+                             session = store.load(id);
                         }
-                    } else {
-                         session = store.load(id);
+                    } catch (ClassNotFoundException e) {
+                        String msg = sm.getString(
+                                "persistentManager.deserializeError", id);
+                        log.error(msg, e);
+                        throw new IllegalStateException(msg, e);
                     }
-                } catch (ClassNotFoundException e) {
-                    String msg = sm.getString(
-                            "persistentManager.deserializeError", id);
-                    log.error(msg, e);
-                    throw new IllegalStateException(msg, e);
                 }
 
                 if (session != null && !session.isValid()) {
@@ -635,22 +698,66 @@ public abstract class PersistentManagerBase extends ManagerBase
                     ((StandardSession)session).tellNew();
                     add(session);
                     ((StandardSession)session).activate();
-                    // endAccess() to ensure timeouts happen correctly.
-                    // access() to keep access count correct or it will end up
-                    // negative
-                    session.access();
-                    session.endAccess();
+                    updateAccessTime(session);
                 }
             }
         }
 
         // Make sure the lock is removed
+        removeSwapInLock(id);
+
+        return (session);
+
+    }
+
+    /**
+     * Return the lock that must be held while a session is loaded into this
+     * Manager.
+     * <p>
+     * The purpose of these locks is to make sure that a session is only
+     * loaded once. It doesn't matter if the lock is removed and then another
+     * thread tries to load the same session. That thread will re-create a
+     * lock for that session, quickly find that the session is already in
+     * sessions, use it and carry on.
+     *
+     * @param id The identifier of the session
+     */
+    Object getSwapInLock(String id) {
         synchronized (this) {
-            sessionSwapInLocks.remove(id);
+            Object swapInLock = sessionSwapInLocks.get(id);
+            if (swapInLock == null) {
+                swapInLock = new Object();
+                sessionSwapInLocks.put(id, swapInLock);
+            }
+            return swapInLock;
         }
+    }
 
-        return (session);
+    /**
+     * Remove the lock obtained by {@link #getSwapInLock(String)} once the
+     * session has been loaded.
+     *
+     * @param id The identifier of the session
+     */
+    void removeSwapInLock(String id) {
+        synchronized (this) {
+            sessionSwapInLocks.remove(id);
+        }
+    }
 
+    /**
+     * Update the access times of a session that has been found in, or loaded
+     * into, this Manager so that timeouts happen correctly. This does not
+     * count as a request using the session.
+     *
+     * @param session The session to update
+     */
+    protected void updateAccessTime(Session session) {
+        // endAccess() to ensure timeouts happen correctly.
+        // access() to keep access count correct or it will end up
+        // negative
+        session.access();
+        session.endAccess();
     }
 
     /**
@@ -670,7 +777,10 @@ public abstract class PersistentManagerBase extends ManagerBase
         ((StandardSession)session).passivate();
         writeSession(session);
         super.remove(session, true);
-        session.recycle();
+        if (writeBehindQueue == null) {
+            // A session waiting to be written must not be recycled
+            session.recycle();
+        }
 
     }
 
@@ -685,6 +795,12 @@ public abstract class PersistentManagerBase extends ManagerBase
             return;
         }
 
+        WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+        if (writeBehindQueue != null) {
+            writeBehindQueue.save(session);
+            return;
+        }
+
         try {
             if (SecurityUtil.isPackageProtectionEnabled()){
                 try{
@@ -708,6 +824,25 @@ public abstract class PersistentManagerBase extends ManagerBase
 
     }
 
+    /**
+     * Called when writing the given session to the Store from the write behind
+     * queue fails. If the session has been swapped out, it is restored to
+     * memory so that it is not lost.
+     *
+     * @param session The session that could not be written
+     */
+    void writeFailed(Session session) {
+        String id = session.getIdInternal();
+        if (id == null || sessions.containsKey(id) ||
+                !getState().isAvailable()) {
+            return;
+        }
+        if (session.isValid()) {
+            add(session);
+            ((StandardSession) session).activate();
+        }
+    }
+
     /**
      * Start this component and implement the requirements
      * of {@link org.apache.catalina.util.LifecycleBase#startInternal()}.
@@ -725,6 +860,13 @@ public abstract class PersistentManagerBase extends ManagerBase
         else if (store instanceof Lifecycle)
             ((Lifecycle)store).start();
 
+        if (store != null && writeBehindDelay >= 0) {
+            WriteBehindQueue writeBehindQueue = new WriteBehindQueue(this,
+                    store, writeBehindDelay, writeBehindBatchSize);
+            writeBehindQueue.start("SessionWriter-" + getContext().getName());
+            this.writeBehindQueue = writeBehindQueue;
+        }
+
         setState(LifecycleState.STARTING);
     }
 
@@ -756,6 +898,13 @@ public abstract class PersistentManagerBase extends ManagerBase
             }
         }
 
+        // Complete any outstanding writes before the Store stops
+        WriteBehindQueue writeBehindQueue = this.writeBehindQueue;
+        if (writeBehindQueue != null) {
+            this.writeBehindQueue = null;
+            writeBehindQueue.stop();
+        }
+
         if (getStore() instanceof Lifecycle) {
             ((Lifecycle)getStore()).stop();
         }
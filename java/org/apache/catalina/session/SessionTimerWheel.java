@@ -0,0 +1,250 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.catalina.Session;
+
+/**
+ * Hierarchical timing wheel that tracks when each session of a manager could
+ * next expire so that the background expiry process only has to examine the
+ * sessions that are actually due rather than every session.
+ * <p>
+ * A session is scheduled for the time at which it would expire if it were not
+ * accessed again. The wheel is not updated when a session is accessed so
+ * request processing never touches it. Instead, a session that is found to be
+ * still valid when it falls due is simply rescheduled based on its new last
+ * access time. All operations synchronize on the wheel.
+ * <p>
+ * The wheel has {@value #LEVELS} levels of {@value #SLOTS} slots with a tick of
+ * one second, i.e. it covers a little over six months. Sessions that are due
+ * later than that are held in an overflow list that is re-examined whenever
+ * the top level of the wheel turns. Sessions that never expire are held
+ * separately and are not examined at all until their maximum inactive interval
+ * changes.
+ */
+final class SessionTimerWheel {
+
+    private static final long TICK = 1000;
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long NEVER = Long.MAX_VALUE;
+
+    private final Entry[][] wheel = new Entry[LEVELS][SLOTS];
+    private final Entry overflow = new Entry(null);
+    private final Entry unscheduled = new Entry(null);
+    private final Map<Session,Entry> entries = new IdentityHashMap<>();
+    private long currentTick;
+
+
+    SessionTimerWheel(long timeNow) {
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheel[level][slot] = new Entry(null);
+            }
+        }
+        currentTick = timeNow / TICK;
+    }
+
+
+    /**
+     * Start tracking the given session or, if it is already tracked,
+     * reschedule it based on its current access times and maximum inactive
+     * interval.
+     *
+     * @param session The session to schedule
+     */
+    synchronized void schedule(Session session) {
+        Entry entry = entries.get(session);
+        if (entry == null) {
+            entry = new Entry(session);
+            entries.put(session, entry);
+        } else {
+            entry.unlink();
+        }
+        insert(entry, deadline(session));
+    }
+
+
+    /**
+     * Reschedule the given session if, and only if, it is already tracked.
+     *
+     * @param session The session to reschedule
+     */
+    synchronized void reschedule(Session session) {
+        Entry entry = entries.get(session);
+        if (entry != null) {
+            entry.unlink();
+            insert(entry, deadline(session));
+        }
+    }
+
+
+    /**
+     * Stop tracking the given session.
+     *
+     * @param session The session to remove
+     */
+    synchronized void remove(Session session) {
+        Entry entry = entries.remove(session);
+        if (entry != null) {
+            entry.unlink();
+        }
+    }
+
+
+    /**
+     * Advance the wheel to the given time and return the sessions that have
+     * fallen due. The returned sessions remain tracked but are not scheduled;
+     * the caller is expected to either {@link #remove(Session)} or
+     * {@link #reschedule(Session)} each of them.
+     *
+     * @param timeNow The current time
+     *
+     * @return The sessions that may have expired by <code>timeNow</code>
+     */
+    synchronized List<Session> advance(long timeNow) {
+        List<Session> due = new ArrayList<>();
+        long targetTick = timeNow / TICK;
+        while (currentTick < targetTick) {
+            currentTick++;
+            // Cascade the higher levels whose current slot starts at this
+            // tick, highest first so entries can cascade all the way down
+            int top = 0;
+            while (top < LEVELS - 1 &&
+                    (currentTick & ((1L << (BITS * (top + 1))) - 1)) == 0) {
+                top++;
+            }
+            if (top == LEVELS - 1) {
+                cascade(overflow);
+            }
+            for (int level = top; level > 0; level--) {
+                cascade(wheel[level][slot(currentTick, level)]);
+            }
+            Entry head = wheel[0][(int) (currentTick & MASK)];
+            while (head.next != head) {
+                Entry entry = head.next;
+                entry.unlink();
+                due.add(entry.session);
+            }
+        }
+        return due;
+    }
+
+
+    /**
+     * @return The number of sessions being tracked
+     */
+    synchronized int size() {
+        return entries.size();
+    }
+
+
+    private void cascade(Entry head) {
+        // Detach the list first as entries may be re-inserted into the same
+        // slot
+        Entry first = head.next;
+        if (first == head) {
+            return;
+        }
+        Entry last = head.prev;
+        head.next = head;
+        head.prev = head;
+        last.next = null;
+        Entry entry = first;
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.prev = entry;
+            entry.next = entry;
+            insert(entry, entry.tick);
+            entry = next;
+        }
+    }
+
+
+    private long deadline(Session session) {
+        int maxInactiveInterval = session.getMaxInactiveInterval();
+        if (maxInactiveInterval <= 0) {
+            return NEVER;
+        }
+        long lastAccess = Math.max(session.getThisAccessedTimeInternal(),
+                session.getLastAccessedTimeInternal());
+        long deadline = lastAccess + maxInactiveInterval * 1000L;
+        // Round up so a session is never examined before it can have expired
+        long tick = (deadline + TICK - 1) / TICK;
+        return Math.max(tick, currentTick + 1);
+    }
+
+
+    private void insert(Entry entry, long tick) {
+        entry.tick = tick;
+        if (tick == NEVER) {
+            entry.linkBefore(unscheduled);
+            return;
+        }
+        // An entry is placed at the lowest level where its slot will be
+        // reached before that level completes a turn. The current slot of each
+        // level is only used by entries cascaded from a higher level that are
+        // due on the current tick, which is about to be drained.
+        for (int level = 0; level < LEVELS; level++) {
+            int shift = BITS * level;
+            if ((tick >>> shift) - (currentTick >>> shift) < SLOTS) {
+                entry.linkBefore(wheel[level][slot(tick, level)]);
+                return;
+            }
+        }
+        entry.linkBefore(overflow);
+    }
+
+
+    private static int slot(long tick, int level) {
+        return (int) ((tick >>> (BITS * level)) & MASK);
+    }
+
+
+    private static final class Entry {
+
+        private final Session session;
+        private long tick;
+        private Entry prev = this;
+        private Entry next = this;
+
+        private Entry(Session session) {
+            this.session = session;
+        }
+
+        private void linkBefore(Entry head) {
+            prev = head.prev;
+            next = head;
+            head.prev.next = this;
+            head.prev = this;
+        }
+
+        private void unlink() {
+            prev.next = next;
+            next.prev = prev;
+            prev = this;
+            next = this;
+        }
+    }
+}
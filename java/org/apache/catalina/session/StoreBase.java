@@ -20,6 +20,7 @@ package org.apache.catalina.session;
 import org.apache.catalina.LifecycleException;
 import org.apache.catalina.LifecycleState;
 import org.apache.catalina.Manager;
+import org.apache.catalina.Session;
 import org.apache.catalina.Store;
 import org.apache.catalina.util.LifecycleBase;
 import org.apache.tomcat.util.res.StringManager;
@@ -124,7 +125,7 @@ public abstract class StoreBase extends LifecycleBase implements Store {
         }
 
         try {
-            keys = keys();
+            keys = expiredKeys();
         } catch (IOException e) {
             manager.getContext().getLogger().error("Error getting keys", e);
             return;
@@ -180,6 +181,51 @@ public abstract class StoreBase extends LifecycleBase implements Store {
     }
 
 
+    /**
+     * Save the specified Sessions into this Store. Any previously saved
+     * information for the associated session identifiers is replaced. This
+     * implementation calls {@link #save(Session)} for each Session; Stores
+     * that can save several Sessions more efficiently should override it.
+     *
+     * @param sessions Sessions to be saved
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void saveAll(Session[] sessions) throws IOException {
+        for (Session session : sessions) {
+            save(session);
+        }
+    }
+
+    /**
+     * Remove the Sessions with the specified session identifiers from this
+     * Store, if present. This implementation calls {@link #remove(String)} for
+     * each identifier; Stores that can remove several Sessions more
+     * efficiently should override it.
+     *
+     * @param ids Session identifiers of the Sessions to be removed
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    public void removeAll(String[] ids) throws IOException {
+        for (String id : ids) {
+            remove(id);
+        }
+    }
+
+    /**
+     * Return the identifiers of the Sessions in this Store that may have
+     * expired. Each of them is loaded and checked by {@link #processExpires()}.
+     * This implementation returns all of the keys in the Store; sub-classes
+     * that can cheaply determine when a stored Session will expire may return
+     * fewer.
+     *
+     * @exception IOException if an input/output error occurs
+     */
+    protected String[] expiredKeys() throws IOException {
+        return keys();
+    }
+
     @Override
     protected void initInternal() {
         // NOOP
@@ -0,0 +1,307 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.catalina.Session;
+import org.apache.catalina.Store;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * Queue of writes to the Store of a {@link PersistentManagerBase} that are
+ * performed in batches by a background thread. Writes for the same session
+ * are coalesced so that only the most recent is performed. A batch is written
+ * once the oldest queued write has waited for the configured delay or once
+ * the configured number of writes are queued, whichever is sooner.
+ * <p>
+ * Sessions that have been swapped out but not yet written remain available via
+ * {@link #cancelSave(String)} so that they can be swapped back in without
+ * loading them from the Store.
+ */
+final class WriteBehindQueue implements Runnable {
+
+    private static final Log log = LogFactory.getLog(WriteBehindQueue.class);
+    private static final StringManager sm =
+            StringManager.getManager(Constants.Package);
+
+    private final PersistentManagerBase manager;
+    private final Store store;
+    private final long delay;
+    private final int batchSize;
+
+    /*
+     * Queued writes keyed by session ID. A null value is a removal. The writes
+     * of the batch being written are in writing. Both are guarded by lock.
+     */
+    private final Object lock = new Object();
+    private Map<String,Session> pending = new LinkedHashMap<>();
+    private Map<String,Session> writing = Collections.emptyMap();
+    private long oldest;
+    private volatile boolean running;
+    private Thread thread;
+
+
+    WriteBehindQueue(PersistentManagerBase manager, Store store, long delay,
+            int batchSize) {
+        this.manager = manager;
+        this.store = store;
+        this.delay = delay;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+
+    void start(String name) {
+        running = true;
+        thread = new Thread(this, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+
+    /**
+     * Write any queued changes and stop the background thread.
+     */
+    void stop() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll();
+        }
+        try {
+            thread.join(10000);
+        } catch (InterruptedException e) {
+            // Ignore
+        }
+    }
+
+
+    /**
+     * Queue a write of the given session to the Store.
+     *
+     * @param session The session to save
+     */
+    void save(Session session) {
+        queue(session.getIdInternal(), session);
+    }
+
+
+    /**
+     * Queue the removal of the given session from the Store.
+     *
+     * @param id The ID of the session to remove
+     */
+    void remove(String id) {
+        queue(id, null);
+    }
+
+
+    /**
+     * Discard all queued writes.
+     */
+    void clear() {
+        synchronized (lock) {
+            pending.clear();
+        }
+    }
+
+
+    /**
+     * Return the session with the given ID that is waiting to be written to,
+     * or is being written to, the Store. A write that is still waiting is
+     * cancelled since the session is being returned to use. A write that is
+     * in progress is allowed to complete.
+     *
+     * @param id The session ID
+     */
+    Session cancelSave(String id) {
+        synchronized (lock) {
+            Session session = pending.get(id);
+            if (session != null) {
+                pending.remove(id);
+                return session;
+            }
+            if (pending.containsKey(id)) {
+                return null;
+            }
+            return writing.get(id);
+        }
+    }
+
+
+    /**
+     * Return <code>true</code> if the given session has been removed but the
+     * removal has not yet been applied to the Store.
+     *
+     * @param id The session ID
+     */
+    boolean isRemoved(String id) {
+        synchronized (lock) {
+            if (pending.containsKey(id)) {
+                return pending.get(id) == null;
+            }
+            return writing.containsKey(id) && writing.get(id) == null;
+        }
+    }
+
+
+    /**
+     * Add the IDs of the sessions waiting to be written to the Store to the
+     * given set.
+     */
+    void addPendingIds(Set<String> ids) {
+        synchronized (lock) {
+            for (Map.Entry<String,Session> entry : pending.entrySet()) {
+                if (entry.getValue() != null) {
+                    ids.add(entry.getKey());
+                }
+            }
+        }
+    }
+
+
+    @Override
+    public void run() {
+        while (true) {
+            Map<String,Session> batch;
+            synchronized (lock) {
+                while (running && !isBatchReady()) {
+                    try {
+                        if (pending.isEmpty()) {
+                            lock.wait();
+                        } else {
+                            lock.wait(Math.max(1, oldest + delay -
+                                    System.currentTimeMillis()));
+                        }
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+                if (!running && pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                writing = batch;
+                pending = new LinkedHashMap<>();
+            }
+            try {
+                write(batch);
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                log.error(sm.getString("writeBehindQueue.writeFailed"), t);
+            } finally {
+                synchronized (lock) {
+                    writing = Collections.emptyMap();
+                }
+            }
+        }
+    }
+
+
+    private void queue(String id, Session session) {
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                oldest = System.currentTimeMillis();
+            }
+            pending.put(id, session);
+            // Wake the writer to start timing the delay or write a full batch
+            if (pending.size() == 1 || pending.size() >= batchSize) {
+                lock.notifyAll();
+            }
+        }
+    }
+
+
+    private boolean isBatchReady() {
+        return pending.size() >= batchSize || (!pending.isEmpty() &&
+                System.currentTimeMillis() - oldest >= delay);
+    }
+
+
+    private void write(Map<String,Session> batch) {
+        List<Session> saves = new ArrayList<>();
+        List<String> removes = new ArrayList<>();
+        for (Map.Entry<String,Session> entry : batch.entrySet()) {
+            if (entry.getValue() == null) {
+                removes.add(entry.getKey());
+            } else {
+                saves.add(entry.getValue());
+            }
+        }
+        if (log.isDebugEnabled()) {
+            log.debug(sm.getString("writeBehindQueue.write",
+                    Integer.valueOf(saves.size()),
+                    Integer.valueOf(removes.size())));
+        }
+
+        if (!removes.isEmpty()) {
+            try {
+                if (store instanceof StoreBase) {
+                    ((StoreBase) store).removeAll(
+                            removes.toArray(new String[removes.size()]));
+                } else {
+                    for (String id : removes) {
+                        store.remove(id);
+                    }
+                }
+            } catch (IOException e) {
+                log.error(sm.getString("writeBehindQueue.removeFailed"), e);
+            }
+        }
+
+        if (!saves.isEmpty()) {
+            try {
+                if (store instanceof StoreBase) {
+                    ((StoreBase) store).saveAll(
+                            saves.toArray(new Session[saves.size()]));
+                } else {
+                    saveEach(saves);
+                }
+            } catch (IOException e) {
+                // Retry one at a time to identify the failures
+                saveEach(saves);
+            }
+        }
+    }
+
+
+    private void saveEach(Collection<Session> saves) {
+        Set<Session> failed = new HashSet<>();
+        for (Session session : saves) {
+            try {
+                store.save(session);
+            } catch (IOException e) {
+                log.error(sm.getString("persistentManager.serializeError",
+                        session.getIdInternal(), e));
+                failed.add(session);
+            }
+        }
+        for (Session session : failed) {
+            manager.writeFailed(session);
+        }
+    }
+}
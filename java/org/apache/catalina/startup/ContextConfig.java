@@ -37,6 +37,7 @@ import org.apache.tomcat.util.digester.RuleSet;
 import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.scan.Jar;
 import org.apache.tomcat.util.scan.JarFactory;
+import org.apache.tomcat.util.scan.JarScanIndex;
 import org.xml.sax.InputSource;
 import org.xml.sax.SAXParseException;
 
@@ -54,6 +55,12 @@ import java.net.URLConnection;
 import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Startup event listener for a <b>Context</b> that configures the properties
@@ -89,6 +96,12 @@ public class ContextConfig implements LifecycleListener {
      * are no SCIs associated with a class.
      */
     private static final Set<ServletContainerInitializer> EMPTY_SCI_SET = Collections.emptySet();
+
+    /**
+     * The name of the file, in the work directory, of the annotation scan
+     * index.
+     */
+    private static final String ANNOTATION_SCAN_INDEX = "annotationScan.idx";
     /**
      * Deployment count.
      */
@@ -114,10 +127,12 @@ public class ContextConfig implements LifecycleListener {
     /**
      * Cache of JavaClass objects (byte code) by fully qualified class name.
      * Only populated if it is necessary to scan the super types and interfaces
-     * as part of the processing for {@link HandlesTypes}.
+     * as part of the processing for {@link HandlesTypes}. JARs may be scanned
+     * in parallel so entries are only ever added with putIfAbsent and class
+     * files are read without holding any lock.
      */
     protected final Map<String, JavaClassCacheEntry> javaClassCache =
-            new HashMap<>();
+            new ConcurrentHashMap<>();
     /**
      * Map of ServletContainerInitializer to classes they expressed interest in.
      */
@@ -165,6 +180,18 @@ public class ContextConfig implements LifecycleListener {
      */
     private File antiLockingDocBase = null;
     private WebXmlParser webXmlParser;
+    /**
+     * The executor used to parse web fragments and scan JARs for annotations
+     * if the Context is configured to do so in parallel. Only set while the
+     * scan is in progress.
+     */
+    private ExecutorService scanExecutor = null;
+    /**
+     * The index of the results of previous annotation scans of JARs. Only set
+     * while JARs are being scanned for annotations and if the Context is
+     * configured to use a scan index.
+     */
+    private JarScanIndex annotationScanIndex = null;
 
 
     // ------------------------------------------------------------- Properties
@@ -1056,46 +1083,62 @@ public class ContextConfig implements LifecycleListener {
 
         // Ordering is important here
 
-        // Step 1. Identify all the JARs packaged with the application and those
-        // provided by the container. If any of the application JARs have a
-        // web-fragment.xml it will be parsed at this point. web-fragment.xml
-        // files are ignored for container provided JARs.
-        Map<String, WebXml> fragments = processJarsForWebFragments(webXml);
-
-        // Step 2. Order the fragments.
+        // Web fragments are parsed and JARs are scanned for annotations in
+        // parallel if the Context is configured to do so
+        Map<String, WebXml> fragments;
         Set<WebXml> orderedFragments = null;
-        orderedFragments =
-                WebXml.orderWebFragments(webXml, fragments, sContext);
+        scanExecutor = createScanExecutor();
+        try {
+            // Step 1. Identify all the JARs packaged with the application and
+            // those provided by the container. If any of the application JARs
+            // have a web-fragment.xml it will be parsed at this point.
+            // web-fragment.xml files are ignored for container provided JARs.
+            fragments = processJarsForWebFragments(webXml);
 
-        // Step 3. Look for ServletContainerInitializer implementations
-        if (ok) {
-            processServletContainerInitializers();
-        }
+            // Step 2. Order the fragments.
+            orderedFragments =
+                    WebXml.orderWebFragments(webXml, fragments, sContext);
 
-        if (!webXml.isMetadataComplete() || typeInitializerMap.size() > 0) {
-            // Step 4. Process /WEB-INF/classes for annotations and
-            // @HandlesTypes matches
+            // Step 3. Look for ServletContainerInitializer implementations
             if (ok) {
-                WebResource[] webResources =
-                        context.getResources().listResources("/WEB-INF/classes");
+                processServletContainerInitializers();
+            }
+
+            if (!webXml.isMetadataComplete() || typeInitializerMap.size() > 0) {
+                // Step 4. Process /WEB-INF/classes for annotations and
+                // @HandlesTypes matches
+                if (ok) {
+                    WebResource[] webResources =
+                            context.getResources().listResources("/WEB-INF/classes");
 
-                for (WebResource webResource : webResources) {
-                    processAnnotationsWebResource(webResource, webXml,
-                            webXml.isMetadataComplete());
+                    for (WebResource webResource : webResources) {
+                        processAnnotationsWebResource(webResource, webXml,
+                                webXml.isMetadataComplete());
+                    }
                 }
-            }
 
-            // Step 5. Process JARs for annotations for annotations and
-            // @HandlesTypes matches - only need to process those fragments we
-            // are going to use (remember orderedFragments includes any
-            // container fragments)
-            if (ok) {
-                processAnnotations(
-                        orderedFragments, webXml.isMetadataComplete());
-            }
+                // Step 5. Process JARs for annotations for annotations and
+                // @HandlesTypes matches - only need to process those fragments
+                // we are going to use (remember orderedFragments includes any
+                // container fragments)
+                if (ok) {
+                    annotationScanIndex = createAnnotationScanIndex();
+                    processAnnotations(
+                            orderedFragments, webXml.isMetadataComplete());
+                    if (annotationScanIndex != null) {
+                        annotationScanIndex.store();
+                    }
+                }
 
-            // Cache, if used, is no longer required so clear it
-            javaClassCache.clear();
+                // Cache, if used, is no longer required so clear it
+                javaClassCache.clear();
+            }
+        } finally {
+            if (scanExecutor != null) {
+                scanExecutor.shutdownNow();
+                scanExecutor = null;
+            }
+            annotationScanIndex = null;
         }
 
         if (!webXml.isMetadataComplete()) {
@@ -1811,8 +1854,8 @@ public class ContextConfig implements LifecycleListener {
             // validation is not enabled
             parseRequired = false;
         }
-        FragmentJarScannerCallback callback =
-                new FragmentJarScannerCallback(webXmlParser, delegate, parseRequired);
+        FragmentJarScannerCallback callback = new FragmentJarScannerCallback(
+                webXmlParser, delegate, parseRequired, scanExecutor);
 
         jarScanner.scan(JarScanType.PLUGGABILITY,
                 context.getServletContext(), callback);
@@ -1824,29 +1867,106 @@ public class ContextConfig implements LifecycleListener {
     }
 
     protected void processAnnotations(Set<WebXml> fragments,
-                                      boolean handlesTypesOnly) {
-        for (WebXml fragment : fragments) {
-            // Only need to scan for @HandlesTypes matches if any of the
-            // following are true:
-            // - it has already been determined only @HandlesTypes is required
-            //   (e.g. main web.xml has metadata-complete="true"
-            // - this fragment is for a container JAR (Servlet 3.1 section 8.1)
-            // - this fragment has metadata-complete="true"
-            boolean htOnly = handlesTypesOnly || !fragment.getWebappJar() ||
-                    fragment.isMetadataComplete();
-
-            WebXml annotations = new WebXml();
-            // no impact on distributable
-            annotations.setDistributable(true);
-            URL url = fragment.getURL();
-            processAnnotationsUrl(url, annotations, htOnly);
-            Set<WebXml> set = new HashSet<>();
-            set.add(annotations);
-            // Merge annotations into fragment - fragment takes priority
-            fragment.merge(set);
+                                      final boolean handlesTypesOnly) {
+        ExecutorService executor = scanExecutor;
+        if (executor == null) {
+            for (WebXml fragment : fragments) {
+                processAnnotationsFragment(fragment, handlesTypesOnly);
+            }
+            return;
+        }
+
+        // Each fragment only has the annotations from its own JAR merged into
+        // it so the result does not depend on the order the scans complete
+        List<Future<?>> results = new ArrayList<>(fragments.size());
+        for (final WebXml fragment : fragments) {
+            results.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    processAnnotationsFragment(fragment, handlesTypesOnly);
+                }
+            }));
+        }
+        for (Future<?> result : results) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(sm.getString(
+                        "contextConfig.parallelScanFailed", context.getName()), e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(sm.getString(
+                        "contextConfig.parallelScanFailed", context.getName()), cause);
+            }
         }
     }
 
+    private void processAnnotationsFragment(WebXml fragment,
+                                            boolean handlesTypesOnly) {
+        // Only need to scan for @HandlesTypes matches if any of the
+        // following are true:
+        // - it has already been determined only @HandlesTypes is required
+        //   (e.g. main web.xml has metadata-complete="true"
+        // - this fragment is for a container JAR (Servlet 3.1 section 8.1)
+        // - this fragment has metadata-complete="true"
+        boolean htOnly = handlesTypesOnly || !fragment.getWebappJar() ||
+                fragment.isMetadataComplete();
+
+        WebXml annotations = new WebXml();
+        // no impact on distributable
+        annotations.setDistributable(true);
+        URL url = fragment.getURL();
+        processAnnotationsUrl(url, annotations, htOnly);
+        Set<WebXml> set = new HashSet<>();
+        set.add(annotations);
+        // Merge annotations into fragment - fragment takes priority
+        fragment.merge(set);
+    }
+
+    /**
+     * Create the index used to skip scanning unchanged JARs for annotations.
+     *
+     * @return the index or <code>null</code> if the Context is not configured
+     *         to use a scan index
+     */
+    private JarScanIndex createAnnotationScanIndex() {
+        if (!(context instanceof StandardContext) ||
+                !((StandardContext) context).getUseScanIndex()) {
+            return null;
+        }
+        File workDir = (File) context.getServletContext().getAttribute(
+                ServletContext.TEMPDIR);
+        if (workDir == null) {
+            return null;
+        }
+        return new JarScanIndex(new File(workDir, ANNOTATION_SCAN_INDEX),
+                ClassSummary.VERSION);
+    }
+
+    /**
+     * Create the executor used to parse web fragments and scan JARs for
+     * annotations in parallel.
+     *
+     * @return the executor or <code>null</code> if the Context is not
+     *         configured for parallel annotation scanning
+     */
+    private ExecutorService createScanExecutor() {
+        if (!(context instanceof StandardContext) ||
+                !((StandardContext) context).getParallelAnnotationScanning()) {
+            return null;
+        }
+        return new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                new ScanThreadFactory(context.getName() + "-annotationScan-",
+                        Thread.currentThread().getContextClassLoader()),
+                null, false);
+    }
+
     protected void processAnnotationsWebResource(WebResource webResource,
                                                  WebXml fragment, boolean handlesTypesOnly) {
 
@@ -1895,14 +2015,35 @@ public class ContextConfig implements LifecycleListener {
     protected void processAnnotationsJar(URL url, WebXml fragment,
                                          boolean handlesTypesOnly) {
 
+        JarScanIndex index = annotationScanIndex;
+        List<String> summaries = null;
+        if (index != null) {
+            summaries = index.get(url);
+            if (summaries != null) {
+                processAnnotationsIndexedJar(
+                        url, summaries, fragment, handlesTypesOnly);
+                return;
+            }
+            summaries = new ArrayList<>();
+        }
+
         try (Jar jar = JarFactory.newInstance(url)) {
             jar.nextEntry();
             String entryName = jar.getEntryName();
             while (entryName != null) {
                 if (entryName.endsWith(".class")) {
                     try (InputStream is = jar.getEntryInputStream()) {
-                        processAnnotationsStream(
-                                is, fragment, handlesTypesOnly);
+                        if (summaries == null) {
+                            processAnnotationsStream(
+                                    is, fragment, handlesTypesOnly);
+                        } else {
+                            ClassParser parser = new ClassParser(is);
+                            JavaClass clazz = parser.parse();
+                            processAnnotationsClass(
+                                    clazz, fragment, handlesTypesOnly);
+                            summaries.add(
+                                    ClassSummary.toString(entryName, clazz));
+                        }
                     } catch (IOException e) {
                         log.error(sm.getString("contextConfig.inputStreamJar",
                                 entryName, url), e);
@@ -1914,8 +2055,57 @@ public class ContextConfig implements LifecycleListener {
                 jar.nextEntry();
                 entryName = jar.getEntryName();
             }
+            if (summaries != null) {
+                index.put(url, summaries);
+            }
+        } catch (IOException e) {
+            log.error(sm.getString("contextConfig.jarFile", url), e);
+        }
+    }
+
+    /**
+     * Process a JAR using the summaries of its classes recorded in the scan
+     * index. Only classes with annotations that add to the web application's
+     * configuration are read from the JAR. All other classes are checked for
+     * {@link HandlesTypes} matches using their summaries.
+     */
+    private void processAnnotationsIndexedJar(URL url, List<String> summaries,
+            WebXml fragment, boolean handlesTypesOnly) {
+
+        Jar jar = null;
+        try {
+            for (String summary : summaries) {
+                ClassSummary classSummary = new ClassSummary(summary);
+                if (classSummary.isWebAnnotated() && !handlesTypesOnly) {
+                    if (jar == null) {
+                        jar = JarFactory.newInstance(url);
+                    }
+                    String entryName = classSummary.getEntryName();
+                    try (InputStream is = jar.getInputStream(entryName)) {
+                        if (is != null) {
+                            processAnnotationsStream(
+                                    is, fragment, handlesTypesOnly);
+                        }
+                    } catch (IOException e) {
+                        log.error(sm.getString("contextConfig.inputStreamJar",
+                                entryName, url), e);
+                    } catch (ClassFormatException e) {
+                        log.error(sm.getString("contextConfig.inputStreamJar",
+                                entryName, url), e);
+                    }
+                } else if (!classSummary.isAnnotation()) {
+                    checkHandlesTypes(classSummary.getClassName(),
+                            classSummary.getSuperclassName(),
+                            classSummary.getInterfaceNames(),
+                            classSummary.getAnnotationTypes());
+                }
+            }
         } catch (IOException e) {
             log.error(sm.getString("contextConfig.jarFile", url), e);
+        } finally {
+            if (jar != null) {
+                jar.close();
+            }
         }
     }
 
@@ -1950,6 +2140,11 @@ public class ContextConfig implements LifecycleListener {
 
         ClassParser parser = new ClassParser(is);
         JavaClass clazz = parser.parse();
+        processAnnotationsClass(clazz, fragment, handlesTypesOnly);
+    }
+
+    private void processAnnotationsClass(JavaClass clazz, WebXml fragment,
+                                         boolean handlesTypesOnly) {
         checkHandlesTypes(clazz);
 
         if (handlesTypesOnly) {
@@ -1994,12 +2189,35 @@ public class ContextConfig implements LifecycleListener {
             return;
         }
 
-        String className = javaClass.getClassName();
+        checkHandlesTypes(javaClass.getClassName(),
+                javaClass.getSuperclassName(), javaClass.getInterfaceNames(),
+                handlesTypesAnnotations ? getAnnotationTypes(javaClass) : null);
+    }
+
+    /**
+     * Check a class that is not an annotation for a match with
+     * {@link HandlesTypes}.
+     *
+     * @param className       The fully qualified class name
+     * @param superclassName  The fully qualified name of the super class
+     * @param interfaceNames  The fully qualified names of the interfaces
+     *                        directly implemented by the class
+     * @param annotationTypes The types of the class's annotations in internal
+     *                        form. May be <code>null</code> if there are none
+     *                        or they do not need to be checked.
+     */
+    private void checkHandlesTypes(String className, String superclassName,
+            String[] interfaceNames, String[] annotationTypes) {
+
+        // Skip this if we can
+        if (typeInitializerMap.size() == 0) {
+            return;
+        }
 
         Class<?> clazz = null;
         if (handlesTypesNonAnnotations) {
             // This *might* be match for a HandlesType.
-            populateJavaClassCache(className, javaClass);
+            populateJavaClassCache(className, superclassName, interfaceNames);
             JavaClassCacheEntry entry = javaClassCache.get(className);
             if (entry.getSciSet() == null) {
                 try {
@@ -2011,7 +2229,8 @@ public class ContextConfig implements LifecycleListener {
                             classHierarchyToString(className, entry)));
                 }
             }
-            if (!entry.getSciSet().isEmpty()) {
+            Set<ServletContainerInitializer> sciSet = entry.getSciSet();
+            if (!sciSet.isEmpty()) {
                 // Need to try and load the class
                 clazz = Introspection.loadClass(context, className);
                 if (clazz == null) {
@@ -2019,27 +2238,28 @@ public class ContextConfig implements LifecycleListener {
                     return;
                 }
 
-                for (ServletContainerInitializer sci : entry.getSciSet()) {
-                    Set<Class<?>> classes = initializerClassMap.get(sci);
-                    if (classes == null) {
-                        classes = new HashSet<>();
-                        initializerClassMap.put(sci, classes);
+                synchronized (initializerClassMap) {
+                    for (ServletContainerInitializer sci : sciSet) {
+                        Set<Class<?>> classes = initializerClassMap.get(sci);
+                        if (classes == null) {
+                            classes = new HashSet<>();
+                            initializerClassMap.put(sci, classes);
+                        }
+                        classes.add(clazz);
                     }
-                    classes.add(clazz);
                 }
             }
         }
 
         if (handlesTypesAnnotations) {
-            AnnotationEntry[] annotationEntries = javaClass.getAnnotationEntries();
-            if (annotationEntries != null) {
+            if (annotationTypes != null) {
                 for (Map.Entry<Class<?>, Set<ServletContainerInitializer>> entry :
                         typeInitializerMap.entrySet()) {
                     if (entry.getKey().isAnnotation()) {
                         String entryClassName = entry.getKey().getName();
-                        for (AnnotationEntry annotationEntry : annotationEntries) {
+                        for (String annotationType : annotationTypes) {
                             if (entryClassName.equals(
-                                    getClassName(annotationEntry.getAnnotationType()))) {
+                                    getClassName(annotationType))) {
                                 if (clazz == null) {
                                     clazz = Introspection.loadClass(
                                             context, className);
@@ -2049,8 +2269,10 @@ public class ContextConfig implements LifecycleListener {
                                         return;
                                     }
                                 }
-                                for (ServletContainerInitializer sci : entry.getValue()) {
-                                    initializerClassMap.get(sci).add(clazz);
+                                synchronized (initializerClassMap) {
+                                    for (ServletContainerInitializer sci : entry.getValue()) {
+                                        initializerClassMap.get(sci).add(clazz);
+                                    }
                                 }
                                 break;
                             }
@@ -2085,17 +2307,30 @@ public class ContextConfig implements LifecycleListener {
         return msg.toString();
     }
 
-    private void populateJavaClassCache(String className, JavaClass javaClass) {
-        if (javaClassCache.containsKey(className)) {
-            return;
+    private static String[] getAnnotationTypes(JavaClass javaClass) {
+        AnnotationEntry[] annotationEntries = javaClass.getAnnotationEntries();
+        if (annotationEntries == null) {
+            return null;
+        }
+        String[] result = new String[annotationEntries.length];
+        for (int i = 0; i < annotationEntries.length; i++) {
+            result[i] = annotationEntries[i].getAnnotationType();
         }
+        return result;
+    }
 
-        // Add this class to the cache
-        javaClassCache.put(className, new JavaClassCacheEntry(javaClass));
+    private void populateJavaClassCache(String className,
+            String superclassName, String[] interfaceNames) {
+        // Add this class to the cache. If another thread got there first it
+        // is responsible for the super types.
+        if (javaClassCache.putIfAbsent(className,
+                new JavaClassCacheEntry(superclassName, interfaceNames)) != null) {
+            return;
+        }
 
-        populateJavaClassCache(javaClass.getSuperclassName());
+        populateJavaClassCache(superclassName);
 
-        for (String iterface : javaClass.getInterfaceNames()) {
+        for (String iterface : interfaceNames) {
             populateJavaClassCache(iterface);
         }
     }
@@ -2109,7 +2344,8 @@ public class ContextConfig implements LifecycleListener {
                 }
                 ClassParser parser = new ClassParser(is);
                 JavaClass clazz = parser.parse();
-                populateJavaClassCache(clazz.getClassName(), clazz);
+                populateJavaClassCache(clazz.getClassName(),
+                        clazz.getSuperclassName(), clazz.getInterfaceNames());
             } catch (ClassFormatException e) {
                 log.debug(sm.getString("contextConfig.invalidSciHandlesTypes",
                         className), e);
@@ -2120,13 +2356,27 @@ public class ContextConfig implements LifecycleListener {
         }
     }
 
+    /*
+     * Another thread may have added an entry to the cache and still be reading
+     * its super types so load any that are missing rather than treat them as
+     * absent. The result is the same whichever thread computes it.
+     */
+    private JavaClassCacheEntry getJavaClassCacheEntry(String className) {
+        JavaClassCacheEntry entry = javaClassCache.get(className);
+        if (entry == null) {
+            populateJavaClassCache(className);
+            entry = javaClassCache.get(className);
+        }
+        return entry;
+    }
+
     private void populateSCIsForCacheEntry(JavaClassCacheEntry cacheEntry) {
         Set<ServletContainerInitializer> result = new HashSet<>();
 
         // Super class
         String superClassName = cacheEntry.getSuperclassName();
         JavaClassCacheEntry superClassCacheEntry =
-                javaClassCache.get(superClassName);
+                getJavaClassCacheEntry(superClassName);
 
         // Avoid an infinite loop with java.lang.Object
         if (cacheEntry.equals(superClassCacheEntry)) {
@@ -2146,7 +2396,7 @@ public class ContextConfig implements LifecycleListener {
         // Interfaces
         for (String interfaceName : cacheEntry.getInterfaceNames()) {
             JavaClassCacheEntry interfaceEntry =
-                    javaClassCache.get(interfaceName);
+                    getJavaClassCacheEntry(interfaceName);
             // A null could mean that the class not present in application or
             // that there is nothing of interest. Either way, nothing to do here
             // so move along
@@ -2469,6 +2719,33 @@ public class ContextConfig implements LifecycleListener {
         return result;
     }
 
+    /**
+     * Creates the threads used to scan in parallel. The threads use the
+     * context class loader of the thread starting the Context so that
+     * descriptor parsing and logging behave as they would on that thread.
+     */
+    private static class ScanThreadFactory
+            implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final String namePrefix;
+        private final ClassLoader classLoader;
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        public ScanThreadFactory(String namePrefix, ClassLoader classLoader) {
+            this.namePrefix = namePrefix;
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread t =
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            t.setName(namePrefix + threadNumber.getAndIncrement());
+            t.setContextClassLoader(classLoader);
+            return t;
+        }
+    }
+
     private static class DefaultWebXmlCacheEntry {
         private final WebXml webXml;
         private final long globalTimeStamp;
@@ -2494,16 +2771,154 @@ public class ContextConfig implements LifecycleListener {
         }
     }
 
+    /**
+     * The parts of a class needed to process it for annotations and
+     * {@link HandlesTypes} matches, as recorded in the annotation scan index.
+     * A summary is stored as a single string of the form
+     * <code>entryName|flags|className|superclassName|interfaceNames|annotationTypes</code>
+     * where the names and types are comma separated. Neither separator can
+     * appear in a class name or an annotation type.
+     */
+    private static class ClassSummary {
+
+        /**
+         * Identifies the format of the summaries. Change this if the format
+         * changes so existing indexes are discarded.
+         */
+        public static final String VERSION = "annotations-1";
+
+        private static final char SEPARATOR = '|';
+        private static final char LIST_SEPARATOR = ',';
+        private static final char FLAG_ANNOTATION = 'A';
+        private static final char FLAG_WEB_ANNOTATED = 'W';
+        private static final String[] EMPTY = new String[0];
+
+        private final String entryName;
+        private final boolean annotation;
+        private final boolean webAnnotated;
+        private final String className;
+        private final String superclassName;
+        private final String[] interfaceNames;
+        private final String[] annotationTypes;
+
+        public ClassSummary(String summary) {
+            int start = 0;
+            int end = summary.indexOf(SEPARATOR, start);
+            entryName = summary.substring(start, end);
+            start = end + 1;
+            end = summary.indexOf(SEPARATOR, start);
+            String flags = summary.substring(start, end);
+            annotation = flags.indexOf(FLAG_ANNOTATION) > -1;
+            webAnnotated = flags.indexOf(FLAG_WEB_ANNOTATED) > -1;
+            start = end + 1;
+            end = summary.indexOf(SEPARATOR, start);
+            className = summary.substring(start, end);
+            start = end + 1;
+            end = summary.indexOf(SEPARATOR, start);
+            superclassName = summary.substring(start, end);
+            start = end + 1;
+            end = summary.indexOf(SEPARATOR, start);
+            interfaceNames = split(summary.substring(start, end));
+            String[] types = split(summary.substring(end + 1));
+            annotationTypes = types.length == 0 ? null : types;
+        }
+
+        public static String toString(String entryName, JavaClass javaClass) {
+            StringBuilder sb = new StringBuilder(entryName);
+            sb.append(SEPARATOR);
+            if ((javaClass.getAccessFlags() &
+                    org.apache.tomcat.util.bcel.Constants.ACC_ANNOTATION) > 0) {
+                sb.append(FLAG_ANNOTATION);
+            }
+            String[] annotationTypes = ContextConfig.getAnnotationTypes(javaClass);
+            if (annotationTypes != null) {
+                for (String type : annotationTypes) {
+                    if ("Ljavax/servlet/annotation/WebServlet;".equals(type) ||
+                            "Ljavax/servlet/annotation/WebFilter;".equals(type) ||
+                            "Ljavax/servlet/annotation/WebListener;".equals(type)) {
+                        sb.append(FLAG_WEB_ANNOTATED);
+                        break;
+                    }
+                }
+            }
+            sb.append(SEPARATOR);
+            sb.append(javaClass.getClassName());
+            sb.append(SEPARATOR);
+            sb.append(javaClass.getSuperclassName());
+            sb.append(SEPARATOR);
+            join(javaClass.getInterfaceNames(), sb);
+            sb.append(SEPARATOR);
+            if (annotationTypes != null) {
+                join(annotationTypes, sb);
+            }
+            return sb.toString();
+        }
+
+        private static void join(String[] values, StringBuilder sb) {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    sb.append(LIST_SEPARATOR);
+                }
+                sb.append(values[i]);
+            }
+        }
+
+        private static String[] split(String value) {
+            if (value.length() == 0) {
+                return EMPTY;
+            }
+            List<String> result = new ArrayList<>();
+            int start = 0;
+            int end = value.indexOf(LIST_SEPARATOR);
+            while (end > -1) {
+                result.add(value.substring(start, end));
+                start = end + 1;
+                end = value.indexOf(LIST_SEPARATOR, start);
+            }
+            result.add(value.substring(start));
+            return result.toArray(new String[result.size()]);
+        }
+
+        public String getEntryName() {
+            return entryName;
+        }
+
+        public boolean isAnnotation() {
+            return annotation;
+        }
+
+        public boolean isWebAnnotated() {
+            return webAnnotated;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        public String getSuperclassName() {
+            return superclassName;
+        }
+
+        public String[] getInterfaceNames() {
+            return interfaceNames;
+        }
+
+        public String[] getAnnotationTypes() {
+            return annotationTypes;
+        }
+    }
+
     private static class JavaClassCacheEntry {
         public final String superclassName;
 
         public final String[] interfaceNames;
 
-        private Set<ServletContainerInitializer> sciSet = null;
+        private volatile Set<ServletContainerInitializer> sciSet = null;
 
-        public JavaClassCacheEntry(JavaClass javaClass) {
-            superclassName = javaClass.getSuperclassName();
-            interfaceNames = javaClass.getInterfaceNames();
+        public JavaClassCacheEntry(String superclassName,
+                String[] interfaceNames) {
+            this.superclassName = superclassName;
+            this.interfaceNames = interfaceNames;
         }
 
         public String getSuperclassName() {
@@ -24,7 +24,10 @@ import org.apache.coyote.RequestInfo;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.buf.MessageBytes;
 import org.apache.tomcat.util.collections.SynchronizedStack;
+import org.apache.tomcat.util.http.MimeHeaders;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.Cookie;
@@ -32,6 +35,8 @@ import javax.servlet.http.HttpSession;
 import java.io.CharArrayWriter;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -206,10 +211,31 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
      * than the typical access log message size.
      */
     private int maxLogMessageBufferSize = 256;
+    /**
+     * Buffer pool used for log message generation when every element of the
+     * pattern is able to write bytes.
+     */
+    private SynchronizedStack<ByteChunk> byteChunks = new SynchronizedStack<>();
+    /**
+     * The elements of the pattern if they all implement
+     * {@link ByteAccessLogElement}, otherwise <code>null</code>.
+     */
+    private ByteAccessLogElement[] byteLogElements = null;
+    /**
+     * Is {@link #log(ByteChunk)} implemented by the same class as, or a
+     * subclass of, the class that implements {@link #log(CharArrayWriter)}?
+     * If not, a subclass has customised the character path only and the byte
+     * path must not be used to bypass it.
+     */
+    private final boolean byteLogSupported;
 
     //------------------------------------------------------ Constructor
     public AbstractAccessLogValve() {
         super(true);
+        Class<?> byteLogClass = getDeclaringClass("log", ByteChunk.class);
+        Class<?> charLogClass = getDeclaringClass("log", CharArrayWriter.class);
+        byteLogSupported = byteLogClass != null && charLogClass != null &&
+                charLogClass.isAssignableFrom(byteLogClass);
     }
 
     /**
@@ -300,6 +326,7 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             this.pattern = pattern;
         }
         logElements = createLogElements();
+        byteLogElements = createByteLogElements(logElements);
     }
 
     /**
@@ -417,6 +444,28 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         long start = request.getCoyoteRequest().getStartTime();
         Date date = getDate(start + time);
 
+        ByteAccessLogElement[] byteLogElements = this.byteLogElements;
+        Charset charset = getLogCharset();
+        if (byteLogElements != null && charset != null && byteLogSupported) {
+            ByteChunk result = byteChunks.pop();
+            if (result == null) {
+                result = new ByteChunk(128);
+            }
+            result.setCharset(charset);
+
+            for (int i = 0; i < byteLogElements.length; i++) {
+                byteLogElements[i].addElement(result, date, request, response, time);
+            }
+
+            log(result);
+
+            if (result.getBuffer().length <= maxLogMessageBufferSize) {
+                result.recycle();
+                byteChunks.push(result);
+            }
+            return;
+        }
+
         CharArrayWriter result = charArrayWriters.pop();
         if (result == null) {
             result = new CharArrayWriter(128);
@@ -442,6 +491,41 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
      */
     protected abstract void log(CharArrayWriter message);
 
+    /**
+     * Return the character set in which this valve writes log messages if it
+     * supports logging messages that have already been encoded via
+     * {@link #log(ByteChunk)}. The default implementation returns
+     * <code>null</code> so only {@link #log(CharArrayWriter)} is used.
+     */
+    protected Charset getLogCharset() {
+        return null;
+    }
+
+    /**
+     * Log the specified message that has been encoded using the character set
+     * returned by {@link #getLogCharset()}. Only called if that method returns
+     * a character set. The default implementation decodes the message and
+     * passes it to {@link #log(CharArrayWriter)}.
+     *
+     * @param message Message to be logged. This object will be recycled by
+     *  the calling method.
+     */
+    protected void log(ByteChunk message) {
+        CharArrayWriter result = charArrayWriters.pop();
+        if (result == null) {
+            result = new CharArrayWriter(128);
+        }
+
+        result.append(new String(message.getBuffer(), message.getStart(),
+                message.getLength(), message.getCharset()));
+        log(result);
+
+        if (result.size() <= maxLogMessageBufferSize) {
+            result.reset();
+            charArrayWriters.push(result);
+        }
+    }
+
     // -------------------------------------------------------- Protected Methods
 
     /**
@@ -521,6 +605,42 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         return list.toArray(new AccessLogElement[0]);
     }
 
+    /**
+     * Return the most specific class in the hierarchy of this valve that
+     * declares the given method, or <code>null</code> if none does.
+     */
+    private Class<?> getDeclaringClass(String name, Class<?> parameterType) {
+        Class<?> clazz = getClass();
+        while (clazz != null) {
+            try {
+                clazz.getDeclaredMethod(name, parameterType);
+                return clazz;
+            } catch (NoSuchMethodException e) {
+                clazz = clazz.getSuperclass();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return the given elements as {@link ByteAccessLogElement}s if they all
+     * support writing bytes, otherwise <code>null</code>.
+     */
+    private static ByteAccessLogElement[] createByteLogElements(
+            AccessLogElement[] elements) {
+        if (elements == null) {
+            return null;
+        }
+        ByteAccessLogElement[] result = new ByteAccessLogElement[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            if (!(elements[i] instanceof ByteAccessLogElement)) {
+                return null;
+            }
+            result[i] = (ByteAccessLogElement) elements[i];
+        }
+        return result;
+    }
+
     /**
      * create an AccessLogElement implementation which needs an element name
      */
@@ -620,6 +740,151 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
 
     }
 
+    /**
+     * An AccessLogElement that can also write the partial message as bytes,
+     * encoded using the character set of the buffer, without creating any
+     * intermediate objects. When every element of the pattern implements this
+     * interface, and the valve supports it, log messages are built as bytes.
+     */
+    protected interface ByteAccessLogElement extends AccessLogElement {
+        void addElement(ByteChunk buf, Date date, Request request,
+                        Response response, long time);
+    }
+
+    /**
+     * Append a single ASCII character to the buffer.
+     */
+    protected static void append(ByteChunk buf, char c) {
+        try {
+            buf.append((byte) c);
+        } catch (IOException e) {
+            // Never happens as the log buffer has no limit
+        }
+    }
+
+    /**
+     * Append the decimal representation of the given value to the buffer.
+     */
+    protected static void append(ByteChunk buf, long value) {
+        if (value < 0) {
+            if (value == Long.MIN_VALUE) {
+                append(buf, Long.toString(value));
+                return;
+            }
+            append(buf, '-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        while (divisor > 0) {
+            append(buf, (char) ('0' + (value / divisor) % 10));
+            divisor /= 10;
+        }
+    }
+
+    /**
+     * Append the given String, encoded with the character set of the buffer.
+     * A <code>null</code> value is written as <code>null</code> to match
+     * {@link CharArrayWriter#append(CharSequence)}.
+     */
+    protected static void append(ByteChunk buf, String value) {
+        if (value == null) {
+            value = "null";
+        }
+        boolean latin1 = buf.getCharset() == StandardCharsets.ISO_8859_1;
+        int len = value.length();
+        for (int i = 0; i < len; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80 || latin1 && c < 0x100) {
+                append(buf, c);
+            } else {
+                // Rare so let the character set do the work
+                appendEncoded(buf, value.substring(i));
+                return;
+            }
+        }
+    }
+
+    /**
+     * Append the given MessageBytes, copying the raw bytes where they are
+     * the same as the encoded String value.
+     */
+    protected static void append(ByteChunk buf, MessageBytes value) {
+        if (value.getType() != MessageBytes.T_BYTES) {
+            append(buf, value.toString());
+            return;
+        }
+        ByteChunk bc = value.getByteChunk();
+        byte[] bytes = bc.getBuffer();
+        int start = bc.getStart();
+        int end = bc.getEnd();
+        if (bc.getCharset() != StandardCharsets.ISO_8859_1) {
+            append(buf, value.toString());
+            return;
+        }
+        if (buf.getCharset() != StandardCharsets.ISO_8859_1) {
+            for (int i = start; i < end; i++) {
+                if (bytes[i] < 0) {
+                    try {
+                        buf.append(bytes, start, i - start);
+                    } catch (IOException e) {
+                        // Never happens as the log buffer has no limit
+                    }
+                    appendEncoded(buf, new String(bytes, i, end - i,
+                            StandardCharsets.ISO_8859_1));
+                    return;
+                }
+            }
+        }
+        try {
+            buf.append(bytes, start, end - start);
+        } catch (IOException e) {
+            // Never happens as the log buffer has no limit
+        }
+    }
+
+    private static void appendEncoded(ByteChunk buf, String value) {
+        byte[] bytes = value.getBytes(buf.getCharset());
+        try {
+            buf.append(bytes, 0, bytes.length);
+        } catch (IOException e) {
+            // Never happens as the log buffer has no limit
+        }
+    }
+
+    /**
+     * Append the milliseconds as three digits, padded with zeros.
+     */
+    private static void appendMsecFrac(ByteChunk buf, long frac) {
+        append(buf, (char) ('0' + frac / 100));
+        append(buf, (char) ('0' + (frac / 10) % 10));
+        append(buf, (char) ('0' + frac % 10));
+    }
+
+    /**
+     * Append all the values of the named header, separated by commas, or
+     * <code>-</code> if there are none.
+     */
+    private static void appendHeaders(ByteChunk buf, MimeHeaders headers,
+            String name) {
+        boolean found = false;
+        int size = headers.size();
+        for (int i = 0; i < size; i++) {
+            if (headers.getName(i).equalsIgnoreCase(name)) {
+                if (found) {
+                    append(buf, ',');
+                }
+                append(buf, headers.getValue(i));
+                found = true;
+            }
+        }
+        if (!found) {
+            append(buf, '-');
+        }
+    }
+
     /**
      * <p>Cache structure for formatted timestamps based on seconds.</p>
      *
@@ -818,7 +1083,7 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
     /**
      * write thread name - %I
      */
-    protected static class ThreadNameElement implements AccessLogElement {
+    protected static class ThreadNameElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -829,12 +1094,23 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append("-");
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            RequestInfo info = request.getCoyoteRequest().getRequestProcessor();
+            if(info != null) {
+                append(buf, info.getWorkerThreadName());
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write local IP address - %A
      */
-    protected static class LocalAddrElement implements AccessLogElement {
+    protected static class LocalAddrElement implements ByteAccessLogElement {
 
         private static final String LOCAL_ADDR_VALUE;
 
@@ -854,23 +1130,35 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 Response response, long time) {
             buf.append(LOCAL_ADDR_VALUE);
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            append(buf, LOCAL_ADDR_VALUE);
+        }
     }
 
     /**
      * write remote logical username from identd (always returns '-') - %l
      */
-    protected static class LogicalUserNameElement implements AccessLogElement {
+    protected static class LogicalUserNameElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
             buf.append('-');
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            append(buf, '-');
+        }
     }
 
     /**
      * write remote user that was authenticated (if any), else '-' - %u
      */
-    protected static class UserElement implements AccessLogElement {
+    protected static class UserElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -885,12 +1173,26 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append('-');
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            String value = null;
+            if (request != null) {
+                value = request.getRemoteUser();
+            }
+            if (value != null) {
+                append(buf, value);
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write first line of the request (method and request URI) - %r
      */
-    protected static class RequestElement implements AccessLogElement {
+    protected static class RequestElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -914,12 +1216,36 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append('-');
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (request != null) {
+                org.apache.coyote.Request coyoteRequest = request.getCoyoteRequest();
+                if (coyoteRequest.method().isNull()) {
+                    // No method means no request line
+                    append(buf, '-');
+                } else {
+                    append(buf, coyoteRequest.method());
+                    append(buf, ' ');
+                    append(buf, coyoteRequest.requestURI());
+                    if (!coyoteRequest.queryString().isNull()) {
+                        append(buf, '?');
+                        append(buf, coyoteRequest.queryString());
+                    }
+                    append(buf, ' ');
+                    append(buf, coyoteRequest.protocol());
+                }
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write HTTP status code of the response - %s
      */
-    protected static class HttpStatusCodeElement implements AccessLogElement {
+    protected static class HttpStatusCodeElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -937,12 +1263,22 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append('-');
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (response != null) {
+                append(buf, response.getStatus());
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write bytes sent, excluding HTTP headers - %b, %B
      */
-    protected static class ByteSentElement implements AccessLogElement {
+    protected static class ByteSentElement implements ByteAccessLogElement {
         private final boolean conversion;
 
         /**
@@ -955,6 +1291,26 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
+            long length = getLength(request, response);
+            if (length <= 0 && conversion) {
+                buf.append('-');
+            } else {
+                buf.append(Long.toString(length));
+            }
+        }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            long length = getLength(request, response);
+            if (length <= 0 && conversion) {
+                append(buf, '-');
+            } else {
+                append(buf, length);
+            }
+        }
+
+        private long getLength(Request request, Response response) {
             // Don't need to flush since trigger for log message is after the
             // response has been committed
             long length = response.getBytesWritten(false);
@@ -972,18 +1328,14 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                     }
                 }
             }
-            if (length <= 0 && conversion) {
-                buf.append('-');
-            } else {
-                buf.append(Long.toString(length));
-            }
+            return length;
         }
     }
 
     /**
      * write request method (GET, POST, etc.) - %m
      */
-    protected static class MethodElement implements AccessLogElement {
+    protected static class MethodElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -991,12 +1343,20 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append(request.getMethod());
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (request != null) {
+                append(buf, request.getCoyoteRequest().method());
+            }
+        }
     }
 
     /**
      * write time taken to process the request - %D, %T
      */
-    protected static class ElapsedTimeElement implements AccessLogElement {
+    protected static class ElapsedTimeElement implements ByteAccessLogElement {
         private final boolean millis;
 
         /**
@@ -1023,12 +1383,25 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append(Long.toString(remains % 10));
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (millis) {
+                append(buf, time);
+            } else {
+                // second
+                append(buf, time / 1000);
+                append(buf, '.');
+                appendMsecFrac(buf, time % 1000);
+            }
+        }
     }
 
     /**
      * write time until first byte is written (commit time) in millis - %F
      */
-    protected static class FirstByteTimeElement implements AccessLogElement {
+    protected static class FirstByteTimeElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request, Response response, long time) {
             long commitTime = response.getCoyoteResponse().getCommitTime();
@@ -1039,12 +1412,23 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append(Long.toString(delta));
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            long commitTime = response.getCoyoteResponse().getCommitTime();
+            if (commitTime == -1) {
+                append(buf, '-');
+            } else {
+                append(buf, commitTime - request.getCoyoteRequest().getStartTime());
+            }
+        }
     }
 
     /**
      * write Query string (prepended with a '?' if it exists) - %q
      */
-    protected static class QueryElement implements AccessLogElement {
+    protected static class QueryElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -1057,12 +1441,24 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append(query);
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (request != null) {
+                MessageBytes query = request.getCoyoteRequest().queryString();
+                if (!query.isNull()) {
+                    append(buf, '?');
+                    append(buf, query);
+                }
+            }
+        }
     }
 
     /**
      * write user session ID - %S
      */
-    protected static class SessionIdElement implements AccessLogElement {
+    protected static class SessionIdElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -1077,12 +1473,26 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 }
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            Session session = null;
+            if (request != null) {
+                session = request.getSessionInternal(false);
+            }
+            if (session == null) {
+                append(buf, '-');
+            } else {
+                append(buf, session.getIdInternal());
+            }
+        }
     }
 
     /**
      * write requested URL path - %U
      */
-    protected static class RequestURIElement implements AccessLogElement {
+    protected static class RequestURIElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -1092,23 +1502,39 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append('-');
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (request != null) {
+                append(buf, request.getCoyoteRequest().requestURI());
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write local server name - %v
      */
-    protected static class LocalServerNameElement implements AccessLogElement {
+    protected static class LocalServerNameElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
             buf.append(request.getServerName());
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            append(buf, request.getCoyoteRequest().serverName());
+        }
     }
 
     /**
      * write any string
      */
-    protected static class StringElement implements AccessLogElement {
+    protected static class StringElement implements ByteAccessLogElement {
         private final String str;
 
         public StringElement(String str) {
@@ -1120,12 +1546,18 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 Response response, long time) {
             buf.append(str);
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            append(buf, str);
+        }
     }
 
     /**
      * write incoming headers - %{xxx}i
      */
-    protected static class HeaderElement implements AccessLogElement {
+    protected static class HeaderElement implements ByteAccessLogElement {
         private final String header;
 
         public HeaderElement(String header) {
@@ -1145,12 +1577,18 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             }
             buf.append('-');
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            appendHeaders(buf, request.getCoyoteRequest().getMimeHeaders(), header);
+        }
     }
 
     /**
      * write a specific cookie - %{xxx}c
      */
-    protected static class CookieElement implements AccessLogElement {
+    protected static class CookieElement implements ByteAccessLogElement {
         private final String header;
 
         public CookieElement(String header) {
@@ -1172,12 +1610,28 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             }
             buf.append(value);
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            String value = "-";
+            Cookie[] c = request.getCookies();
+            if (c != null) {
+                for (int i = 0; i < c.length; i++) {
+                    if (header.equals(c[i].getName())) {
+                        value = c[i].getValue();
+                        break;
+                    }
+                }
+            }
+            append(buf, value);
+        }
     }
 
     /**
      * write a specific response header - %{xxx}o
      */
-    protected static class ResponseHeaderElement implements AccessLogElement {
+    protected static class ResponseHeaderElement implements ByteAccessLogElement {
         private final String header;
 
         public ResponseHeaderElement(String header) {
@@ -1199,12 +1653,22 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             }
             buf.append('-');
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (null != response) {
+                appendHeaders(buf, response.getCoyoteResponse().getMimeHeaders(), header);
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write an attribute in the ServletRequest - %{xxx}r
      */
-    protected static class RequestAttributeElement implements AccessLogElement {
+    protected static class RequestAttributeElement implements ByteAccessLogElement {
         private final String header;
 
         public RequestAttributeElement(String header) {
@@ -1230,12 +1694,28 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append('-');
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            Object value = null;
+            if (request != null) {
+                value = request.getAttribute(header);
+            } else {
+                value = "??";
+            }
+            if (value != null) {
+                append(buf, value.toString());
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write an attribute in the HttpSession - %{xxx}s
      */
-    protected static class SessionAttributeElement implements AccessLogElement {
+    protected static class SessionAttributeElement implements ByteAccessLogElement {
         private final String header;
 
         public SessionAttributeElement(String header) {
@@ -1264,12 +1744,31 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append('-');
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            Object value = null;
+            if (null != request) {
+                HttpSession sess = request.getSession(false);
+                if (null != sess) {
+                    value = sess.getAttribute(header);
+                }
+            } else {
+                value = "??";
+            }
+            if (value != null) {
+                append(buf, value.toString());
+            } else {
+                append(buf, '-');
+            }
+        }
     }
 
     /**
      * write remote IP address - %a
      */
-    protected class RemoteAddrElement implements AccessLogElement {
+    protected class RemoteAddrElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -1284,15 +1783,40 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append(request.getRemoteAddr());
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (requestAttributesEnabled) {
+                Object addr = request.getAttribute(REMOTE_ADDR_ATTRIBUTE);
+                if (addr == null) {
+                    append(buf, request.getRemoteAddr());
+                } else {
+                    append(buf, addr.toString());
+                }
+            } else {
+                append(buf, request.getRemoteAddr());
+            }
+        }
     }
 
     /**
      * write remote host name - %h
      */
-    protected class HostElement implements AccessLogElement {
+    protected class HostElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
+            buf.append(getHost(request));
+        }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            append(buf, getHost(request));
+        }
+
+        private String getHost(Request request) {
             String value = null;
             if (requestAttributesEnabled) {
                 Object host = request.getAttribute(REMOTE_HOST_ATTRIBUTE);
@@ -1306,14 +1830,14 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
             if (value == null || value.length() == 0) {
                 value = "-";
             }
-            buf.append(value);
+            return value;
         }
     }
 
     /**
      * write request protocol - %H
      */
-    protected class ProtocolElement implements AccessLogElement {
+    protected class ProtocolElement implements ByteAccessLogElement {
         @Override
         public void addElement(CharArrayWriter buf, Date date, Request request,
                 Response response, long time) {
@@ -1328,12 +1852,27 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 buf.append(request.getProtocol());
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (requestAttributesEnabled) {
+                Object proto = request.getAttribute(PROTOCOL_ATTRIBUTE);
+                if (proto == null) {
+                    append(buf, request.getCoyoteRequest().protocol());
+                } else {
+                    append(buf, proto.toString());
+                }
+            } else {
+                append(buf, request.getCoyoteRequest().protocol());
+            }
+        }
     }
 
     /**
      * write date and time, in configurable format (default CLF) - %t or %{format}t
      */
-    protected class DateAndTimeElement implements AccessLogElement {
+    protected class DateAndTimeElement implements ByteAccessLogElement {
 
         /**
          * Format prefix specifying request start time
@@ -1381,6 +1920,14 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
         private final FormatType type;
         /* Whether we need to postprocess by adding milliseconds */
         private boolean usesMsecs = false;
+        /* Per thread encoded timestamp for the byte based log messages */
+        private final ThreadLocal<TimestampBytes> timestampBytes =
+                new ThreadLocal<TimestampBytes>() {
+            @Override
+            protected TimestampBytes initialValue() {
+                return new TimestampBytes();
+            }
+        };
 
         protected DateAndTimeElement() {
             this(null);
@@ -1501,12 +2048,131 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 break;
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            long timestamp = date.getTime();
+            if (usesBegin) {
+                timestamp -= time;
+            }
+            switch (type) {
+            case CLF:
+            case SDF:
+                timestampBytes.get().append(buf, timestamp);
+                break;
+            case SEC:
+                append(buf, timestamp / 1000);
+                break;
+            case MSEC:
+                append(buf, timestamp);
+                break;
+            case MSEC_FRAC:
+                appendMsecFrac(buf, timestamp % 1000);
+                break;
+            }
+        }
+
+        /**
+         * The timestamp of the most recently logged second, encoded once and
+         * then copied into each log message for that second. The positions of
+         * any millisecond placeholders are recorded so the milliseconds can
+         * be written without formatting the whole timestamp again.
+         */
+        private class TimestampBytes {
+            private long seconds = Long.MIN_VALUE;
+            private Charset charset = null;
+            private byte[] bytes = null;
+            /* Start of each millisecond placeholder */
+            private int[] msecStarts = new int[0];
+            /* Whether each placeholder is for three digit milliseconds */
+            private boolean[] msecTripple = new boolean[0];
+
+            private void append(ByteChunk buf, long timestamp) {
+                long seconds = timestamp / 1000;
+                if (seconds != this.seconds || buf.getCharset() != charset) {
+                    update(buf.getCharset(), timestamp);
+                }
+                try {
+                    if (msecStarts.length == 0) {
+                        buf.append(bytes, 0, bytes.length);
+                        return;
+                    }
+                    long frac = timestamp % 1000;
+                    int pos = 0;
+                    for (int i = 0; i < msecStarts.length; i++) {
+                        buf.append(bytes, pos, msecStarts[i] - pos);
+                        if (msecTripple[i]) {
+                            appendMsecFrac(buf, frac);
+                            pos = msecStarts[i] + trippleMsecPattern.length();
+                        } else {
+                            AbstractAccessLogValve.append(buf, frac);
+                            pos = msecStarts[i] + msecPattern.length();
+                        }
+                    }
+                    buf.append(bytes, pos, bytes.length - pos);
+                } catch (IOException e) {
+                    // Never happens as the log buffer has no limit
+                }
+            }
+
+            private void update(Charset charset, long timestamp) {
+                String formatted;
+                if (type == FormatType.CLF) {
+                    formatted = localDateCache.get().getFormat(timestamp);
+                } else {
+                    formatted = localDateCache.get().getFormat(format, locale, timestamp);
+                }
+                byte[] bytes = formatted.getBytes(charset);
+                List<Integer> starts = new ArrayList<>();
+                List<Boolean> tripple = new ArrayList<>();
+                if (usesMsecs) {
+                    byte[] single = msecPattern.getBytes(StandardCharsets.ISO_8859_1);
+                    int i = 0;
+                    while (i < bytes.length) {
+                        if (matches(bytes, i, single, 3)) {
+                            starts.add(Integer.valueOf(i));
+                            tripple.add(Boolean.TRUE);
+                            i += single.length * 3;
+                        } else if (matches(bytes, i, single, 1)) {
+                            starts.add(Integer.valueOf(i));
+                            tripple.add(Boolean.FALSE);
+                            i += single.length;
+                        } else {
+                            i++;
+                        }
+                    }
+                }
+                this.msecStarts = new int[starts.size()];
+                this.msecTripple = new boolean[starts.size()];
+                for (int i = 0; i < msecStarts.length; i++) {
+                    msecStarts[i] = starts.get(i).intValue();
+                    msecTripple[i] = tripple.get(i).booleanValue();
+                }
+                this.bytes = bytes;
+                this.charset = charset;
+                this.seconds = timestamp / 1000;
+            }
+
+            private boolean matches(byte[] bytes, int pos, byte[] pattern,
+                    int repeat) {
+                if (pos + pattern.length * repeat > bytes.length) {
+                    return false;
+                }
+                for (int i = 0; i < pattern.length * repeat; i++) {
+                    if (bytes[pos + i] != pattern[i % pattern.length]) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+        }
     }
 
     /**
      * write local or remote port for request connection - %p and %{xxx}p
      */
-    protected class PortElement implements AccessLogElement {
+    protected class PortElement implements ByteAccessLogElement {
 
         /**
          * Type of port to log
@@ -1553,5 +2219,24 @@ public abstract class AbstractAccessLogValve extends ValveBase implements Access
                 }
             }
         }
+
+        @Override
+        public void addElement(ByteChunk buf, Date date, Request request,
+                Response response, long time) {
+            if (requestAttributesEnabled && portType == PortType.LOCAL) {
+                Object port = request.getAttribute(SERVER_PORT_ATTRIBUTE);
+                if (port == null) {
+                    append(buf, request.getServerPort());
+                } else {
+                    append(buf, port.toString());
+                }
+            } else {
+                if (portType == PortType.LOCAL) {
+                    append(buf, request.getServerPort());
+                } else {
+                    append(buf, request.getRemotePort());
+                }
+            }
+        }
     }
 }
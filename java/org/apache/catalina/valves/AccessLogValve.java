@@ -18,18 +18,30 @@ package org.apache.catalina.valves;
 
 
 import org.apache.catalina.LifecycleException;
+import org.apache.catalina.LifecycleState;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.buf.B2CConverter;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.collections.BoundedMpscQueue;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
 import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 
 
 /**
@@ -39,6 +51,9 @@ import java.util.TimeZone;
  * <ul>
  * <li>Automatic date-based rollover of log files</li>
  * <li>Optional log file rotation</li>
+ * <li>Optional asynchronous writing where request processing threads hand the
+ *     encoded message to a lock-free queue and a dedicated thread writes the
+ *     messages to the file in batches</li>
  * </ul>
  * <p>
  * For UNIX users, another field called <code>checkExists</code> is also
@@ -79,6 +94,18 @@ public class AccessLogValve extends AbstractAccessLogValve {
      * The PrintWriter to which we are currently logging, if any.
      */
     protected PrintWriter writer = null;
+
+    /**
+     * The stream beneath {@link #writer} to which byte based log messages are
+     * written.
+     */
+    private OutputStream outputStream = null;
+
+    /**
+     * Has anything been written to {@link #writer} that has not yet been
+     * flushed to {@link #outputStream}?
+     */
+    private boolean writerPending = false;
     /**
      * A date formatter to format a Date using the format
      * given by <code>fileDateFormat</code>.
@@ -121,6 +148,40 @@ public class AccessLogValve extends AbstractAccessLogValve {
      * agent renames the log file so we can automagically recreate it.
      */
     private boolean checkExists = false;
+    /**
+     * Write log messages from a dedicated thread rather than from the request
+     * processing thread?
+     */
+    private boolean asyncLogging = false;
+    /**
+     * The maximum number of messages waiting to be written when logging
+     * asynchronously.
+     */
+    private int asyncQueueSize = 8192;
+    /**
+     * Discard messages rather than wait for space when the queue is full?
+     */
+    private boolean asyncDropWhenFull = false;
+    /**
+     * The channel to which we are currently logging when logging
+     * asynchronously, if any.
+     */
+    private FileChannel channel = null;
+    /**
+     * The character set used to encode log messages.
+     */
+    private volatile Charset charset = StandardCharsets.ISO_8859_1;
+    /**
+     * The maximum time, in milliseconds, that stopping the valve waits for the
+     * asynchronous writer to write the remaining messages.
+     */
+    private static final long ASYNC_STOP_TIMEOUT = 10000;
+    private static final byte[] LINE_SEPARATOR =
+            System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+    private volatile BoundedMpscQueue<AsyncLogEntry> asyncQueue = null;
+    private volatile AsyncLogWriter asyncWriter = null;
+    private final AtomicLong asyncDroppedCount = new AtomicLong(0);
+    private final AtomicLong asyncWrittenCount = new AtomicLong(0);
 
     //------------------------------------------------------ Constructor
     public AccessLogValve() {
@@ -308,6 +369,93 @@ public class AccessLogValve extends AbstractAccessLogValve {
         }
     }
 
+    /**
+     * Are log messages written from a dedicated thread?
+     */
+    public boolean isAsyncLogging() {
+        return asyncLogging;
+    }
+
+
+    /**
+     * Set whether log messages are written from a dedicated thread rather
+     * than by the request processing thread. Changes take effect when the
+     * valve is next started.
+     *
+     * @param asyncLogging <code>true</code> to write messages asynchronously
+     */
+    public void setAsyncLogging(boolean asyncLogging) {
+        this.asyncLogging = asyncLogging;
+    }
+
+
+    /**
+     * Return the maximum number of messages that may be waiting to be written
+     * when logging asynchronously.
+     */
+    public int getAsyncQueueSize() {
+        return asyncQueueSize;
+    }
+
+
+    /**
+     * Set the maximum number of messages that may be waiting to be written
+     * when logging asynchronously. This is rounded up to a power of two.
+     *
+     * @param asyncQueueSize The queue size
+     */
+    public void setAsyncQueueSize(int asyncQueueSize) {
+        this.asyncQueueSize = asyncQueueSize;
+    }
+
+
+    /**
+     * Are messages discarded when the asynchronous queue is full?
+     */
+    public boolean isAsyncDropWhenFull() {
+        return asyncDropWhenFull;
+    }
+
+
+    /**
+     * Set whether messages are discarded when the asynchronous queue is full
+     * or whether request processing threads wait for space.
+     *
+     * @param asyncDropWhenFull <code>true</code> to discard messages
+     */
+    public void setAsyncDropWhenFull(boolean asyncDropWhenFull) {
+        this.asyncDropWhenFull = asyncDropWhenFull;
+    }
+
+
+    /**
+     * Return the number of messages discarded because the asynchronous queue
+     * was full.
+     */
+    public long getAsyncDroppedCount() {
+        return asyncDroppedCount.get();
+    }
+
+
+    /**
+     * Return the number of messages currently waiting to be written.
+     */
+    public int getAsyncQueuedCount() {
+        BoundedMpscQueue<AsyncLogEntry> queue = asyncQueue;
+        if (queue == null) {
+            return 0;
+        }
+        return queue.size();
+    }
+
+
+    /**
+     * Return the number of messages written by the asynchronous writer.
+     */
+    public long getAsyncWrittenCount() {
+        return asyncWrittenCount.get();
+    }
+
     // --------------------------------------------------------- Public Methods
 
     /**
@@ -327,7 +475,7 @@ public class AccessLogValve extends AbstractAccessLogValve {
      * Rotate the log file if necessary.
      */
     public void rotate() {
-        if (rotatable) {
+        if (rotatable && getState().isAvailable()) {
             // Only do a logfile switch check once a second, max.
             long systime = System.currentTimeMillis();
             if ((systime - rotationLastChecked) > 1000) {
@@ -362,7 +510,7 @@ public class AccessLogValve extends AbstractAccessLogValve {
      */
     public synchronized boolean rotate(String newFileName) {
 
-        if (currentLogFile != null) {
+        if (currentLogFile != null && getState().isAvailable()) {
             File holder = currentLogFile;
             close(false);
             try {
@@ -452,6 +600,7 @@ public class AccessLogValve extends AbstractAccessLogValve {
         if (writer == null) {
             return;
         }
+        // Also closes the channel, if any
         writer.flush();
         writer.close();
         if (rename && renameOnRotate) {
@@ -470,6 +619,9 @@ public class AccessLogValve extends AbstractAccessLogValve {
             }
         }
         writer = null;
+        outputStream = null;
+        writerPending = false;
+        channel = null;
         dateStamp = "";
         currentLogFile = null;
     }
@@ -484,12 +636,155 @@ public class AccessLogValve extends AbstractAccessLogValve {
     @Override
     public void log(CharArrayWriter message) {
 
+        BoundedMpscQueue<AsyncLogEntry> queue = asyncQueue;
+        if (queue != null) {
+            long sequence = claimAsyncSlot(queue);
+            if (sequence >= 0) {
+                getAsyncLogEntry(queue, sequence).set(message);
+                publishAsync(queue, sequence);
+            }
+            return;
+        }
+
+        checkLogFile();
+
+        // Log this message
+        try {
+            synchronized(this) {
+                if (writer != null) {
+                    message.writeTo(writer);
+                    writer.println("");
+                    if (!buffered) {
+                        writer.flush();
+                    } else {
+                        writerPending = true;
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            log.warn(sm.getString(
+                    "accessLogValve.writeFail", message.toString()), ioe);
+        }
+    }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * This is the character set of the current log file.
+     */
+    @Override
+    protected Charset getLogCharset() {
+        return charset;
+    }
+
+
+    /**
+     * Log the specified message that has already been encoded, switching
+     * files if the date has changed since the previous log call.
+     *
+     * @param message Message to be logged
+     */
+    @Override
+    protected void log(ByteChunk message) {
+
+        BoundedMpscQueue<AsyncLogEntry> queue = asyncQueue;
+        if (queue != null) {
+            long sequence = claimAsyncSlot(queue);
+            if (sequence >= 0) {
+                getAsyncLogEntry(queue, sequence).set(message);
+                publishAsync(queue, sequence);
+            }
+            return;
+        }
+
+        checkLogFile();
+
+        // Log this message
+        try {
+            synchronized(this) {
+                if (outputStream != null) {
+                    if (writerPending) {
+                        // Preserve the order of the messages
+                        writer.flush();
+                        writerPending = false;
+                    }
+                    outputStream.write(message.getBuffer(), message.getStart(),
+                            message.getLength());
+                    outputStream.write(LINE_SEPARATOR);
+                    if (!buffered) {
+                        outputStream.flush();
+                    }
+                }
+            }
+        } catch (IOException ioe) {
+            log.warn(sm.getString(
+                    "accessLogValve.writeFail", message.toString()), ioe);
+        }
+    }
+
+
+    /**
+     * Claim a slot in the queue, waiting for space unless configured to drop
+     * messages when the queue is full.
+     *
+     * @return The sequence of the claimed slot or -1 if the message has been
+     *         dropped
+     */
+    private long claimAsyncSlot(BoundedMpscQueue<AsyncLogEntry> queue) {
+        long sequence = queue.claim();
+        while (sequence < 0) {
+            AsyncLogWriter writer = asyncWriter;
+            if (asyncDropWhenFull || writer == null || !writer.running) {
+                asyncDroppedCount.incrementAndGet();
+                return -1;
+            }
+            writer.wakeUp();
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+            sequence = queue.claim();
+        }
+        return sequence;
+    }
+
+
+    /**
+     * Entries stay in the queue's slots once created and are re-used in place
+     * so request processing threads never contend for a pool.
+     */
+    private AsyncLogEntry getAsyncLogEntry(BoundedMpscQueue<AsyncLogEntry> queue,
+            long sequence) {
+        AsyncLogEntry entry = queue.get(sequence);
+        if (entry == null) {
+            entry = new AsyncLogEntry(charset);
+            queue.set(sequence, entry);
+        }
+        return entry;
+    }
+
+
+    private void publishAsync(BoundedMpscQueue<AsyncLogEntry> queue,
+            long sequence) {
+        queue.publish(sequence);
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            writer.wakeUpIfIdle();
+        }
+    }
+
+
+    /**
+     * Switch files if the date has changed since the previous check and, if
+     * configured, re-open the log file if it has been removed.
+     */
+    private void checkLogFile() {
+
         rotate();
 
         /* In case something external rotated the file instead */
         if (checkExists) {
             synchronized (this) {
-                if (currentLogFile != null && !currentLogFile.exists()) {
+                if (currentLogFile != null && !currentLogFile.exists() &&
+                        getState().isAvailable()) {
                     try {
                         close(false);
                     } catch (Throwable e) {
@@ -505,22 +800,6 @@ public class AccessLogValve extends AbstractAccessLogValve {
                 }
             }
         }
-
-        // Log this message
-        try {
-            synchronized(this) {
-                if (writer != null) {
-                    message.writeTo(writer);
-                    writer.println("");
-                    if (!buffered) {
-                        writer.flush();
-                    }
-                }
-            }
-        } catch (IOException ioe) {
-            log.warn(sm.getString(
-                    "accessLogValve.writeFail", message.toString()), ioe);
-        }
     }
 
 
@@ -528,6 +807,13 @@ public class AccessLogValve extends AbstractAccessLogValve {
      * Open the new log file for the date specified by <code>dateStamp</code>.
      */
     protected synchronized void open() {
+        // The file is opened while starting. Once the valve is stopping, it
+        // must not be re-opened, for example by an asynchronous writer that
+        // outlived stop().
+        LifecycleState state = getState();
+        if (state != LifecycleState.STARTING_PREP && !state.isAvailable()) {
+            return;
+        }
         // Open the current log file
         // If no rotate - no need for dateStamp in fileName
         File pathname = getLogFile(rotatable && !renameOnRotate);
@@ -544,15 +830,26 @@ public class AccessLogValve extends AbstractAccessLogValve {
         if (charset == null) {
             charset = StandardCharsets.ISO_8859_1;
         }
+        this.charset = charset;
 
         try {
-            writer = new PrintWriter(new BufferedWriter(new OutputStreamWriter(
-                    new FileOutputStream(pathname, true), charset), 128000),
-                    false);
+            FileOutputStream fos = new FileOutputStream(pathname, true);
+            outputStream = new BufferedOutputStream(fos, 128000);
+            writer = new PrintWriter(new OutputStreamWriter(
+                    outputStream, charset), false);
+            // Sub-classes may write a header
+            writerPending = true;
+            if (asyncLogging) {
+                // Messages are encoded by the request processing threads and
+                // written directly to the channel by the asynchronous writer
+                channel = fos.getChannel();
+            }
 
             currentLogFile = pathname;
         } catch (IOException e) {
             writer = null;
+            outputStream = null;
+            channel = null;
             currentLogFile = null;
             log.error(sm.getString("accessLogValve.openFail", pathname), e);
         }
@@ -578,6 +875,16 @@ public class AccessLogValve extends AbstractAccessLogValve {
         }
         open();
 
+        if (asyncLogging) {
+            asyncQueue = new BoundedMpscQueue<>(asyncQueueSize);
+            AsyncLogWriter writer = new AsyncLogWriter(asyncQueue);
+            asyncWriter = writer;
+            Thread thread = new Thread(writer, "AccessLogWriter-" + getContainer().getName());
+            thread.setDaemon(true);
+            writer.thread = thread;
+            thread.start();
+        }
+
         super.startInternal();
     }
 
@@ -593,6 +900,272 @@ public class AccessLogValve extends AbstractAccessLogValve {
     protected synchronized void stopInternal() throws LifecycleException {
 
         super.stopInternal();
+
+        AsyncLogWriter writer = asyncWriter;
+        if (writer != null) {
+            // Write any remaining messages before closing the file. The
+            // writer needs this valve's monitor to write and to rotate the
+            // file and LifecycleBase.stop() holds that monitor so wait() (which
+            // releases it) rather than join() the writer thread.
+            writer.running = false;
+            writer.wakeUp();
+            boolean interrupted = false;
+            long deadline = System.currentTimeMillis() + ASYNC_STOP_TIMEOUT;
+            while (writer.thread.isAlive()) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                try {
+                    wait(Math.min(remaining, 1000));
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (writer.thread.isAlive()) {
+                // Most likely blocked on I/O. Interrupting closes the channel
+                // and the writer discards whatever is left in the queue.
+                log.warn(sm.getString("accessLogValve.asyncStopTimeout",
+                        writer.thread.getName(),
+                        Integer.valueOf(writer.queue.size())));
+                writer.abandoned = true;
+                writer.thread.interrupt();
+            } else {
+                // The writer has exited so it is now safe for this thread to
+                // consume any messages added after the writer's final check
+                writer.drain();
+            }
+            asyncWriter = null;
+            asyncQueue = null;
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
         close(false);
     }
+
+
+    /**
+     * Write a batch of messages to the current log file.
+     *
+     * @param batch The encoded messages, ready to be read
+     */
+    private void writeBatch(ByteBuffer batch) {
+        checkLogFile();
+        synchronized (this) {
+            if (channel != null) {
+                try {
+                    // Anything written directly to the writer, such as
+                    // headers, must precede the messages
+                    writer.flush();
+                    writerPending = false;
+                    while (batch.hasRemaining()) {
+                        channel.write(batch);
+                    }
+                } catch (IOException ioe) {
+                    log.warn(sm.getString("accessLogValve.asyncWriteFail",
+                            Integer.valueOf(batch.remaining())), ioe);
+                }
+            }
+        }
+        batch.clear();
+    }
+
+
+    /**
+     * Writes messages taken from the queue to the log file, combining as many
+     * messages as are available into each write.
+     */
+    private class AsyncLogWriter implements Runnable {
+
+        private static final int BATCH_SIZE = 64 * 1024;
+
+        private final BoundedMpscQueue<AsyncLogEntry> queue;
+        private final ByteBuffer batch = ByteBuffer.allocateDirect(BATCH_SIZE);
+        private volatile Thread thread;
+        private volatile boolean running = true;
+        // Set if the writer did not finish before stop() timed out
+        private volatile boolean abandoned = false;
+        private volatile boolean idle = false;
+
+        AsyncLogWriter(BoundedMpscQueue<AsyncLogEntry> queue) {
+            this.queue = queue;
+        }
+
+        void wakeUp() {
+            LockSupport.unpark(thread);
+        }
+
+        void wakeUpIfIdle() {
+            if (idle) {
+                idle = false;
+                LockSupport.unpark(thread);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                processQueue();
+            } finally {
+                synchronized (AccessLogValve.this) {
+                    AccessLogValve.this.notifyAll();
+                }
+            }
+        }
+
+        /**
+         * Write any messages remaining in the queue. Must only be called once
+         * the writer thread has exited.
+         */
+        void drain() {
+            processQueue();
+        }
+
+        private void processQueue() {
+            while (true) {
+                if (abandoned) {
+                    // The valve has stopped without waiting for this writer
+                    // so anything left in the queue is discarded
+                    return;
+                }
+                AsyncLogEntry entry = queue.peek();
+                if (entry == null) {
+                    if (batch.position() > 0) {
+                        batch.flip();
+                        writeBatch(batch);
+                    }
+                    if (!running) {
+                        // Producers may still be adding messages if they
+                        // passed the state check before the valve stopped
+                        entry = queue.peek();
+                        if (entry == null) {
+                            break;
+                        }
+                    } else {
+                        idle = true;
+                        // Re-check to avoid missing a wake up
+                        if (queue.isEmpty()) {
+                            LockSupport.parkNanos(this, TimeUnit.SECONDS.toNanos(1));
+                        }
+                        idle = false;
+                        continue;
+                    }
+                }
+
+                ByteBuffer bytes = entry.getBytes();
+                if (bytes.remaining() > batch.remaining()) {
+                    batch.flip();
+                    writeBatch(batch);
+                }
+                if (bytes.remaining() > batch.remaining()) {
+                    // Too large for the batch buffer
+                    writeBatch(bytes);
+                } else {
+                    batch.put(bytes);
+                }
+                asyncWrittenCount.incrementAndGet();
+
+                entry.recycle();
+                queue.release();
+            }
+        }
+    }
+
+
+    /**
+     * A log message encoded on the request processing thread. Instances live
+     * in the slots of the queue and are re-used, along with their encoder and
+     * buffer, each time a slot is claimed.
+     */
+    private static final class AsyncLogEntry extends Writer {
+
+        private static final CharBuffer EMPTY = CharBuffer.allocate(0);
+        private static final int INITIAL_SIZE = 256;
+        private static final int MAX_RETAINED_SIZE = 4096;
+
+        private final CharsetEncoder encoder;
+        private ByteBuffer bytes = ByteBuffer.allocate(INITIAL_SIZE);
+
+        AsyncLogEntry(Charset charset) {
+            encoder = charset.newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        }
+
+        void set(CharArrayWriter message) {
+            try {
+                // CharArrayWriter passes its internal buffer so there is no copy
+                message.writeTo(this);
+            } catch (IOException e) {
+                // Never happens as write() does not throw
+            }
+            encode(EMPTY, true);
+            while (encoder.flush(bytes).isOverflow()) {
+                grow();
+            }
+            while (bytes.remaining() < LINE_SEPARATOR.length) {
+                grow();
+            }
+            bytes.put(LINE_SEPARATOR);
+            bytes.flip();
+        }
+
+        void set(ByteChunk message) {
+            int len = message.getLength() + LINE_SEPARATOR.length;
+            if (bytes.capacity() < len) {
+                bytes = ByteBuffer.allocate(Math.max(len, bytes.capacity() * 2));
+            }
+            bytes.put(message.getBuffer(), message.getStart(), message.getLength());
+            bytes.put(LINE_SEPARATOR);
+            bytes.flip();
+        }
+
+        ByteBuffer getBytes() {
+            return bytes;
+        }
+
+        void recycle() {
+            if (bytes.capacity() > MAX_RETAINED_SIZE) {
+                bytes = ByteBuffer.allocate(INITIAL_SIZE);
+            } else {
+                bytes.clear();
+            }
+            encoder.reset();
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            encode(CharBuffer.wrap(cbuf, off, len), false);
+        }
+
+        @Override
+        public void flush() {
+            // NO-OP
+        }
+
+        @Override
+        public void close() {
+            // NO-OP
+        }
+
+        private void encode(CharBuffer in, boolean endOfInput) {
+            while (true) {
+                CoderResult cr = encoder.encode(in, bytes, endOfInput);
+                if (cr.isOverflow()) {
+                    grow();
+                } else {
+                    break;
+                }
+            }
+        }
+
+        private void grow() {
+            ByteBuffer larger = ByteBuffer.allocate(bytes.capacity() * 2);
+            bytes.flip();
+            larger.put(bytes);
+            bytes = larger;
+        }
+    }
 }
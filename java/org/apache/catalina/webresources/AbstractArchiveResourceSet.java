@@ -16,6 +16,7 @@
  */
 package org.apache.catalina.webresources;
 
+import org.apache.catalina.LifecycleException;
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.util.ResourceSet;
@@ -25,8 +26,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -34,7 +33,7 @@ import java.util.jar.Manifest;
 
 public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
 
-    private final HashMap<String,JarEntry> jarFileEntries = new HashMap<>();
+    private ArchiveIndex archiveIndex = null;
     private final Object archiveLock = new Object();
     private URL baseUrl;
     private String baseUrlString;
@@ -59,8 +58,29 @@ public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
         return baseUrlString;
     }
 
-    protected final HashMap<String,JarEntry> getJarFileEntries() {
-        return jarFileEntries;
+    /**
+     * Obtain the shared index of the entries in the archive this resource set
+     * is based on and configure the manifest from it. Must be called when
+     * this resource set is initialised.
+     *
+     * @param archivePath   The path within the WAR file specified by base
+     *                          of the JAR to index or <code>null</code> if
+     *                          base is the JAR to index
+     */
+    protected final void initArchiveIndex(String archivePath) {
+        try {
+            archiveIndex = ArchiveIndex.acquire(getBase(), archivePath);
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException(ioe);
+        }
+        setManifest(archiveIndex.getManifest());
+    }
+
+    /*
+     * For unit testing.
+     */
+    final ArchiveIndex getArchiveIndex() {
+        return archiveIndex;
     }
 
 
@@ -77,11 +97,14 @@ public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
             if (pathInJar.length() > 0 && pathInJar.charAt(0) == '/') {
                 pathInJar = pathInJar.substring(1);
             }
-            Iterator<String> entries = jarFileEntries.keySet().iterator();
-            while (entries.hasNext()) {
-                String name = entries.next();
-                if (name.length() > pathInJar.length() &&
-                        name.startsWith(pathInJar)) {
+            int size = archiveIndex.size();
+            for (int i = archiveIndex.getFirstIndex(pathInJar); i < size; i++) {
+                String name = archiveIndex.getName(i);
+                if (!name.startsWith(pathInJar)) {
+                    // Entries are sorted so there can be no further matches
+                    break;
+                }
+                if (name.length() > pathInJar.length()) {
                     if (name.charAt(name.length() - 1) == '/') {
                         name = name.substring(
                                 pathInJar.length(), name.length() - 1);
@@ -136,11 +159,14 @@ public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
                 }
             }
 
-            Iterator<String> entries = jarFileEntries.keySet().iterator();
-            while (entries.hasNext()) {
-                String name = entries.next();
-                if (name.length() > pathInJar.length() &&
-                        name.startsWith(pathInJar)) {
+            int size = archiveIndex.size();
+            for (int i = archiveIndex.getFirstIndex(pathInJar); i < size; i++) {
+                String name = archiveIndex.getName(i);
+                if (!name.startsWith(pathInJar)) {
+                    // Entries are sorted so there can be no further matches
+                    break;
+                }
+                if (name.length() > pathInJar.length()) {
                     int nextSlash = name.indexOf('/', pathInJar.length());
                     if (nextSlash == -1 || nextSlash == name.length() - 1) {
                         if (name.startsWith(pathInJar)) {
@@ -228,13 +254,13 @@ public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
             } else {
                 JarEntry jarEntry = null;
                 if (!(pathInJar.charAt(pathInJar.length() - 1) == '/')) {
-                    jarEntry = jarFileEntries.get(pathInJar + '/');
+                    jarEntry = archiveIndex.getEntry(pathInJar + '/');
                     if (jarEntry != null) {
                         path = path + '/';
                     }
                 }
                 if (jarEntry == null) {
-                    jarEntry = jarFileEntries.get(pathInJar);
+                    jarEntry = archiveIndex.getEntry(pathInJar);
                 }
                 if (jarEntry == null) {
                     return new EmptyResource(root, path);
@@ -282,6 +308,15 @@ public abstract class AbstractArchiveResourceSet extends AbstractResourceSet {
         }
     }
 
+    @Override
+    protected void destroyInternal() throws LifecycleException {
+        super.destroyInternal();
+        if (archiveIndex != null) {
+            archiveIndex.release();
+            archiveIndex = null;
+        }
+    }
+
     @Override
     public void gc() {
         synchronized (archiveLock) {
@@ -23,6 +23,7 @@ import org.apache.juli.logging.Log;
 import org.apache.tomcat.util.res.StringManager;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 public abstract class AbstractResource implements WebResource {
@@ -100,6 +101,16 @@ public abstract class AbstractResource implements WebResource {
 
     protected abstract InputStream doGetInputStream();
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Resources are not cached so this always returns <code>null</code>.
+     */
+    @Override
+    public ByteBuffer getContentBuffer() {
+        return null;
+    }
+
 
     protected abstract Log getLog();
 }
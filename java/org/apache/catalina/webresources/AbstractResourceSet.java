@@ -130,7 +130,7 @@ public abstract class AbstractResourceSet extends LifecycleBase
     }
 
     @Override
-    protected final void destroyInternal() throws LifecycleException {
+    protected void destroyInternal() throws LifecycleException {
         gc();
     }
 }
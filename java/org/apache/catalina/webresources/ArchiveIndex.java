@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+
+/**
+ * The entries of a JAR, or of a JAR nested inside a WAR, held as a sorted array
+ * of names so that entries can be looked up by binary search and directory
+ * listings only need to examine the entries that share the directory's prefix.
+ * <p>
+ * Indexes are shared by all the {@link AbstractArchiveResourceSet}s in the JVM
+ * that refer to the same archive (for example when many web applications are
+ * deployed from the same base or when a JAR is mounted both as a class
+ * loader resource and as a resource JAR) and are reference counted so they
+ * are discarded once the last resource set using them is destroyed. An index
+ * is only shared while the archive's size and last modified time are
+ * unchanged.
+ */
+final class ArchiveIndex {
+
+    private static final Map<String,ArchiveIndex> indexes = new HashMap<>();
+
+    private final String key;
+    private final long lastModified;
+    private final long length;
+    private final String[] names;
+    private final JarEntry[] entries;
+    private final Manifest manifest;
+    private int useCount = 0;
+
+
+    private ArchiveIndex(String key, long lastModified, long length,
+            Map<String,JarEntry> entryMap, Manifest manifest) {
+        this.key = key;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.names = entryMap.keySet().toArray(new String[entryMap.size()]);
+        Arrays.sort(names);
+        this.entries = new JarEntry[names.length];
+        for (int i = 0; i < names.length; i++) {
+            entries[i] = entryMap.get(names[i]);
+        }
+        this.manifest = manifest;
+    }
+
+
+    /**
+     * Obtain the index for an archive, reading the archive if no current
+     * index is available. Each call must be matched by a call to
+     * {@link #release()}.
+     *
+     * @param base          The absolute path to the JAR or WAR file
+     * @param archivePath   The path within the WAR of the nested JAR to index
+     *                          or <code>null</code> to index the file itself
+     *
+     * @return the index for the archive
+     *
+     * @throws IOException if the archive could not be read
+     */
+    static ArchiveIndex acquire(String base, String archivePath)
+            throws IOException {
+        File file = new File(base);
+        String key = file.getCanonicalPath();
+        if (archivePath != null) {
+            key = key + "*/" + archivePath;
+        }
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        synchronized (indexes) {
+            ArchiveIndex index = indexes.get(key);
+            if (index != null && index.lastModified == lastModified &&
+                    index.length == length) {
+                index.useCount++;
+                return index;
+            }
+        }
+
+        // Read the archive without holding the lock. If two threads race to
+        // index the same archive, the first to finish wins.
+        ArchiveIndex created;
+        if (archivePath == null) {
+            created = readJar(key, lastModified, length, file);
+        } else {
+            created = readNestedJar(key, lastModified, length, file, archivePath);
+        }
+
+        synchronized (indexes) {
+            ArchiveIndex index = indexes.get(key);
+            if (index == null || index.lastModified != lastModified ||
+                    index.length != length) {
+                indexes.put(key, created);
+                index = created;
+            }
+            index.useCount++;
+            return index;
+        }
+    }
+
+
+    /**
+     * Signal that a resource set no longer requires this index. Once no
+     * resource sets are using it, the index is removed from the shared cache.
+     */
+    void release() {
+        synchronized (indexes) {
+            useCount--;
+            if (useCount <= 0 && indexes.get(key) == this) {
+                indexes.remove(key);
+            }
+        }
+    }
+
+
+    JarEntry getEntry(String name) {
+        int pos = Arrays.binarySearch(names, name);
+        if (pos < 0) {
+            return null;
+        }
+        return entries[pos];
+    }
+
+
+    /**
+     * Obtain the position of the first entry whose name is greater than or
+     * equal to the given prefix. Entries that start with the prefix are
+     * located at this position and the positions immediately following it.
+     */
+    int getFirstIndex(String prefix) {
+        int pos = Arrays.binarySearch(names, prefix);
+        if (pos < 0) {
+            pos = -(pos + 1);
+        }
+        return pos;
+    }
+
+
+    int size() {
+        return names.length;
+    }
+
+
+    String getName(int index) {
+        return names[index];
+    }
+
+
+    Manifest getManifest() {
+        return manifest;
+    }
+
+
+    /*
+     * For unit testing.
+     */
+    static int getIndexCount() {
+        synchronized (indexes) {
+            return indexes.size();
+        }
+    }
+
+
+    private static ArchiveIndex readJar(String key, long lastModified,
+            long length, File file) throws IOException {
+        Map<String,JarEntry> entryMap = new HashMap<>();
+        try (JarFile jarFile = new JarFile(file)) {
+            Enumeration<JarEntry> jarEntries = jarFile.entries();
+            while (jarEntries.hasMoreElements()) {
+                JarEntry entry = jarEntries.nextElement();
+                entryMap.put(entry.getName(), entry);
+            }
+            return new ArchiveIndex(key, lastModified, length, entryMap,
+                    jarFile.getManifest());
+        }
+    }
+
+
+    private static ArchiveIndex readNestedJar(String key, long lastModified,
+            long length, File file, String archivePath) throws IOException {
+        Map<String,JarEntry> entryMap = new HashMap<>();
+        try (JarFile warFile = new JarFile(file)) {
+            JarEntry jarFileInWar = warFile.getJarEntry(archivePath);
+            InputStream jarFileIs = warFile.getInputStream(jarFileInWar);
+
+            try (JarInputStream jarIs = new JarInputStream(jarFileIs)) {
+                JarEntry entry = jarIs.getNextJarEntry();
+                while (entry != null) {
+                    entryMap.put(entry.getName(), entry);
+                    entry = jarIs.getNextJarEntry();
+                }
+                return new ArchiveIndex(key, lastModified, length, entryMap,
+                        jarIs.getManifest());
+            }
+        }
+    }
+}
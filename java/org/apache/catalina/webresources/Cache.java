@@ -21,9 +21,11 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.res.StringManager;
 
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.TreeSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicLong;
@@ -33,12 +35,34 @@ public class Cache {
     protected static final StringManager sm =
             StringManager.getManager(Constants.Package);
     private static final Log log = LogFactory.getLog(Cache.class);
-    private static final long TARGET_FREE_PERCENT_GET = 5;
     private static final long TARGET_FREE_PERCENT_BACKGROUND = 10;
 
     // objectMaxSize must be < maxSize/20
     private static final int OBJECT_MAX_SIZE_FACTOR = 20;
 
+    // Where cached content is held
+    static final int STORAGE_HEAP = 0;
+    static final int STORAGE_DIRECT = 1;
+    static final int STORAGE_MAPPED = 2;
+    private static final String[] STORAGE_NAMES = { "heap", "direct", "mapped" };
+
+    private static final Map<String,ContentEncoder> contentEncoders;
+
+    static {
+        Map<String,ContentEncoder> encoders = new HashMap<>();
+        ContentEncoder gzip = new GzipContentEncoder();
+        encoders.put(gzip.getEncoding(), gzip);
+        try {
+            for (ContentEncoder encoder : ServiceLoader.load(
+                    ContentEncoder.class, Cache.class.getClassLoader())) {
+                encoders.put(encoder.getEncoding(), encoder);
+            }
+        } catch (ServiceConfigurationError e) {
+            log.warn(sm.getString("cache.encoderLoadFail"), e);
+        }
+        contentEncoders = Collections.unmodifiableMap(encoders);
+    }
+
     private final StandardRoot root;
     private final AtomicLong size = new AtomicLong(0);
     private final ConcurrentMap<String,CachedResource> resourceCache =
@@ -46,8 +70,11 @@ public class Cache {
     private long ttl = 5000;
     private long maxSize = 10 * 1024 * 1024;
     private int objectMaxSize = (int) maxSize/OBJECT_MAX_SIZE_FACTOR;
+    private volatile int contentStorage = STORAGE_HEAP;
+    private final CacheEvictionPolicy evictionPolicy = new CacheEvictionPolicy(maxSize);
     private AtomicLong lookupCount = new AtomicLong(0);
     private AtomicLong hitCount = new AtomicLong(0);
+    private AtomicLong evictionCount = new AtomicLong(0);
 
     public Cache(StandardRoot root) {
         this.root = root;
@@ -71,8 +98,8 @@ public class Cache {
         if (cacheEntry == null) {
             // Local copy to ensure consistency
             int objectMaxSizeBytes = getObjectMaxSizeBytes();
-            CachedResource newCacheEntry =
-                    new CachedResource(this, root, path, getTtl(), objectMaxSizeBytes);
+            CachedResource newCacheEntry = new CachedResource(this, root, path,
+                    getTtl(), objectMaxSizeBytes, contentStorage);
 
             // Concurrent callers will end up with the same CachedResource
             // instance
@@ -86,25 +113,7 @@ public class Cache {
                 // Even if the resource content larger than objectMaxSizeBytes
                 // there is still benefit in caching the resource metadata
 
-                long delta = cacheEntry.getSize();
-                size.addAndGet(delta);
-
-                if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
-                    long targetSize =
-                            maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(
-                            targetSize, resourceCache.values().iterator());
-                    if (newSize > maxSize) {
-                        // Unable to create sufficient space for this resource
-                        // Remove it from the cache
-                        removeCacheEntry(path);
-                        log.warn(sm.getString("cache.addFail", path));
-                    }
-                }
+                addCacheEntry(cacheEntry);
             } else {
                 // Another thread added the entry to the cache
                 // Make sure it is validated
@@ -112,11 +121,25 @@ public class Cache {
             }
         } else {
             hitCount.incrementAndGet();
+            evictionPolicy.access(cacheEntry);
         }
 
         return cacheEntry;
     }
 
+    protected WebResource getEncodedResource(String path, String encoding) {
+        ContentEncoder encoder = contentEncoders.get(encoding);
+        if (encoder == null || noCache(path)) {
+            return null;
+        }
+
+        WebResource resource = getResource(path, false);
+        if (resource instanceof CachedResource) {
+            return ((CachedResource) resource).getEncodedResource(encoder);
+        }
+        return null;
+    }
+
     protected WebResource[] getResources(String path, boolean useClassLoaderResources) {
         lookupCount.incrementAndGet();
 
@@ -146,25 +169,7 @@ public class Cache {
                 cacheEntry.validateResources(useClassLoaderResources);
 
                 // Content will not be cached but we still need metadata size
-                long delta = cacheEntry.getSize();
-                size.addAndGet(delta);
-
-                if (size.get() > maxSize) {
-                    // Process resources unordered for speed. Trades cache
-                    // efficiency (younger entries may be evicted before older
-                    // ones) for speed since this is on the critical path for
-                    // request processing
-                    long targetSize =
-                            maxSize * (100 - TARGET_FREE_PERCENT_GET) / 100;
-                    long newSize = evict(
-                            targetSize, resourceCache.values().iterator());
-                    if (newSize > maxSize) {
-                        // Unable to create sufficient space for this resource
-                        // Remove it from the cache
-                        removeCacheEntry(path);
-                        log.warn(sm.getString("cache.addFail", path));
-                    }
-                }
+                addCacheEntry(cacheEntry);
             } else {
                 // Another thread added the entry to the cache
                 // Make sure it is validated
@@ -172,24 +177,18 @@ public class Cache {
             }
         } else {
             hitCount.incrementAndGet();
+            evictionPolicy.access(cacheEntry);
         }
 
         return cacheEntry.getWebResources();
     }
 
     protected void backgroundProcess() {
-        // Create an ordered set of all cached resources with the least recently
-        // used first. This is a background process so we can afford to take the
-        // time to order the elements first
-        TreeSet<CachedResource> orderedResources =
-                new TreeSet<>(new EvictionOrder());
-        orderedResources.addAll(resourceCache.values());
-
-        Iterator<CachedResource> iter = orderedResources.iterator();
-
+        // Create some free space so that additions on the request processing
+        // path do not have to evict entries
         long targetSize =
                 maxSize * (100 - TARGET_FREE_PERCENT_BACKGROUND) / 100;
-        long newSize = evict(targetSize, iter);
+        long newSize = evict(targetSize);
 
         if (newSize > targetSize) {
             log.info(sm.getString("cache.backgroundEvictFail",
@@ -205,22 +204,35 @@ public class Cache {
                 path.startsWith("/WEB-INF/lib/");
     }
 
-    private long evict(long targetSize, Iterator<CachedResource> iter) {
-
-        long now = System.currentTimeMillis();
+    private void addCacheEntry(CachedResource cacheEntry) {
+        long delta = cacheEntry.addedToCache();
+        size.addAndGet(delta);
+        evictionPolicy.add(cacheEntry);
+
+        if (size.get() > maxSize) {
+            // The eviction policy may choose the new entry if it is used less
+            // often than the entries it would replace
+            long newSize = evict(maxSize);
+            if (newSize > maxSize) {
+                log.warn(sm.getString("cache.addFail", cacheEntry.getWebappPath()));
+            }
+        }
+    }
 
+    private long evict(long targetSize) {
         long newSize = size.get();
 
-        while (newSize > targetSize && iter.hasNext()) {
-            CachedResource resource = iter.next();
-
-            // Don't expire anything that has been checked within the TTL
-            if (resource.getNextCheck() > now) {
-                continue;
+        while (newSize > targetSize) {
+            CachedResource victim = evictionPolicy.evict();
+            if (victim == null) {
+                break;
             }
 
-            // Remove the entry from the cache
-            removeCacheEntry(resource.getWebappPath());
+            // The entry may already have been replaced in the cache
+            if (resourceCache.remove(victim.getWebappPath(), victim)) {
+                size.addAndGet(-victim.removedFromCache());
+                evictionCount.incrementAndGet();
+            }
 
             newSize = size.get();
         }
@@ -228,12 +240,19 @@ public class Cache {
         return newSize;
     }
 
+    void addEncodedSize(long delta) {
+        // Eviction, if required, is left to the next addition to the cache or
+        // the background process
+        size.addAndGet(delta);
+    }
+
     void removeCacheEntry(String path) {
         // With concurrent calls for the same path, the entry is only removed
         // once and the cache size is only updated (if required) once.
         CachedResource cachedResource = resourceCache.remove(path);
         if (cachedResource != null) {
-            long delta = cachedResource.getSize();
+            evictionPolicy.remove(cachedResource);
+            long delta = cachedResource.removedFromCache();
             size.addAndGet(-delta);
         }
     }
@@ -254,6 +273,7 @@ public class Cache {
     public void setMaxSize(long maxSize) {
         // Internally bytes, externally kilobytes
         this.maxSize = maxSize * 1024;
+        evictionPolicy.setMaxWeight(this.maxSize);
     }
 
     public long getLookupCount() {
@@ -264,6 +284,14 @@ public class Cache {
         return hitCount.get();
     }
 
+    public long getMissCount() {
+        return lookupCount.get() - hitCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
     public int getObjectMaxSize() {
         // Internally bytes, externally kilobytes
         return objectMaxSize / 1024;
@@ -278,6 +306,30 @@ public class Cache {
         this.objectMaxSize = objectMaxSize * 1024;
     }
 
+    public String getContentStorage() {
+        return STORAGE_NAMES[contentStorage];
+    }
+
+    /**
+     * Set where the content of cached resources is held. Entries already in
+     * the cache are not affected.
+     *
+     * @param contentStorage <code>heap</code> for byte arrays on the Java
+     *            heap, <code>direct</code> for direct ByteBuffers or
+     *            <code>mapped</code> for memory mapped files (falling back to
+     *            direct ByteBuffers for resources that are not files)
+     */
+    public void setContentStorage(String contentStorage) {
+        for (int i = 0; i < STORAGE_NAMES.length; i++) {
+            if (STORAGE_NAMES[i].equalsIgnoreCase(contentStorage)) {
+                this.contentStorage = i;
+                return;
+            }
+        }
+        throw new IllegalArgumentException(
+                sm.getString("cache.invalidContentStorage", contentStorage));
+    }
+
     public int getObjectMaxSizeBytes() {
         return objectMaxSize;
     }
@@ -296,29 +348,11 @@ public class Cache {
 
     public void clear() {
         resourceCache.clear();
+        evictionPolicy.clear();
         size.set(0);
     }
 
     public long getSize() {
         return size.get() / 1024;
     }
-
-    private static class EvictionOrder implements Comparator<CachedResource> {
-
-        @Override
-        public int compare(CachedResource cr1, CachedResource cr2) {
-            long nc1 = cr1.getNextCheck();
-            long nc2 = cr2.getNextCheck();
-
-            // Oldest resource should be first (so iterator goes from oldest to
-            // youngest.
-            if (nc1 == nc2) {
-                return 0;
-            } else if (nc1 > nc2) {
-                return -1;
-            } else {
-                return 1;
-            }
-        }
-    }
 }
@@ -0,0 +1,300 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Window TinyLFU eviction policy for the resources held by {@link Cache}.
+ * <p>
+ * New entries enter a small LRU admission window (1% of the maximum size).
+ * Entries that overflow the window move to the probation segment of a
+ * segmented LRU. An entry in the probation segment that is used again is
+ * promoted to the protected segment (80% of the main space). Entries that
+ * overflow the protected segment are demoted back to the probation segment.
+ * When space is required, the most recent arrival in the probation segment
+ * (the candidate) is compared with the least recently used entry in that
+ * segment (the victim) using a {@link FrequencySketch} and the one used less
+ * often is evicted. This prevents resources that are requested once from
+ * displacing frequently used resources.
+ * <p>
+ * All operations are O(1). The lists are intrusive, using fields of
+ * {@link CachedResource}, and are guarded by a single lock. Recording an
+ * access is skipped if the lock is contended so that cache hits never block.
+ * Sizes are weights in bytes as reported by {@link CachedResource#getSize()}
+ * when the entry was added.
+ */
+final class CacheEvictionPolicy {
+
+    static final int QUEUE_NONE = 0;
+    static final int QUEUE_WINDOW = 1;
+    static final int QUEUE_PROBATION = 2;
+    static final int QUEUE_PROTECTED = 3;
+    static final int QUEUE_REMOVED = 4;
+
+    private static final int WINDOW_PERCENT = 1;
+    private static final int PROTECTED_PERCENT = 80;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FrequencySketch sketch = new FrequencySketch(16);
+
+    private final Queue window = new Queue();
+    private final Queue probation = new Queue();
+    private final Queue protectedQueue = new Queue();
+
+    private volatile long windowMaxWeight;
+    private volatile long protectedMaxWeight;
+    private int count;
+
+
+    CacheEvictionPolicy(long maxWeight) {
+        setMaxWeight(maxWeight);
+    }
+
+
+    void setMaxWeight(long maxWeight) {
+        long windowMax = maxWeight * WINDOW_PERCENT / 100;
+        windowMaxWeight = windowMax;
+        protectedMaxWeight = (maxWeight - windowMax) * PROTECTED_PERCENT / 100;
+    }
+
+
+    /**
+     * Start tracking a new cache entry.
+     *
+     * @param entry The new entry
+     */
+    void add(CachedResource entry) {
+        lock.lock();
+        try {
+            if (entry.policyQueue != QUEUE_NONE) {
+                // Already removed from the cache
+                return;
+            }
+            count++;
+            if (count > sketch.capacity()) {
+                sketch.ensureCapacity(count);
+            }
+            sketch.increment(hash(entry));
+            entry.policyWeight = entry.getSize();
+            window.addLast(entry, QUEUE_WINDOW);
+            // Move any overflow to the main space where it has to compete for
+            // admission
+            while (window.weight > windowMaxWeight && window.head != entry) {
+                CachedResource candidate = window.head;
+                window.remove(candidate);
+                probation.addLast(candidate, QUEUE_PROBATION);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Record a cache hit for an entry. The hit is not recorded if another
+     * thread is updating the policy.
+     *
+     * @param entry The entry that was used
+     */
+    void access(CachedResource entry) {
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            sketch.increment(hash(entry));
+            switch (entry.policyQueue) {
+                case QUEUE_WINDOW:
+                    window.moveToLast(entry);
+                    break;
+                case QUEUE_PROBATION:
+                    probation.remove(entry);
+                    protectedQueue.addLast(entry, QUEUE_PROTECTED);
+                    while (protectedQueue.weight > protectedMaxWeight &&
+                            protectedQueue.head != entry) {
+                        CachedResource demoted = protectedQueue.head;
+                        protectedQueue.remove(demoted);
+                        probation.addLast(demoted, QUEUE_PROBATION);
+                    }
+                    break;
+                case QUEUE_PROTECTED:
+                    protectedQueue.moveToLast(entry);
+                    break;
+                default:
+                    // Not tracked (yet or any more)
+                    break;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Stop tracking an entry that has been removed from the cache.
+     *
+     * @param entry The entry that was removed
+     */
+    void remove(CachedResource entry) {
+        lock.lock();
+        try {
+            unlink(entry);
+            entry.policyQueue = QUEUE_REMOVED;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    /**
+     * Select an entry to evict and stop tracking it.
+     *
+     * @return The entry that should be removed from the cache or
+     *         <code>null</code> if there are no entries
+     */
+    CachedResource evict() {
+        lock.lock();
+        try {
+            CachedResource result = null;
+            CachedResource victim = probation.head;
+            CachedResource candidate = probation.tail;
+            if (victim != null) {
+                if (victim != candidate &&
+                        sketch.frequency(hash(candidate)) > sketch.frequency(hash(victim))) {
+                    result = victim;
+                } else if (victim != candidate) {
+                    result = candidate;
+                } else {
+                    result = victim;
+                }
+            } else if (protectedQueue.head != null) {
+                result = protectedQueue.head;
+            } else {
+                result = window.head;
+            }
+            if (result != null) {
+                unlink(result);
+                result.policyQueue = QUEUE_REMOVED;
+            }
+            return result;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    void clear() {
+        lock.lock();
+        try {
+            window.clear();
+            probation.clear();
+            protectedQueue.clear();
+            sketch.clear();
+            count = 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+
+    private void unlink(CachedResource entry) {
+        switch (entry.policyQueue) {
+            case QUEUE_WINDOW:
+                window.remove(entry);
+                break;
+            case QUEUE_PROBATION:
+                probation.remove(entry);
+                break;
+            case QUEUE_PROTECTED:
+                protectedQueue.remove(entry);
+                break;
+            default:
+                return;
+        }
+        count--;
+    }
+
+
+    private static int hash(CachedResource entry) {
+        return entry.getWebappPath().hashCode();
+    }
+
+
+    /**
+     * Doubly linked list ordered from least to most recently used.
+     */
+    private static final class Queue {
+
+        private CachedResource head;
+        private CachedResource tail;
+        private long weight;
+
+        void addLast(CachedResource entry, int queue) {
+            entry.policyQueue = queue;
+            entry.policyPrev = tail;
+            entry.policyNext = null;
+            if (tail == null) {
+                head = entry;
+            } else {
+                tail.policyNext = entry;
+            }
+            tail = entry;
+            weight += entry.policyWeight;
+        }
+
+        void remove(CachedResource entry) {
+            CachedResource prev = entry.policyPrev;
+            CachedResource next = entry.policyNext;
+            if (prev == null) {
+                head = next;
+            } else {
+                prev.policyNext = next;
+            }
+            if (next == null) {
+                tail = prev;
+            } else {
+                next.policyPrev = prev;
+            }
+            entry.policyPrev = null;
+            entry.policyNext = null;
+            entry.policyQueue = QUEUE_NONE;
+            weight -= entry.policyWeight;
+        }
+
+        void moveToLast(CachedResource entry) {
+            if (entry != tail) {
+                int queue = entry.policyQueue;
+                remove(entry);
+                addLast(entry, queue);
+            }
+        }
+
+        void clear() {
+            CachedResource entry = head;
+            while (entry != null) {
+                CachedResource next = entry.policyNext;
+                entry.policyPrev = null;
+                entry.policyNext = null;
+                entry.policyQueue = QUEUE_REMOVED;
+                entry = next;
+            }
+            head = null;
+            tail = null;
+            weight = 0;
+        }
+    }
+}
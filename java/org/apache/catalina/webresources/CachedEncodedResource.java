@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.security.cert.Certificate;
+import java.util.jar.Manifest;
+
+/**
+ * A content encoded (e.g. gzip compressed) version of a {@link CachedResource}
+ * that is held in memory by the cache, on the heap or in a direct buffer
+ * depending on how the cache stores content. Metadata is obtained from the
+ * original resource apart from the content length and the ETag which reflect
+ * the encoded content.
+ */
+public class CachedEncodedResource implements WebResource {
+
+    private final CachedResource cachedResource;
+    private final String encoding;
+    private final ByteBuffer content;
+    private volatile String eTag = null;
+
+
+    CachedEncodedResource(CachedResource cachedResource, String encoding, ByteBuffer content) {
+        this.cachedResource = cachedResource;
+        this.encoding = encoding;
+        this.content = content;
+    }
+
+
+    /**
+     * @return The content coding that has been applied to this resource
+     */
+    public String getEncoding() {
+        return encoding;
+    }
+
+    @Override
+    public long getLastModified() {
+        return cachedResource.getLastModified();
+    }
+
+    @Override
+    public String getLastModifiedHttp() {
+        return cachedResource.getLastModifiedHttp();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public boolean isVirtual() {
+        return cachedResource.isVirtual();
+    }
+
+    @Override
+    public boolean isDirectory() {
+        return false;
+    }
+
+    @Override
+    public boolean isFile() {
+        return true;
+    }
+
+    @Override
+    public boolean delete() {
+        // The encoded version only exists in the cache
+        return false;
+    }
+
+    @Override
+    public String getName() {
+        return cachedResource.getName();
+    }
+
+    @Override
+    public long getContentLength() {
+        return content.remaining();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Always returns <code>null</code> as there is no file that holds the
+     * encoded content.
+     */
+    @Override
+    public String getCanonicalPath() {
+        return null;
+    }
+
+    @Override
+    public boolean canRead() {
+        return true;
+    }
+
+    @Override
+    public String getWebappPath() {
+        return cachedResource.getWebappPath();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ETag of the original resource with the content coding appended so
+     * that each representation has a distinct entity tag.
+     */
+    @Override
+    public String getETag() {
+        String eTag = this.eTag;
+        if (eTag == null) {
+            String original = cachedResource.getETag();
+            if (original != null && original.endsWith("\"")) {
+                eTag = original.substring(0, original.length() - 1) + '-' + encoding + '"';
+            } else {
+                eTag = original;
+            }
+            this.eTag = eTag;
+        }
+        return eTag;
+    }
+
+    @Override
+    public String getMimeType() {
+        return cachedResource.getMimeType();
+    }
+
+    @Override
+    public void setMimeType(String mimeType) {
+        cachedResource.setMimeType(mimeType);
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        if (content.hasArray()) {
+            return new ByteArrayInputStream(content.array(),
+                    content.arrayOffset() + content.position(), content.remaining());
+        }
+        return new ByteBufferInputStream(content.duplicate());
+    }
+
+    @Override
+    public byte[] getContent() {
+        if (content.hasArray() && content.arrayOffset() == 0 &&
+                content.remaining() == content.array().length) {
+            return content.array();
+        }
+        byte[] result = new byte[content.remaining()];
+        content.duplicate().get(result);
+        return result;
+    }
+
+    @Override
+    public ByteBuffer getContentBuffer() {
+        if (content.hasArray()) {
+            return null;
+        }
+        return content.duplicate();
+    }
+
+    boolean hasContent() {
+        return content != null;
+    }
+
+    @Override
+    public long getCreation() {
+        return cachedResource.getCreation();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Always returns <code>null</code> as the encoded content is not available
+     * via a URL.
+     */
+    @Override
+    public URL getURL() {
+        return null;
+    }
+
+    @Override
+    public URL getCodeBase() {
+        return null;
+    }
+
+    @Override
+    public Certificate[] getCertificates() {
+        return null;
+    }
+
+    @Override
+    public Manifest getManifest() {
+        return null;
+    }
+
+    @Override
+    public WebResourceRoot getWebResourceRoot() {
+        return cachedResource.getWebResourceRoot();
+    }
+}
@@ -18,11 +18,24 @@ package org.apache.catalina.webresources;
 
 import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.res.StringManager;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.security.cert.Certificate;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.Manifest;
 
 /**
@@ -36,11 +49,25 @@ public class CachedResource implements WebResource {
     // based on profiler data.
     private static final long CACHE_ENTRY_SIZE = 500;
 
+    // Smaller files are read into direct buffers. Mapping costs more to set up
+    // and each mapping keeps its file open until the buffer is garbage
+    // collected since a mapping cannot be released safely while other threads
+    // may still be reading it.
+    private static final int MAP_MIN_SIZE = 64 * 1024;
+
+    // Windows does not allow a mapped file to be modified or deleted, which
+    // would prevent the application from being redeployed or undeployed
+    private static final boolean MAP_ALLOWED = File.separatorChar != '\\';
+
+    private static final StringManager sm = StringManager.getManager(Constants.Package);
+    private static final Log log = LogFactory.getLog(CachedResource.class);
+
     private final Cache cache;
     private final StandardRoot root;
     private final String webAppPath;
     private final long ttl;
     private final int objectMaxSizeBytes;
+    private final int contentStorage;
 
     private volatile WebResource webResource;
     private volatile WebResource[] webResources;
@@ -49,20 +76,40 @@ public class CachedResource implements WebResource {
     private volatile Long cachedLastModified = null;
     private volatile String cachedLastModifiedHttp = null;
     private volatile byte[] cachedContent = null;
+    private volatile ByteBuffer cachedContentBuffer = null;
     private volatile Boolean cachedIsFile = null;
     private volatile Boolean cachedIsDirectory = null;
     private volatile Boolean cachedExists = null;
     private volatile Boolean cachedIsVirtual = null;
     private volatile Long cachedContentLength = null;
+    // Created on first use as most resources will never be encoded
+    private volatile ConcurrentMap<String,CachedEncodedResource> cachedEncodedResources = null;
+    private volatile long cachedEncodedSize = 0;
+    // Whether the size of this entry is currently included in the size of the
+    // cache and whether it has been removed from the cache, guarded by this
+    private boolean sizeInCache = false;
+    private boolean removedFromCache = false;
+
+    // Eviction policy state, guarded by the lock of the policy
+    CachedResource policyPrev;
+    CachedResource policyNext;
+    int policyQueue = CacheEvictionPolicy.QUEUE_NONE;
+    long policyWeight;
 
 
     public CachedResource(Cache cache, StandardRoot root, String path, long ttl,
             int objectMaxSizeBytes) {
+        this(cache, root, path, ttl, objectMaxSizeBytes, Cache.STORAGE_HEAP);
+    }
+
+    CachedResource(Cache cache, StandardRoot root, String path, long ttl,
+            int objectMaxSizeBytes, int contentStorage) {
         this.cache = cache;
         this.root = root;
         this.webAppPath = path;
         this.ttl = ttl;
         this.objectMaxSizeBytes = objectMaxSizeBytes;
+        this.contentStorage = contentStorage;
     }
 
     protected boolean validateResource(boolean useClassLoaderResources) {
@@ -99,7 +146,8 @@ public class CachedResource implements WebResource {
         }
 
         // If modified date or length change - resource has changed / been
-        // removed etc.
+        // removed etc. This is also what stops a mapping of a file that has
+        // since been truncated from being used beyond the end of the file.
         if (webResource.getLastModified() != getLastModified() ||
                 webResource.getContentLength() != getContentLength()) {
             return false;
@@ -261,6 +309,13 @@ public class CachedResource implements WebResource {
 
     @Override
     public InputStream getInputStream() {
+        if (contentStorage != Cache.STORAGE_HEAP) {
+            ByteBuffer buffer = getContentBuffer();
+            if (buffer == null) {
+                return webResource.getInputStream();
+            }
+            return new ByteBufferInputStream(buffer);
+        }
         byte[] content = cachedContent;
         if (content == null) {
             // Can't cache InputStreams
@@ -271,6 +326,16 @@ public class CachedResource implements WebResource {
 
     @Override
     public byte[] getContent() {
+        if (contentStorage != Cache.STORAGE_HEAP) {
+            // Copy so the cached content stays off the heap
+            ByteBuffer buffer = getContentBuffer();
+            if (buffer == null) {
+                return null;
+            }
+            byte[] result = new byte[buffer.remaining()];
+            buffer.get(result);
+            return result;
+        }
         byte[] cachedContent = this.cachedContent;
         if (cachedContent == null) {
             if (getContentLength() > objectMaxSizeBytes) {
@@ -282,6 +347,75 @@ public class CachedResource implements WebResource {
         return cachedContent;
     }
 
+    @Override
+    public ByteBuffer getContentBuffer() {
+        if (contentStorage == Cache.STORAGE_HEAP) {
+            return null;
+        }
+        ByteBuffer cachedContentBuffer = this.cachedContentBuffer;
+        if (cachedContentBuffer == null) {
+            if (getContentLength() > objectMaxSizeBytes || !isFile()) {
+                return null;
+            }
+            synchronized (this) {
+                cachedContentBuffer = this.cachedContentBuffer;
+                if (cachedContentBuffer == null) {
+                    cachedContentBuffer = loadContentBuffer();
+                    if (cachedContentBuffer == null) {
+                        return null;
+                    }
+                    this.cachedContentBuffer = cachedContentBuffer;
+                }
+            }
+        }
+        return cachedContentBuffer.duplicate();
+    }
+
+    private ByteBuffer loadContentBuffer() {
+        int length = (int) getContentLength();
+        if (contentStorage == Cache.STORAGE_MAPPED && MAP_ALLOWED && length >= MAP_MIN_SIZE) {
+            String canonicalPath = webResource.getCanonicalPath();
+            if (canonicalPath != null) {
+                Path path = Paths.get(canonicalPath);
+                try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                    // The mapping remains valid after the channel is closed
+                    if (channel.size() == length) {
+                        return channel.map(MapMode.READ_ONLY, 0, length);
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (log.isDebugEnabled()) {
+                        log.debug(sm.getString("cachedResource.mapFail", webAppPath), e);
+                    }
+                }
+            }
+            // Too small, not a file or could not be mapped. Use a direct
+            // buffer.
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+        try (InputStream is = webResource.getInputStream()) {
+            if (is == null) {
+                return null;
+            }
+            byte[] transfer = new byte[Math.min(length, 8192)];
+            int read;
+            while (buffer.hasRemaining() &&
+                    (read = is.read(transfer, 0, Math.min(transfer.length, buffer.remaining()))) > -1) {
+                buffer.put(transfer, 0, read);
+            }
+        } catch (IOException e) {
+            log.warn(sm.getString("cachedResource.readFail", webAppPath), e);
+            return null;
+        }
+        if (buffer.hasRemaining()) {
+            // The resource is shorter than expected. It has probably been
+            // modified so don't cache it.
+            return null;
+        }
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
     @Override
     public long getCreation() {
         return webResource.getCreation();
@@ -312,6 +446,99 @@ public class CachedResource implements WebResource {
         return webResource.getWebResourceRoot();
     }
 
+    /**
+     * Obtain a version of this resource's content encoded by the given
+     * encoder. The encoded content is created on first use and is then held by
+     * the cache until this entry is removed.
+     *
+     * @param encoder The encoder for the required content coding
+     *
+     * @return The encoded resource or <code>null</code> if this resource is not
+     *         a file, its content is too large to cache or encoding would not
+     *         reduce its size
+     */
+    protected WebResource getEncodedResource(ContentEncoder encoder) {
+        String encoding = encoder.getEncoding();
+        ConcurrentMap<String,CachedEncodedResource> encodedResources = cachedEncodedResources;
+        if (encodedResources == null) {
+            synchronized (this) {
+                encodedResources = cachedEncodedResources;
+                if (encodedResources == null) {
+                    encodedResources = new ConcurrentHashMap<>(4);
+                    cachedEncodedResources = encodedResources;
+                }
+            }
+        }
+
+        CachedEncodedResource result = encodedResources.get(encoding);
+        if (result == null) {
+            // Concurrent callers may encode the content more than once but
+            // only the first result is retained
+            byte[] encodedContent = null;
+            byte[] content = null;
+            if (isFile()) {
+                content = getContent();
+            }
+            if (content != null) {
+                try {
+                    encodedContent = encoder.encode(content);
+                } catch (IOException | RuntimeException e) {
+                    log.warn(sm.getString("cachedResource.encodeFail", webAppPath, encoding), e);
+                }
+                if (encodedContent != null && encodedContent.length >= content.length) {
+                    // No point serving the encoded version
+                    encodedContent = null;
+                }
+            }
+            // Entries without content record that no encoded version is
+            // available so the encoding is not attempted again
+            result = new CachedEncodedResource(this, encoding,
+                    toStorage(encodedContent));
+            CachedEncodedResource existing = encodedResources.putIfAbsent(encoding, result);
+            if (existing == null) {
+                if (encodedContent != null) {
+                    // The entry may have been evicted while the content was
+                    // being encoded. Charging the cache for it then would
+                    // leave the cache size permanently too large.
+                    boolean charge;
+                    boolean removed;
+                    synchronized (this) {
+                        removed = removedFromCache;
+                        if (!removed) {
+                            cachedEncodedSize += encodedContent.length;
+                        }
+                        charge = sizeInCache && !removed;
+                    }
+                    if (charge) {
+                        cache.addEncodedSize(encodedContent.length);
+                    } else if (removed) {
+                        encodedResources.remove(encoding, result);
+                    }
+                }
+            } else {
+                result = existing;
+            }
+        }
+
+        if (!result.hasContent()) {
+            return null;
+        }
+        return result;
+    }
+
+    private ByteBuffer toStorage(byte[] content) {
+        if (content == null) {
+            return null;
+        }
+        if (contentStorage == Cache.STORAGE_HEAP) {
+            return ByteBuffer.wrap(content);
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(content.length);
+        buffer.put(content);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
     WebResource getWebResource() {
         return webResource;
     }
@@ -320,11 +547,37 @@ public class CachedResource implements WebResource {
         return webResources;
     }
 
+    /*
+     * Called by the cache when this entry's size is added to the cache size.
+     * Returns the size that was added.
+     */
+    synchronized long addedToCache() {
+        if (removedFromCache) {
+            // Already removed so the size has already been accounted for
+            return 0;
+        }
+        sizeInCache = true;
+        return getSize();
+    }
+
+    /*
+     * Called by the cache when this entry is removed. Returns the size to
+     * remove from the cache size. Encoded versions created after this are
+     * not retained.
+     */
+    synchronized long removedFromCache() {
+        boolean wasInCache = sizeInCache;
+        sizeInCache = false;
+        removedFromCache = true;
+        return wasInCache ? getSize() : 0;
+    }
+
     // Assume that the cache entry will always include the content unless the
     // resource content is larger than objectMaxSizeBytes. This isn't always the
-    // case but it makes tracking the current cache size easier.
+    // case but it makes tracking the current cache size easier. Encoded
+    // versions of the content are included once they have been created.
     long getSize() {
-        long result = CACHE_ENTRY_SIZE;
+        long result = CACHE_ENTRY_SIZE + cachedEncodedSize;
         if (getContentLength() <= objectMaxSizeBytes) {
             result += getContentLength();
         }
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.IOException;
+
+/**
+ * Service provider interface for the content codings the resource cache can
+ * apply to cached resources. Implementations are discovered with
+ * {@link java.util.ServiceLoader} using the class loader that loaded this
+ * interface, so additional codings (e.g. <code>br</code>) may be added by
+ * placing an implementation and the associated
+ * <code>META-INF/services/org.apache.catalina.webresources.ContentEncoder</code>
+ * file on the server class path. An implementation for a coding replaces any
+ * built-in implementation for the same coding. Implementations must be thread
+ * safe.
+ */
+public interface ContentEncoder {
+
+    /**
+     * @return The HTTP content coding, as used in the
+     *         <code>Content-Encoding</code> header, produced by this encoder
+     */
+    String getEncoding();
+
+    /**
+     * Encode the complete content of a resource.
+     *
+     * @param content The content to encode
+     *
+     * @return The encoded content
+     *
+     * @throws IOException If the content cannot be encoded
+     */
+    byte[] encode(byte[] content) throws IOException;
+}
@@ -23,6 +23,7 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.security.cert.Certificate;
 import java.util.jar.Manifest;
 
@@ -140,6 +141,11 @@ public class EmptyResource implements WebResource {
         return null;
     }
 
+    @Override
+    public ByteBuffer getContentBuffer() {
+        return null;
+    }
+
     @Override
     public long getCreation() {
         return 0;
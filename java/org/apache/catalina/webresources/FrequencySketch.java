@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+/**
+ * A probabilistic estimate of how often each key has been seen recently, used
+ * by {@link CacheEvictionPolicy} to decide whether a new entry is worth
+ * admitting at the expense of an existing one. This is a count-min sketch of
+ * 4-bit counters, sixteen to a <code>long</code>, with a depth of four.
+ * Counters saturate at 15 and all counters are halved once the number of
+ * increments reaches ten times the capacity so the estimate follows changes in
+ * popularity.
+ * <p>
+ * This class is not thread safe. Callers are expected to provide any
+ * necessary synchronization.
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = new long[] {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+            0x9ae16a3b2f90404fL, 0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAXIMUM_CAPACITY = 1 << 24;
+
+    private long[] table;
+    private int tableMask;
+    private int sampleSize;
+    private int additions;
+
+
+    FrequencySketch(int capacity) {
+        ensureCapacity(capacity);
+    }
+
+
+    /**
+     * Grow the sketch, if necessary, so that it can hold the given number of
+     * keys with a low error rate. Growing the sketch discards the current
+     * counts.
+     *
+     * @param capacity  The expected number of keys
+     */
+    void ensureCapacity(int capacity) {
+        int size = Math.max(16, Math.min(capacity, MAXIMUM_CAPACITY));
+        if (table != null && table.length >= size) {
+            return;
+        }
+        table = new long[tableSizeFor(size)];
+        tableMask = table.length - 1;
+        sampleSize = 10 * table.length;
+        additions = 0;
+    }
+
+
+    int capacity() {
+        return table.length;
+    }
+
+
+    /**
+     * @param hash  The hash of the key
+     * @return the estimated number of times the key has been seen, from 0 to
+     *         15
+     */
+    int frequency(int hash) {
+        int start = (spread(hash) & 3) << 2;
+        int result = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            result = Math.min(result, count);
+        }
+        return result;
+    }
+
+
+    /**
+     * Record an occurrence of the key.
+     *
+     * @param hash  The hash of the key
+     */
+    void increment(int hash) {
+        int start = (spread(hash) & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+
+    void clear() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = 0;
+        }
+        additions = 0;
+    }
+
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+
+    private void reset() {
+        int odd = 0;
+        for (int i = 0; i < table.length; i++) {
+            odd += Long.bitCount(table[i] & 0x1111111111111111L);
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions = (additions >>> 1) - (odd >>> 2);
+    }
+
+
+    private int indexOf(int hash, int depth) {
+        long h = (hash + SEEDS[depth]) * SEEDS[depth];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+
+    private static int spread(int hash) {
+        int h = hash * 0x9e3779b9;
+        return h ^ (h >>> 16);
+    }
+
+
+    private static int tableSizeFor(int size) {
+        int result = Integer.highestOneBit(size - 1) << 1;
+        return result < 1 ? 1 : result;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encodes content using the <code>gzip</code> content coding. As the result is
+ * cached, the best compression level is used.
+ */
+public class GzipContentEncoder implements ContentEncoder {
+
+    @Override
+    public String getEncoding() {
+        return "gzip";
+    }
+
+    @Override
+    public byte[] encode(byte[] content) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(content.length / 2 + 32);
+        try (GZIPOutputStream gos = new BestCompressionGZIPOutputStream(baos)) {
+            gos.write(content);
+        }
+        return baos.toByteArray();
+    }
+
+
+    private static class BestCompressionGZIPOutputStream extends GZIPOutputStream {
+
+        public BestCompressionGZIPOutputStream(ByteArrayOutputStream baos) throws IOException {
+            super(baos);
+            def.setLevel(Deflater.BEST_COMPRESSION);
+        }
+    }
+}
@@ -21,11 +21,8 @@ import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 
 import java.io.File;
-import java.io.IOException;
 import java.net.MalformedURLException;
-import java.util.Enumeration;
 import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
 /**
@@ -85,16 +82,7 @@ public class JarResourceSet extends AbstractArchiveResourceSet {
     @Override
     protected void initInternal() throws LifecycleException {
 
-        try (JarFile jarFile = new JarFile(getBase())) {
-            Enumeration<JarEntry> entries = jarFile.entries();
-            while (entries.hasMoreElements()) {
-                JarEntry entry = entries.nextElement();
-                getJarFileEntries().put(entry.getName(), entry);
-            }
-            setManifest(jarFile.getManifest());
-        } catch (IOException ioe) {
-            throw new IllegalArgumentException(ioe);
-        }
+        initArchiveIndex(null);
 
         try {
             setBaseUrl((new File(getBase())).toURI().toURL());
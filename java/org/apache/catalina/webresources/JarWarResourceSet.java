@@ -21,12 +21,8 @@ import org.apache.catalina.WebResource;
 import org.apache.catalina.WebResourceRoot;
 
 import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
 
 /**
@@ -88,21 +84,7 @@ public class JarWarResourceSet extends AbstractArchiveResourceSet {
     @Override
     protected void initInternal() throws LifecycleException {
 
-        try (JarFile warFile = new JarFile(getBase())) {
-            JarEntry jarFileInWar = warFile.getJarEntry(archivePath);
-            InputStream jarFileIs = warFile.getInputStream(jarFileInWar);
-
-            try (JarInputStream jarIs = new JarInputStream(jarFileIs)) {
-                JarEntry entry = jarIs.getNextJarEntry();
-                while (entry != null) {
-                    getJarFileEntries().put(entry.getName(), entry);
-                    entry = jarIs.getNextJarEntry();
-                }
-                setManifest(jarIs.getManifest());
-            }
-        } catch (IOException ioe) {
-            throw new IllegalArgumentException(ioe);
-        }
+        initArchiveIndex(archivePath);
 
         try {
             setBaseUrl((new File(getBase())).toURI().toURL());
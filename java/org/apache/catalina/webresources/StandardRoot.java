@@ -203,6 +203,18 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
     }
 
 
+    @Override
+    public WebResource getEncodedResource(String path, String encoding) {
+        path = validate(path);
+
+        if (isCachingAllowed()) {
+            return cache.getEncodedResource(path, encoding);
+        } else {
+            return null;
+        }
+    }
+
+
     @Override
     public WebResource getClassLoaderResource(String path) {
         return getResource("/WEB-INF/classes" + path, true, true);
@@ -445,7 +457,8 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         return postResources.toArray(new WebResourceSet[postResources.size()]);
     }
 
-    protected WebResourceSet[] getClassResources() {
+    @Override
+    public WebResourceSet[] getClassResources() {
         return classResources.toArray(new WebResourceSet[classResources.size()]);
     }
 
@@ -512,6 +525,16 @@ public class StandardRoot extends LifecycleMBeanBase implements WebResourceRoot
         }
     }
 
+    @Override
+    public String getCacheContentStorage() {
+        return cache.getContentStorage();
+    }
+
+    @Override
+    public void setCacheContentStorage(String cacheContentStorage) {
+        cache.setContentStorage(cacheContentStorage);
+    }
+
     @Override
     public boolean getTrackLockedFiles() {
         return trackLockedFiles;
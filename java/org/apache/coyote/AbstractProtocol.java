@@ -179,6 +179,18 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
         endpoint.setExecutor(executor);
     }
 
+    public boolean getUseVirtualThreads() { return endpoint.getUseVirtualThreads(); }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        endpoint.setUseVirtualThreads(useVirtualThreads);
+    }
+
+    public boolean getUseWorkStealing() { return endpoint.getUseWorkStealing(); }
+
+    public void setUseWorkStealing(boolean useWorkStealing) {
+        endpoint.setUseWorkStealing(useWorkStealing);
+    }
+
     public int getMaxThreads() { return endpoint.getMaxThreads(); }
 
     public void setMaxThreads(int maxThreads) {
@@ -477,6 +489,7 @@ public abstract class AbstractProtocol<S> implements ProtocolHandler,
 
         String endpointName = getName();
         endpoint.setName(endpointName.substring(1, endpointName.length()-1));
+        endpoint.setDomain(domain);
 
         try {
             endpoint.init();
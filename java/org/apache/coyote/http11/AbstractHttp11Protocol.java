@@ -19,6 +19,7 @@ package org.apache.coyote.http11;
 import org.apache.coyote.AbstractProtocol;
 import org.apache.coyote.Processor;
 import org.apache.coyote.UpgradeProtocol;
+import org.apache.coyote.http11.filters.DeflaterPool;
 import org.apache.coyote.http11.upgrade.InternalHttpUpgradeHandler;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorExternal;
 import org.apache.coyote.http11.upgrade.UpgradeProcessorInternal;
@@ -32,6 +33,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
 
 public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
 
@@ -82,6 +84,13 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
     private String compressableMimeType = "text/html,text/xml,text/plain,text/css,text/javascript,application/javascript";
     private String[] compressableMimeTypes = null;
     private int compressionMinSize = 2048;
+    private int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+    private String compressionStrategy = "default";
+    /**
+     * Deflaters shared by the gzip filters of all the processors created by
+     * this protocol.
+     */
+    private DeflaterPool deflaterPool = null;
     /**
      * Regular expression that defines the User agents which should be
      * restricted to HTTP/1.0 support.
@@ -127,9 +136,20 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
             configureUpgradeProtocol(upgradeProtocol);
         }
 
+        deflaterPool = new DeflaterPool(getCompressionLevel(),
+                toDeflaterStrategy(getCompressionStrategy()), getProcessorCache());
+
         super.init();
     }
 
+    @Override
+    public void destroy() {
+        super.destroy();
+        if (deflaterPool != null) {
+            deflaterPool.clear();
+        }
+    }
+
     @Override
     protected String getProtocolName() {
         return "Http";
@@ -208,6 +228,49 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
         compressionMinSize = valueI;
     }
 
+    public int getCompressionLevel() { return compressionLevel; }
+
+    /**
+     * Set the deflate compression level used for gzip encoded responses.
+     *
+     * @param compressionLevel 0 to 9 or -1 for the zlib default
+     */
+    public void setCompressionLevel(int compressionLevel) {
+        if (compressionLevel < Deflater.DEFAULT_COMPRESSION ||
+                compressionLevel > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException(sm.getString(
+                    "abstractHttp11Protocol.invalidCompressionLevel",
+                    Integer.toString(compressionLevel)));
+        }
+        this.compressionLevel = compressionLevel;
+    }
+
+    public String getCompressionStrategy() { return compressionStrategy; }
+
+    /**
+     * Set the deflate strategy used for gzip encoded responses.
+     *
+     * @param compressionStrategy One of <code>default</code>,
+     *            <code>filtered</code> or <code>huffmanOnly</code>
+     */
+    public void setCompressionStrategy(String compressionStrategy) {
+        // Validate now rather than when the connector starts
+        toDeflaterStrategy(compressionStrategy);
+        this.compressionStrategy = compressionStrategy;
+    }
+
+    private static int toDeflaterStrategy(String compressionStrategy) {
+        if ("default".equalsIgnoreCase(compressionStrategy)) {
+            return Deflater.DEFAULT_STRATEGY;
+        } else if ("filtered".equalsIgnoreCase(compressionStrategy)) {
+            return Deflater.FILTERED;
+        } else if ("huffmanOnly".equalsIgnoreCase(compressionStrategy)) {
+            return Deflater.HUFFMAN_ONLY;
+        }
+        throw new IllegalArgumentException(sm.getString(
+                "abstractHttp11Protocol.invalidCompressionStrategy", compressionStrategy));
+    }
+
     public String getRestrictedUserAgents() { return restrictedUserAgents; }
 
     public void setRestrictedUserAgents(String valueS) {
@@ -645,7 +708,8 @@ public abstract class AbstractHttp11Protocol<S> extends AbstractProtocol<S> {
             Http11Processor processor = new Http11Processor(
                     proto.getMaxHttpHeaderSize(), proto.getEndpoint(), proto.getMaxTrailerSize(),
                     proto.allowedTrailerHeaders, proto.getMaxExtensionSize(),
-                    proto.getMaxSwallowSize(), proto.httpUpgradeProtocols);
+                    proto.getMaxSwallowSize(), proto.httpUpgradeProtocols,
+                    proto.deflaterPool);
             proto.configureProcessor(processor);
             register(processor);
             return processor;
@@ -0,0 +1,43 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package org.apache.coyote.http11;
+
+import org.apache.coyote.OutputBuffer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Output buffer that can write several buffers in a single operation. Filters
+ * that frame the data they are given, such as the chunked filter, use it to
+ * write the framing and the data together.
+ */
+public interface GatheringOutputBuffer extends OutputBuffer {
+
+    /**
+     * Write the remaining data of all of the given buffers to the response.
+     * The caller owns the buffers.
+     *
+     * @param srcs data to write
+     *
+     * @return The number of bytes written
+     *
+     * @throws IOException an underlying I/O error occurred
+     */
+    long doWrite(ByteBuffer[] srcs) throws IOException;
+}
@@ -62,6 +62,14 @@ public class Http11NioProtocol extends AbstractHttp11JsseProtocol<NioChannel> {
         ((NioEndpoint)getEndpoint()).setPollerThreadCount(count);
     }
 
+    public int getListenerCount() {
+        return ((NioEndpoint)getEndpoint()).getListenerCount();
+    }
+
+    public void setListenerCount(int count) {
+        ((NioEndpoint)getEndpoint()).setListenerCount(count);
+    }
+
     public long getSelectorTimeout() {
         return ((NioEndpoint)getEndpoint()).getSelectorTimeout();
     }
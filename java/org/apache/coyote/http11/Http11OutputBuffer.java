@@ -29,6 +29,7 @@ import org.apache.tomcat.util.net.SocketWrapperBase;
 import org.apache.tomcat.util.res.StringManager;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Provides buffering for the HTTP headers (allowing responses to be reset
@@ -595,7 +596,7 @@ public class Http11OutputBuffer implements OutputBuffer {
     /**
      * This class is an output buffer which will write data to a socket.
      */
-    protected class SocketOutputBuffer implements OutputBuffer {
+    protected class SocketOutputBuffer implements GatheringOutputBuffer {
 
         /**
          * Write chunk.
@@ -610,6 +611,17 @@ public class Http11OutputBuffer implements OutputBuffer {
             return len;
         }
 
+        @Override
+        public long doWrite(ByteBuffer[] srcs) throws IOException {
+            long len = 0;
+            for (ByteBuffer src : srcs) {
+                len += src.remaining();
+            }
+            socketWrapper.write(isBlocking(), srcs, 0, srcs.length);
+            byteCount += len;
+            return len;
+        }
+
         @Override
         public long getBytesWritten() {
             return byteCount;
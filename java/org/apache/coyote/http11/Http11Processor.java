@@ -222,7 +222,7 @@ public class Http11Processor extends AbstractProcessor {
 
     public Http11Processor(int maxHttpHeaderSize, AbstractEndpoint<?> endpoint,int maxTrailerSize,
             Set<String> allowedTrailerHeaders, int maxExtensionSize, int maxSwallowSize,
-            Map<String,UpgradeProtocol> httpUpgradeProtocols) {
+            Map<String,UpgradeProtocol> httpUpgradeProtocols, DeflaterPool deflaterPool) {
 
         super(endpoint);
         userDataHelper = new UserDataHelper(log);
@@ -251,7 +251,11 @@ public class Http11Processor extends AbstractProcessor {
 
         // Create and add the chunked filters.
         //inputBuffer.addFilter(new GzipInputFilter());
-        outputBuffer.addFilter(new GzipOutputFilter());
+        if (deflaterPool == null) {
+            outputBuffer.addFilter(new GzipOutputFilter());
+        } else {
+            outputBuffer.addFilter(new GzipOutputFilter(deflaterPool));
+        }
 
         pluggableFilterIndex = inputBuffer.getFilters().length;
 
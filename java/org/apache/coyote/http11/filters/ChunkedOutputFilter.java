@@ -19,11 +19,13 @@ package org.apache.coyote.http11.filters;
 
 import org.apache.coyote.OutputBuffer;
 import org.apache.coyote.Response;
+import org.apache.coyote.http11.GatheringOutputBuffer;
 import org.apache.coyote.http11.OutputFilter;
 import org.apache.tomcat.util.buf.ByteChunk;
 import org.apache.tomcat.util.buf.HexUtils;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 /**
  * Chunked output filter.
@@ -63,6 +65,14 @@ public class ChunkedOutputFilter implements OutputFilter {
      * Chunk header.
      */
     protected final ByteChunk chunkHeader = new ByteChunk();
+
+
+    /**
+     * Chunk header, data and trailer for a single gathering write when the
+     * next buffer supports them.
+     */
+    private final ByteBuffer[] chunkBuffers = new ByteBuffer[] {
+            ByteBuffer.wrap(chunkLength), null, ByteBuffer.wrap(chunkLength) };
     /**
      * Next buffer in the pipeline.
      */
@@ -101,6 +111,22 @@ public class ChunkedOutputFilter implements OutputFilter {
             current = current / 16;
             chunkLength[pos--] = HexUtils.getHex(digit);
         }
+
+        if (buffer instanceof GatheringOutputBuffer) {
+            // Write the chunk header, data and trailer together rather than
+            // as three separate writes
+            chunkBuffers[0].limit(10).position(pos + 1);
+            chunkBuffers[1] = ByteBuffer.wrap(
+                    chunk.getBuffer(), chunk.getStart(), result);
+            chunkBuffers[2].limit(10).position(8);
+            try {
+                ((GatheringOutputBuffer) buffer).doWrite(chunkBuffers);
+            } finally {
+                chunkBuffers[1] = null;
+            }
+            return result;
+        }
+
         chunkHeader.setBytes(chunkLength, pos + 1, 9 - pos);
         buffer.doWrite(chunkHeader);
 
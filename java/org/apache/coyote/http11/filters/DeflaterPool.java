@@ -0,0 +1,97 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http11.filters;
+
+import org.apache.tomcat.util.collections.SynchronizedStack;
+
+import java.util.zip.Deflater;
+
+/**
+ * Pool of {@link Deflater} instances, configured to produce raw deflate data,
+ * that are reset and re-used across responses so the native zlib state does
+ * not have to be allocated and freed for every compressed response.
+ * Deflaters that cannot be returned to the pool are ended immediately rather
+ * than being left for finalization.
+ */
+public class DeflaterPool {
+
+    private final int level;
+    private final int strategy;
+    private final SynchronizedStack<Deflater> deflaters;
+    private volatile boolean closed = false;
+
+
+    /**
+     * @param level    The compression level for new deflaters
+     * @param strategy The compression strategy for new deflaters
+     * @param size     The maximum number of idle deflaters to retain. Zero
+     *                     disables pooling and -1 means unlimited.
+     */
+    public DeflaterPool(int level, int strategy, int size) {
+        this.level = level;
+        this.strategy = strategy;
+        int initialSize = SynchronizedStack.DEFAULT_SIZE;
+        if (size > -1 && size < initialSize) {
+            initialSize = size;
+        }
+        deflaters = new SynchronizedStack<>(initialSize, size);
+    }
+
+
+    public Deflater borrow() {
+        Deflater deflater = deflaters.pop();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            deflater.setStrategy(strategy);
+        }
+        return deflater;
+    }
+
+
+    public void release(Deflater deflater) {
+        if (closed) {
+            deflater.end();
+            return;
+        }
+        deflater.reset();
+        if (!deflaters.push(deflater)) {
+            deflater.end();
+        } else if (closed) {
+            // clear() ran concurrently and may have missed this deflater
+            endIdle();
+        }
+    }
+
+
+    /**
+     * Frees the native resources of all the idle deflaters in the pool. Any
+     * deflater that is still borrowed is ended when it is released.
+     */
+    public void clear() {
+        closed = true;
+        endIdle();
+    }
+
+
+    private void endIdle() {
+        Deflater deflater = deflaters.pop();
+        while (deflater != null) {
+            deflater.end();
+            deflater = deflaters.pop();
+        }
+    }
+}
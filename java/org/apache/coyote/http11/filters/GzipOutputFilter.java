@@ -25,11 +25,13 @@ import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.buf.ByteChunk;
 
 import java.io.IOException;
-import java.io.OutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 /**
- * Gzip output filter.
+ * Gzip output filter. The response body is fed straight from the supplied
+ * chunks to a {@link Deflater} obtained from a {@link DeflaterPool} and the
+ * gzip header and trailer are written by the filter.
  *
  * @author Remy Maucherat
  */
@@ -39,31 +41,67 @@ public class GzipOutputFilter implements OutputFilter {
     protected static final Log log = LogFactory.getLog(GzipOutputFilter.class);
 
 
-    // ----------------------------------------------------- Instance Variables
     /**
-     * Fake internal output stream.
+     * Gzip header with no optional fields, no modification time and an
+     * unknown OS. This matches the header written by GZIPOutputStream.
      */
-    protected final OutputStream fakeOutputStream = new FakeOutputStream();
+    private static final byte[] GZIP_HEADER = {
+            0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+
+
+    // ----------------------------------------------------- Instance Variables
     /**
      * Next buffer in the pipeline.
      */
     protected OutputBuffer buffer;
     /**
-     * Compression output stream.
+     * Source of the deflater used for each response.
+     */
+    private final DeflaterPool deflaterPool;
+    /**
+     * Deflater for the current response, if any.
+     */
+    private Deflater deflater = null;
+    /**
+     * Checksum of the uncompressed data for the gzip trailer.
      */
-    protected GZIPOutputStream compressionStream = null;
+    private final CRC32 crc = new CRC32();
+    /**
+     * Buffer the deflater writes compressed data into.
+     */
+    private final byte[] deflated = new byte[8 * 1024];
+    private final ByteChunk outputChunk = new ByteChunk();
+
+
+    // ----------------------------------------------------------- Constructors
+
+    /**
+     * Creates a filter that uses a new deflater for each response.
+     */
+    public GzipOutputFilter() {
+        this(new DeflaterPool(Deflater.DEFAULT_COMPRESSION, Deflater.DEFAULT_STRATEGY, 0));
+    }
+
+
+    public GzipOutputFilter(DeflaterPool deflaterPool) {
+        this.deflaterPool = deflaterPool;
+    }
 
 
     // --------------------------------------------------- OutputBuffer Methods
 
     @Override
     public int doWrite(ByteChunk chunk) throws IOException {
-        if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
+        start();
+        int len = chunk.getLength();
+        if (len > 0) {
+            crc.update(chunk.getBytes(), chunk.getStart(), len);
+            deflater.setInput(chunk.getBytes(), chunk.getStart(), len);
+            while (!deflater.needsInput()) {
+                deflate(Deflater.NO_FLUSH);
+            }
         }
-        compressionStream.write(chunk.getBytes(), chunk.getStart(),
-                                chunk.getLength());
-        return chunk.getLength();
+        return len;
     }
 
 
@@ -79,12 +117,15 @@ public class GzipOutputFilter implements OutputFilter {
      * Added to allow flushing to happen for the gzip'ed outputstream
      */
     public void flush() {
-        if (compressionStream != null) {
+        if (deflater != null) {
             try {
                 if (log.isDebugEnabled()) {
                     log.debug("Flushing the compression stream!");
                 }
-                compressionStream.flush();
+                // Keep going until the deflater has no more output
+                while (deflate(Deflater.SYNC_FLUSH) == deflated.length) {
+                    // NO-OP
+                }
             } catch (IOException e) {
                 if (log.isDebugEnabled()) {
                     log.debug("Ignored exception while flushing gzip filter", e);
@@ -120,11 +161,18 @@ public class GzipOutputFilter implements OutputFilter {
     @Override
     public long end()
         throws IOException {
-        if (compressionStream == null) {
-            compressionStream = new GZIPOutputStream(fakeOutputStream, true);
+        start();
+        deflater.finish();
+        while (!deflater.finished()) {
+            deflate(Deflater.NO_FLUSH);
         }
-        compressionStream.finish();
-        compressionStream.close();
+        // Trailer is the CRC-32 and the uncompressed size, both little endian
+        byte[] trailer = new byte[8];
+        writeInt((int) crc.getValue(), trailer, 0);
+        writeInt((int) deflater.getBytesRead(), trailer, 4);
+        write(trailer, trailer.length);
+        deflaterPool.release(deflater);
+        deflater = null;
         return ((OutputFilter) buffer).end();
     }
 
@@ -134,38 +182,45 @@ public class GzipOutputFilter implements OutputFilter {
      */
     @Override
     public void recycle() {
-        // Set compression stream to null
-        compressionStream = null;
+        // Return the deflater if the response did not complete normally
+        if (deflater != null) {
+            deflaterPool.release(deflater);
+            deflater = null;
+        }
     }
 
 
-    // ------------------------------------------- FakeOutputStream Inner Class
+    // -------------------------------------------------------- Private Methods
 
-
-    protected class FakeOutputStream
-        extends OutputStream {
-        protected final ByteChunk outputChunk = new ByteChunk();
-        protected final byte[] singleByteBuffer = new byte[1];
-        @Override
-        public void write(int b)
-            throws IOException {
-            // Shouldn't get used for good performance, but is needed for
-            // compatibility with Sun JDK 1.4.0
-            singleByteBuffer[0] = (byte) (b & 0xff);
-            outputChunk.setBytes(singleByteBuffer, 0, 1);
+    private void start() throws IOException {
+        if (deflater == null) {
+            deflater = deflaterPool.borrow();
+            crc.reset();
+            outputChunk.setBytes(GZIP_HEADER, 0, GZIP_HEADER.length);
             buffer.doWrite(outputChunk);
         }
-        @Override
-        public void write(byte[] b, int off, int len)
-            throws IOException {
-            outputChunk.setBytes(b, off, len);
-            buffer.doWrite(outputChunk);
+    }
+
+
+    private int deflate(int flush) throws IOException {
+        int len = deflater.deflate(deflated, 0, deflated.length, flush);
+        if (len > 0) {
+            write(deflated, len);
         }
-        @Override
-        public void flush() throws IOException {/*NOOP*/}
-        @Override
-        public void close() throws IOException {/*NOOP*/}
+        return len;
     }
 
 
+    private void write(byte[] b, int len) throws IOException {
+        outputChunk.setBytes(b, 0, len);
+        buffer.doWrite(outputChunk);
+    }
+
+
+    private static void writeInt(int value, byte[] b, int offset) {
+        b[offset] = (byte) value;
+        b[offset + 1] = (byte) (value >> 8);
+        b[offset + 2] = (byte) (value >> 16);
+        b[offset + 3] = (byte) (value >> 24);
+    }
 }
@@ -19,7 +19,7 @@ package org.apache.coyote.http2;
 import org.apache.tomcat.util.http.MimeHeaders;
 
 import java.nio.ByteBuffer;
-import java.util.*;
+import java.util.Locale;
 
 /**
  * Encoder for HPACK frames.
@@ -46,32 +46,37 @@ public class HpackEncoder {
 
 
     };
-    private static final Map<String, TableEntry[]> ENCODING_STATIC_TABLE;
+    /**
+     * Open addressed index of the static table by header name. Each slot holds
+     * the first static table index that uses a given name, or zero if the slot
+     * is empty. Entries sharing a name are contiguous in the static table.
+     */
+    private static final int[] STATIC_NAME_INDEX;
+    private static final int STATIC_NAME_INDEX_MASK;
 
     static {
-        Map<String, TableEntry[]> map = new HashMap<>();
+        int size = tableSizeFor(Hpack.STATIC_TABLE_LENGTH * 2);
+        int[] index = new int[size];
+        int mask = size - 1;
         for (int i = 1; i < Hpack.STATIC_TABLE.length; ++i) {
-            Hpack.HeaderField m = Hpack.STATIC_TABLE[i];
-            TableEntry[] existing = map.get(m.name);
-            if (existing == null) {
-                map.put(m.name, new TableEntry[]{new TableEntry(m.name, m.value, i)});
-            } else {
-                TableEntry[] newEntry = new TableEntry[existing.length + 1];
-                System.arraycopy(existing, 0, newEntry, 0, existing.length);
-                newEntry[existing.length] = new TableEntry(m.name, m.value, i);
-                map.put(m.name, newEntry);
+            String name = Hpack.STATIC_TABLE[i].name;
+            if (i > 1 && Hpack.STATIC_TABLE[i - 1].name.equals(name)) {
+                continue;
             }
+            int pos = spread(name.hashCode()) & mask;
+            while (index[pos] != 0) {
+                pos = (pos + 1) & mask;
+            }
+            index[pos] = i;
         }
-        ENCODING_STATIC_TABLE = Collections.unmodifiableMap(map);
+        STATIC_NAME_INDEX = index;
+        STATIC_NAME_INDEX_MASK = mask;
     }
 
-    private final Deque<TableEntry> evictionQueue = new ArrayDeque<>();
-    private final Map<String, List<TableEntry>> dynamicTable = new HashMap<>(); //TODO: use a custom data structure to reduce allocations
     private final HpackHeaderFunction hpackHeaderFunction;
     private int headersIterator = -1;
     private boolean firstPass = true;
     private MimeHeaders currentHeaders;
-    private int entryPositionCounter;
     private int newMaxHeaderSize = -1; //if the max header size has been changed
     private int minNewMaxHeaderSize = -1; //records the smallest value of newMaxHeaderSize, as per section 4.1
     /**
@@ -83,9 +88,35 @@ public class HpackEncoder {
      */
     private int currentTableSize;
 
+    /*
+     * The dynamic table is held in a ring buffer. The oldest entry is at
+     * dynamicTail and the newest at dynamicTail + dynamicCount - 1 (modulo the
+     * capacity). The HPACK index of an entry is derived from its distance to
+     * the insertion point so no renumbering is ever required.
+     */
+    private String[] dynamicNames;
+    private String[] dynamicValues;
+    private int[] dynamicNameHashes;
+    private int[] dynamicNameValueHashes;
+    private int dynamicMask;
+    private int dynamicTail;
+    private int dynamicCount;
+
+    /*
+     * Open addressed (linear probing) indexes into the ring buffer. Slots hold
+     * the ring buffer position plus one so that zero marks an empty slot. Only
+     * the newest entry for a given key is indexed. As entries are evicted
+     * oldest first, once the newest entry for a key has been evicted there can
+     * be no older entry for the same key left in the table.
+     */
+    private int[] nameIndex;
+    private int[] nameValueIndex;
+    private int indexMask;
+
     public HpackEncoder(int maxTableSize, HpackHeaderFunction headerFunction) {
         this.maxTableSize = maxTableSize;
         this.hpackHeaderFunction = headerFunction;
+        resizeDynamicTable(maxTableSize);
     }
 
     public HpackEncoder(int maxTableSize) {
@@ -130,7 +161,7 @@ public class HpackEncoder {
                     int required = 11 + headerName.length(); //we use 11 to make sure we have enough room for the variable length integers
 
                     String val = headers.getValue(it).toString();
-                    TableEntry tableEntry = findInTable(headerName, val);
+                    int tableIndex = findInTable(headerName, val);
 
                     required += (1 + val.length());
 
@@ -139,36 +170,33 @@ public class HpackEncoder {
                         return State.UNDERFLOW;
                     }
                     boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) && (headerName.length() + val.length() + 32) < maxTableSize; //only index if it will fit
-                    if (tableEntry == null && canIndex) {
+                    if (tableIndex == 0 && canIndex) {
                         //add the entry to the dynamic table
                         target.put((byte) (1 << 6));
                         writeHuffmanEncodableName(target, headerName);
                         writeHuffmanEncodableValue(target, headerName, val);
                         addToDynamicTable(headerName, val);
-                    } else if (tableEntry == null) {
+                    } else if (tableIndex == 0) {
                         //literal never indexed
                         target.put((byte) (1 << 4));
                         writeHuffmanEncodableName(target, headerName);
                         writeHuffmanEncodableValue(target, headerName, val);
+                    } else if (tableIndex > 0) {
+                        //the whole thing is in the table
+                        target.put((byte) (1 << 7));
+                        Hpack.encodeInteger(target, tableIndex, 7);
                     } else {
-                        //so we know something is already in the table
-                        if (val.equals(tableEntry.value)) {
-                            //the whole thing is in the table
-                            target.put((byte) (1 << 7));
-                            Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
+                        //only the name is in the table
+                        if (canIndex) {
+                            //add the entry to the dynamic table
+                            target.put((byte) (1 << 6));
+                            Hpack.encodeInteger(target, -tableIndex, 6);
+                            writeHuffmanEncodableValue(target, headerName, val);
+                            addToDynamicTable(headerName, val);
                         } else {
-                            if (canIndex) {
-                                //add the entry to the dynamic table
-                                target.put((byte) (1 << 6));
-                                Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
-                                writeHuffmanEncodableValue(target, headerName, val);
-                                addToDynamicTable(headerName, val);
-
-                            } else {
-                                target.put((byte) (1 << 4));
-                                Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
-                                writeHuffmanEncodableValue(target, headerName, val);
-                            }
+                            target.put((byte) (1 << 4));
+                            Hpack.encodeInteger(target, -tableIndex, 4);
+                            writeHuffmanEncodableValue(target, headerName, val);
                         }
                     }
 
@@ -216,72 +244,218 @@ public class HpackEncoder {
     }
 
     private void addToDynamicTable(String headerName, String val) {
-        int pos = entryPositionCounter++;
-        DynamicTableEntry d = new DynamicTableEntry(headerName, val, -pos);
-        List<TableEntry> existing = dynamicTable.get(headerName);
-        if (existing == null) {
-            dynamicTable.put(headerName, existing = new ArrayList<>(1));
+        int size = 32 + headerName.length() + val.length();
+        //as per section 4.4 evict before adding the new entry
+        while (dynamicCount > 0 && currentTableSize + size > maxTableSize) {
+            evictOldest();
         }
-        existing.add(d);
-        evictionQueue.add(d);
-        currentTableSize += d.size;
-        runEvictionIfRequired();
-        if (entryPositionCounter == Integer.MAX_VALUE) {
-            //prevent rollover
-            preventPositionRollover();
+        int slot = (dynamicTail + dynamicCount) & dynamicMask;
+        int nameHash = headerName.hashCode();
+        dynamicNames[slot] = headerName;
+        dynamicValues[slot] = val;
+        dynamicNameHashes[slot] = nameHash;
+        dynamicNameValueHashes[slot] = 31 * nameHash + val.hashCode();
+        dynamicCount++;
+        currentTableSize += size;
+        indexPut(nameIndex, slot, false);
+        indexPut(nameValueIndex, slot, true);
+    }
+
+
+    private void runEvictionIfRequired() {
+        while (dynamicCount > 0 && currentTableSize > maxTableSize) {
+            evictOldest();
         }
+    }
 
+
+    private void evictOldest() {
+        int slot = dynamicTail;
+        indexRemove(nameIndex, slot, false);
+        indexRemove(nameValueIndex, slot, true);
+        currentTableSize -= 32 + dynamicNames[slot].length() + dynamicValues[slot].length();
+        dynamicNames[slot] = null;
+        dynamicValues[slot] = null;
+        dynamicTail = (dynamicTail + 1) & dynamicMask;
+        dynamicCount--;
     }
 
 
-    private void preventPositionRollover() {
-        //if the position counter is about to roll over we iterate all the table entries
-        //and set their position to their actual position
-        for (Map.Entry<String, List<TableEntry>> entry : dynamicTable.entrySet()) {
-            for (TableEntry t : entry.getValue()) {
-                t.position = t.getPosition();
+    /**
+     * Looks up a header in the static and dynamic tables.
+     *
+     * @return the table index if both name and value match, the negated table
+     *         index if only the name matches or zero if the name is in neither
+     *         table
+     */
+    private int findInTable(String headerName, String value) {
+        int staticIndex = findStaticName(headerName);
+        if (staticIndex != 0) {
+            for (int i = staticIndex; i < Hpack.STATIC_TABLE.length &&
+                    Hpack.STATIC_TABLE[i].name.equals(headerName); i++) {
+                if (value.equals(Hpack.STATIC_TABLE[i].value)) {
+                    return i;
+                }
+            }
+        }
+        int nameHash = headerName.hashCode();
+        int nameValueHash = 31 * nameHash + value.hashCode();
+        int pos = spread(nameValueHash) & indexMask;
+        int entry;
+        while ((entry = nameValueIndex[pos]) != 0) {
+            int slot = entry - 1;
+            if (dynamicNameValueHashes[slot] == nameValueHash &&
+                    dynamicNames[slot].equals(headerName) &&
+                    dynamicValues[slot].equals(value)) {
+                return dynamicIndex(slot);
             }
+            pos = (pos + 1) & indexMask;
+        }
+        if (staticIndex != 0) {
+            return -staticIndex;
         }
-        entryPositionCounter = 0;
+        pos = spread(nameHash) & indexMask;
+        while ((entry = nameIndex[pos]) != 0) {
+            int slot = entry - 1;
+            if (dynamicNameHashes[slot] == nameHash && dynamicNames[slot].equals(headerName)) {
+                return -dynamicIndex(slot);
+            }
+            pos = (pos + 1) & indexMask;
+        }
+        return 0;
     }
 
-    private void runEvictionIfRequired() {
 
-        while (currentTableSize > maxTableSize) {
-            TableEntry next = evictionQueue.poll();
-            if (next == null) {
-                return;
+    private static int findStaticName(String headerName) {
+        int pos = spread(headerName.hashCode()) & STATIC_NAME_INDEX_MASK;
+        int i;
+        while ((i = STATIC_NAME_INDEX[pos]) != 0) {
+            if (Hpack.STATIC_TABLE[i].name.equals(headerName)) {
+                return i;
             }
-            currentTableSize -= next.size;
-            List<TableEntry> list = dynamicTable.get(next.name);
-            list.remove(next);
-            if (list.isEmpty()) {
-                dynamicTable.remove(next.name);
+            pos = (pos + 1) & STATIC_NAME_INDEX_MASK;
+        }
+        return 0;
+    }
+
+
+    /**
+     * @return the HPACK index of the given ring buffer slot. The newest entry
+     *         has index {@link Hpack#STATIC_TABLE_LENGTH} + 1.
+     */
+    private int dynamicIndex(int slot) {
+        int head = (dynamicTail + dynamicCount) & dynamicMask;
+        return Hpack.STATIC_TABLE_LENGTH + ((head - slot) & dynamicMask);
+    }
+
+
+    private int indexHash(int slot, boolean nameValue) {
+        return spread(nameValue ? dynamicNameValueHashes[slot] : dynamicNameHashes[slot]);
+    }
+
+
+    private boolean sameKey(int slotA, int slotB, boolean nameValue) {
+        if (nameValue) {
+            return dynamicNameValueHashes[slotA] == dynamicNameValueHashes[slotB] &&
+                    dynamicNames[slotA].equals(dynamicNames[slotB]) &&
+                    dynamicValues[slotA].equals(dynamicValues[slotB]);
+        } else {
+            return dynamicNameHashes[slotA] == dynamicNameHashes[slotB] &&
+                    dynamicNames[slotA].equals(dynamicNames[slotB]);
+        }
+    }
+
+
+    private void indexPut(int[] index, int slot, boolean nameValue) {
+        int pos = indexHash(slot, nameValue) & indexMask;
+        int entry;
+        while ((entry = index[pos]) != 0) {
+            if (sameKey(entry - 1, slot, nameValue)) {
+                //the newer entry replaces the older one
+                break;
             }
+            pos = (pos + 1) & indexMask;
         }
+        index[pos] = slot + 1;
     }
 
-    private TableEntry findInTable(String headerName, String value) {
-        TableEntry[] staticTable = ENCODING_STATIC_TABLE.get(headerName);
-        if (staticTable != null) {
-            for (TableEntry st : staticTable) {
-                if (st.value != null && st.value.equals(value)) { //todo: some form of lookup?
-                    return st;
-                }
+
+    private void indexRemove(int[] index, int slot, boolean nameValue) {
+        int pos = indexHash(slot, nameValue) & indexMask;
+        int entry;
+        while ((entry = index[pos]) != slot + 1) {
+            if (entry == 0) {
+                //a newer entry with the same key has replaced this one
+                return;
             }
+            pos = (pos + 1) & indexMask;
         }
-        List<TableEntry> dynamic = dynamicTable.get(headerName);
-        if (dynamic != null) {
-            for (TableEntry st : dynamic) {
-                if (st.value.equals(value)) { //todo: some form of lookup?
-                    return st;
-                }
+        //backward shift deletion keeps probe sequences intact without tombstones
+        int next = pos;
+        while (true) {
+            next = (next + 1) & indexMask;
+            entry = index[next];
+            if (entry == 0) {
+                break;
+            }
+            int home = indexHash(entry - 1, nameValue) & indexMask;
+            if (((next - home) & indexMask) >= ((next - pos) & indexMask)) {
+                index[pos] = entry;
+                pos = next;
             }
         }
-        if (staticTable != null) {
-            return staticTable[0];
+        index[pos] = 0;
+    }
+
+
+    /**
+     * Ensures the ring buffer and its indexes can hold every entry that fits
+     * into a table of the given size. Entries are at least 32 bytes so this is
+     * bounded by maxTableSize / 32.
+     */
+    private void resizeDynamicTable(int tableSize) {
+        int capacity = tableSizeFor(tableSize / 32 + 1);
+        if (dynamicNames != null && capacity <= dynamicNames.length) {
+            return;
+        }
+        String[] names = new String[capacity];
+        String[] values = new String[capacity];
+        int[] nameHashes = new int[capacity];
+        int[] nameValueHashes = new int[capacity];
+        for (int i = 0; i < dynamicCount; i++) {
+            int slot = (dynamicTail + i) & dynamicMask;
+            names[i] = dynamicNames[slot];
+            values[i] = dynamicValues[slot];
+            nameHashes[i] = dynamicNameHashes[slot];
+            nameValueHashes[i] = dynamicNameValueHashes[slot];
+        }
+        dynamicNames = names;
+        dynamicValues = values;
+        dynamicNameHashes = nameHashes;
+        dynamicNameValueHashes = nameValueHashes;
+        dynamicMask = capacity - 1;
+        dynamicTail = 0;
+        nameIndex = new int[capacity * 2];
+        nameValueIndex = new int[capacity * 2];
+        indexMask = capacity * 2 - 1;
+        for (int i = 0; i < dynamicCount; i++) {
+            indexPut(nameIndex, i, false);
+            indexPut(nameValueIndex, i, true);
+        }
+    }
+
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+
+    private static int tableSizeFor(int n) {
+        int size = 1;
+        while (size < n) {
+            size <<= 1;
         }
-        return null;
+        return size;
     }
 
     public void setMaxTableSize(int newSize) {
@@ -305,6 +479,7 @@ public class HpackEncoder {
         Hpack.encodeInteger(target, newMaxHeaderSize, 5);
         maxTableSize = newMaxHeaderSize;
         runEvictionIfRequired();
+        resizeDynamicTable(maxTableSize);
         newMaxHeaderSize = -1;
         minNewMaxHeaderSize = -1;
     }
@@ -335,38 +510,4 @@ public class HpackEncoder {
          */
         boolean shouldUseHuffman(String header);
     }
-
-    static class TableEntry {
-        final String name;
-        final String value;
-        final int size;
-        int position;
-
-        TableEntry(String name, String value, int position) {
-            this.name = name;
-            this.value = value;
-            this.position = position;
-            if (value != null) {
-                this.size = 32 + name.length() + value.length();
-            } else {
-                this.size = -1;
-            }
-        }
-
-        public int getPosition() {
-            return position;
-        }
-    }
-
-    class DynamicTableEntry extends TableEntry {
-
-        DynamicTableEntry(String name, String value, int position) {
-            super(name, value, position);
-        }
-
-        @Override
-        public int getPosition() {
-            return super.getPosition() + entryPositionCounter + Hpack.STATIC_TABLE_LENGTH;
-        }
-    }
 }
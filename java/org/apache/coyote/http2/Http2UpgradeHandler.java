@@ -27,6 +27,7 @@ import org.apache.coyote.http2.Http2Parser.Input;
 import org.apache.coyote.http2.Http2Parser.Output;
 import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.codec.binary.Base64;
 import org.apache.tomcat.util.http.MimeHeaders;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
@@ -44,8 +45,13 @@ import java.util.*;
 import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * This represents an HTTP/2 connection from a client to Tomcat. It is designed
@@ -55,6 +61,13 @@ import java.util.concurrent.atomic.AtomicReference;
  * For reading, this implementation is blocking within frames and non-blocking
  * between frames.
  * <br>
+ * For writing, frames are added to a queue. Whichever thread finds the queue
+ * idle drains it, writing every queued frame to the socket with a single
+ * gathering write and then flushing once, while the other writing threads wait
+ * for their frames to be written.
+ * Header blocks are HPACK encoded by the draining thread so that the order in
+ * which they are encoded always matches the order in which they are written.
+ * <br>
  * Note:
  * <ul>
  * <li>Unless Tomcat is configured with an ECC certificate, FireFox (tested with
@@ -106,6 +119,18 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     // Tracking for when the connection is blocked (windowSize < 1)
     private final Map<AbstractStream,int[]> backLogStreams = new ConcurrentHashMap<>();
     private volatile SocketWrapperBase<?> socketWrapper;
+    // Frames waiting to be written and the flag that elects the writing thread
+    private final Queue<PendingWrite> writeQueue = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean writeInProgress = new AtomicBoolean(false);
+    // Only accessed by the thread that holds writeInProgress
+    private final List<PendingWrite> writeBatch = new ArrayList<>();
+    private final List<ByteBuffer> writeBatchBuffers = new ArrayList<>();
+    // Guards the connection flow control window and the backlog. No stream locks
+    // are taken while it is held so it can't be part of a lock-order inversion.
+    private final Lock windowLock = new ReentrantLock();
+    // Streams waiting for an allocation from the connection window, guarded by
+    // windowLock
+    private final Map<AbstractStream,Condition> backLogWaiters = new HashMap<>();
     private volatile SSLSupport sslSupport;
     private volatile Http2Parser parser;
     // Simple state machine (sequence of states)
@@ -122,6 +147,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
     // Start at -1 so the 'add 2' logic in closeIdleStreams() works
     private volatile int maxActiveRemoteStreamId = -1;
     private volatile int maxProcessedStreamId;
+    // Guarded by windowLock
     private long backLogSize = 0;
 
 
@@ -341,12 +367,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
             ByteUtil.setThreeBytes(payloadLength, 0, 8);
 
             try {
-                synchronized (socketWrapper) {
-                    socketWrapper.write(true, payloadLength, 0, payloadLength.length);
-                    socketWrapper.write(true, GOAWAY, 0, GOAWAY.length);
-                    socketWrapper.write(true, fixedPayload, 0, 8);
-                    socketWrapper.flush(true);
-                }
+                writeFrame(payloadLength, GOAWAY, fixedPayload);
             } catch (IOException ioe) {
                 // This is fatal for the connection. Ignore it here. There will be
                 // further attempts at I/O in upgradeDispatch() and it can better
@@ -374,13 +395,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
                 byte[] payloadLength = new byte[3];
                 ByteUtil.setThreeBytes(payloadLength, 0, 8);
 
-                synchronized (socketWrapper) {
-                    socketWrapper.write(true, payloadLength, 0, payloadLength.length);
-                    socketWrapper.write(true, GOAWAY, 0, GOAWAY.length);
-                    socketWrapper.write(true, fixedPayload, 0, 8);
-                    socketWrapper.flush(true);
-                }
-
+                writeFrame(payloadLength, GOAWAY, fixedPayload);
             }
         }
     }
@@ -410,10 +425,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         // Payload
         ByteUtil.setFourBytes(rstFrame, 9, se.getError().getCode());
 
-        synchronized (socketWrapper) {
-            socketWrapper.write(true, rstFrame, 0, rstFrame.length);
-            socketWrapper.flush(true);
-        }
+        writeFrame(rstFrame);
     }
 
 
@@ -427,13 +439,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         ByteUtil.setThreeBytes(payloadLength, 0, debugMessage.length + 8);
 
         try {
-            synchronized (socketWrapper) {
-                socketWrapper.write(true, payloadLength, 0, payloadLength.length);
-                socketWrapper.write(true, GOAWAY, 0, GOAWAY.length);
-                socketWrapper.write(true, fixedPayload, 0, 8);
-                socketWrapper.write(true, debugMessage, 0, debugMessage.length);
-                socketWrapper.flush(true);
-            }
+            writeFrame(payloadLength, GOAWAY, fixedPayload, debugMessage);
         } catch (IOException ioe) {
             // Ignore. GOAWAY is sent on a best efforts basis and the original
             // error has already been logged.
@@ -450,39 +456,8 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         MimeHeaders headers = coyoteResponse.getMimeHeaders();
         // Add the pseudo header for status
         headers.addValue(":status").setString(Integer.toString(coyoteResponse.getStatus()));
-        // This ensures the Stream processing thread has control of the socket.
-        synchronized (socketWrapper) {
-            // Frame sizes are allowed to be bigger than 4k but for headers that
-            // should be plenty
-            byte[] header = new byte[9];
-            ByteBuffer target = ByteBuffer.allocate(4 * 1024);
-            boolean first = true;
-            State state = null;
-            while (state != State.COMPLETE) {
-                state = getHpackEncoder().encode(coyoteResponse.getMimeHeaders(), target);
-                target.flip();
-                ByteUtil.setThreeBytes(header, 0, target.limit());
-                if (first) {
-                    first = false;
-                    header[3] = FrameType.HEADERS.getIdByte();
-                    if (stream.getOutputBuffer().hasNoBody()) {
-                        header[4] = FLAG_END_OF_STREAM;
-                    }
-                } else {
-                    header[3] = FrameType.CONTINUATION.getIdByte();
-                }
-                if (state == State.COMPLETE) {
-                    header[4] += FLAG_END_OF_HEADERS;
-                }
-                if (log.isDebugEnabled()) {
-                    log.debug(target.limit() + " bytes");
-                }
-                ByteUtil.set31Bits(header, 5, stream.getIdentifier().intValue());
-                socketWrapper.write(true, header, 0, header.length);
-                socketWrapper.write(true, target.array(), target.arrayOffset(), target.limit());
-                socketWrapper.flush(true);
-            }
-        }
+        // The headers are encoded by the thread that drains the write queue
+        write(new HeadersPendingWrite(stream, headers));
     }
 
 
@@ -499,68 +474,151 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
             log.debug(sm.getString("upgradeHandler.writeBody", connectionId, stream.getIdentifier(),
                     Integer.toString(len)));
         }
-        synchronized (socketWrapper) {
-            byte[] header = new byte[9];
-            ByteUtil.setThreeBytes(header, 0, len);
-            header[3] = FrameType.DATA.getIdByte();
-            if (finished) {
-                header[4] = FLAG_END_OF_STREAM;
-                stream.sentEndOfStream();
-                if (!stream.isActive()) {
-                    activeRemoteStreamCount.decrementAndGet();
-                }
-             }
-            ByteUtil.set31Bits(header, 5, stream.getIdentifier().intValue());
-            socketWrapper.write(true, header, 0, header.length);
-            socketWrapper.write(true, data.array(), data.arrayOffset() + data.position(),
-                    len);
-            socketWrapper.flush(true);
+        byte[] header = new byte[9];
+        ByteUtil.setThreeBytes(header, 0, len);
+        header[3] = FrameType.DATA.getIdByte();
+        if (finished) {
+            header[4] = FLAG_END_OF_STREAM;
+            stream.sentEndOfStream();
+            if (!stream.isActive()) {
+                activeRemoteStreamCount.decrementAndGet();
+            }
         }
+        ByteUtil.set31Bits(header, 5, stream.getIdentifier().intValue());
+        // The data is written before this method returns so there is no need
+        // to copy it
+        write(new PendingWrite(ByteBuffer.wrap(header),
+                ByteBuffer.wrap(data.array(), data.arrayOffset() + data.position(), len)));
     }
 
 
     void writeWindowUpdate(Stream stream, int increment) throws IOException {
-        synchronized (socketWrapper) {
-            // Build window update frame for stream 0
-            byte[] frame = new byte[13];
-            ByteUtil.setThreeBytes(frame, 0,  4);
-            frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
-            ByteUtil.set31Bits(frame, 9, increment);
-            socketWrapper.write(true, frame, 0, frame.length);
-            // Change stream Id and re-use
-            ByteUtil.set31Bits(frame, 5, stream.getIdentifier().intValue());
-            socketWrapper.write(true, frame, 0, frame.length);
-        }
+        // Build window update frame for stream 0
+        byte[] frame = new byte[13];
+        ByteUtil.setThreeBytes(frame, 0,  4);
+        frame[3] = FrameType.WINDOW_UPDATE.getIdByte();
+        ByteUtil.set31Bits(frame, 9, increment);
+        // Copy, change stream Id and re-use
+        byte[] streamFrame = frame.clone();
+        ByteUtil.set31Bits(streamFrame, 5, stream.getIdentifier().intValue());
+        writeFrame(frame, streamFrame);
     }
 
 
     private void processWrites() throws IOException {
-        synchronized (socketWrapper) {
-            if (socketWrapper.flush(false)) {
-                socketWrapper.registerWriteInterest();
-                return;
+        // If another thread is draining the write queue it will flush any
+        // remaining data
+        if (writeInProgress.compareAndSet(false, true)) {
+            try {
+                if (socketWrapper.flush(false)) {
+                    socketWrapper.registerWriteInterest();
+                }
+            } finally {
+                writeInProgress.set(false);
+            }
+            // Frames may have been queued while the flag was held
+            drainWriteQueue();
+        }
+    }
+
+
+    /**
+     * Writes a frame made up of the given byte arrays, each of which is written
+     * in full.
+     */
+    private void writeFrame(byte[]... parts) throws IOException {
+        ByteBuffer[] buffers = new ByteBuffer[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            buffers[i] = ByteBuffer.wrap(parts[i]);
+        }
+        write(new PendingWrite(buffers));
+    }
+
+
+    /**
+     * Adds the given frame(s) to the write queue and returns once they have
+     * been written to the socket.
+     */
+    private void write(PendingWrite pendingWrite) throws IOException {
+        writeQueue.add(pendingWrite);
+        drainWriteQueue();
+        pendingWrite.awaitCompletion();
+    }
+
+
+    private void drainWriteQueue() {
+        // Re-check the queue after releasing the flag so a frame added just
+        // before the flag was released is not left behind
+        while (!writeQueue.isEmpty() && writeInProgress.compareAndSet(false, true)) {
+            IOException ioe = null;
+            Throwable failure = null;
+            try {
+                PendingWrite pendingWrite;
+                while ((pendingWrite = writeQueue.poll()) != null) {
+                    writeBatch.add(pendingWrite);
+                    if (ioe == null) {
+                        try {
+                            pendingWrite.addBuffers(writeBatchBuffers);
+                        } catch (Throwable t) {
+                            failure = t;
+                            ioe = new IOException(t);
+                        }
+                    }
+                }
+                if (ioe == null) {
+                    ByteBuffer[] buffers =
+                            writeBatchBuffers.toArray(new ByteBuffer[writeBatchBuffers.size()]);
+                    socketWrapper.write(true, buffers, 0, buffers.length);
+                    socketWrapper.flush(true);
+                }
+            } catch (IOException e) {
+                ioe = e;
+            } catch (Throwable t) {
+                failure = t;
+                ioe = new IOException(t);
+            } finally {
+                // Always release the waiting threads, whatever went wrong
+                for (PendingWrite written : writeBatch) {
+                    written.complete(ioe);
+                }
+                writeBatch.clear();
+                writeBatchBuffers.clear();
+                writeInProgress.set(false);
+            }
+            if (failure != null) {
+                // The waiting threads see the failure as an IOException. Only
+                // fatal errors need to go any further.
+                ExceptionUtils.handleThrowable(failure);
             }
         }
     }
 
 
     int reserveWindowSize(Stream stream, int reservation) throws IOException {
-        // Need to be holding the stream lock so releaseBacklog() can't notify
-        // this thread until after this thread enters wait()
         int allocation = 0;
-        synchronized (stream) {
+        windowLock.lock();
+        try {
             do {
-                synchronized (this) {
+                // Has this stream been granted an allocation. It was taken from
+                // the connection window when it was granted.
+                int[] value = backLogStreams.get(stream);
+                if (value != null && value[1] > 0) {
+                    allocation = value[1];
+                    // Any part of the reservation that was not granted will be
+                    // requested again by the next write. Leave the entry as a
+                    // placeholder for any children that are in the backlog.
+                    backLogSize -= value[0];
+                    value[0] = 0;
+                    value[1] = 0;
+                } else {
                     long windowSize = getWindowSize();
                     if (windowSize < 1 || backLogSize > 0) {
-                        // Has this stream been granted an allocation
-                        int[] value = backLogStreams.remove(stream);
-                        if (value != null && value[1] > 0) {
-                            allocation = value[1];
-                            decrementWindowSize(allocation);
-                        } else {
-                            value = new int[] { reservation, 0 };
+                        if (value == null) {
+                            value = new int[2];
                             backLogStreams.put(stream, value);
+                        }
+                        if (value[0] == 0) {
+                            value[0] = reservation;
                             backLogSize += reservation;
                             // Add the parents as well
                             AbstractStream parent = stream.getParentStream();
@@ -577,13 +635,23 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
                     }
                 }
                 if (allocation == 0) {
+                    // Only one thread at a time writes to a stream so there is
+                    // at most one waiter per stream
+                    Condition condition = backLogWaiters.get(stream);
+                    if (condition == null) {
+                        condition = windowLock.newCondition();
+                        backLogWaiters.put(stream, condition);
+                    }
                     try {
-                        stream.wait();
+                        condition.await();
                     } catch (InterruptedException e) {
                         throw new IOException(e);
                     }
                 }
             } while (allocation == 0);
+        } finally {
+            backLogWaiters.remove(stream);
+            windowLock.unlock();
         }
         return allocation;
     }
@@ -591,44 +659,80 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
 
     @Override
-    protected synchronized void incrementWindowSize(int increment) throws Http2Exception {
-        long windowSize = getWindowSize();
-        if (windowSize < 1 && windowSize + increment > 0) {
-            releaseBackLog(increment);
+    protected void incrementWindowSize(int increment) throws Http2Exception {
+        windowLock.lock();
+        try {
+            super.incrementWindowSize(increment);
+            long windowSize = getWindowSize();
+            if (windowSize > 0 && backLogSize > 0) {
+                releaseBackLog((int) windowSize);
+            }
+        } finally {
+            windowLock.unlock();
         }
-        super.incrementWindowSize(increment);
     }
 
 
-    private synchronized void releaseBackLog(int increment) {
-        if (backLogSize < increment) {
+    /*
+     * Grants up to the given amount of the connection window to the streams in
+     * the backlog and wakes them. Granted allocations are removed from the
+     * connection window immediately so that a window update that arrives
+     * before the streams have taken their allocations can't grant the same
+     * space twice or be left unallocated. Must be called while holding
+     * windowLock.
+     */
+    private void releaseBackLog(int available) {
+        if (backLogSize <= available) {
             // Can clear the whole backlog
-            for (AbstractStream stream : backLogStreams.keySet()) {
-                synchronized (stream) {
-                    stream.notifyAll();
+            Iterator<Entry<AbstractStream,int[]>> iter = backLogStreams.entrySet().iterator();
+            while (iter.hasNext()) {
+                int[] value = iter.next().getValue();
+                value[1] += value[0];
+                value[0] = 0;
+                if (value[1] == 0) {
+                    iter.remove();
                 }
             }
-            backLogStreams.clear();
+            decrementWindowSize((int) backLogSize);
             backLogSize = 0;
         } else {
-            int leftToAllocate = increment;
-            while (leftToAllocate > 0) {
-                leftToAllocate = allocate(this, leftToAllocate);
-            }
-            for (Entry<AbstractStream,int[]> entry : backLogStreams.entrySet()) {
-                int allocation = entry.getValue()[1];
-                if (allocation > 0) {
-                    backLogSize -= allocation;
-                    synchronized (entry.getKey()) {
-                        entry.getKey().notifyAll();
+            // Index the backlog by parent once so each allocation round only
+            // visits streams in the backlog rather than every child stream
+            // ever opened on the connection
+            Map<AbstractStream,Set<AbstractStream>> backLogChildren = new HashMap<>();
+            for (AbstractStream backLogStream : backLogStreams.keySet()) {
+                AbstractStream parent = backLogStream.getParentStream();
+                if (parent != null) {
+                    Set<AbstractStream> children = backLogChildren.get(parent);
+                    if (children == null) {
+                        children = new HashSet<>();
+                        backLogChildren.put(parent, children);
                     }
+                    children.add(backLogStream);
+                }
+            }
+            allocate(this, available, backLogChildren);
+            long remaining = 0;
+            for (int[] value : backLogStreams.values()) {
+                remaining += value[0];
+            }
+            // Rounding may allocate slightly more than was available
+            decrementWindowSize((int) (backLogSize - remaining));
+            backLogSize = remaining;
+        }
+        for (Entry<AbstractStream,int[]> entry : backLogStreams.entrySet()) {
+            if (entry.getValue()[1] > 0) {
+                Condition condition = backLogWaiters.get(entry.getKey());
+                if (condition != null) {
+                    condition.signal();
                 }
             }
         }
     }
 
 
-    private int allocate(AbstractStream stream, int allocation) {
+    private int allocate(AbstractStream stream, int allocation,
+            Map<AbstractStream,Set<AbstractStream>> backLogChildren) {
         if (log.isDebugEnabled()) {
             log.debug(sm.getString("upgradeHandler.allocate.debug", getConnectionId(),
                     stream.getIdentifier(), Integer.toString(allocation)));
@@ -637,16 +741,15 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         int[] value = backLogStreams.get(stream);
         if (value[0] >= allocation) {
             value[0] -= allocation;
-            value[1] = allocation;
+            value[1] += allocation;
             return 0;
         }
 
         // There was some left over so allocate that to the children of the
-        // stream.
-        int leftToAllocate = allocation;
-        value[1] = value[0];
+        // stream. Any earlier allocation that has yet to be taken is kept.
+        int leftToAllocate = allocation - value[0];
+        value[1] += value[0];
         value[0] = 0;
-        leftToAllocate -= value[1];
 
         if (log.isDebugEnabled()) {
             log.debug(sm.getString("upgradeHandler.allocate.left",
@@ -656,13 +759,17 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         // Recipients are children of the current stream that are in the
         // backlog.
         Set<AbstractStream> recipients = new HashSet<>();
-        recipients.addAll(stream.getChildStreams());
-        recipients.retainAll(backLogStreams.keySet());
+        Set<AbstractStream> children = backLogChildren.get(stream);
+        if (children != null) {
+            recipients.addAll(children);
+        }
 
         // Loop until we run out of allocation or recipients
         while (leftToAllocate > 0) {
             if (recipients.size() == 0) {
-                backLogStreams.remove(stream);
+                if (value[1] == 0) {
+                    backLogStreams.remove(stream);
+                }
                 return leftToAllocate;
             }
 
@@ -689,7 +796,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
                     // HTTP/2 should cope with that.
                     share = 1;
                 }
-                int remainder = allocate(recipient, share);
+                int remainder = allocate(recipient, share, backLogChildren);
                 // Remove recipients that receive their full allocation so that
                 // they are excluded from the next allocation round.
                 if (remainder > 0) {
@@ -984,10 +1091,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         if (ack) {
             // TODO Process ACK
         } else {
-            synchronized (socketWrapper) {
-                socketWrapper.write(true, SETTINGS_ACK, 0, SETTINGS_ACK.length);
-                socketWrapper.flush(true);
-            }
+            writeFrame(SETTINGS_ACK);
         }
     }
 
@@ -1045,6 +1149,102 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
         }
      }
 
+    /**
+     * One or more frames that must be written to the socket without any other
+     * frames being interleaved.
+     */
+    private class PendingWrite {
+
+        private final ByteBuffer[] buffers;
+        private final Thread waiter = Thread.currentThread();
+        private volatile boolean done = false;
+        private volatile IOException error;
+
+        PendingWrite(ByteBuffer... buffers) {
+            this.buffers = buffers;
+        }
+
+        /*
+         * Adds the buffers to write to the batch. Only called by the thread
+         * draining the write queue.
+         */
+        void addBuffers(List<ByteBuffer> batch) {
+            Collections.addAll(batch, buffers);
+        }
+
+        void complete(IOException ioe) {
+            error = ioe;
+            done = true;
+            LockSupport.unpark(waiter);
+        }
+
+        void awaitCompletion() throws IOException {
+            // The frame may reference data owned by the caller so this has to
+            // wait for the write to complete even if the thread is interrupted.
+            // Clear the interrupt while waiting else park() returns
+            // immediately, and restore it afterwards.
+            boolean interrupted = false;
+            while (!done) {
+                LockSupport.park(this);
+                if (Thread.interrupted()) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (error != null) {
+                throw error;
+            }
+        }
+    }
+
+    private class HeadersPendingWrite extends PendingWrite {
+
+        private final Stream stream;
+        private final MimeHeaders headers;
+
+        HeadersPendingWrite(Stream stream, MimeHeaders headers) {
+            super();
+            this.stream = stream;
+            this.headers = headers;
+        }
+
+        @Override
+        void addBuffers(List<ByteBuffer> batch) {
+            boolean first = true;
+            State state = null;
+            while (state != State.COMPLETE) {
+                // Frame sizes are allowed to be bigger than 4k but for headers
+                // that should be plenty. Each frame needs its own buffers as
+                // they are not written until the whole batch has been built.
+                byte[] header = new byte[9];
+                ByteBuffer target = ByteBuffer.allocate(4 * 1024);
+                state = getHpackEncoder().encode(headers, target);
+                target.flip();
+                ByteUtil.setThreeBytes(header, 0, target.limit());
+                if (first) {
+                    first = false;
+                    header[3] = FrameType.HEADERS.getIdByte();
+                    if (stream.getOutputBuffer().hasNoBody()) {
+                        header[4] = FLAG_END_OF_STREAM;
+                    }
+                } else {
+                    header[3] = FrameType.CONTINUATION.getIdByte();
+                }
+                if (state == State.COMPLETE) {
+                    header[4] += FLAG_END_OF_HEADERS;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug(target.limit() + " bytes");
+                }
+                ByteUtil.set31Bits(header, 5, stream.getIdentifier().intValue());
+                batch.add(ByteBuffer.wrap(header));
+                batch.add(target);
+            }
+        }
+    }
+
     private static class PingRecord {
 
         private final int sequence;
@@ -1087,15 +1287,12 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
             if (force || now - lastPingNanoTime > pingIntervalNano) {
                 lastPingNanoTime = now;
                 byte[] payload = new byte[8];
-                synchronized (socketWrapper) {
-                    int sentSequence = ++sequence;
-                    PingRecord pingRecord = new PingRecord(sentSequence, now);
-                    inflightPings.add(pingRecord);
-                    ByteUtil.set31Bits(payload, 4, sentSequence);
-                    socketWrapper.write(true, PING, 0, PING.length);
-                    socketWrapper.write(true, payload, 0, payload.length);
-                    socketWrapper.flush(true);
-                }
+                // Pings are only sent by the thread reading from the socket
+                int sentSequence = ++sequence;
+                PingRecord pingRecord = new PingRecord(sentSequence, now);
+                inflightPings.add(pingRecord);
+                ByteUtil.set31Bits(payload, 4, sentSequence);
+                writeFrame(PING, payload);
             }
         }
 
@@ -1123,11 +1320,7 @@ public class Http2UpgradeHandler extends AbstractStream implements InternalHttpU
 
             } else {
                 // Client originated ping. Echo it back.
-                synchronized (socketWrapper) {
-                    socketWrapper.write(true, PING_ACK, 0, PING_ACK.length);
-                    socketWrapper.write(true, payload, 0, payload.length);
-                    socketWrapper.flush(true);
-                }
+                writeFrame(PING_ACK, payload);
             }
         }
 
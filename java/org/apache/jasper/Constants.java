@@ -125,6 +125,15 @@ public class Constants {
      */
     public static final String XML_BLOCK_EXTERNAL_INIT_PARAM =
             "org.apache.jasper.XML_BLOCK_EXTERNAL";
+    /**
+     * Name of the ServletContext init-param that determines if the results of
+     * scanning JARs for TLDs will be recorded in the work directory and reused
+     * for unchanged JARs.
+     * <p>
+     * This must be kept in sync with org.apache.catalina.Globals
+     */
+    public static final String USE_SCAN_INDEX_INIT_PARAM =
+            "org.apache.jasper.USE_SCAN_INDEX";
     /**
      * These classes/packages are automatically imported by the
      * generated code.
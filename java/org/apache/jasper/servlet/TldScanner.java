@@ -16,6 +16,7 @@
  */
 package org.apache.jasper.servlet;
 
+import org.apache.jasper.Constants;
 import org.apache.jasper.compiler.JarScannerFactory;
 import org.apache.jasper.compiler.Localizer;
 import org.apache.juli.logging.Log;
@@ -28,6 +29,7 @@ import org.apache.tomcat.util.descriptor.tld.TldParser;
 import org.apache.tomcat.util.descriptor.tld.TldResourcePath;
 import org.apache.tomcat.util.scan.Jar;
 import org.apache.tomcat.util.scan.JarFactory;
+import org.apache.tomcat.util.scan.JarScanIndex;
 import org.xml.sax.SAXException;
 
 import javax.servlet.ServletContext;
@@ -52,6 +54,8 @@ public class TldScanner {
     private static final String MSG = "org.apache.jasper.servlet.TldScanner";
     private static final String TLD_EXT = ".tld";
     private static final String WEB_INF = "/WEB-INF/";
+    private static final String TLD_SCAN_INDEX = "tldScan.idx";
+    private static final String TLD_SCAN_INDEX_VERSION = "tlds-1";
     private final ServletContext context;
     private final TldParser tldParser;
     private final Map<String, TldResourcePath> uriTldResourcePathMap = new HashMap<>();
@@ -251,13 +255,36 @@ public class TldScanner {
      */
     public void scanJars() {
         JarScanner scanner = JarScannerFactory.getJarScanner(context);
-        TldScannerCallback callback = new TldScannerCallback();
+        JarScanIndex index = createScanIndex();
+        TldScannerCallback callback = new TldScannerCallback(index);
         scanner.scan(JarScanType.TLD, context, callback);
+        if (index != null) {
+            index.store();
+        }
         if (callback.scanFoundNoTLDs()) {
             log.info(Localizer.getMessage("jsp.tldCache.noTldSummary"));
         }
     }
 
+    /**
+     * Create the index used to skip looking for TLDs in unchanged JARs.
+     *
+     * @return the index or <code>null</code> if the application is not
+     *         configured to use a scan index or has no work directory
+     */
+    private JarScanIndex createScanIndex() {
+        if (!Boolean.parseBoolean(context.getInitParameter(
+                Constants.USE_SCAN_INDEX_INIT_PARAM))) {
+            return null;
+        }
+        Object workDir = context.getAttribute(ServletContext.TEMPDIR);
+        if (!(workDir instanceof File)) {
+            return null;
+        }
+        return new JarScanIndex(new File((File) workDir, TLD_SCAN_INDEX),
+                TLD_SCAN_INDEX_VERSION);
+    }
+
     protected void parseTld(String resourcePath) throws IOException, SAXException {
         TldResourcePath tldResourcePath =
                 new TldResourcePath(context.getResource(resourcePath), resourcePath);
@@ -283,24 +310,32 @@ public class TldScanner {
     }
 
     class TldScannerCallback implements JarScannerCallback {
+        private final JarScanIndex index;
         private boolean foundJarWithoutTld = false;
         private boolean foundFileWithoutTld = false;
 
+        TldScannerCallback() {
+            this(null);
+        }
+
+        TldScannerCallback(JarScanIndex index) {
+            this.index = index;
+        }
+
         @Override
         public void scan(JarURLConnection urlConn, String webappPath,
                 boolean isWebapp) throws IOException {
             boolean found = false;
             URL jarURL;
-            try (Jar jar = JarFactory.newInstance(urlConn.getURL())) {
-                jarURL = jar.getJarFileURL();
-                jar.nextEntry();
-                for (String entryName = jar.getEntryName();
-                    entryName != null;
-                    jar.nextEntry(), entryName = jar.getEntryName()) {
-                    if (!(entryName.startsWith("META-INF/") &&
-                            entryName.endsWith(TLD_EXT))) {
-                        continue;
-                    }
+            List<String> entryNames = null;
+            if (index != null) {
+                entryNames = index.get(urlConn.getURL());
+            }
+            if (entryNames != null) {
+                // The JAR is unchanged so only the TLDs found by a previous
+                // scan need to be parsed
+                jarURL = urlConn.getJarFileURL();
+                for (String entryName : entryNames) {
                     found = true;
                     TldResourcePath tldResourcePath =
                             new TldResourcePath(jarURL, webappPath, entryName);
@@ -310,6 +345,36 @@ public class TldScanner {
                         throw new IOException(e);
                     }
                 }
+            } else {
+                if (index != null) {
+                    entryNames = new ArrayList<>();
+                }
+                try (Jar jar = JarFactory.newInstance(urlConn.getURL())) {
+                    jarURL = jar.getJarFileURL();
+                    jar.nextEntry();
+                    for (String entryName = jar.getEntryName();
+                        entryName != null;
+                        jar.nextEntry(), entryName = jar.getEntryName()) {
+                        if (!(entryName.startsWith("META-INF/") &&
+                                entryName.endsWith(TLD_EXT))) {
+                            continue;
+                        }
+                        found = true;
+                        TldResourcePath tldResourcePath =
+                                new TldResourcePath(jarURL, webappPath, entryName);
+                        try {
+                            parseTld(tldResourcePath);
+                        } catch (SAXException e) {
+                            throw new IOException(e);
+                        }
+                        if (entryNames != null) {
+                            entryNames.add(entryName);
+                        }
+                    }
+                }
+                if (entryNames != null) {
+                    index.put(urlConn.getURL(), entryNames);
+                }
             }
             if (found) {
                 if (log.isDebugEnabled()) {
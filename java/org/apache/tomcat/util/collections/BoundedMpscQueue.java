@@ -0,0 +1,210 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free queue for many producers and a single consumer backed
+ * by a ring buffer. Each slot has a sequence number that producers claim with
+ * a CAS on the shared tail so producers never block each other and the
+ * consumer never blocks producers. Once the queue has been created it
+ * generates no garbage.
+ * <p>
+ * {@link #poll()} must only ever be called by one thread at a time.
+ *
+ * @param <T> The type of object managed by this queue
+ */
+public class BoundedMpscQueue<T> {
+
+    private final Object[] buffer;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong tail = new AtomicLong(0);
+    private volatile long head = 0;
+
+
+    /**
+     * @param capacity The minimum capacity. It will be rounded up to the next
+     *                 power of two.
+     */
+    public BoundedMpscQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException();
+        }
+        int size = capacity == 1 ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        buffer = new Object[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+
+    /**
+     * Add an object to the queue.
+     *
+     * @param t The object to add
+     * @return <code>true</code> if the object was added or <code>false</code>
+     *         if the queue is full
+     */
+    public boolean offer(T t) {
+        long sequence = claim();
+        if (sequence < 0) {
+            return false;
+        }
+        set(sequence, t);
+        publish(sequence);
+        return true;
+    }
+
+
+    /**
+     * Remove the object at the head of the queue. Must only be called by the
+     * consumer thread.
+     *
+     * @return The object or <code>null</code> if the queue is empty
+     */
+    public T poll() {
+        T result = peek();
+        if (result != null) {
+            buffer[(int) (head & mask)] = null;
+            release();
+        }
+        return result;
+    }
+
+
+    /**
+     * Claim the next slot in the queue. The caller must fill the slot, via
+     * {@link #get(long)} and/or {@link #set(long, Object)}, and then call
+     * {@link #publish(long)}. Objects left in a slot by {@link #peek()} and
+     * {@link #release()} may be re-used in place this way so that producers
+     * and the consumer share a fixed set of objects without any further
+     * synchronization.
+     *
+     * @return The sequence of the claimed slot or -1 if the queue is full
+     */
+    public long claim() {
+        long pos = tail.get();
+        while (true) {
+            int index = (int) (pos & mask);
+            long dif = sequences.get(index) - pos;
+            if (dif == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    return pos;
+                }
+                pos = tail.get();
+            } else if (dif < 0) {
+                // The consumer has not yet released this slot
+                return -1;
+            } else {
+                // Another producer claimed this slot
+                pos = tail.get();
+            }
+        }
+    }
+
+
+    /**
+     * @param sequence A sequence returned by {@link #claim()} that has not yet
+     *                 been published
+     * @return The object currently held in the claimed slot
+     */
+    public T get(long sequence) {
+        @SuppressWarnings("unchecked")
+        T result = (T) buffer[(int) (sequence & mask)];
+        return result;
+    }
+
+
+    /**
+     * @param sequence A sequence returned by {@link #claim()} that has not yet
+     *                 been published
+     * @param t        The object to place in the claimed slot
+     */
+    public void set(long sequence, T t) {
+        buffer[(int) (sequence & mask)] = t;
+    }
+
+
+    /**
+     * Make a claimed slot available to the consumer.
+     *
+     * @param sequence A sequence returned by {@link #claim()}
+     */
+    public void publish(long sequence) {
+        sequences.lazySet((int) (sequence & mask), sequence + 1);
+    }
+
+
+    /**
+     * Return the object at the head of the queue without removing it. Must
+     * only be called by the consumer thread which must call
+     * {@link #release()} once it has finished with the object.
+     *
+     * @return The object or <code>null</code> if the queue is empty
+     */
+    public T peek() {
+        long pos = head;
+        int index = (int) (pos & mask);
+        if (sequences.get(index) != pos + 1) {
+            // Empty or the producer has not finished publishing
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        T result = (T) buffer[index];
+        return result;
+    }
+
+
+    /**
+     * Release the slot at the head of the queue, leaving the object in the
+     * slot for re-use by a producer. Must only be called by the consumer
+     * thread after {@link #peek()} has returned an object.
+     */
+    public void release() {
+        long pos = head;
+        // Release the slot for the producer one lap ahead
+        sequences.lazySet((int) (pos & mask), pos + mask + 1);
+        head = pos + 1;
+    }
+
+
+    /**
+     * @return An estimate of the number of objects in the queue
+     */
+    public int size() {
+        long size = tail.get() - head;
+        if (size < 0) {
+            return 0;
+        }
+        return (int) Math.min(size, buffer.length);
+    }
+
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+
+    public int capacity() {
+        return buffer.length;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * An unbounded, lock-free queue for many producers and a single consumer.
+ * Producers link a new node with a single atomic swap of the tail so they
+ * never block each other or the consumer. The price is one small node per
+ * object added which makes this a better fit than {@link SynchronizedQueue}
+ * only where contention on the queue lock is the larger cost.
+ * <p>
+ * A producer that has swapped the tail but not yet linked its node makes
+ * the queue briefly appear empty to the consumer. Callers that need to know
+ * an object has been added should signal the consumer after
+ * {@link #offer(Object)} returns.
+ * <p>
+ * {@link #poll()}, {@link #isEmpty()} and {@link #clear()} must only ever be
+ * called by one thread at a time.
+ *
+ * @param <T> The type of object managed by this queue
+ */
+public class MpscQueue<T> {
+
+    private final AtomicReference<Node<T>> tail;
+    private Node<T> head;
+
+
+    public MpscQueue() {
+        Node<T> stub = new Node<>(null);
+        head = stub;
+        tail = new AtomicReference<>(stub);
+    }
+
+
+    /**
+     * Add an object to the queue. May be called concurrently by any number of
+     * threads.
+     *
+     * @param t The object to add
+     */
+    @SuppressWarnings("unchecked")
+    public void offer(T t) {
+        Node<T> node = new Node<>(t);
+        Node<T> prev = tail.getAndSet(node);
+        Node.NEXT.lazySet(prev, node);
+    }
+
+
+    /**
+     * Remove the object at the head of the queue. Must only be called by the
+     * consumer thread.
+     *
+     * @return The object or <code>null</code> if the queue is empty
+     */
+    public T poll() {
+        Node<T> next = head.next;
+        if (next == null) {
+            return null;
+        }
+        T result = next.value;
+        // The node becomes the new stub
+        next.value = null;
+        head = next;
+        return result;
+    }
+
+
+    /**
+     * Must only be called by the consumer thread.
+     *
+     * @return <code>true</code> if there are no objects that can currently be
+     *         polled
+     */
+    public boolean isEmpty() {
+        return head.next == null;
+    }
+
+
+    /**
+     * Discard every object that can currently be polled. Must only be called
+     * by the consumer thread.
+     */
+    public void clear() {
+        while (poll() != null) {
+            // NO-OP
+        }
+    }
+
+
+    private static final class Node<T> {
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicReferenceFieldUpdater<Node,Node> NEXT =
+                AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "next");
+
+        private T value;
+        private volatile Node<T> next;
+
+        private Node(T value) {
+            this.value = value;
+        }
+    }
+}
@@ -16,7 +16,10 @@
  */
 package org.apache.tomcat.util.descriptor.web;
 
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.JarScannerCallback;
+import org.apache.tomcat.util.res.StringManager;
 import org.apache.tomcat.util.scan.Jar;
 import org.apache.tomcat.util.scan.JarFactory;
 import org.xml.sax.InputSource;
@@ -27,47 +30,112 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
 * Callback handling a web-fragment.xml descriptor.
 */
 public class FragmentJarScannerCallback implements JarScannerCallback {
 
+    private static final Log log =
+            LogFactory.getLog(FragmentJarScannerCallback.class);
+    private static final StringManager sm =
+            StringManager.getManager(Constants.PACKAGE_NAME);
+
     private static final String FRAGMENT_LOCATION =
         "META-INF/web-fragment.xml";
     private final WebXmlParser webXmlParser;
     private final boolean delegate;
     private final boolean parseRequired;
+    private final ExecutorService executor;
     private final Map<String,WebXml> fragments = new HashMap<>();
-    private boolean ok  = true;
+    private final List<Future<WebXml>> pending = new ArrayList<>();
+    private volatile boolean ok  = true;
 
     public FragmentJarScannerCallback(WebXmlParser webXmlParser, boolean delegate,
             boolean parseRequired) {
+        this(webXmlParser, delegate, parseRequired, null);
+    }
+
+    /**
+     * Create a callback that, if an executor is provided, processes each JAR
+     * or directory using that executor. The results are collected in the
+     * order the JARs and directories were scanned so the resulting fragments
+     * are the same as if they had been processed serially.
+     *
+     * @param webXmlParser  The parser to use for web-fragment.xml files. It
+     *                      must support concurrent use if an executor is
+     *                      provided.
+     * @param delegate      Should the fragments use delegation
+     * @param parseRequired Should web-fragment.xml files be parsed
+     * @param executor      The executor to use to process JARs and
+     *                      directories or <code>null</code> to process them
+     *                      on the scanning thread
+     */
+    public FragmentJarScannerCallback(WebXmlParser webXmlParser, boolean delegate,
+            boolean parseRequired, ExecutorService executor) {
         this.webXmlParser = webXmlParser;
         this.delegate = delegate;
         this.parseRequired = parseRequired;
+        this.executor = executor;
     }
 
     @Override
     public void scan(JarURLConnection jarConn, String webappPath, boolean isWebapp)
             throws IOException {
 
-        URL url = jarConn.getURL();
-        URL resourceURL = jarConn.getJarFileURL();
-        Jar jar = null;
-        InputStream is = null;
+        final URL url = jarConn.getURL();
+        final URL resourceURL = jarConn.getJarFileURL();
+        final WebXml fragment = createFragment(isWebapp);
+
+        if (executor == null) {
+            try {
+                processJar(url, resourceURL, fragment);
+            } finally {
+                fragments.put(fragment.getName(), fragment);
+            }
+        } else {
+            pending.add(executor.submit(new Callable<WebXml>() {
+                @Override
+                public WebXml call() {
+                    try {
+                        processJar(url, resourceURL, fragment);
+                    } catch (IOException e) {
+                        log.warn(sm.getString("fragmentJarScannerCallback.fail",
+                                url), e);
+                    }
+                    return fragment;
+                }
+            }));
+        }
+    }
+
+    private WebXml createFragment(boolean isWebapp) {
         WebXml fragment = new WebXml();
         fragment.setWebappJar(isWebapp);
         fragment.setDelegate(delegate);
+        return fragment;
+    }
+
+    private void processJar(URL url, URL resourceURL, WebXml fragment)
+            throws IOException {
+
+        Jar jar = null;
+        InputStream is = null;
 
         try {
             // Only web application JARs are checked for web-fragment.xml
             // files.
             // web-fragment.xml files don't need to be parsed if they are never
             // going to be used.
-            if (isWebapp && parseRequired) {
+            if (fragment.getWebappJar() && parseRequired) {
                 jar = JarFactory.newInstance(url);
                 is = jar.getInputStream(FRAGMENT_LOCATION);
             }
@@ -93,7 +161,6 @@ public class FragmentJarScannerCallback implements JarScannerCallback {
                 fragment.setName(fragment.getURL().toString());
             }
             fragment.setJarName(extractJarFileName(url));
-            fragments.put(fragment.getName(), fragment);
         }
     }
 
@@ -109,11 +176,35 @@ public class FragmentJarScannerCallback implements JarScannerCallback {
     }
 
     @Override
-    public void scan(File file, String webappPath, boolean isWebapp) throws IOException {
+    public void scan(final File file, String webappPath, boolean isWebapp)
+            throws IOException {
 
-        WebXml fragment = new WebXml();
-        fragment.setWebappJar(isWebapp);
-        fragment.setDelegate(delegate);
+        final WebXml fragment = createFragment(isWebapp);
+
+        if (executor == null) {
+            try {
+                processDirectory(file, fragment);
+            } finally {
+                fragments.put(fragment.getName(), fragment);
+            }
+        } else {
+            pending.add(executor.submit(new Callable<WebXml>() {
+                @Override
+                public WebXml call() {
+                    try {
+                        processDirectory(file, fragment);
+                    } catch (IOException e) {
+                        log.warn(sm.getString("fragmentJarScannerCallback.fail",
+                                file.getAbsolutePath()), e);
+                    }
+                    return fragment;
+                }
+            }));
+        }
+    }
+
+    private void processDirectory(File file, WebXml fragment)
+            throws IOException {
 
         File fragmentFile = new File(file, FRAGMENT_LOCATION);
         try {
@@ -137,7 +228,6 @@ public class FragmentJarScannerCallback implements JarScannerCallback {
                 fragment.setName(fragment.getURL().toString());
             }
             fragment.setJarName(file.getName());
-            fragments.put(fragment.getName(), fragment);
         }
     }
 
@@ -149,11 +239,37 @@ public class FragmentJarScannerCallback implements JarScannerCallback {
         // handle multiple web-fragment.xml files.
     }
 
+    /**
+     * Wait for any JARs and directories being processed by the executor and
+     * add the resulting fragments in the order they were scanned.
+     */
+    private void collectPending() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        for (Future<WebXml> future : pending) {
+            try {
+                WebXml fragment = future.get();
+                fragments.put(fragment.getName(), fragment);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                ok = false;
+            } catch (ExecutionException e) {
+                log.error(sm.getString("fragmentJarScannerCallback.taskFail"),
+                        e.getCause());
+                ok = false;
+            }
+        }
+        pending.clear();
+    }
+
     public boolean isOk() {
+        collectPending();
         return ok;
     }
 
     public Map<String,WebXml> getFragments() {
+        collectPending();
         return fragments;
     }
 }
@@ -29,6 +29,7 @@ import org.xml.sax.SAXParseException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class WebXmlParser {
 
@@ -54,9 +55,27 @@ public class WebXmlParser {
     private final Digester webFragmentDigester;
     private final WebRuleSet webFragmentRuleSet;
 
+    /**
+     * Flags that track whether the shared <code>Digester</code>s are in use.
+     * If a shared <code>Digester</code> is in use by another thread, a new one
+     * is created for the parse so this parser may be used concurrently.
+     */
+    private final AtomicBoolean webDigesterInUse = new AtomicBoolean(false);
+    private final AtomicBoolean webFragmentDigesterInUse =
+            new AtomicBoolean(false);
+
+    private final boolean namespaceAware;
+    private final boolean validation;
+    private final boolean blockExternal;
+    private volatile ClassLoader classLoader = null;
+
 
     public WebXmlParser(boolean namespaceAware, boolean validation,
             boolean blockExternal) {
+        this.namespaceAware = namespaceAware;
+        this.validation = validation;
+        this.blockExternal = blockExternal;
+
         webRuleSet = new WebRuleSet(false);
         webDigester = DigesterFactory.newDigester(validation,
                 namespaceAware, webRuleSet, blockExternal);
@@ -100,7 +119,19 @@ public class WebXmlParser {
 
         Digester digester;
         WebRuleSet ruleSet;
-        if (fragment) {
+        AtomicBoolean inUse =
+                fragment ? webFragmentDigesterInUse : webDigesterInUse;
+        boolean shared = inUse.compareAndSet(false, true);
+        if (!shared) {
+            // Another thread is parsing with the shared Digester
+            ruleSet = new WebRuleSet(fragment);
+            digester = DigesterFactory.newDigester(validation,
+                    namespaceAware, ruleSet, blockExternal);
+            ClassLoader classLoader = this.classLoader;
+            if (classLoader != null) {
+                digester.setClassLoader(classLoader);
+            }
+        } else if (fragment) {
             digester = webFragmentDigester;
             ruleSet = webFragmentRuleSet;
         } else {
@@ -147,6 +178,9 @@ public class WebXmlParser {
 
             digester.reset();
             ruleSet.recycle();
+            if (shared) {
+                inUse.set(false);
+            }
         }
 
         return ok;
@@ -158,6 +192,7 @@ public class WebXmlParser {
      * @param classLoader the ClassLoader to be used for creating descriptor objects
      */
     public void setClassLoader(ClassLoader classLoader) {
+        this.classLoader = classLoader;
         webDigester.setClassLoader(classLoader);
         webFragmentDigester.setClassLoader(classLoader);
     }
@@ -29,6 +29,7 @@ import java.net.InetSocketAddress;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -375,6 +376,30 @@ public abstract class AbstractEndpoint<S> {
     public Executor getExecutor() { return executor; }
 
 
+    /**
+     * Should the internal executor run each task on a new virtual thread
+     * rather than on a pool of platform threads? Ignored, with a warning,
+     * if the JVM does not support virtual threads.
+     */
+    private boolean useVirtualThreads = false;
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+    public boolean getUseVirtualThreads() { return useVirtualThreads; }
+
+
+    /**
+     * Should the internal executor be a {@link WorkStealingExecutor} that
+     * gives each submitting thread (usually a poller) its own task queue
+     * rather than a thread pool with a single shared queue?
+     */
+    private boolean useWorkStealing = false;
+    public void setUseWorkStealing(boolean useWorkStealing) {
+        this.useWorkStealing = useWorkStealing;
+    }
+    public boolean getUseWorkStealing() { return useWorkStealing; }
+
+
     /**
      * Server socket port.
      */
@@ -542,6 +567,14 @@ public abstract class AbstractEndpoint<S> {
     public void setName(String name) { this.name = name; }
     public String getName() { return name; }
 
+    /**
+     * JMX domain used to register any per-endpoint components, such as
+     * pollers. If <code>null</code> they are not registered.
+     */
+    private String domain = null;
+    public void setDomain(String domain) { this.domain = domain; }
+    public String getDomain() { return domain; }
+
     /**
      * The default is true - the created threads will be
      *  in daemon mode. If set to false, the control thread
@@ -678,12 +711,33 @@ public abstract class AbstractEndpoint<S> {
 
     public void createExecutor() {
         internalExecutor = true;
+        if (useVirtualThreads) {
+            if (VirtualThreadExecutor.isSupported()) {
+                executor = new VirtualThreadExecutor(getName() + "-virt-");
+                return;
+            }
+            getLog().warn(sm.getString("endpoint.warn.noVirtualThreads", getName()));
+        }
+        if (useWorkStealing) {
+            TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
+            executor = new WorkStealingExecutor(getExecutorLaneCount(),
+                    getMinSpareThreads(), getMaxThreads(), 60, TimeUnit.SECONDS, tf);
+            return;
+        }
         TaskQueue taskqueue = new TaskQueue();
         TaskThreadFactory tf = new TaskThreadFactory(getName() + "-exec-", daemon, getThreadPriority());
         executor = new ThreadPoolExecutor(getMinSpareThreads(), getMaxThreads(), 60, TimeUnit.SECONDS,taskqueue, tf);
         taskqueue.setParent( (ThreadPoolExecutor) executor);
     }
 
+    /**
+     * @return The number of task queues to use when the internal executor is
+     *         a {@link WorkStealingExecutor}
+     */
+    protected int getExecutorLaneCount() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
     public void shutdownExecutor() {
         if ( executor!=null && internalExecutor ) {
             if ( executor instanceof ThreadPoolExecutor ) {
@@ -703,6 +757,20 @@ public abstract class AbstractEndpoint<S> {
                 }
                 TaskQueue queue = (TaskQueue) tpe.getQueue();
                 queue.setParent(null);
+            } else if (executor instanceof ExecutorService) {
+                ExecutorService es = (ExecutorService) executor;
+                es.shutdownNow();
+                long timeout = getExecutorTerminationTimeoutMillis();
+                if (timeout > 0) {
+                    try {
+                        es.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    if (!es.isTerminated()) {
+                        getLog().warn(sm.getString("endpoint.warn.executorShutdown", getName()));
+                    }
+                }
             }
             executor = null;
         }
@@ -164,6 +164,13 @@ public class Nio2Endpoint extends AbstractJsseEndpoint<Nio2Channel> {
     @Override
     public void bind() throws Exception {
 
+        // The channel group runs its event loop on the executor threads
+        // which must not be virtual threads
+        if (getUseVirtualThreads()) {
+            log.warn(sm.getString("endpoint.nio2.noVirtualThreads"));
+            setUseVirtualThreads(false);
+        }
+
         // Create worker collection
         if ( getExecutor() == null ) {
             createExecutor();
@@ -1229,6 +1236,70 @@ public class Nio2Endpoint extends AbstractJsseEndpoint<Nio2Channel> {
         }
 
 
+        @Override
+        protected void doWriteGathering(ByteBuffer[] srcs, int offset, int length)
+                throws IOException {
+            socketBufferHandler.configureWriteBufferForRead();
+            ByteBuffer[] buffers = new ByteBuffer[length + 1];
+            buffers[0] = socketBufferHandler.getWriteBuffer();
+            System.arraycopy(srcs, offset, buffers, 1, length);
+
+            int first = 0;
+            while (first < buffers.length) {
+                if (!buffers[first].hasRemaining()) {
+                    first++;
+                    continue;
+                }
+                BlockingGatherWrite gatherWrite = new BlockingGatherWrite();
+                getSocket().write(buffers, first, buffers.length - first,
+                        getNio2WriteTimeout(), TimeUnit.MILLISECONDS, null, gatherWrite);
+                if (gatherWrite.get() < 0) {
+                    throw new EOFException(sm.getString("iob.failedwrite"));
+                }
+            }
+        }
+
+
+        /**
+         * Waits for the completion of a single gathering write so it can be
+         * used for blocking I/O. Timeouts are enforced by the channel.
+         */
+        private class BlockingGatherWrite implements CompletionHandler<Long, Void> {
+
+            private final CountDownLatch latch = new CountDownLatch(1);
+            private volatile long nBytes;
+            private volatile Throwable exc;
+
+            @Override
+            public void completed(Long result, Void attachment) {
+                nBytes = result.longValue();
+                latch.countDown();
+            }
+
+            @Override
+            public void failed(Throwable exc, Void attachment) {
+                this.exc = exc;
+                latch.countDown();
+            }
+
+            public long get() throws IOException {
+                try {
+                    latch.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                if (exc instanceof InterruptedByTimeoutException) {
+                    throw new SocketTimeoutException();
+                } else if (exc instanceof IOException) {
+                    throw (IOException) exc;
+                } else if (exc != null) {
+                    throw new IOException(exc);
+                }
+                return nBytes;
+            }
+        }
+
+
         @Override
         protected void flushBlocking() throws IOException {
             // Before doing a blocking flush, make sure that any pending non
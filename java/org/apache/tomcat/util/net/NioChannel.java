@@ -25,6 +25,8 @@ import java.nio.channels.ByteChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.Selector;
 import java.nio.channels.SocketChannel;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  *
@@ -50,6 +52,8 @@ public class NioChannel implements ByteChannel {
 
     protected volatile boolean sendFile = false;
 
+    private final ReentrantLock processingLock = new ReentrantLock();
+
     public NioChannel(SocketChannel channel, SocketBufferHandler bufHandler) {
         this.sc = channel;
         this.bufHandler = bufHandler;
@@ -66,6 +70,15 @@ public class NioChannel implements ByteChannel {
     }
 
 
+    /**
+     * @return The lock held while a request on this channel is being
+     *         processed
+     */
+    public Lock getProcessingLock() {
+        return processingLock;
+    }
+
+
     void setSocketWrapper(SocketWrapperBase<NioChannel> socket) {
         this.socket = socket;
     }
@@ -138,6 +151,21 @@ public class NioChannel implements ByteChannel {
         return sc.write(src);
     }
 
+    /**
+     * Writes a sequence of bytes to this channel from a subsequence of the
+     * given buffers.
+     *
+     * @param srcs   The buffers from which bytes are to be retrieved
+     * @param offset The index of the first buffer to write
+     * @param length The number of buffers to write
+     * @return The number of bytes taken from the buffers, possibly zero
+     * @throws IOException If some other I/O error occurs
+     */
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        checkInterruptStatus();
+        return sc.write(srcs, offset, length);
+    }
+
     /**
      * Reads a sequence of bytes from this channel into the given buffer.
      *
@@ -20,11 +20,14 @@ import org.apache.juli.logging.Log;
 import org.apache.juli.logging.LogFactory;
 import org.apache.tomcat.util.ExceptionUtils;
 import org.apache.tomcat.util.IntrospectionUtils;
-import org.apache.tomcat.util.collections.SynchronizedQueue;
+import org.apache.tomcat.util.collections.MpscQueue;
 import org.apache.tomcat.util.collections.SynchronizedStack;
 import org.apache.tomcat.util.net.AbstractEndpoint.Handler.SocketState;
+import org.apache.tomcat.util.modeler.Registry;
 import org.apache.tomcat.util.net.jsse.JSSESupport;
+import org.apache.tomcat.util.threads.LaneBindingExecutor;
 
+import javax.management.ObjectName;
 import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSession;
 import java.io.File;
@@ -41,6 +44,8 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * NIO tailored thread pool, providing the following services:
@@ -64,6 +69,25 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
 
     private static final Log log = LogFactory.getLog(NioEndpoint.class);
 
+    /**
+     * {@code StandardSocketOptions.SO_REUSEPORT} if the running JVM provides
+     * it (Java 9 onwards), otherwise {@code null}.
+     */
+    private static final SocketOption<Boolean> SO_REUSEPORT;
+
+    static {
+        SocketOption<Boolean> option = null;
+        try {
+            @SuppressWarnings("unchecked")
+            SocketOption<Boolean> value = (SocketOption<Boolean>)
+                    StandardSocketOptions.class.getField("SO_REUSEPORT").get(null);
+            option = value;
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            // Not available on this JVM
+        }
+        SO_REUSEPORT = option;
+    }
+
 
     public static final int OP_REGISTER = 0x100; //register interest op
 
@@ -76,6 +100,19 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
      */
     private ServerSocketChannel serverSock = null;
 
+    /**
+     * All the server sockets bound to the endpoint's address. There is more
+     * than one only when several listeners share the port via
+     * <code>SO_REUSEPORT</code>, in which case the first is also
+     * {@link #serverSock}.
+     */
+    private ServerSocketChannel[] serverSocks = null;
+
+    /**
+     * Index handed to the next Acceptor created by {@link #createAcceptor()}.
+     */
+    private int acceptorIndex = 0;
+
     /**
      *
      */
@@ -143,6 +180,16 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     public void setPollerThreadCount(int pollerThreadCount) { this.pollerThreadCount = pollerThreadCount; }
     public int getPollerThreadCount() { return pollerThreadCount; }
 
+    /**
+     * Number of server sockets to bind to the endpoint's address using
+     * <code>SO_REUSEPORT</code>. When greater than one each listener gets its
+     * own acceptor thread and its own subset of the pollers so that the kernel
+     * spreads new connections across them without any shared accept queue.
+     */
+    private int listenerCount = 1;
+    public void setListenerCount(int listenerCount) { this.listenerCount = listenerCount; }
+    public int getListenerCount() { return listenerCount; }
+
     private long selectorTimeout = 1000;
     public void setSelectorTimeout(long timeout){ this.selectorTimeout = timeout;}
     public long getSelectorTimeout(){ return this.selectorTimeout; }
@@ -235,14 +282,46 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     @Override
     public void bind() throws Exception {
 
-        serverSock = ServerSocketChannel.open();
-        socketProperties.setProperties(serverSock.socket());
+        int count = listenerCount;
+        if (count > 1 && SO_REUSEPORT == null) {
+            log.warn(sm.getString("endpoint.nio.noReusePort", Integer.valueOf(count)));
+            count = 1;
+        }
         InetSocketAddress addr = (getAddress()!=null?new InetSocketAddress(getAddress(),getPort()):new InetSocketAddress(getPort()));
-        serverSock.socket().bind(addr,getBacklog());
-        serverSock.configureBlocking(true); //mimic APR behavior
-        serverSock.socket().setSoTimeout(getSocketProperties().getSoTimeout());
+        serverSocks = new ServerSocketChannel[count];
+        try {
+            for (int i = 0; i < count; i++) {
+                serverSocks[i] = openServerSocket(addr, count > 1);
+                if (i == 0 && count > 1 && !serverSocks[0].supportedOptions().contains(SO_REUSEPORT)) {
+                    log.warn(sm.getString("endpoint.nio.noReusePort", Integer.valueOf(count)));
+                    serverSocks = new ServerSocketChannel[] { serverSocks[0] };
+                    break;
+                }
+                if (i == 0 && getPort() == 0) {
+                    // The remaining listeners must share the ephemeral port
+                    addr = new InetSocketAddress(addr.getAddress(),
+                            serverSocks[0].socket().getLocalPort());
+                }
+            }
+        } catch (IOException ioe) {
+            for (ServerSocketChannel ssc : serverSocks) {
+                if (ssc != null) {
+                    ssc.close();
+                }
+            }
+            serverSocks = null;
+            throw ioe;
+        }
+        serverSock = serverSocks[0];
 
         // Initialize thread count defaults for acceptor, poller
+        if (serverSocks.length > 1) {
+            // One acceptor per listener and at least one poller for each
+            acceptorThreadCount = serverSocks.length;
+            if (pollerThreadCount < serverSocks.length) {
+                pollerThreadCount = serverSocks.length;
+            }
+        }
         if (acceptorThreadCount == 0) {
             // FIXME: Doesn't seem to work that well with multiple accept threads
             acceptorThreadCount = 1;
@@ -287,12 +366,15 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             pollers = new Poller[getPollerThreadCount()];
             for (int i=0; i<pollers.length; i++) {
                 pollers[i] = new Poller();
+                pollers[i].index = i;
+                registerPoller(pollers[i], i);
                 Thread pollerThread = new Thread(pollers[i], getName() + "-ClientPoller-"+i);
                 pollerThread.setPriority(threadPriority);
                 pollerThread.setDaemon(true);
                 pollerThread.start();
             }
 
+            acceptorIndex = 0;
             startAcceptorThreads();
         }
     }
@@ -312,6 +394,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             unlockAccept();
             for (int i=0; pollers!=null && i<pollers.length; i++) {
                 if (pollers[i]==null) continue;
+                unregisterPoller(pollers[i]);
                 pollers[i].destroy();
                 pollers[i] = null;
             }
@@ -339,9 +422,12 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
         if (running) {
             stop();
         }
-        // Close server socket
-        serverSock.socket().close();
-        serverSock.close();
+        // Close server socket(s)
+        for (ServerSocketChannel ssc : serverSocks) {
+            ssc.socket().close();
+            ssc.close();
+        }
+        serverSocks = null;
         serverSock = null;
         super.unbind();
         releaseCaches();
@@ -368,9 +454,125 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     }
 
 
+    private ServerSocketChannel openServerSocket(InetSocketAddress addr,
+            boolean reusePort) throws IOException {
+        ServerSocketChannel ssc = ServerSocketChannel.open();
+        try {
+            socketProperties.setProperties(ssc.socket());
+            if (reusePort && ssc.supportedOptions().contains(SO_REUSEPORT)) {
+                ssc.setOption(SO_REUSEPORT, Boolean.TRUE);
+            }
+            ssc.socket().bind(addr,getBacklog());
+            ssc.configureBlocking(true); //mimic APR behavior
+            ssc.socket().setSoTimeout(getSocketProperties().getSoTimeout());
+        } catch (IOException ioe) {
+            ssc.close();
+            throw ioe;
+        }
+        return ssc;
+    }
+
+
+    /**
+     * Number of server sockets currently bound by this endpoint.
+     *
+     * @return The number of listeners or zero if the endpoint is not bound
+     */
+    public int getBoundListenerCount() {
+        ServerSocketChannel[] sscs = serverSocks;
+        return sscs == null ? 0 : sscs.length;
+    }
+
+
+    private void registerPoller(Poller poller, int index) {
+        if (getDomain() == null) {
+            return;
+        }
+        try {
+            ObjectName oname = new ObjectName(getDomain() +
+                    ":type=Poller,worker=" + ObjectName.quote(getName()) +
+                    ",name=ClientPoller-" + index);
+            Registry.getRegistry(null, null).registerComponent(poller, oname, null);
+            poller.oname = oname;
+        } catch (Exception e) {
+            log.warn(sm.getString("endpoint.nio.pollerRegisterFail", getName(),
+                    Integer.valueOf(index)), e);
+        }
+    }
+
+
+    private void unregisterPoller(Poller poller) {
+        if (poller.oname != null) {
+            Registry.getRegistry(null, null).unregisterComponent(poller.oname);
+            poller.oname = null;
+        }
+    }
+
+
+    /**
+     * One task queue per poller.
+     */
+    @Override
+    protected int getExecutorLaneCount() {
+        return getPollerThreadCount();
+    }
+
+
     @Override
     protected AbstractEndpoint.Acceptor createAcceptor() {
-        return new Acceptor();
+        return new Acceptor(acceptorIndex++);
+    }
+
+
+    /**
+     * With several <code>SO_REUSEPORT</code> listeners the kernel picks the
+     * listener for each connection, so a single connection only releases one
+     * of the acceptors. Keep connecting until they have all noticed.
+     */
+    @Override
+    protected void unlockAccept() {
+        ServerSocketChannel[] sscs = serverSocks;
+        if (sscs == null || sscs.length < 2) {
+            super.unlockAccept();
+            return;
+        }
+        InetSocketAddress saddr;
+        if (getAddress() == null) {
+            saddr = new InetSocketAddress("localhost", getLocalPort());
+        } else {
+            saddr = new InetSocketAddress(getAddress(), getLocalPort());
+        }
+        int utmo = Math.max(getSocketProperties().getUnlockTimeout(), 2 * 1000);
+        // Allow a generous number of attempts since the listener chosen for
+        // each connection depends on a hash of the client port
+        int attempts = sscs.length * 32;
+        while (attempts-- > 0 && isAcceptorRunning()) {
+            try (java.net.Socket s = new java.net.Socket()) {
+                s.setSoLinger(getSocketProperties().getSoLingerOn(),
+                        getSocketProperties().getSoLingerTime());
+                s.connect(saddr, utmo);
+            } catch (IOException e) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("endpoint.debug.unlock", "" + getPort()), e);
+                }
+                return;
+            }
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+    }
+
+
+    private boolean isAcceptorRunning() {
+        for (AbstractEndpoint.Acceptor acceptor : acceptors) {
+            if (acceptor.getState() == AbstractEndpoint.Acceptor.AcceptorState.RUNNING) {
+                return true;
+            }
+        }
+        return false;
     }
 
 
@@ -378,6 +580,14 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
      * Process the specified connection.
      */
     protected boolean setSocketOptions(SocketChannel socket) {
+        return setSocketOptions(socket, getPoller0());
+    }
+
+
+    /**
+     * Process the specified connection, registering it with the given poller.
+     */
+    protected boolean setSocketOptions(SocketChannel socket, Poller poller) {
         // Process the connection
         try {
             //disable blocking, APR style, we are gonna be polling it
@@ -400,7 +610,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                 channel.setIOChannel(socket);
                 channel.reset();
             }
-            getPoller0().register(channel);
+            poller.register(channel);
         } catch (Throwable t) {
             ExceptionUtils.handleThrowable(t);
             try {
@@ -470,10 +680,38 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
      */
     protected class Acceptor extends AbstractEndpoint.Acceptor {
 
+        private final int index;
+        private int pollerRotater = 0;
+
+        public Acceptor(int index) {
+            this.index = index;
+        }
+
+        /**
+         * When there are several listeners each acceptor owns the pollers
+         * whose index is congruent to its own modulo the number of listeners
+         * and hands connections only to those. Otherwise all the pollers are
+         * shared.
+         */
+        private Poller nextPoller() {
+            int shards = serverSocks.length;
+            if (shards < 2) {
+                return getPoller0();
+            }
+            int shard = index % shards;
+            int owned = (pollers.length - shard + shards - 1) / shards;
+            int i = pollerRotater++;
+            if (pollerRotater >= owned) {
+                pollerRotater = 0;
+            }
+            return pollers[shard + i * shards];
+        }
+
         @Override
         public void run() {
 
             int errorDelay = 0;
+            ServerSocketChannel listener = serverSocks[index % serverSocks.length];
 
             // Loop until we receive a shutdown command
             while (running) {
@@ -501,7 +739,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                     try {
                         // Accept the next incoming connection from the server
                         // socket
-                        socket = serverSock.accept();
+                        socket = listener.accept();
                     } catch (IOException ioe) {
                         //we didn't get a socket
                         countDownConnection();
@@ -516,7 +754,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                     // setSocketOptions() will add channel to the poller
                     // if successful
                     if (running && !paused) {
-                        if (!setSocketOptions(socket)) {
+                        if (!setSocketOptions(socket, nextPoller())) {
                             countDownConnection();
                             closeSocket(socket);
                         }
@@ -630,22 +868,76 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
     public class Poller implements Runnable {
 
         private Selector selector;
-        private final SynchronizedQueue<PollerEvent> events =
-                new SynchronizedQueue<>();
+        private final MpscQueue<PollerEvent> events = new MpscQueue<>();
 
         private volatile boolean close = false;
         private long nextExpiration = 0;//optimize expiration handling
 
+        /*
+         * Wakeups are coalesced. The counter is -1 only while the poller is in,
+         * or about to enter, a blocking select() and only the producer that
+         * moves it from -1 to 0 wakes the selector. Events added while the
+         * poller is awake just increment the counter so that the next select
+         * does not block.
+         */
         private AtomicLong wakeupCounter = new AtomicLong(0);
 
         private volatile int keyCount = 0;
 
+        private ObjectName oname = null;
+
+        private int index = 0;
+
+        // Statistics. Apart from wakeups these are only written by the poller
+        // thread.
+        private final AtomicLong wakeupCount = new AtomicLong(0);
+        private volatile long eventCount = 0;
+        private volatile long eventRate = 0;
+        private long rateWindowStart = System.nanoTime();
+        private long rateWindowEvents = 0;
+        private volatile long loopCount = 0;
+        private volatile long loopTime = 0;
+        private volatile long maxLoopTime = 0;
+
         public Poller() throws IOException {
             this.selector = Selector.open();
         }
 
         public int getKeyCount() { return keyCount; }
 
+        /**
+         * @return The number of registration and interest events processed
+         */
+        public long getEventCount() { return eventCount; }
+
+        /**
+         * @return The events processed per second, measured over the most
+         *         recent interval of at least one second
+         */
+        public long getEventRate() { return eventRate; }
+
+        /**
+         * @return The number of times a producer woke the selector
+         */
+        public long getWakeupCount() { return wakeupCount.get(); }
+
+        /**
+         * @return The number of iterations of the selector loop
+         */
+        public long getLoopCount() { return loopCount; }
+
+        /**
+         * @return The total time in milliseconds spent processing events, keys
+         *         and timeouts outside of select()
+         */
+        public long getLoopTime() { return loopTime / 1000000; }
+
+        /**
+         * @return The longest time in milliseconds a single iteration of the
+         *         selector loop spent outside of select()
+         */
+        public long getMaxLoopTime() { return maxLoopTime / 1000000; }
+
         public Selector getSelector() { return selector;}
 
         /**
@@ -661,7 +953,10 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
 
         private void addEvent(PollerEvent event) {
             events.offer(event);
-            if ( wakeupCounter.incrementAndGet() == 0 ) selector.wakeup();
+            if ( wakeupCounter.incrementAndGet() == 0 ) {
+                wakeupCount.incrementAndGet();
+                selector.wakeup();
+            }
         }
 
         /**
@@ -697,6 +992,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             PollerEvent pe = null;
             while ( (pe = events.poll()) != null ) {
                 result = true;
+                eventCount++;
                 try {
                     pe.run();
                     pe.reset();
@@ -787,6 +1083,12 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
          */
         @Override
         public void run() {
+            Executor executor = getExecutor();
+            if (executor instanceof LaneBindingExecutor) {
+                // Keep the sockets of this poller on the same workers
+                ((LaneBindingExecutor) executor).bindCurrentThread(index);
+            }
+
             // Loop until destroy() is called
             while (true) {
 
@@ -833,6 +1135,7 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                     log.error("",x);
                     continue;
                 }
+                long loopStart = System.nanoTime();
                 //either we timed out or we woke up, process events first
                 if ( keyCount == 0 ) hasEvents = (hasEvents | events());
 
@@ -855,11 +1158,30 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
 
                 //process timeouts
                 timeout(keyCount,hasEvents);
+
+                updateStatistics(loopStart);
             }//while
 
             stopLatch.countDown();
         }
 
+        private void updateStatistics(long loopStart) {
+            long now = System.nanoTime();
+            long time = now - loopStart;
+            loopCount++;
+            loopTime += time;
+            if (time > maxLoopTime) {
+                maxLoopTime = time;
+            }
+            long window = now - rateWindowStart;
+            if (window >= 1000000000L) {
+                long count = eventCount;
+                eventRate = (count - rateWindowEvents) * 1000000000L / window;
+                rateWindowEvents = count;
+                rateWindowStart = now;
+            }
+        }
+
         protected void processKey(SelectionKey sk, NioSocketWrapper attachment) {
             try {
                 if ( close ) {
@@ -1105,6 +1427,8 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
         private volatile SendfileData sendfileData = null;
         private volatile long lastRead = System.currentTimeMillis();
         private volatile long lastWrite = lastRead;
+        // Serialises writes from container and application threads
+        private final ReentrantLock writeLock = new ReentrantLock();
 
         public NioSocketWrapper(NioChannel channel, NioEndpoint endpoint) {
             super(channel, endpoint);
@@ -1257,7 +1581,17 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
 
 
         @Override
-        protected synchronized void doWriteInternal(boolean block) throws IOException {
+        protected void doWriteInternal(boolean block) throws IOException {
+            writeLock.lock();
+            try {
+                doWriteInternalLocked(block);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+
+        private void doWriteInternalLocked(boolean block) throws IOException {
             socketBufferHandler.configureWriteBufferForRead();
 
             long writeTimeout = getWriteTimeout();
@@ -1289,6 +1623,66 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
         }
 
 
+        @Override
+        protected void doWriteGathering(ByteBuffer[] srcs, int offset,
+                int length) throws IOException {
+            writeLock.lock();
+            try {
+                doWriteGatheringLocked(srcs, offset, length);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+
+        private void doWriteGatheringLocked(ByteBuffer[] srcs, int offset,
+                int length) throws IOException {
+            socketBufferHandler.configureWriteBufferForRead();
+            ByteBuffer[] buffers = new ByteBuffer[length + 1];
+            buffers[0] = socketBufferHandler.getWriteBuffer();
+            System.arraycopy(srcs, offset, buffers, 1, length);
+
+            long writeTimeout = getWriteTimeout();
+            Selector selector = null;
+            try {
+                selector = pool.get();
+            } catch (IOException x) {
+                // Ignore
+            }
+            try {
+                NioChannel channel = getSocket();
+                int first = 0;
+                while (first < buffers.length) {
+                    if (!buffers[first].hasRemaining()) {
+                        first++;
+                        continue;
+                    }
+                    if (channel.write(buffers, first, buffers.length - first) == 0) {
+                        if (channel instanceof SecureNioChannel) {
+                            // Encrypted data from the previous write is still
+                            // waiting. Block until it has been written.
+                            channel.flush(true, selector, writeTimeout);
+                        } else {
+                            // The socket send buffer is full. A blocking write
+                            // of the first buffer with data waits for space to
+                            // become available.
+                            pool.write(buffers[first], channel, selector, writeTimeout, true);
+                        }
+                    }
+                }
+                // Make sure we are flushed
+                do {
+                    if (channel.flush(true, selector, writeTimeout)) break;
+                } while (true);
+                lastWrite = System.currentTimeMillis();
+            } finally {
+                if (selector != null) {
+                    pool.put(selector);
+                }
+            }
+        }
+
+
         @Override
         public boolean isReadPending() {
             return false;
@@ -1471,7 +1865,11 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
             SelectionKey key = socket.getIOChannel().keyFor(
                     socket.getPoller().getSelector());
 
-            synchronized (socket) {
+            // A lock rather than a monitor so that a virtual thread that
+            // blocks while processing parks instead of pinning its carrier
+            Lock processingLock = socket.getProcessingLock();
+            processingLock.lock();
+            try {
                 try {
                     int handshake = -1;
 
@@ -1532,6 +1930,8 @@ public class NioEndpoint extends AbstractJsseEndpoint<NioChannel> {
                         processorCache.push(this);
                     }
                 }
+            } finally {
+                processingLock.unlock();
             }
         }
 
@@ -619,6 +619,47 @@ public class SecureNioChannel extends NioChannel  {
         }
     }
 
+    /**
+     * Encrypts data from a subsequence of the given buffers and writes it to
+     * the network. At most one TLS record is produced by each call. The
+     * encrypted data may not all have been written when this method returns
+     * so callers must use {@link #flush(boolean, Selector, long)} to complete
+     * a blocking write.
+     *
+     * @param srcs   The buffers from which bytes are to be retrieved
+     * @param offset The index of the first buffer to write
+     * @param length The number of buffers to write
+     * @return The number of bytes taken from the buffers, zero if encrypted
+     *         data from a previous write is still waiting to be written
+     * @throws IOException If an I/O error occurs or the data cannot be
+     *         encrypted
+     */
+    @Override
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        checkInterruptStatus();
+        //are we closing or closed?
+        if ( closing || closed) throw new IOException(sm.getString("channel.nio.ssl.closing"));
+
+        if (!flush(netOutBuffer)) {
+            //we haven't emptied out the buffer yet
+            return 0;
+        }
+
+        netOutBuffer.clear();
+        SSLEngineResult result = sslEngine.wrap(srcs, offset, length, netOutBuffer);
+        netOutBuffer.flip();
+
+        if (result.getStatus() == Status.OK) {
+            if (result.getHandshakeStatus() == HandshakeStatus.NEED_TASK) tasks();
+        } else {
+            throw new IOException(sm.getString("channel.nio.ssl.wrapFail", result.getStatus()));
+        }
+
+        flush(netOutBuffer);
+
+        return result.bytesConsumed();
+    }
+
     @Override
     public int getOutboundRemaining() {
         return netOutBuffer.remaining();
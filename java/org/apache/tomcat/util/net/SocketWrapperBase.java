@@ -413,9 +413,17 @@ public abstract class SocketWrapperBase<E> {
         //       non-blocking writes were flushed at the time the switch
         //       occurred.
 
+        socketBufferHandler.configureWriteBufferForWrite();
+        if (len >= socketBufferHandler.getWriteBuffer().remaining()) {
+            // The data will not fit in the socket write buffer. Write the
+            // buffered data and the new data together rather than copying the
+            // new data through the socket write buffer.
+            doWriteGathering(new ByteBuffer[] { ByteBuffer.wrap(buf, off, len) }, 0, 1);
+            return;
+        }
+
         // Keep writing until all the data has been transferred to the socket
         // write buffer and space remains in that buffer
-        socketBufferHandler.configureWriteBufferForWrite();
         int thisTime = transfer(buf, off, len, socketBufferHandler.getWriteBuffer());
         while (socketBufferHandler.getWriteBuffer().remaining() == 0) {
             len = len - thisTime;
@@ -427,6 +435,108 @@ public abstract class SocketWrapperBase<E> {
     }
 
 
+    /**
+     * Writes the provided buffers to the socket, buffering any remaining data
+     * if used in non-blocking mode. In blocking mode, data that does not fit
+     * in the socket write buffer is written directly from the provided buffers
+     * using a gathering write, if the implementation supports one. The
+     * position of each buffer is advanced past the data that was written or
+     * buffered.
+     *
+     * @param block  <code>true</code> if a blocking write should be used,
+     *                   otherwise a non-blocking write will be used
+     * @param srcs   The buffers containing the data to be written
+     * @param offset The index of the first buffer to write
+     * @param length The number of buffers to write
+     *
+     * @throws IOException If an IO error occurs during the write
+     */
+    public final void write(boolean block, ByteBuffer[] srcs, int offset, int length)
+            throws IOException {
+        if (srcs == null || getSocket() == null) {
+            return;
+        }
+
+        if (block) {
+            writeBlocking(srcs, offset, length);
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                ByteBuffer src = srcs[i];
+                int len = src.remaining();
+                if (len == 0) {
+                    continue;
+                }
+                if (src.hasArray()) {
+                    writeNonBlocking(src.array(), src.arrayOffset() + src.position(), len);
+                    src.position(src.limit());
+                } else {
+                    byte[] buf = new byte[len];
+                    src.get(buf);
+                    writeNonBlocking(buf, 0, len);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Transfers the data to the socket write buffer if it fits with space to
+     * spare. Otherwise writes any data already in the socket write buffer
+     * followed by the provided data using a blocking gathering write.
+     *
+     * @param srcs   The buffers containing the data to be written
+     * @param offset The index of the first buffer to write
+     * @param length The number of buffers to write
+     *
+     * @throws IOException If an IO error occurs during the write
+     */
+    protected void writeBlocking(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        long len = 0;
+        for (int i = offset; i < offset + length; i++) {
+            len += srcs[i].remaining();
+        }
+        socketBufferHandler.configureWriteBufferForWrite();
+        if (len < socketBufferHandler.getWriteBuffer().remaining()) {
+            for (int i = offset; i < offset + length; i++) {
+                transfer(srcs[i], socketBufferHandler.getWriteBuffer());
+            }
+        } else {
+            doWriteGathering(srcs, offset, length);
+        }
+    }
+
+
+    /**
+     * Writes the contents of the socket write buffer followed by the provided
+     * buffers using a blocking write. On return, all of the data must either
+     * have been written to the socket or have been transferred to the socket
+     * write buffer with space remaining in that buffer.
+     * <p>
+     * This implementation transfers the data through the socket write buffer.
+     * Sub-classes that can write multiple buffers in a single operation should
+     * override it to avoid that copy.
+     *
+     * @param srcs   The buffers containing the data to be written
+     * @param offset The index of the first buffer to write
+     * @param length The number of buffers to write
+     *
+     * @throws IOException If an IO error occurs during the write
+     */
+    protected void doWriteGathering(ByteBuffer[] srcs, int offset, int length)
+            throws IOException {
+        for (int i = offset; i < offset + length; i++) {
+            ByteBuffer src = srcs[i];
+            socketBufferHandler.configureWriteBufferForWrite();
+            transfer(src, socketBufferHandler.getWriteBuffer());
+            while (socketBufferHandler.getWriteBuffer().remaining() == 0) {
+                doWrite(true);
+                socketBufferHandler.configureWriteBufferForWrite();
+                transfer(src, socketBufferHandler.getWriteBuffer());
+            }
+        }
+    }
+
+
     /**
      * Transfers the data to the socket write buffer (writing that data to the
      * socket if the buffer fills up using a non-blocking write) until either
@@ -0,0 +1,302 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.scan;
+
+import org.apache.juli.logging.Log;
+import org.apache.juli.logging.LogFactory;
+import org.apache.tomcat.util.buf.HexUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An index, persisted to a file, of the results of scanning JAR files. Each
+ * JAR is identified by its path, size and a digest of its contents so the
+ * results for a JAR are only reused if the JAR is unchanged. What is recorded
+ * for each JAR is up to the caller.
+ * <p>
+ * Only JARs that are files on disk (URLs of the form
+ * <code>jar:file:...!/</code> or <code>file:...</code>) are indexed.
+ * <p>
+ * Instances are safe for concurrent use.
+ */
+public class JarScanIndex {
+
+    private static final Log log = LogFactory.getLog(JarScanIndex.class);
+    private static final StringManager sm =
+            StringManager.getManager(Constants.Package);
+
+    private static final int VERSION = 1;
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+
+    private final File file;
+    private final String fingerprint;
+
+    /**
+     * Entries read from the index file, keyed by JAR path.
+     */
+    private final Map<String,Entry> loaded = new ConcurrentHashMap<>();
+
+    /**
+     * Entries for the JARs seen since the index was loaded, keyed by JAR
+     * path. Only these entries are written by {@link #store()}.
+     */
+    private final Map<String,Entry> current = new ConcurrentHashMap<>();
+
+    /**
+     * Keys for the JARs seen since the index was loaded so the digest of each
+     * JAR is only calculated once.
+     */
+    private final Map<String,Key> keys = new ConcurrentHashMap<>();
+
+    private volatile boolean modified = false;
+
+
+    /**
+     * Create an index backed by the given file, reading any existing content.
+     *
+     * @param file        The file the index is read from and stored to
+     * @param fingerprint Identifies the settings that the recorded results
+     *                    depend on. If the stored fingerprint is different,
+     *                    the stored content is ignored.
+     */
+    public JarScanIndex(File file, String fingerprint) {
+        this.file = file;
+        this.fingerprint = fingerprint;
+        load();
+    }
+
+
+    /**
+     * Obtain the results recorded for a JAR.
+     *
+     * @param url The URL of the JAR
+     *
+     * @return The recorded results or <code>null</code> if the JAR cannot be
+     *         indexed, has not been indexed or has changed since it was
+     *         indexed
+     */
+    public List<String> get(URL url) {
+        Key key = getKey(url);
+        if (key == null) {
+            return null;
+        }
+        Entry entry = loaded.get(key.path);
+        if (entry == null || entry.size != key.size ||
+                !entry.digest.equals(key.getDigest())) {
+            return null;
+        }
+        current.put(key.path, entry);
+        return entry.values;
+    }
+
+
+    /**
+     * Record the results for a JAR.
+     *
+     * @param url    The URL of the JAR
+     * @param values The results to record
+     */
+    public void put(URL url, List<String> values) {
+        Key key = getKey(url);
+        if (key == null) {
+            return;
+        }
+        String digest = key.getDigest();
+        if (digest == null) {
+            return;
+        }
+        current.put(key.path, new Entry(key.size, digest,
+                Collections.unmodifiableList(new ArrayList<>(values))));
+        modified = true;
+    }
+
+
+    /**
+     * Write the index to its file if any JAR has been added, changed or
+     * removed since the index was loaded. Entries for JARs that were not seen
+     * since the index was loaded are dropped.
+     */
+    public void store() {
+        if (!modified && current.keySet().equals(loaded.keySet())) {
+            return;
+        }
+
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            log.warn(sm.getString("jarScanIndex.storeFail", file));
+            return;
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(VERSION);
+            out.writeUTF(fingerprint);
+            out.writeInt(current.size());
+            for (Map.Entry<String,Entry> e : current.entrySet()) {
+                Entry entry = e.getValue();
+                out.writeUTF(e.getKey());
+                out.writeLong(entry.size);
+                out.writeUTF(entry.digest);
+                out.writeInt(entry.values.size());
+                for (String value : entry.values) {
+                    out.writeUTF(value);
+                }
+            }
+        } catch (IOException ioe) {
+            log.warn(sm.getString("jarScanIndex.storeFail", file), ioe);
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+            return;
+        }
+        if ((file.exists() && !file.delete()) || !tmp.renameTo(file)) {
+            log.warn(sm.getString("jarScanIndex.storeFail", file));
+            if (!tmp.delete()) {
+                tmp.deleteOnExit();
+            }
+        }
+    }
+
+
+    private void load() {
+        if (!file.isFile()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != VERSION || !fingerprint.equals(in.readUTF())) {
+                if (log.isDebugEnabled()) {
+                    log.debug(sm.getString("jarScanIndex.stale", file));
+                }
+                return;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long size = in.readLong();
+                String digest = in.readUTF();
+                int valueCount = in.readInt();
+                List<String> values = new ArrayList<>(valueCount);
+                for (int j = 0; j < valueCount; j++) {
+                    values.add(in.readUTF());
+                }
+                loaded.put(path, new Entry(size, digest,
+                        Collections.unmodifiableList(values)));
+            }
+        } catch (IOException ioe) {
+            // Ignore the corrupt index. It will be rewritten.
+            log.warn(sm.getString("jarScanIndex.loadFail", file), ioe);
+            loaded.clear();
+        }
+    }
+
+
+    private Key getKey(URL url) {
+        String urlStr = url.toString();
+        if (urlStr.startsWith("jar:file:") && urlStr.endsWith("!/")) {
+            urlStr = urlStr.substring(4, urlStr.length() - 2);
+        } else if (!urlStr.startsWith("file:")) {
+            return null;
+        }
+        File f;
+        try {
+            f = new File(new URL(urlStr).toURI());
+        } catch (IOException | URISyntaxException | IllegalArgumentException e) {
+            return null;
+        }
+        if (!f.isFile()) {
+            return null;
+        }
+        String path = f.getAbsolutePath();
+        Key key = keys.get(path);
+        if (key == null) {
+            key = new Key(f);
+            Key existing = keys.putIfAbsent(path, key);
+            if (existing != null) {
+                key = existing;
+            }
+        }
+        return key;
+    }
+
+
+    private static class Key {
+
+        private final File file;
+        private final String path;
+        private final long size;
+        private volatile String digest;
+
+        public Key(File file) {
+            this.file = file;
+            this.path = file.getAbsolutePath();
+            this.size = file.length();
+        }
+
+        public String getDigest() {
+            if (digest == null) {
+                try (InputStream is = new FileInputStream(file)) {
+                    MessageDigest md =
+                            MessageDigest.getInstance(DIGEST_ALGORITHM);
+                    byte[] buf = new byte[8192];
+                    int n;
+                    while ((n = is.read(buf)) > 0) {
+                        md.update(buf, 0, n);
+                    }
+                    digest = HexUtils.toHexString(md.digest());
+                } catch (IOException | NoSuchAlgorithmException e) {
+                    log.warn(sm.getString("jarScanIndex.digestFail", path), e);
+                    // Never matches a recorded digest
+                    digest = "";
+                }
+            }
+            return digest.length() == 0 ? null : digest;
+        }
+    }
+
+
+    private static class Entry {
+
+        private final long size;
+        private final String digest;
+        private final List<String> values;
+
+        public Entry(long size, String digest, List<String> values) {
+            this.size = size;
+            this.digest = digest;
+            this.values = values;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.Executor;
+
+/**
+ * An executor that queues tasks in several lanes and can route all the tasks
+ * submitted by a thread, such as a poller, to the same lane.
+ */
+public interface LaneBindingExecutor extends Executor {
+
+    /**
+     * Route all the tasks submitted by the current thread to one lane.
+     *
+     * @param lane The index of the submitting thread among its peers, for
+     *             example the poller index. Implementations may use it to
+     *             select the lane.
+     */
+    public void bindCurrentThread(int lane);
+
+    /**
+     * @return The number of lanes or zero if tasks are not queued in lanes
+     */
+    public int getLaneCount();
+}
@@ -0,0 +1,281 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * An executor that runs every task on a new virtual thread. Virtual threads
+ * are cheap to create and park without holding on to an operating system
+ * thread so the number of tasks that may block concurrently is not limited
+ * by a pool size. Virtual threads are never reused which also means there is
+ * nothing to renew when a web application is stopped.
+ * <p>
+ * Virtual threads are only available from Java 21 onwards. They are looked
+ * up reflectively so this class can be loaded on any JVM; use
+ * {@link #isSupported()} before creating an instance.
+ */
+public class VirtualThreadExecutor extends AbstractExecutorService
+        implements ResizableExecutor {
+
+    protected static final StringManager sm = StringManager
+            .getManager("org.apache.tomcat.util.threads.res");
+
+    private static final Method OF_VIRTUAL;
+    private static final Method NAME;
+    private static final Method FACTORY;
+
+    static {
+        Method ofVirtual = null;
+        Method name = null;
+        Method factory = null;
+        try {
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            name = builderClass.getMethod("name", String.class, long.class);
+            factory = builderClass.getMethod("factory");
+            // Make sure virtual threads are usable and not a disabled preview
+            ofVirtual.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            ofVirtual = null;
+            name = null;
+            factory = null;
+        }
+        OF_VIRTUAL = ofVirtual;
+        NAME = name;
+        FACTORY = factory;
+    }
+
+
+    /**
+     * @return <code>true</code> if the running JVM supports virtual threads
+     */
+    public static boolean isSupported() {
+        return OF_VIRTUAL != null;
+    }
+
+
+    private final ThreadFactory threadFactory;
+    private final Set<Thread> threads = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicInteger largestActiveCount = new AtomicInteger(0);
+    private final AtomicLong completedTaskCount = new AtomicLong(0);
+    private final Object terminationLock = new Object();
+    private volatile boolean shutdown = false;
+
+
+    /**
+     * @param namePrefix Prefix for the names of the virtual threads. A
+     *                   sequence number starting at 1 is appended.
+     *
+     * @throws UnsupportedOperationException if the JVM does not support
+     *         virtual threads
+     */
+    public VirtualThreadExecutor(String namePrefix) {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException(
+                    sm.getString("virtualThreadExecutor.notSupported"));
+        }
+        try {
+            Object builder = OF_VIRTUAL.invoke(null);
+            builder = NAME.invoke(builder, namePrefix, Long.valueOf(1));
+            threadFactory = (ThreadFactory) FACTORY.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new UnsupportedOperationException(
+                    sm.getString("virtualThreadExecutor.notSupported"), e);
+        }
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        if (shutdown) {
+            throw new RejectedExecutionException(
+                    sm.getString("virtualThreadExecutor.shutdown"));
+        }
+        Thread t;
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        try {
+            // Threads should not be created by the webapp classloader
+            Thread.currentThread().setContextClassLoader(getClass().getClassLoader());
+            t = threadFactory.newThread(new Task(command));
+        } finally {
+            Thread.currentThread().setContextClassLoader(loader);
+        }
+        threads.add(t);
+        try {
+            t.start();
+        } catch (RuntimeException | Error e) {
+            threads.remove(t);
+            throw e;
+        }
+    }
+
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        signalIfTerminated();
+    }
+
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        for (Thread t : threads) {
+            t.interrupt();
+        }
+        // Tasks start immediately so none are ever waiting
+        return new ArrayList<>();
+    }
+
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && threads.isEmpty();
+    }
+
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+            }
+        }
+        return true;
+    }
+
+
+    private void signalIfTerminated() {
+        if (isTerminated()) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+
+    // ------------------------------------------------ ResizableExecutor
+
+    /**
+     * @return The number of virtual threads that have been started and have
+     *         not yet finished
+     */
+    @Override
+    public int getPoolSize() {
+        return threads.size();
+    }
+
+
+    /**
+     * @return <code>-1</code> since the number of virtual threads is not
+     *         limited
+     */
+    @Override
+    public int getMaxThreads() {
+        return -1;
+    }
+
+
+    @Override
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+
+    /**
+     * @return The largest number of tasks that have been running at the same
+     *         time
+     */
+    public int getLargestPoolSize() {
+        return largestActiveCount.get();
+    }
+
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+
+    /**
+     * Virtual threads are not pooled so there is nothing to resize.
+     */
+    @Override
+    public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        return false;
+    }
+
+
+    @Override
+    public boolean resizeQueue(int capacity) {
+        return false;
+    }
+
+
+    private class Task implements Runnable {
+
+        private final Runnable command;
+
+        Task(Runnable command) {
+            this.command = command;
+        }
+
+        @Override
+        public void run() {
+            int active = activeCount.incrementAndGet();
+            int largest = largestActiveCount.get();
+            while (active > largest && !largestActiveCount.compareAndSet(largest, active)) {
+                largest = largestActiveCount.get();
+            }
+            try {
+                command.run();
+            } finally {
+                activeCount.decrementAndGet();
+                completedTaskCount.incrementAndGet();
+                threads.remove(Thread.currentThread());
+                if (shutdown) {
+                    signalIfTerminated();
+                }
+            }
+        }
+    }
+}
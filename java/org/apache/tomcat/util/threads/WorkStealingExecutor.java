@@ -0,0 +1,639 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.tomcat.util.ExceptionUtils;
+import org.apache.tomcat.util.res.StringManager;
+
+/**
+ * An executor that avoids the single shared queue of
+ * {@link ThreadPoolExecutor}. Tasks are queued in one of several lanes, each
+ * with its own lock-free queue and its own workers. A thread always submits
+ * to the same lane so, for example, the sockets selected by one poller are
+ * processed by the same group of workers. A worker with nothing to do in its
+ * own lane steals from the other lanes before it goes idle.
+ * <p>
+ * Thread management follows {@link ThreadPoolExecutor}: the pool never
+ * shrinks below the core size, a new thread is only started when a task is
+ * submitted and no thread is idle, the pool never grows above the maximum
+ * size and threads above the core size exit once they have been idle for the
+ * keep alive time. Threads are renewed after a web application is stopped in
+ * the same way.
+ */
+public class WorkStealingExecutor extends AbstractExecutorService
+        implements ResizableExecutor, LaneBindingExecutor {
+
+    protected static final StringManager sm = StringManager
+            .getManager("org.apache.tomcat.util.threads.res");
+
+    private final Lane[] lanes;
+    private final AtomicInteger nextLane = new AtomicInteger(0);
+    private final ThreadLocal<Lane> threadLane = new ThreadLocal<>();
+    private final ThreadFactory threadFactory;
+
+    private volatile int corePoolSize;
+    private volatile int maximumPoolSize;
+    private volatile long keepAliveNanos;
+    private volatile int maxQueueSize = Integer.MAX_VALUE;
+    private volatile long threadRenewalDelay = Constants.DEFAULT_THREAD_RENEWAL_DELAY;
+
+    private final Set<Worker> workers = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger poolSize = new AtomicInteger(0);
+    private final AtomicInteger largestPoolSize = new AtomicInteger(0);
+    private final AtomicInteger activeCount = new AtomicInteger(0);
+    private final AtomicInteger queueSize = new AtomicInteger(0);
+    private final AtomicLong completedTaskCount = new AtomicLong(0);
+    private final AtomicLong stealCount = new AtomicLong(0);
+
+    private final AtomicLong lastContextStoppedTime = new AtomicLong(0L);
+    private final AtomicLong lastTimeThreadKilledItself = new AtomicLong(0L);
+
+    private final Object terminationLock = new Object();
+    private volatile boolean shutdown = false;
+    /*
+     * Set by shutdownNow(). Once set, workers take no further tasks from the
+     * lanes even if a task is added after the lanes were drained.
+     */
+    private volatile boolean stop = false;
+
+
+    /**
+     * @param laneCount       The number of lanes, usually the number of
+     *                        threads that submit most of the tasks
+     * @param corePoolSize    The number of threads to keep even if they are
+     *                        idle
+     * @param maximumPoolSize The maximum number of threads
+     * @param keepAliveTime   How long threads above the core size may be
+     *                        idle before they exit
+     * @param unit            The unit of <code>keepAliveTime</code>
+     * @param threadFactory   The factory used to create the threads
+     */
+    public WorkStealingExecutor(int laneCount, int corePoolSize,
+            int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+            ThreadFactory threadFactory) {
+        if (laneCount < 1 || corePoolSize < 0 || maximumPoolSize < 1 ||
+                maximumPoolSize < corePoolSize || keepAliveTime < 0) {
+            throw new IllegalArgumentException();
+        }
+        lanes = new Lane[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = new Lane(i);
+        }
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        this.keepAliveNanos = unit.toNanos(keepAliveTime);
+        this.threadFactory = threadFactory;
+    }
+
+
+    // ------------------------------------------------------------ Properties
+
+    @Override
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    public int getCorePoolSize() {
+        return corePoolSize;
+    }
+
+    public void setCorePoolSize(int corePoolSize) {
+        resizePool(corePoolSize, maximumPoolSize);
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        resizePool(corePoolSize, maximumPoolSize);
+    }
+
+    public long getKeepAliveTime(TimeUnit unit) {
+        return unit.convert(keepAliveNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void setKeepAliveTime(long time, TimeUnit unit) {
+        keepAliveNanos = unit.toNanos(time);
+    }
+
+    /**
+     * @param maxQueueSize The maximum number of tasks that may wait for a
+     *                     thread across all lanes before further tasks are
+     *                     rejected
+     */
+    public void setMaxQueueSize(int maxQueueSize) {
+        this.maxQueueSize = maxQueueSize;
+    }
+
+    public int getMaxQueueSize() {
+        return maxQueueSize;
+    }
+
+    public long getThreadRenewalDelay() {
+        return threadRenewalDelay;
+    }
+
+    public void setThreadRenewalDelay(long threadRenewalDelay) {
+        this.threadRenewalDelay = threadRenewalDelay;
+    }
+
+
+    // ------------------------------------------------------------ Statistics
+
+    @Override
+    public int getPoolSize() {
+        return poolSize.get();
+    }
+
+    @Override
+    public int getMaxThreads() {
+        return maximumPoolSize;
+    }
+
+    @Override
+    public int getActiveCount() {
+        return activeCount.get();
+    }
+
+    public int getLargestPoolSize() {
+        return largestPoolSize.get();
+    }
+
+    public long getCompletedTaskCount() {
+        return completedTaskCount.get();
+    }
+
+    /**
+     * @return The number of tasks waiting for a thread in all lanes
+     */
+    public int getQueueSize() {
+        return queueSize.get();
+    }
+
+    /**
+     * @return The number of tasks that were executed by a worker from a lane
+     *         other than its own
+     */
+    public long getStealCount() {
+        return stealCount.get();
+    }
+
+
+    // ------------------------------------------------------- Public methods
+
+    /**
+     * Route all the tasks submitted by the current thread to the given lane.
+     * Threads that are not bound are assigned a lane in turn the first time
+     * they submit a task.
+     *
+     * @param lane The lane index. It is reduced modulo the number of lanes.
+     */
+    @Override
+    public void bindCurrentThread(int lane) {
+        threadLane.set(lanes[Math.abs(lane % lanes.length)]);
+    }
+
+
+    @Override
+    public void execute(Runnable command) {
+        execute(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+
+    /**
+     * Executes the given command at some time in the future. If the maximum
+     * number of tasks are already waiting for a thread, wait up to the given
+     * time for one of them to be taken before rejecting the command.
+     *
+     * @param command the runnable task
+     * @param timeout the maximum time to wait for space in the queue
+     * @param unit    the unit of <code>timeout</code>
+     *
+     * @throws RejectedExecutionException if the executor has been shutdown
+     *         or the queue is still full once the timeout has expired
+     */
+    public void execute(Runnable command, long timeout, TimeUnit unit) {
+        if (command == null) {
+            throw new NullPointerException();
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException(
+                    sm.getString("workStealingExecutor.shutdown"));
+        }
+        long deadline = 0;
+        while (queueSize.incrementAndGet() > maxQueueSize) {
+            queueSize.decrementAndGet();
+            if (deadline == 0) {
+                deadline = System.nanoTime() + unit.toNanos(timeout);
+            }
+            if (shutdown || deadline - System.nanoTime() <= 0) {
+                throw new RejectedExecutionException(
+                        sm.getString("workStealingExecutor.queueFull"));
+            }
+            // A full queue should be rare so poll rather than add the cost of
+            // signalling waiting submitters to every task taken
+            LockSupport.parkNanos(this, TimeUnit.MICROSECONDS.toNanos(100));
+            if (Thread.interrupted()) {
+                throw new RejectedExecutionException(new InterruptedException());
+            }
+        }
+        Lane lane = getLane();
+        lane.tasks.offer(command);
+        signalWork(lane);
+    }
+
+
+    /**
+     * Start all the core threads so they are ready before the first task is
+     * submitted.
+     */
+    public void prestartAllCoreThreads() {
+        int i = 0;
+        while (addWorker(lanes[i++ % lanes.length], corePoolSize)) {
+            // NO-OP
+        }
+    }
+
+
+    @Override
+    public boolean resizePool(int corePoolSize, int maximumPoolSize) {
+        if (corePoolSize < 0 || maximumPoolSize < 1 ||
+                maximumPoolSize < corePoolSize) {
+            return false;
+        }
+        this.corePoolSize = corePoolSize;
+        this.maximumPoolSize = maximumPoolSize;
+        // Let surplus idle threads notice the new limits
+        wakeIdleWorkers();
+        return true;
+    }
+
+
+    @Override
+    public boolean resizeQueue(int capacity) {
+        return false;
+    }
+
+
+    /**
+     * Signal that a web application has been stopped so that threads created
+     * before now are replaced, one every {@link #getThreadRenewalDelay()}
+     * milliseconds, to release any thread locals the application left behind.
+     */
+    public void contextStopping() {
+        this.lastContextStoppedTime.set(System.currentTimeMillis());
+        wakeIdleWorkers();
+    }
+
+
+    @Override
+    public void shutdown() {
+        shutdown = true;
+        wakeIdleWorkers();
+        signalIfTerminated();
+    }
+
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        // Stop the workers taking tasks before the lanes are drained so that
+        // every queued task is either returned here or already running
+        stop = true;
+        shutdown = true;
+        List<Runnable> pending = new ArrayList<>();
+        for (Lane lane : lanes) {
+            Runnable task;
+            while ((task = lane.tasks.poll()) != null) {
+                queueSize.decrementAndGet();
+                pending.add(task);
+            }
+        }
+        for (Worker worker : workers) {
+            Thread t = worker.thread;
+            if (t != null) {
+                t.interrupt();
+            }
+        }
+        wakeIdleWorkers();
+        signalIfTerminated();
+        return pending;
+    }
+
+
+    @Override
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+
+    @Override
+    public boolean isTerminated() {
+        return shutdown && poolSize.get() == 0;
+    }
+
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit)
+            throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (terminationLock) {
+            while (!isTerminated()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(terminationLock, remaining);
+            }
+        }
+        return true;
+    }
+
+
+    // ------------------------------------------------------ Private methods
+
+    private Lane getLane() {
+        Lane lane = threadLane.get();
+        if (lane == null) {
+            lane = lanes[Math.abs(nextLane.getAndIncrement() % lanes.length)];
+            threadLane.set(lane);
+        }
+        return lane;
+    }
+
+
+    private void signalWork(Lane lane) {
+        // Prefer an idle worker from the same lane, then any idle worker
+        Worker worker = lane.idle.poll();
+        for (int i = 1; worker == null && i < lanes.length; i++) {
+            worker = lanes[(lane.index + i) % lanes.length].idle.poll();
+        }
+        if (worker != null) {
+            LockSupport.unpark(worker.thread);
+            return;
+        }
+        // Every thread is busy
+        addWorker(lane, maximumPoolSize);
+    }
+
+
+    private boolean addWorker(Lane lane, int limit) {
+        while (true) {
+            int size = poolSize.get();
+            if (size >= limit || shutdown) {
+                return false;
+            }
+            if (poolSize.compareAndSet(size, size + 1)) {
+                int largest = largestPoolSize.get();
+                while (size + 1 > largest &&
+                        !largestPoolSize.compareAndSet(largest, size + 1)) {
+                    largest = largestPoolSize.get();
+                }
+                break;
+            }
+        }
+        try {
+            startWorker(lane);
+        } catch (RuntimeException | Error e) {
+            poolSize.decrementAndGet();
+            throw e;
+        }
+        return true;
+    }
+
+
+    private void startWorker(Lane lane) {
+        Worker worker = new Worker(lane);
+        Thread t = threadFactory.newThread(worker);
+        worker.thread = t;
+        workers.add(worker);
+        t.start();
+    }
+
+
+    private void wakeIdleWorkers() {
+        for (Lane lane : lanes) {
+            Worker worker;
+            while ((worker = lane.idle.poll()) != null) {
+                LockSupport.unpark(worker.thread);
+            }
+        }
+    }
+
+
+    private void signalIfTerminated() {
+        if (isTerminated()) {
+            synchronized (terminationLock) {
+                terminationLock.notifyAll();
+            }
+        }
+    }
+
+
+    /*
+     * Only reduce the pool size if the result will not be below the core
+     * size (or zero once shutdown) so concurrent exits never overshoot.
+     */
+    private boolean tryRetire() {
+        while (true) {
+            int size = poolSize.get();
+            int min = shutdown ? 0 : corePoolSize;
+            if (size <= min && size <= maximumPoolSize) {
+                return false;
+            }
+            if (poolSize.compareAndSet(size, size - 1)) {
+                return true;
+            }
+        }
+    }
+
+
+    private boolean shouldRenew(Worker worker) {
+        if (threadRenewalDelay < 0 || shutdown) {
+            return false;
+        }
+        Thread t = worker.thread;
+        if (!(t instanceof TaskThread) ||
+                ((TaskThread) t).getCreationTime() >= lastContextStoppedTime.get()) {
+            return false;
+        }
+        long lastTime = lastTimeThreadKilledItself.get();
+        long now = System.currentTimeMillis();
+        return lastTime + threadRenewalDelay < now &&
+                lastTimeThreadKilledItself.compareAndSet(lastTime, now + 1);
+    }
+
+
+    private static final class Lane {
+
+        private final int index;
+        private final ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final ConcurrentLinkedDeque<Worker> idle = new ConcurrentLinkedDeque<>();
+
+        private Lane(int index) {
+            this.index = index;
+        }
+    }
+
+
+    private final class Worker implements Runnable {
+
+        private final Lane home;
+        private volatile Thread thread;
+
+        private Worker(Lane home) {
+            this.home = home;
+        }
+
+        @Override
+        public void run() {
+            // Tasks submitted by a worker stay in its lane
+            threadLane.set(home);
+            boolean renew = false;
+            boolean completed = false;
+            try {
+                renew = runTasks();
+                completed = true;
+            } finally {
+                workers.remove(this);
+                if (!completed) {
+                    // A fatal error escaped from a task. This worker still
+                    // holds its place in the pool so give it up and, as
+                    // ThreadPoolExecutor does, start a replacement if the
+                    // pool would otherwise be short of threads.
+                    home.idle.remove(this);
+                    poolSize.decrementAndGet();
+                    if (!shutdown && (queueSize.get() > 0 || poolSize.get() < corePoolSize)) {
+                        try {
+                            addWorker(home, maximumPoolSize);
+                        } catch (RuntimeException | Error e) {
+                            // Nothing more can be done here
+                        }
+                    }
+                } else if (renew) {
+                    // The replacement takes over this worker's slot
+                    try {
+                        startWorker(home);
+                    } catch (RuntimeException | Error e) {
+                        poolSize.decrementAndGet();
+                    }
+                }
+                signalIfTerminated();
+            }
+        }
+
+        /*
+         * Returns true if the thread is exiting to be renewed and false if it
+         * has already given up its place in the pool.
+         */
+        private boolean runTasks() {
+            while (true) {
+                if (stop && tryRetire()) {
+                    return false;
+                }
+                Runnable task = nextTask();
+                if (task != null) {
+                    runTask(task);
+                    if (shouldRenew(this)) {
+                        return true;
+                    }
+                    continue;
+                }
+                if (shutdown || poolSize.get() > maximumPoolSize) {
+                    if (tryRetire()) {
+                        return false;
+                    }
+                }
+                if (shouldRenew(this)) {
+                    return true;
+                }
+
+                // Register as idle before the final check so that a task
+                // submitted concurrently either is seen here or finds this
+                // worker in the idle list and unparks it
+                home.idle.push(this);
+                task = nextTask();
+                if (task != null) {
+                    // If removal fails a submitter has unparked this worker
+                    // and the left over permit only causes a spurious wakeup
+                    home.idle.remove(this);
+                    runTask(task);
+                    continue;
+                }
+                if (shutdown) {
+                    home.idle.remove(this);
+                    continue;
+                }
+
+                long start = System.nanoTime();
+                LockSupport.parkNanos(this, keepAliveNanos);
+                boolean timedOut = System.nanoTime() - start >= keepAliveNanos;
+                if (home.idle.remove(this) && timedOut && tryRetire()) {
+                    // Nobody signalled this worker while it was idle
+                    return false;
+                }
+                Thread.interrupted();
+            }
+        }
+
+        private Runnable nextTask() {
+            if (stop) {
+                return null;
+            }
+            Runnable task = home.tasks.poll();
+            if (task == null) {
+                for (int i = 1; task == null && i < lanes.length; i++) {
+                    task = lanes[(home.index + i) % lanes.length].tasks.poll();
+                }
+                if (task == null) {
+                    return null;
+                }
+                stealCount.incrementAndGet();
+            }
+            queueSize.decrementAndGet();
+            return task;
+        }
+
+        private void runTask(Runnable task) {
+            activeCount.incrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable t) {
+                ExceptionUtils.handleThrowable(t);
+                Thread current = Thread.currentThread();
+                current.getUncaughtExceptionHandler().uncaughtException(current, t);
+            } finally {
+                activeCount.decrementAndGet();
+                completedTaskCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -407,4 +407,66 @@ public class TestCoyoteAdapter extends TomcatBaseTest {
             t.start();
         }
     }
+
+
+    @Test
+    public void testMappingCache() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        connector.setMappingCacheSize(16);
+
+        // No file system docBase required
+        Context ctx = tomcat.addContext("/app", null);
+        Tomcat.addServlet(ctx, "paths", new MappingServlet("paths"));
+        ctx.addServletMapping("/p/*", "paths");
+
+        tomcat.start();
+
+        String expected = "paths|/p|/a b|/app/p/a%20b|/app";
+        for (int i = 0; i < 3; i++) {
+            ByteChunk res = getUrl("http://localhost:" + getPort() + "/app/p/a%20b");
+            Assert.assertEquals(expected, res.toString());
+        }
+        Assert.assertTrue(connector.getMappingCacheHitCount() >= 2);
+        Assert.assertTrue(connector.getMappingCacheLookupCount() >= 3);
+
+        // Path parameters bypass the cache
+        long lookups = connector.getMappingCacheLookupCount();
+        ByteChunk res = getUrl("http://localhost:" + getPort() +
+                "/app/p/a%20b;foo=bar");
+        Assert.assertEquals("paths|/p|/a b|/app/p/a%20b;foo=bar|/app",
+                res.toString());
+        Assert.assertEquals(lookups, connector.getMappingCacheLookupCount());
+
+        res = getUrl("http://localhost:" + getPort() + "/app/p/x");
+        Assert.assertEquals("paths|/p|/x|/app/p/x|/app", res.toString());
+
+        // Adding a mapping must invalidate cached results
+        Tomcat.addServlet(ctx, "exact", new MappingServlet("exact"));
+        ctx.addServletMapping("/p/x", "exact");
+
+        res = getUrl("http://localhost:" + getPort() + "/app/p/x");
+        Assert.assertEquals("exact|/p/x|null|/app/p/x|/app", res.toString());
+    }
+
+    private static class MappingServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String name;
+
+        public MappingServlet(String name) {
+            this.name = name;
+        }
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            resp.setContentType("text/plain");
+            PrintWriter pw = resp.getWriter();
+            pw.print(name + "|" + req.getServletPath() + "|" +
+                    req.getPathInfo() + "|" + req.getRequestURI() + "|" +
+                    req.getContextPath());
+        }
+    }
 }
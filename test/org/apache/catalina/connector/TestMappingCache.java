@@ -0,0 +1,89 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.connector;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.mapper.MappingData;
+import org.apache.tomcat.util.buf.MessageBytes;
+
+public class TestMappingCache {
+
+    @Test
+    public void testHit() {
+        MappingCache cache = new MappingCache(16);
+        put(cache, "/a", 1);
+
+        Assert.assertNotNull(get(cache, "/a", 1));
+        Assert.assertNull(get(cache, "/b", 1));
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(2, cache.getLookupCount());
+    }
+
+    @Test
+    public void testMapperChangeClearsCache() {
+        MappingCache cache = new MappingCache(16);
+        for (int i = 0; i < 8; i++) {
+            put(cache, "/" + i, 1);
+        }
+        Assert.assertTrue(cache.getEntryCount() > 0);
+
+        // Any lookup after the mapper has changed removes every entry so that
+        // none of them keeps an old context reachable
+        Assert.assertNull(get(cache, "/0", 2));
+        Assert.assertEquals(0, cache.getEntryCount());
+    }
+
+    @Test
+    public void testStalePutIgnored() {
+        MappingCache cache = new MappingCache(16);
+        Assert.assertNull(get(cache, "/a", 2));
+
+        // Mapped before the mapper changed
+        put(cache, "/a", 1);
+        Assert.assertEquals(0, cache.getEntryCount());
+        Assert.assertNull(get(cache, "/a", 2));
+    }
+
+    private static void put(MappingCache cache, String uri, long count) {
+        MessageBytes decodedURI = MessageBytes.newInstance();
+        decodedURI.setString(uri);
+        decodedURI.toBytes();
+        decodedURI.toChars();
+        cache.put(serverName(), bytes(uri).getByteChunk(), decodedURI,
+                new MappingData(), count);
+    }
+
+    private static MappingCache.Entry get(MappingCache cache, String uri,
+            long count) {
+        return cache.get(serverName(), bytes(uri).getByteChunk(), count);
+    }
+
+    private static MessageBytes serverName() {
+        MessageBytes serverName = MessageBytes.newInstance();
+        serverName.setString("localhost");
+        return serverName;
+    }
+
+    private static MessageBytes bytes(String value) {
+        MessageBytes mb = MessageBytes.newInstance();
+        mb.setString(value);
+        mb.toBytes();
+        return mb;
+    }
+}
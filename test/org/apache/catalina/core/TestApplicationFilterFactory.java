@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.servlet.DispatcherType;
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.GenericServlet;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import org.apache.catalina.Globals;
+import org.apache.catalina.filters.TesterHttpServletRequest;
+import org.apache.catalina.filters.TesterHttpServletResponse;
+import org.apache.tomcat.SimpleInstanceManager;
+import org.apache.tomcat.util.descriptor.web.FilterDef;
+import org.apache.tomcat.util.descriptor.web.FilterMap;
+
+public class TestApplicationFilterFactory {
+
+    private final List<String> invoked = new ArrayList<>();
+    private StandardContext context;
+    private StandardWrapper wrapper;
+
+    @Before
+    public void setUp() {
+        StandardEngine engine = new StandardEngine();
+        engine.setName("Catalina");
+        StandardHost host = new StandardHost();
+        host.setName("localhost");
+        engine.addChild(host);
+        context = new StandardContext();
+        context.setName("/test");
+        context.setPath("/test");
+        context.setInstanceManager(new SimpleInstanceManager());
+        host.addChild(context);
+        wrapper = new StandardWrapper();
+        wrapper.setName("servlet");
+        context.addChild(wrapper);
+        invoked.clear();
+    }
+
+
+    @Test
+    public void testOrderAndPatterns() throws Exception {
+        addFilter("byName", null, "servlet", FilterMap.REQUEST);
+        addFilter("all", "/*", null, FilterMap.REQUEST);
+        addFilter("prefix", "/foo/*", null, FilterMap.REQUEST);
+        addFilter("prefixLike", "/fo/*", null, FilterMap.REQUEST);
+        addFilter("extension", "*.do", null, FilterMap.REQUEST);
+        addFilter("exact", "/foo/bar.do", null, FilterMap.REQUEST);
+        addFilter("forward", "/*", null, FilterMap.FORWARD);
+        // Mapped twice, only the first mapping applies
+        addFilter("byName", "/foo/*", null, FilterMap.REQUEST);
+        context.filterStart();
+
+        Assert.assertEquals("all,prefix,extension,exact,byName",
+                dispatch(DispatcherType.REQUEST, "/foo/bar.do"));
+        Assert.assertEquals("all,prefix,byName",
+                dispatch(DispatcherType.REQUEST, "/foo"));
+        Assert.assertEquals("all,byName",
+                dispatch(DispatcherType.REQUEST, "/foobar.don"));
+        Assert.assertEquals("byName",
+                dispatch(DispatcherType.REQUEST, null));
+        Assert.assertEquals("forward",
+                dispatch(DispatcherType.FORWARD, "/foo/bar.do"));
+        Assert.assertEquals("",
+                dispatch(DispatcherType.INCLUDE, "/foo/bar.do"));
+    }
+
+
+    @Test
+    public void testMatchAll() throws Exception {
+        addFilter("star", "*", null, FilterMap.REQUEST);
+        addFilter("slashStar", "/*", null, FilterMap.REQUEST);
+        context.filterStart();
+
+        Assert.assertEquals("star,slashStar",
+                dispatch(DispatcherType.REQUEST, "/a"));
+        Assert.assertEquals("star",
+                dispatch(DispatcherType.REQUEST, null));
+    }
+
+
+    @Test
+    public void testInvalidation() throws Exception {
+        addFilter("first", "/*", null, FilterMap.REQUEST);
+        context.filterStart();
+        Assert.assertEquals("first", dispatch(DispatcherType.REQUEST, "/a"));
+
+        addFilter("second", "/a", null, FilterMap.REQUEST);
+        context.filterStart();
+        Assert.assertEquals("first,second",
+                dispatch(DispatcherType.REQUEST, "/a"));
+
+        FilterMap[] filterMaps = context.findFilterMaps();
+        context.removeFilterMap(filterMaps[0]);
+        Assert.assertEquals("second", dispatch(DispatcherType.REQUEST, "/a"));
+
+        context.filterStop();
+        Assert.assertEquals("", dispatch(DispatcherType.REQUEST, "/a"));
+    }
+
+
+    private void addFilter(final String name, String urlPattern,
+            String servletName, int dispatcherMapping) {
+        if (context.findFilterDef(name) == null) {
+            FilterDef filterDef = new FilterDef();
+            filterDef.setFilterName(name);
+            filterDef.setFilterClass(RecordingFilter.class.getName());
+            filterDef.setFilter(new RecordingFilter(name, invoked));
+            context.addFilterDef(filterDef);
+        }
+        FilterMap filterMap = new FilterMap();
+        filterMap.setFilterName(name);
+        if (urlPattern != null) {
+            filterMap.addURLPattern(urlPattern);
+        }
+        if (servletName != null) {
+            filterMap.addServletName(servletName);
+        }
+        filterMap.setDispatcher(dispatcherName(dispatcherMapping));
+        context.addFilterMap(filterMap);
+    }
+
+
+    private static String dispatcherName(int dispatcherMapping) {
+        switch (dispatcherMapping) {
+            case FilterMap.FORWARD:
+                return DispatcherType.FORWARD.name();
+            case FilterMap.INCLUDE:
+                return DispatcherType.INCLUDE.name();
+            default:
+                return DispatcherType.REQUEST.name();
+        }
+    }
+
+
+    private String dispatch(DispatcherType dispatcherType, String path)
+            throws Exception {
+        TesterHttpServletRequest request = new TesterHttpServletRequest() {
+            @Override
+            public boolean isAsyncSupported() {
+                return false;
+            }
+        };
+        request.setAttribute(Globals.DISPATCHER_TYPE_ATTR, dispatcherType);
+        if (path != null) {
+            request.setAttribute(Globals.DISPATCHER_REQUEST_PATH_ATTR, path);
+        }
+        ApplicationFilterChain chain = ApplicationFilterFactory.getInstance()
+                .createFilterChain(request, wrapper, new NoOpServlet());
+        invoked.clear();
+        chain.doFilter(request, new TesterHttpServletResponse());
+        StringBuilder result = new StringBuilder();
+        for (String name : invoked) {
+            if (result.length() > 0) {
+                result.append(',');
+            }
+            result.append(name);
+        }
+        return result.toString();
+    }
+
+
+    public static class RecordingFilter implements Filter {
+
+        private final String name;
+        private final List<String> invoked;
+
+        public RecordingFilter(String name, List<String> invoked) {
+            this.name = name;
+            this.invoked = invoked;
+        }
+
+        @Override
+        public void init(FilterConfig filterConfig) {
+            // NO-OP
+        }
+
+        @Override
+        public void doFilter(ServletRequest request, ServletResponse response,
+                FilterChain chain) throws IOException, ServletException {
+            invoked.add(name);
+            chain.doFilter(request, response);
+        }
+
+        @Override
+        public void destroy() {
+            // NO-OP
+        }
+    }
+
+
+    private static class NoOpServlet extends GenericServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+            // NO-OP
+        }
+    }
+}
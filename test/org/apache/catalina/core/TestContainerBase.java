@@ -0,0 +1,116 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Lifecycle;
+import org.apache.catalina.LifecycleEvent;
+import org.apache.catalina.LifecycleListener;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+
+public class TestContainerBase extends TomcatBaseTest {
+
+    private static final String[] PATHS = { "/a", "/b", "/c" };
+    private static final String HOST = "host";
+
+    @Test
+    public void testParallelStart() throws Exception {
+        Map<String,Thread> startThreads = doTestStart(false);
+        Thread hostThread = startThreads.get(HOST);
+        for (String path : PATHS) {
+            Assert.assertNotSame(hostThread, startThreads.get(path));
+        }
+    }
+
+
+    @Test
+    public void testSerialStart() throws Exception {
+        Map<String,Thread> startThreads = doTestStart(true);
+        Thread hostThread = startThreads.get(HOST);
+        for (String path : PATHS) {
+            Assert.assertSame(hostThread, startThreads.get(path));
+        }
+    }
+
+
+    private Map<String,Thread> doTestStart(boolean serial) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        StandardHost host = (StandardHost) tomcat.getHost();
+        host.setStartStopThreads(PATHS.length);
+        host.setSerialStartStop(serial);
+
+        Map<String,Thread> startThreads = new ConcurrentHashMap<>();
+        host.addLifecycleListener(new StartThreadListener(startThreads));
+        for (String path : PATHS) {
+            // No file system docBase required
+            Context ctx = tomcat.addContext(path, null);
+            ctx.addLifecycleListener(new StartThreadListener(startThreads));
+        }
+
+        tomcat.start();
+
+        Assert.assertEquals(PATHS.length + 1, startThreads.size());
+        for (String path : PATHS) {
+            Assert.assertTrue(host.getChildStartTime(path) >= 0);
+        }
+        Assert.assertEquals(-1, host.getChildStartTime("/missing"));
+
+        String[] startTimes = host.getChildStartTimes();
+        Assert.assertEquals(PATHS.length, startTimes.length);
+        long previous = Long.MAX_VALUE;
+        for (String startTime : startTimes) {
+            long time = Long.parseLong(
+                    startTime.substring(startTime.lastIndexOf('=') + 1));
+            Assert.assertTrue(time <= previous);
+            previous = time;
+        }
+
+        host.removeChild(host.findChild(PATHS[0]));
+        Assert.assertEquals(-1, host.getChildStartTime(PATHS[0]));
+
+        return startThreads;
+    }
+
+
+    private static class StartThreadListener implements LifecycleListener {
+
+        private final Map<String,Thread> startThreads;
+
+        public StartThreadListener(Map<String,Thread> startThreads) {
+            this.startThreads = startThreads;
+        }
+
+        @Override
+        public void lifecycleEvent(LifecycleEvent event) {
+            if (Lifecycle.BEFORE_START_EVENT.equals(event.getType())) {
+                if (event.getLifecycle() instanceof Context) {
+                    Context ctx = (Context) event.getLifecycle();
+                    startThreads.put(ctx.getName(), Thread.currentThread());
+                } else {
+                    startThreads.put(HOST, Thread.currentThread());
+                }
+            }
+        }
+    }
+}
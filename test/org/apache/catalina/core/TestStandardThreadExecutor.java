@@ -0,0 +1,75 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.catalina.core;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.TesterServlet;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.coyote.AbstractProtocol;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TestStandardThreadExecutor extends TomcatBaseTest {
+
+    @Test
+    public void testSharedWorkStealingExecutor() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        Assume.assumeTrue(connector.getProtocolHandlerClassName().contains("Nio"));
+
+        StandardThreadExecutor executor = new StandardThreadExecutor();
+        executor.setName("shared");
+        executor.setUseWorkStealing(true);
+        executor.setLaneCount(2);
+        tomcat.getService().addExecutor(executor);
+
+        connector.setAttribute("pollerThreadCount", "2");
+        ((AbstractProtocol<?>) connector.getProtocolHandler()).setExecutor(executor);
+
+        // No file system docBase required
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "servlet", new TesterServlet());
+        ctx.addServletMapping("/", "servlet");
+
+        tomcat.start();
+
+        assertEquals(2, executor.getLaneCount());
+
+        ByteChunk res = new ByteChunk();
+        for (int i = 0; i < 10; i++) {
+            res.recycle();
+            int rc = getUrl("http://localhost:" + getPort() + "/", res, null);
+            assertEquals(200, rc);
+            assertEquals("OK", res.toString());
+        }
+
+        // Both pollers of the connector are bound to the shared executor
+        int count = 0;
+        while (executor.getBoundThreadCount() < 2 && count < 50) {
+            Thread.sleep(100);
+            count++;
+        }
+        assertEquals(2, executor.getBoundThreadCount());
+        assertTrue(executor.getCompletedTaskCount() > 0);
+    }
+}
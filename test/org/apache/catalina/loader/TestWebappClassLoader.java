@@ -16,15 +16,22 @@
  */
 package org.apache.catalina.loader;
 
+import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.core.StandardContext;
 import org.apache.catalina.startup.Tomcat;
 import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.catalina.webresources.StandardRoot;
 import org.junit.Assert;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileOutputStream;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 public class TestWebappClassLoader extends TomcatBaseTest {
 
@@ -58,4 +65,125 @@ public class TestWebappClassLoader extends TomcatBaseTest {
             Assert.assertArrayEquals(expected, actual);
         }
     }
+
+    @Test
+    public void testLookupCache() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "lookupCache");
+        File classes = new File(appDir, "WEB-INF/classes/classespkg");
+        Assert.assertTrue(classes.mkdirs());
+        Files.write(new File(classes, "resource.txt").toPath(),
+                "classes".getBytes(StandardCharsets.UTF_8));
+        File lib = new File(appDir, "WEB-INF/lib");
+        Assert.assertTrue(lib.mkdirs());
+        try (JarOutputStream jos = new JarOutputStream(
+                new FileOutputStream(new File(lib, "lookupCache.jar")))) {
+            jos.putNextEntry(new JarEntry("jarpkg/resource.txt"));
+            jos.write("jar".getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+
+        StandardContext ctx =
+                (StandardContext) tomcat.addContext("", appDir.getAbsolutePath());
+        WebappLoader loader = new WebappLoader();
+        loader.setLookupCacheSize(2);
+        ctx.setLoader(loader);
+
+        tomcat.start();
+        // Ensure additions to WEB-INF/classes are seen immediately
+        ctx.getResources().setCachingAllowed(false);
+
+        WebappClassLoaderBase cl =
+                (WebappClassLoaderBase) ctx.getLoader().getClassLoader();
+        Assert.assertEquals(2, cl.getLookupCacheSize());
+        // Starting the context may already have triggered some lookups
+        long[] base = new long[] { cl.getLookupCacheHitCount(),
+                cl.getLookupCacheMissCount(), cl.getJarProbeCount() };
+
+        // Found in a JAR
+        Assert.assertNotNull(cl.findResource("jarpkg/resource.txt"));
+        assertCounts(cl, base, 0, 1, 1);
+
+        // Found in WEB-INF/classes without searching the JARs
+        Assert.assertNotNull(cl.findResource("classespkg/resource.txt"));
+        assertCounts(cl, base, 0, 2, 1);
+
+        // Missing from a package not in any JAR
+        Assert.assertNull(cl.findResource("missingpkg/missing.txt"));
+        assertCounts(cl, base, 0, 3, 1);
+        Assert.assertNull(cl.findResource("missingpkg/missing.txt"));
+        assertCounts(cl, base, 1, 3, 1);
+
+        // Missing from a package in a JAR
+        try {
+            cl.loadClass("jarpkg.Missing");
+            Assert.fail();
+        } catch (ClassNotFoundException expected) {
+            // Expected
+        }
+        assertCounts(cl, base, 1, 4, 2);
+        try {
+            cl.loadClass("jarpkg.Missing");
+            Assert.fail();
+        } catch (ClassNotFoundException expected) {
+            // Expected
+        }
+        assertCounts(cl, base, 2, 4, 2);
+
+        // Exceeding the maximum size clears the cache
+        Assert.assertNull(cl.findResource("missingpkg/other.txt"));
+        assertCounts(cl, base, 2, 5, 2);
+        Assert.assertNull(cl.findResource("missingpkg/missing.txt"));
+        assertCounts(cl, base, 2, 6, 2);
+
+        // Resources added to WEB-INF/classes are visible once cleared
+        Assert.assertNull(cl.findResource("classespkg/added.txt"));
+        Files.write(new File(classes, "added.txt").toPath(),
+                "added".getBytes(StandardCharsets.UTF_8));
+        Assert.assertNull(cl.findResource("classespkg/added.txt"));
+        cl.clearLookupCache();
+        Assert.assertNotNull(cl.findResource("classespkg/added.txt"));
+    }
+
+    @Test
+    public void testLookupCacheClassesJar() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "lookupCacheClassesJar");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        File jar = new File(getTemporaryDirectory(), "lookupCacheClassesJar.jar");
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(jar))) {
+            jos.putNextEntry(new JarEntry("extpkg/resource.txt"));
+            jos.write("ext".getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+        }
+        addDeleteOnTearDown(jar);
+
+        Tomcat tomcat = getTomcatInstance();
+
+        StandardContext ctx =
+                (StandardContext) tomcat.addContext("", appDir.getAbsolutePath());
+        WebappLoader loader = new WebappLoader();
+        loader.setLookupCacheSize(10);
+        ctx.setLoader(loader);
+        // As an embedded application might add classes outside /WEB-INF/lib
+        WebResourceRoot root = new StandardRoot(ctx);
+        root.createWebResourceSet(WebResourceRoot.ResourceSetType.CLASSES_JAR,
+                "/WEB-INF/classes", jar.getAbsolutePath(), null, "/");
+        ctx.setResources(root);
+
+        tomcat.start();
+
+        WebappClassLoaderBase cl =
+                (WebappClassLoaderBase) ctx.getLoader().getClassLoader();
+        Assert.assertNotNull(cl.findResource("extpkg/resource.txt"));
+        Assert.assertNull(cl.findResource("extpkg/missing.txt"));
+    }
+
+    private static void assertCounts(WebappClassLoaderBase cl, long[] base,
+            long hits, long misses, long jarProbes) {
+        Assert.assertEquals(hits, cl.getLookupCacheHitCount() - base[0]);
+        Assert.assertEquals(misses, cl.getLookupCacheMissCount() - base[1]);
+        Assert.assertEquals(jarProbes, cl.getJarProbeCount() - base[2]);
+    }
 }
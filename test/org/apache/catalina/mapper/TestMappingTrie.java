@@ -0,0 +1,109 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.mapper;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Host;
+import org.apache.catalina.mapper.Mapper.MappedContext;
+import org.apache.catalina.mapper.Mapper.MappedHost;
+import org.apache.tomcat.util.buf.CharChunk;
+
+public class TestMappingTrie {
+
+    private static CharChunk chunk(String s) {
+        // Offset the content to check start/end handling
+        char[] buf = ("xx" + s + "yy").toCharArray();
+        CharChunk cc = new CharChunk();
+        cc.setChars(buf, 2, s.length());
+        return cc;
+    }
+
+    private static MappedContext[] contexts(String... names) {
+        MappedContext[] result = new MappedContext[names.length];
+        for (int i = 0; i < names.length; i++) {
+            result[i] = new MappedContext(names[i], null);
+        }
+        return result;
+    }
+
+    private static String prefix(MappingTrie<MappedContext> trie, String path) {
+        MappedContext result = trie.longestPathPrefix(chunk(path));
+        return result == null ? null : result.name;
+    }
+
+
+    @Test
+    public void testLongestPathPrefix() {
+        MappingTrie<MappedContext> trie = new MappingTrie<>(contexts(
+                "/a", "/a/b/c", "/ab", "/foo", "/foo/bar", "/foobar"), false);
+
+        Assert.assertEquals("/a", prefix(trie, "/a"));
+        Assert.assertEquals("/a", prefix(trie, "/a/"));
+        Assert.assertEquals("/a", prefix(trie, "/a/b"));
+        Assert.assertEquals("/a", prefix(trie, "/a/b/cd"));
+        Assert.assertEquals("/a/b/c", prefix(trie, "/a/b/c"));
+        Assert.assertEquals("/a/b/c", prefix(trie, "/a/b/c/index.jsp"));
+        Assert.assertEquals("/ab", prefix(trie, "/ab/x"));
+        Assert.assertNull(prefix(trie, "/abc"));
+        Assert.assertEquals("/foo", prefix(trie, "/foo/ba"));
+        Assert.assertEquals("/foo/bar", prefix(trie, "/foo/bar/baz"));
+        Assert.assertEquals("/foobar", prefix(trie, "/foobar"));
+        Assert.assertNull(prefix(trie, "/fo"));
+        Assert.assertNull(prefix(trie, "/FOO"));
+        Assert.assertNull(prefix(trie, ""));
+    }
+
+
+    @Test
+    public void testRootContext() {
+        MappingTrie<MappedContext> trie =
+                new MappingTrie<>(contexts("", "/app"), false);
+
+        Assert.assertEquals("", prefix(trie, ""));
+        Assert.assertEquals("", prefix(trie, "/"));
+        Assert.assertEquals("", prefix(trie, "/application"));
+        Assert.assertEquals("/app", prefix(trie, "/app/x"));
+    }
+
+
+    @Test
+    public void testEmpty() {
+        MappingTrie<MappedContext> trie = new MappingTrie<>(contexts(), false);
+        Assert.assertNull(prefix(trie, "/"));
+        Assert.assertNull(trie.get(chunk("")));
+    }
+
+
+    @Test
+    public void testHostsIgnoreCase() {
+        MappedHost[] hosts = new MappedHost[] {
+                new MappedHost("Example.com", (Host) null),
+                new MappedHost("example.org", (Host) null),
+                new MappedHost("www.example.com", (Host) null) };
+        MappingTrie<MappedHost> trie = new MappingTrie<>(hosts, true);
+
+        Assert.assertSame(hosts[0], trie.get(chunk("example.com")));
+        Assert.assertSame(hosts[0], trie.get(chunk("EXAMPLE.COM")));
+        Assert.assertSame(hosts[1], trie.get(chunk("Example.Org")));
+        Assert.assertSame(hosts[2], trie.get(chunk("www.example.com")));
+        Assert.assertNull(trie.get(chunk("example")));
+        Assert.assertNull(trie.get(chunk("example.comx")));
+        Assert.assertNull(trie.get(chunk("ww.example.com")));
+    }
+}
@@ -124,6 +124,16 @@ public class TestRegistration extends TomcatBaseTest {
         };
     }
 
+    private static String[] pollerMBeanNames(String port, int count) {
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = "Tomcat:type=Poller,worker="
+                    + ObjectName.quote("http-nio-" + ADDRESS + "-" + port)
+                    + ",name=ClientPoller-" + i;
+        }
+        return names;
+    }
+
     private static String[] connectorMBeanNames(String port, String type) {
         return new String[] {
         "Tomcat:type=Connector,port=" + port + ",address="
@@ -199,6 +209,11 @@ public class TestRegistration extends TomcatBaseTest {
         expected.addAll(Arrays.asList(optionalMBeanNames("localhost")));
         expected.addAll(Arrays.asList(requestMBeanNames(
                 "auto-" + index + "-" + getPort(), protocol)));
+        if (protocol.equals("nio")) {
+            Object pollerThreadCount = tomcat.getConnector().getProperty("pollerThreadCount");
+            expected.addAll(Arrays.asList(pollerMBeanNames("auto-" + index,
+                    ((Integer) pollerThreadCount).intValue())));
+        }
 
         // Did we find all expected MBeans?
         ArrayList<String> missing = new ArrayList<>(expected);
@@ -17,6 +17,8 @@
 package org.apache.catalina.servlets;
 
 import org.apache.catalina.Context;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
 import org.apache.catalina.Wrapper;
 import org.apache.catalina.startup.SimpleHttpClient;
 import org.apache.catalina.startup.Tomcat;
@@ -28,7 +30,10 @@ import org.junit.Test;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.*;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
 import java.text.SimpleDateFormat;
 import java.util.*;
 
@@ -132,6 +137,169 @@ public class TestDefaultServlet extends TomcatBaseTest {
         assertTrue(responseHeaders.contains("Content-Length: " + indexSize));
     }
 
+    /*
+     * Verify serving of resources compressed by the resource cache.
+     */
+    @Test
+    public void testCacheEncodedFile() throws Exception {
+
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File("test/webapp");
+
+        File index = new File(appDir, "index.html");
+        long indexSize = index.length();
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Wrapper defaultServlet = Tomcat.addServlet(ctxt, "default",
+                "org.apache.catalina.servlets.DefaultServlet");
+        // No encoder for "unknown" so gzip should be used
+        defaultServlet.addInitParameter("cacheEncodings", "unknown,gzip");
+        defaultServlet.addInitParameter("cacheEncodingMinSize", "100");
+        ctxt.addServletMapping("/", "default");
+
+        ctxt.addMimeMapping("html", "text/html");
+
+        tomcat.start();
+
+        TestGzipClient gzipClient = new TestGzipClient(getPort());
+
+        gzipClient.reset();
+        gzipClient.setRequest(new String[] {
+                "GET /index.html HTTP/1.1" + CRLF +
+                "Host: localhost" + CRLF +
+                "Connection: Close" + CRLF +
+                "Accept-Encoding: unknown;q=0, gzip, deflate" + CRLF + CRLF });
+        gzipClient.connect();
+        gzipClient.processRequest();
+        assertTrue(gzipClient.isResponse200());
+        List<String> responseHeaders = gzipClient.getResponseHeaders();
+        assertTrue(responseHeaders.contains("Content-Encoding: gzip"));
+        assertTrue(responseHeaders.contains("Vary: accept-encoding"));
+        assertFalse(responseHeaders.contains("Content-Length: " + indexSize));
+        String eTag = null;
+        for (String header : responseHeaders) {
+            if (header.startsWith("ETag: ")) {
+                eTag = header.substring(6);
+            }
+        }
+        assertNotNull(eTag);
+        assertTrue(eTag.endsWith("-gzip\""));
+
+        // Conditional request for the encoded version
+        gzipClient.reset();
+        gzipClient.setRequest(new String[] {
+                "GET /index.html HTTP/1.1" + CRLF +
+                "Host: localhost" + CRLF +
+                "Connection: Close" + CRLF +
+                "If-None-Match: " + eTag + CRLF +
+                "Accept-Encoding: gzip" + CRLF + CRLF });
+        gzipClient.connect();
+        gzipClient.processRequest();
+        assertTrue(gzipClient.isResponse304());
+
+        // Encoding explicitly refused
+        gzipClient.reset();
+        gzipClient.setRequest(new String[] {
+                "GET /index.html HTTP/1.1" + CRLF +
+                "Host: localhost" + CRLF +
+                "Connection: Close" + CRLF +
+                "Accept-Encoding: gzip;q=0.0, *" + CRLF + CRLF });
+        gzipClient.connect();
+        gzipClient.processRequest();
+        assertTrue(gzipClient.isResponse200());
+        responseHeaders = gzipClient.getResponseHeaders();
+        assertFalse(responseHeaders.contains("Content-Encoding: gzip"));
+        assertTrue(responseHeaders.contains("Vary: accept-encoding"));
+        assertTrue(responseHeaders.contains("Content-Length: " + indexSize));
+    }
+
+    /*
+     * Verify serving of cached resources held on and off the heap.
+     */
+    @Test
+    public void testCacheContentStorageHeap() throws Exception {
+        doTestCacheContentStorage("heap");
+    }
+
+    @Test
+    public void testCacheContentStorageDirect() throws Exception {
+        doTestCacheContentStorage("direct");
+    }
+
+    @Test
+    public void testCacheContentStorageMapped() throws Exception {
+        doTestCacheContentStorage("mapped");
+    }
+
+    private void doTestCacheContentStorage(String storage) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File("test/webapp");
+        byte[] expected = Files.readAllBytes(new File(appDir, "index.html").toPath());
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        Tomcat.addServlet(ctxt, "default", "org.apache.catalina.servlets.DefaultServlet");
+        ctxt.addServletMapping("/", "default");
+
+        tomcat.start();
+
+        ctxt.getResources().setCacheContentStorage(storage);
+        Assert.assertEquals(storage, ctxt.getResources().getCacheContentStorage());
+
+        // Second request is served from the cache
+        for (int i = 0; i < 2; i++) {
+            ByteChunk res = new ByteChunk();
+            int rc = getUrl("http://localhost:" + getPort() + "/index.html", res, null);
+            Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+            Assert.assertArrayEquals(expected, Arrays.copyOfRange(
+                    res.getBuffer(), res.getStart(), res.getEnd()));
+        }
+    }
+
+    @Test
+    public void testCacheContentStorageMappedTruncated() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "mapped");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+        File large = new File(appDir, "large.txt");
+        Files.write(large.toPath(), new byte[128 * 1024]);
+        File small = new File(appDir, "small.txt");
+        Files.write(small.toPath(), new byte[1024]);
+
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        tomcat.start();
+
+        WebResourceRoot resources = ctxt.getResources();
+        resources.setCacheContentStorage("mapped");
+        // Revalidate the cache entries on every lookup
+        resources.setCacheTtl(0);
+
+        WebResource largeResource = resources.getResource("/large.txt");
+        Assert.assertEquals(128 * 1024, largeResource.getContentBuffer().remaining());
+        WebResource smallResource = resources.getResource("/small.txt");
+        Assert.assertEquals(1024, smallResource.getContentBuffer().remaining());
+
+        truncate(large);
+        truncate(small);
+
+        // Small files are copied so their cached content is still usable
+        Assert.assertEquals(1024, smallResource.getContentBuffer().remaining());
+        // Revalidation replaces the entries, so a mapping is not used once
+        // its file is shorter than it
+        Assert.assertEquals(16, resources.getResource("/large.txt").getContentBuffer().remaining());
+        Assert.assertEquals(16, resources.getResource("/small.txt").getContentBuffer().remaining());
+    }
+
+    private static void truncate(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.WRITE)) {
+            channel.truncate(16);
+        }
+    }
+
     /*
      * Test https://bz.apache.org/bugzilla/show_bug.cgi?id=50026
      * Verify serving of resources from context root with subpath mapping.
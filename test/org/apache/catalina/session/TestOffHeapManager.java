@@ -0,0 +1,398 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionEvent;
+import javax.servlet.http.HttpSessionListener;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.Session;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestOffHeapManager extends TomcatBaseTest {
+
+    @Test
+    public void testSwapOutAndIn() throws Exception {
+        OffHeapManager manager = new OffHeapManager();
+        manager.setSwapOutDelay(0);
+        Context ctx = setUp(manager);
+
+        String cookie = null;
+        for (int i = 1; i <= 5; i++) {
+            ByteChunk out = new ByteChunk();
+            cookie = doRequest(cookie, 100, out);
+            Assert.assertEquals(Integer.toString(i), out.toString());
+            // Released when the request is recycled
+            waitForActiveSessions(manager, 0);
+            Assert.assertEquals(1, manager.getStoredSessions());
+        }
+
+        Assert.assertTrue(manager.getSwapOutCount() >= 5);
+        Assert.assertEquals(0, manager.getSwapOutFailures());
+        Assert.assertTrue(manager.getArenaUsed() > 0);
+        Assert.assertTrue(manager.getStoredBytes() > 0);
+        Assert.assertTrue(manager.getStoredBytes() <= manager.getArenaUsed());
+
+        // Sessions held in the store are expired when the manager stops
+        CountingListener listener = (CountingListener)
+                ctx.getApplicationLifecycleListeners()[0];
+        ctx.stop();
+        Assert.assertEquals(1, listener.destroyed.get());
+    }
+
+
+    @Test
+    public void testAccessAfterSwapOut() throws Exception {
+        OffHeapManager manager = new OffHeapManager();
+        manager.setSwapOutDelay(0);
+        setUp(manager);
+
+        StandardSession session = (StandardSession) manager.createSession(null);
+        session.setAttribute("count", Integer.valueOf(1));
+        String id = session.getId();
+
+        // One request holds the session while a second finds it
+        session.access();
+        Session found = manager.findSession(id);
+        Assert.assertSame(session, found);
+
+        // The first request releases the session before the second accesses
+        // it
+        session.endAccess();
+        Assert.assertEquals(0, manager.getActiveSessions());
+        Assert.assertEquals(1, manager.getStoredSessions());
+
+        // Accessing the session returns it to the manager intact
+        found.access();
+        Assert.assertEquals(1, manager.getActiveSessions());
+        Assert.assertEquals(0, manager.getStoredSessions());
+        Assert.assertSame(found, manager.findSession(id));
+        Assert.assertEquals(Integer.valueOf(1), session.getAttribute("count"));
+
+        found.endAccess();
+        Assert.assertEquals(0, manager.getActiveSessions());
+        Assert.assertEquals(1, manager.getStoredSessions());
+    }
+
+
+    @Test
+    public void testAccessAfterReload() throws Exception {
+        OffHeapManager manager = new OffHeapManager();
+        manager.setSwapOutDelay(0);
+        setUp(manager);
+
+        StandardSession session = (StandardSession) manager.createSession(null);
+        String id = session.getId();
+
+        // One request finds the session just before it is swapped out
+        session.access();
+        Session found = manager.findSession(id);
+        session.endAccess();
+        Assert.assertEquals(1, manager.getStoredSessions());
+
+        // A second request loads a new copy from the store
+        Session reloaded = manager.findSession(id);
+        Assert.assertNotSame(found, reloaded);
+
+        // The first request must not use, or expire, the stale copy
+        found.access();
+        Assert.assertFalse(found.isValid());
+        Assert.assertTrue(reloaded.isValid());
+        Assert.assertSame(reloaded, manager.findSession(id));
+        found.endAccess();
+        Assert.assertSame(reloaded, manager.findSession(id));
+    }
+
+
+    @Test
+    public void testAccessDuringSwapOut() throws Exception {
+        OffHeapManager manager = new OffHeapManager();
+        manager.setSwapOutDelay(0);
+        BlockingStore store = new BlockingStore();
+        manager.setStore(store);
+        setUp(manager);
+
+        final StandardSession session =
+                (StandardSession) manager.createSession(null);
+        session.setAttribute("count", Integer.valueOf(1));
+        String id = session.getId();
+        session.access();
+        final Session found = manager.findSession(id);
+
+        // Releasing the session swaps it out and blocks while it is saved
+        Thread release = new Thread() {
+            @Override
+            public void run() {
+                session.endAccess();
+            }
+        };
+        release.start();
+        store.waitForSave();
+
+        // A request accessing the session must wait for the swap out to
+        // complete and then return the session to the manager
+        Thread access = new Thread() {
+            @Override
+            public void run() {
+                found.access();
+            }
+        };
+        access.start();
+        try {
+            long maxWaitTime = System.currentTimeMillis() + 10000;
+            while (access.getState() != Thread.State.BLOCKED) {
+                Assert.assertTrue(access.isAlive());
+                Assert.assertTrue(System.currentTimeMillis() < maxWaitTime);
+                Thread.sleep(10);
+            }
+        } finally {
+            store.allowSave();
+        }
+        release.join();
+        access.join();
+
+        Assert.assertTrue(found.isValid());
+        Assert.assertSame(found, manager.findSession(id));
+        Assert.assertEquals(1, manager.getActiveSessions());
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertEquals(Integer.valueOf(1), session.getAttribute("count"));
+        found.endAccess();
+    }
+
+
+    @Test
+    public void testStoreFull() throws Exception {
+        OffHeapManager manager = new OffHeapManager();
+        manager.setSwapOutDelay(0);
+        OffHeapStore store = (OffHeapStore) manager.getStore();
+        store.setArenaSize(1024);
+        store.setBlockSize(128);
+        setUp(manager);
+
+        // Too large for the store so the session remains on the heap
+        String cookie = null;
+        for (int i = 1; i <= 3; i++) {
+            ByteChunk out = new ByteChunk();
+            cookie = doRequest(cookie, 4096, out);
+            Assert.assertEquals(Integer.toString(i), out.toString());
+        }
+        Assert.assertEquals(1, manager.getActiveSessions());
+        Assert.assertEquals(0, manager.getStoredSessions());
+        Assert.assertTrue(manager.getSwapOutFailures() > 0);
+        Assert.assertEquals(0, manager.getArenaUsed());
+
+        // A smaller session fits
+        ByteChunk out = new ByteChunk();
+        doRequest(null, 100, out);
+        Assert.assertEquals("1", out.toString());
+        waitForActiveSessions(manager, 1);
+        Assert.assertEquals(1, manager.getStoredSessions());
+    }
+
+
+    @Test
+    public void testStoreExpiry() throws Exception {
+        OffHeapManager manager = new OffHeapManager();
+        setUp(manager);
+        OffHeapStore store = (OffHeapStore) manager.getStore();
+
+        StandardSession session = (StandardSession) manager.createSession(null);
+        session.setMaxInactiveInterval(1);
+        session.setAttribute("data", new byte[1000]);
+        store.save(session);
+        Assert.assertEquals(1, store.getSize());
+        long used = store.getArenaUsed();
+        Assert.assertEquals((store.getStoredBytes() + 255) / 256 * 256, used);
+
+        // Saving again replaces the previous copy
+        store.save(session);
+        Assert.assertEquals(1, store.getSize());
+        Assert.assertEquals(used, store.getArenaUsed());
+
+        StandardSession loaded = (StandardSession) store.load(session.getId());
+        Assert.assertArrayEquals(new byte[1000],
+                (byte[]) loaded.getAttribute("data"));
+
+        Assert.assertEquals(0, store.expiredKeys().length);
+        session.thisAccessedTime -= 2000;
+        store.save(session);
+        Assert.assertArrayEquals(new String[] { session.getId() },
+                store.expiredKeys());
+
+        store.remove(session.getId());
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertEquals(0, store.getArenaUsed());
+        Assert.assertEquals(0, store.getStoredBytes());
+        Assert.assertNull(store.load(session.getId()));
+    }
+
+
+    private Context setUp(OffHeapManager manager) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = tomcat.addContext("", null);
+        ctx.setManager(manager);
+        ctx.setDistributable(true);
+        ctx.setApplicationLifecycleListeners(
+                new Object[] { new CountingListener() });
+
+        Tomcat.addServlet(ctx, "counter", new CounterServlet());
+        ctx.addServletMapping("/counter", "counter");
+
+        tomcat.start();
+        return ctx;
+    }
+
+
+    private String doRequest(String cookie, int size, ByteChunk out)
+            throws IOException {
+        Map<String,List<String>> reqHead = new HashMap<>();
+        if (cookie != null) {
+            List<String> values = new ArrayList<>();
+            values.add(cookie);
+            reqHead.put("Cookie", values);
+        }
+        Map<String,List<String>> resHead = new HashMap<>();
+        int rc = getUrl("http://localhost:" + getPort() + "/counter?size=" +
+                size, out, reqHead, resHead);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        List<String> setCookies = resHead.get("Set-Cookie");
+        if (setCookies != null) {
+            cookie = setCookies.get(0).split(";")[0];
+        }
+        return cookie;
+    }
+
+
+    private static void waitForActiveSessions(OffHeapManager manager,
+            int expected) throws InterruptedException {
+        int count = 0;
+        while (manager.getActiveSessions() != expected && count < 100) {
+            Thread.sleep(50);
+            count++;
+        }
+        Assert.assertEquals(expected, manager.getActiveSessions());
+    }
+
+
+    private static final class BlockingStore extends StoreBase {
+
+        private final Map<String,Session> sessions = new HashMap<>();
+        private final CountDownLatch saveStarted = new CountDownLatch(1);
+        private final CountDownLatch saveAllowed = new CountDownLatch(1);
+
+        void waitForSave() throws InterruptedException {
+            Assert.assertTrue(saveStarted.await(10, TimeUnit.SECONDS));
+        }
+
+        void allowSave() {
+            saveAllowed.countDown();
+        }
+
+        @Override
+        public synchronized int getSize() {
+            return sessions.size();
+        }
+
+        @Override
+        public synchronized String[] keys() {
+            return sessions.keySet().toArray(new String[sessions.size()]);
+        }
+
+        @Override
+        public synchronized Session load(String id) {
+            return sessions.get(id);
+        }
+
+        @Override
+        public synchronized void remove(String id) {
+            sessions.remove(id);
+        }
+
+        @Override
+        public synchronized void clear() {
+            sessions.clear();
+        }
+
+        @Override
+        public void save(Session session) throws IOException {
+            saveStarted.countDown();
+            try {
+                saveAllowed.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            synchronized (this) {
+                sessions.put(session.getIdInternal(), session);
+            }
+        }
+    }
+
+
+    private static final class CounterServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            HttpSession session = req.getSession();
+            Integer count = (Integer) session.getAttribute("count");
+            count = Integer.valueOf(count == null ? 1 : count.intValue() + 1);
+            session.setAttribute("count", count);
+            session.setAttribute("data",
+                    new byte[Integer.parseInt(req.getParameter("size"))]);
+            resp.getWriter().print(count);
+        }
+    }
+
+
+    private static final class CountingListener implements HttpSessionListener {
+
+        private final AtomicInteger destroyed = new AtomicInteger();
+
+        @Override
+        public void sessionCreated(HttpSessionEvent se) {
+            // NO-OP
+        }
+
+        @Override
+        public void sessionDestroyed(HttpSessionEvent se) {
+            destroyed.incrementAndGet();
+        }
+    }
+}
@@ -31,8 +31,12 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.servlet.http.HttpSession;
+import javax.servlet.http.HttpSessionActivationListener;
+import javax.servlet.http.HttpSessionEvent;
 import java.beans.PropertyChangeListener;
 import java.io.IOException;
+import java.io.Serializable;
+import java.sql.Connection;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -216,6 +220,140 @@ public class TestPersistentManager extends TomcatBaseTest {
                 store.getSavedIds());
     }
 
+    @Test
+    public void testWriteBehind() throws Exception {
+
+        // Setup Tomcat instance
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = tomcat.addContext("", null);
+
+        PersistentManager manager = new PersistentManager();
+        BatchStore store = new BatchStore();
+
+        manager.setStore(store);
+        manager.setWriteBehindDelay(60000);
+        manager.setWriteBehindBatchSize(3);
+        ctx.setManager(manager);
+        tomcat.start();
+
+        Session s1 = manager.createSession(null);
+        Session s2 = manager.createSession(null);
+        String id1 = s1.getIdInternal();
+        ActivationCounter counter = new ActivationCounter();
+        s1.getSession().setAttribute("counter", counter);
+        manager.swapOut(s1);
+        manager.swapOut(s2);
+        Assert.assertEquals(0, manager.getActiveSessions());
+        Assert.assertEquals(0, store.getSize());
+        Assert.assertTrue(manager.getSessionIdsFull().contains(id1));
+        Assert.assertEquals(1, counter.passivated);
+
+        // Swapped back in from the queue rather than the Store
+        Assert.assertSame(s1, manager.findSession(id1));
+        Assert.assertEquals(0, store.loads.get());
+        Assert.assertEquals(1, manager.getActiveSessions());
+        Assert.assertEquals(1, counter.activated);
+        Assert.assertSame(s1, manager.findSession(id1));
+        s1.getSession().setAttribute("value", "changed");
+
+        // Writes for the same session are coalesced
+        manager.swapOut(s1);
+        Session s3 = manager.createSession(null);
+        manager.swapOut(s3);
+        store.waitForBatches(1);
+        Assert.assertEquals(Arrays.asList(Integer.valueOf(3)), store.batches);
+        Assert.assertEquals(3, store.getSize());
+        // The pending write was cancelled when the session was swapped in so
+        // the later change is written
+        Assert.assertEquals("changed",
+                store.load(id1).getSession().getAttribute("value"));
+        Assert.assertEquals(1, store.loads.get());
+
+        // Expiry removes the session from the Store
+        Session loaded = manager.findSession(s3.getIdInternal());
+        Assert.assertEquals(2, store.loads.get());
+        loaded.expire();
+        Assert.assertEquals(3, store.getSize());
+
+        // Outstanding writes are completed on stop
+        manager.findSession(id1);
+        ctx.stop();
+        Assert.assertEquals(2, store.getSize());
+        Assert.assertNotNull(store.load(id1));
+        Assert.assertNull(store.load(s3.getIdInternal()));
+    }
+
+    @Test
+    public void testWriteBehindFailure() throws Exception {
+
+        // Setup Tomcat instance
+        Tomcat tomcat = getTomcatInstance();
+
+        // No file system docBase required
+        Context ctx = tomcat.addContext("", null);
+
+        PersistentManager manager = new PersistentManager();
+        // The database is unavailable
+        JDBCStore store = new JDBCStore() {
+            @Override
+            protected Connection getConnection() {
+                return null;
+            }
+        };
+
+        manager.setStore(store);
+        manager.setSaveOnRestart(false);
+        manager.setWriteBehindDelay(60000);
+        manager.setWriteBehindBatchSize(2);
+        ctx.setManager(manager);
+        tomcat.start();
+
+        Session s1 = manager.createSession(null);
+        Session s2 = manager.createSession(null);
+        s1.getSession().setAttribute("value", "one");
+        manager.swapOut(s1);
+        manager.swapOut(s2);
+
+        // Neither write succeeds so both sessions are returned to memory
+        long maxWaitTime = System.currentTimeMillis() + 10000;
+        while (manager.getActiveSessions() < 2) {
+            Assert.assertTrue(System.currentTimeMillis() < maxWaitTime);
+            Thread.sleep(50);
+        }
+        Assert.assertSame(s1, manager.findSession(s1.getIdInternal()));
+        Assert.assertSame(s2, manager.findSession(s2.getIdInternal()));
+        Assert.assertTrue(s1.isValid());
+        Assert.assertEquals("one", s1.getSession().getAttribute("value"));
+
+        try {
+            store.saveAll(new Session[] { s1 });
+            Assert.fail("saveAll() did not report the failure");
+        } catch (IOException expected) {
+            // Expected
+        }
+    }
+
+    private static class ActivationCounter
+            implements HttpSessionActivationListener, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient int activated;
+        private transient int passivated;
+
+        @Override
+        public void sessionWillPassivate(HttpSessionEvent se) {
+            passivated++;
+        }
+
+        @Override
+        public void sessionDidActivate(HttpSessionEvent se) {
+            activated++;
+        }
+    }
+
     private static class DummyServlet extends HttpServlet {
 
         private static final long serialVersionUID = -3696433049266123995L;
@@ -296,4 +434,57 @@ public class TestPersistentManager extends TomcatBaseTest {
         }
 
     }
+
+    private static class BatchStore extends StoreBase {
+
+        private final Map<String, Session> sessions = new HashMap<>();
+        private final List<Integer> batches = new ArrayList<>();
+        private final AtomicInteger loads = new AtomicInteger();
+
+        @Override
+        public synchronized int getSize() {
+            return sessions.size();
+        }
+
+        @Override
+        public synchronized String[] keys() {
+            return sessions.keySet().toArray(new String[sessions.size()]);
+        }
+
+        @Override
+        public synchronized Session load(String id) {
+            loads.incrementAndGet();
+            return sessions.get(id);
+        }
+
+        @Override
+        public synchronized void remove(String id) {
+            sessions.remove(id);
+        }
+
+        @Override
+        public synchronized void clear() {
+            sessions.clear();
+        }
+
+        @Override
+        public synchronized void save(Session session) {
+            sessions.put(session.getIdInternal(), session);
+        }
+
+        @Override
+        public synchronized void saveAll(Session[] sessions) throws IOException {
+            batches.add(Integer.valueOf(sessions.length));
+            super.saveAll(sessions);
+            notifyAll();
+        }
+
+        synchronized void waitForBatches(int count) throws InterruptedException {
+            long maxWaitTime = System.currentTimeMillis() + 10000;
+            while (batches.size() < count) {
+                Assert.assertTrue(System.currentTimeMillis() < maxWaitTime);
+                wait(100);
+            }
+        }
+    }
 }
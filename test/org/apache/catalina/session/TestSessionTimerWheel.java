@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.session;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Session;
+
+public class TestSessionTimerWheel {
+
+    private static final long START = 1400000000000L;
+
+    @Test
+    public void testDueAtDeadline() {
+        SessionTimerWheel wheel = new SessionTimerWheel(START);
+        Session s1 = createSession(START, 10);
+        Session s2 = createSession(START, 100);
+        Session s3 = createSession(START, 5000);
+        Session s4 = createSession(START, 300000);
+        Session never = createSession(START, -1);
+        wheel.schedule(s1);
+        wheel.schedule(s2);
+        wheel.schedule(s3);
+        wheel.schedule(s4);
+        wheel.schedule(never);
+        Assert.assertEquals(5, wheel.size());
+
+        Assert.assertTrue(wheel.advance(START + 9999).isEmpty());
+        assertDue(wheel.advance(START + 10000), s1);
+        Assert.assertTrue(wheel.advance(START + 99999).isEmpty());
+        assertDue(wheel.advance(START + 100000), s2);
+        Assert.assertTrue(wheel.advance(START + 4999999).isEmpty());
+        assertDue(wheel.advance(START + 5000000), s3);
+        Assert.assertTrue(wheel.advance(START + 299999999).isEmpty());
+        assertDue(wheel.advance(START + 300000000), s4);
+        Assert.assertTrue(wheel.advance(START + 400000000).isEmpty());
+
+        // Due sessions remain tracked until removed or rescheduled
+        Assert.assertEquals(5, wheel.size());
+    }
+
+    @Test
+    public void testReschedule() {
+        SessionTimerWheel wheel = new SessionTimerWheel(START);
+        StandardSession session = createSession(START, 60);
+        wheel.schedule(session);
+
+        // Access does not update the wheel so the session is still due at
+        // the original time
+        session.thisAccessedTime = START + 30000;
+        assertDue(wheel.advance(START + 60000), session);
+
+        wheel.reschedule(session);
+        Assert.assertTrue(wheel.advance(START + 89999).isEmpty());
+        assertDue(wheel.advance(START + 90000), session);
+
+        // A session that never expires is not returned until its interval
+        // changes
+        session.maxInactiveInterval = -1;
+        wheel.reschedule(session);
+        Assert.assertTrue(wheel.advance(START + 1000000).isEmpty());
+        session.maxInactiveInterval = 10;
+        wheel.reschedule(session);
+        assertDue(wheel.advance(START + 1001000), session);
+    }
+
+    @Test
+    public void testRemove() {
+        SessionTimerWheel wheel = new SessionTimerWheel(START);
+        Session s1 = createSession(START, 10);
+        Session s2 = createSession(START, 10);
+        wheel.schedule(s1);
+        wheel.schedule(s2);
+        wheel.remove(s1);
+        Assert.assertEquals(1, wheel.size());
+        assertDue(wheel.advance(START + 10000), s2);
+        wheel.remove(s2);
+        Assert.assertEquals(0, wheel.size());
+
+        // Rescheduling a session that is not tracked does nothing
+        wheel.reschedule(s1);
+        Assert.assertEquals(0, wheel.size());
+    }
+
+    @Test
+    public void testOverflow() {
+        SessionTimerWheel wheel = new SessionTimerWheel(START);
+        // Further in the future than the wheel covers
+        Session session = createSession(START, 20000000);
+        wheel.schedule(session);
+        Assert.assertTrue(wheel.advance(START + 19999999999L).isEmpty());
+        assertDue(wheel.advance(START + 20000000000L), session);
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(42);
+        SessionTimerWheel wheel = new SessionTimerWheel(START);
+        Map<Session,Long> deadlines = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            long created = START + random.nextInt(1000000);
+            int interval = 1 + random.nextInt(2000000);
+            Session session = createSession(created, interval);
+            wheel.schedule(session);
+            deadlines.put(session, Long.valueOf(created + interval * 1000L));
+        }
+
+        long previous = START;
+        long now = START;
+        while (!deadlines.isEmpty()) {
+            now += random.nextInt(100000);
+            List<Session> due = wheel.advance(now);
+            for (Session session : due) {
+                long deadline = deadlines.remove(session).longValue();
+                Assert.assertTrue(deadline + " > " + now, deadline <= now);
+                // Not due at the previous check
+                Assert.assertTrue(deadline + " <= " + previous,
+                        previous / 1000 < (deadline + 999) / 1000);
+                wheel.remove(session);
+            }
+            previous = now;
+        }
+        Assert.assertEquals(0, wheel.size());
+    }
+
+
+    private static StandardSession createSession(long created,
+            int maxInactiveInterval) {
+        StandardSession session = new StandardSession(null);
+        session.setCreationTime(created);
+        session.setMaxInactiveInterval(maxInactiveInterval);
+        return session;
+    }
+
+
+    private static void assertDue(List<Session> due, Session expected) {
+        Assert.assertEquals(1, due.size());
+        Assert.assertSame(expected, due.get(0));
+    }
+}
@@ -42,6 +42,7 @@ public abstract class SimpleHttpClient {
     public static final String OK_200 = "HTTP/1.1 200";
     public static final String REDIRECT_302 = "HTTP/1.1 302";
     public static final String REDIRECT_303 = "HTTP/1.1 303";
+    public static final String NOT_MODIFIED_304 = "HTTP/1.1 304";
     public static final String FAIL_400 = "HTTP/1.1 400";
     public static final String FAIL_404 = "HTTP/1.1 404";
     public static final String TIMEOUT_408 = "HTTP/1.1 408";
@@ -410,6 +411,10 @@ public abstract class SimpleHttpClient {
         return responseLineStartsWith(REDIRECT_303);
     }
 
+    public boolean isResponse304() {
+        return responseLineStartsWith(NOT_MODIFIED_304);
+    }
+
     public boolean isResponse400() {
         return responseLineStartsWith(FAIL_400);
     }
@@ -18,7 +18,10 @@ package org.apache.catalina.startup;
 
 import org.apache.catalina.Context;
 import org.apache.catalina.core.StandardContext;
+import org.apache.jasper.compiler.TldCache;
+import org.apache.jasper.servlet.JasperInitializer;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.scan.JarScanIndex;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -27,8 +30,14 @@ import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
 
 public class TestContextConfig extends TomcatBaseTest {
 
@@ -147,6 +156,86 @@ public class TestContextConfig extends TomcatBaseTest {
         assertPageContains("/test/TesterServlet2", "OK");
     }
 
+    @Test
+    public void testParallelAnnotationScanning() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File("test/webapp-fragments");
+        StandardContext context = (StandardContext) tomcat.addWebapp(null,
+                "/test", appDir.getAbsolutePath());
+        context.setParallelAnnotationScanning(true);
+
+        tomcat.start();
+
+        assertPageContains("/test/bug51396.jsp", "<p>OK</p>");
+        assertPageContains("/test/TesterServlet1", "OK");
+        assertPageContains("/test/TesterServlet2", "OK");
+    }
+
+    @Test
+    public void testScanIndex() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        File appDir = new File(getTemporaryDirectory(), "scanIndex");
+        File lib = new File(appDir, "WEB-INF/lib");
+        Assert.assertTrue(lib.mkdirs());
+        File jar = new File(lib, "scanIndex.jar");
+        createScanIndexJar(jar);
+
+        StandardContext context = (StandardContext) tomcat.addWebapp(null,
+                "/test", appDir.getAbsolutePath());
+        context.addServletContainerInitializer(new JasperInitializer(), null);
+        context.setUseScanIndex(true);
+
+        tomcat.start();
+
+        assertPageContains("/test/annotation/overwrite", "<p>Hello World!</p>");
+        Assert.assertNotNull(TldCache.getInstance(context.getServletContext())
+                .getTldResourcePath("http://tomcat.apache.org/scanIndex"));
+
+        File workDir = new File(context.getWorkPath());
+        URL jarUrl = new URL("jar:" + jar.toURI().toURL() + "!/");
+        Assert.assertNotNull(new JarScanIndex(
+                new File(workDir, "annotationScan.idx"), "annotations-1")
+                .get(jarUrl));
+        Assert.assertEquals(1, new JarScanIndex(
+                new File(workDir, "tldScan.idx"), "tlds-1").get(jarUrl).size());
+
+        // Restart using the index
+        context.stop();
+        context.start();
+
+        assertPageContains("/test/annotation/overwrite", "<p>Hello World!</p>");
+        Assert.assertNotNull(TldCache.getInstance(context.getServletContext())
+                .getTldResourcePath("http://tomcat.apache.org/scanIndex"));
+    }
+
+    private void createScanIndexJar(File jar) throws IOException {
+        try (JarOutputStream jos =
+                new JarOutputStream(new FileOutputStream(jar))) {
+            String entryName = ParamServlet.class.getName().replace('.', '/') +
+                    ".class";
+            jos.putNextEntry(new JarEntry(entryName));
+            try (InputStream is = ParamServlet.class.getClassLoader()
+                    .getResourceAsStream(entryName)) {
+                byte[] buf = new byte[4096];
+                int n;
+                while ((n = is.read(buf)) > 0) {
+                    jos.write(buf, 0, n);
+                }
+            }
+            jos.closeEntry();
+
+            jos.putNextEntry(new JarEntry("META-INF/scanIndex.tld"));
+            jos.write(("<taglib xmlns=\"http://java.sun.com/xml/ns/javaee\" " +
+                    "version=\"2.1\"><tlib-version>1.0</tlib-version>" +
+                    "<short-name>scanIndex</short-name>" +
+                    "<uri>http://tomcat.apache.org/scanIndex</uri></taglib>")
+                    .getBytes(StandardCharsets.UTF_8));
+            jos.closeEntry();
+        }
+    }
+
     private static class CustomDefaultServletSCI
             implements ServletContainerInitializer {
 
@@ -31,6 +31,8 @@ import java.io.File;
 import java.net.URL;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.*;
 
@@ -300,6 +302,62 @@ public class TestContextConfigAnnotation {
         assertEquals(4, config.initializerClassMap.get(sciObject).size());
     }
 
+    @Test
+    public void testCheckHandleTypesConcurrent() throws Exception {
+        final String[] classNames = new String[] {
+                "org/apache/catalina/startup/ParamServlet",
+                "org/apache/catalina/startup/ParamFilter",
+                "org/apache/catalina/startup/TesterServlet",
+                "org/apache/catalina/startup/TestListener" };
+
+        for (int i = 0; i < 20; i++) {
+            final ContextConfig config = new ContextConfig();
+            config.handlesTypesNonAnnotations = true;
+            StandardContext context = new StandardContext();
+            context.setLoader(new TesterLoader());
+            config.context = context;
+
+            SCI sciServlet = new SCI();
+            config.initializerClassMap.put(sciServlet, new HashSet<Class<?>>());
+            config.typeInitializerMap.put(Servlet.class,
+                    new HashSet<ServletContainerInitializer>());
+            config.typeInitializerMap.get(Servlet.class).add(sciServlet);
+
+            // Scan the classes from several threads at once, each in a
+            // different order, so the threads share the class cache entries
+            // of the common super types
+            final CyclicBarrier barrier = new CyclicBarrier(classNames.length);
+            final AtomicReference<Throwable> failure = new AtomicReference<>();
+            Thread[] threads = new Thread[classNames.length];
+            for (int t = 0; t < threads.length; t++) {
+                final int offset = t;
+                threads[t] = new Thread() {
+                    @Override
+                    public void run() {
+                        try {
+                            barrier.await();
+                            WebXml ignore = new WebXml();
+                            for (int j = 0; j < classNames.length; j++) {
+                                File file = paramClassResource(classNames[
+                                        (offset + j) % classNames.length]);
+                                config.processAnnotationsFile(file, ignore, false);
+                            }
+                        } catch (Throwable t) {
+                            failure.set(t);
+                        }
+                    }
+                };
+                threads[t].start();
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+
+            assertNull(failure.get());
+            assertEquals(2, config.initializerClassMap.get(sciServlet).size());
+        }
+    }
+
     private static final class SCI implements ServletContainerInitializer {
         @Override
         public void onStartup(Set<Class<?>> c, ServletContext ctx)
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.valves;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestAbstractAccessLogValve extends TomcatBaseTest {
+
+    private static final String PATTERN = "%a %A %b %B %h %H %l %m %p %q %r %s %S %t %u %U %v " +
+            "%D %T %F %I %{X-Req}i %{X-Res}o %{X-None}i %{foo}r %{bar}s %{remote}p %{sid}c " +
+            "%{begin:yyyy-MM-dd'T'HH:mm:ss.SSS}t %{end:SS S}t %{msec_frac}t %{sec}t %{msec}t";
+
+    private static final String ATTRIBUTE_VALUE = "café 中文";
+
+    @Test
+    public void testByteFormattingMatchesCharFormattingUtf8() throws Exception {
+        doTestByteFormatting("UTF-8");
+    }
+
+    @Test
+    public void testByteFormattingMatchesCharFormattingIso88591() throws Exception {
+        doTestByteFormatting("ISO-8859-1");
+    }
+
+    private void doTestByteFormatting(String encoding) throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "attr", new AttributeServlet());
+        ctx.addServletMapping("/", "attr");
+
+        File logDir = new File(getTemporaryDirectory(), "byte-logs");
+        addDeleteOnTearDown(logDir);
+
+        AccessLogValve byteValve = new AccessLogValve();
+        configure(byteValve, logDir, "byte", encoding);
+        tomcat.getHost().getPipeline().addValve(byteValve);
+
+        AccessLogValve charValve = new AccessLogValve() {
+            @Override
+            protected Charset getLogCharset() {
+                return null;
+            }
+        };
+        configure(charValve, logDir, "char", encoding);
+        tomcat.getHost().getPipeline().addValve(charValve);
+
+        tomcat.start();
+
+        Map<String, List<String>> reqHead = new HashMap<>();
+        reqHead.put("X-Req", Arrays.asList("one", "two"));
+        reqHead.put("Cookie", Arrays.asList("sid=abc"));
+        ByteChunk res = new ByteChunk();
+        int rc = getUrl("http://localhost:" + getPort() + "/test/a%20b?x=1&y=%C3%A9",
+                res, reqHead, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+        rc = getUrl("http://localhost:" + getPort() + "/missing", res, null, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+
+        tomcat.stop();
+
+        byte[] expected = Files.readAllBytes(new File(logDir, "char.log").toPath());
+        byte[] actual = Files.readAllBytes(new File(logDir, "byte.log").toPath());
+        Assert.assertEquals(new String(expected, encoding), new String(actual, encoding));
+        Assert.assertArrayEquals(expected, actual);
+
+        String log = new String(actual, encoding);
+        Assert.assertTrue(log, log.contains(
+                new String(ATTRIBUTE_VALUE.getBytes(encoding), encoding)));
+    }
+
+    /*
+     * Subclasses that only override log(CharArrayWriter) must still see every
+     * message, even though the pattern could be formatted as bytes.
+     */
+    @Test
+    public void testCharOnlySubclasses() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "attr", new AttributeServlet());
+        ctx.addServletMapping("/", "attr");
+
+        final List<String> abstractMessages = new ArrayList<>();
+        AbstractAccessLogValve abstractValve = new AbstractAccessLogValve() {
+            @Override
+            protected void log(CharArrayWriter message) {
+                abstractMessages.add(message.toString());
+            }
+
+            @Override
+            protected Charset getLogCharset() {
+                return StandardCharsets.UTF_8;
+            }
+        };
+        abstractValve.setPattern("%m %U");
+        tomcat.getHost().getPipeline().addValve(abstractValve);
+
+        final List<String> messages = new ArrayList<>();
+        AccessLogValve valve = new AccessLogValve() {
+            @Override
+            public void log(CharArrayWriter message) {
+                messages.add(message.toString());
+            }
+        };
+        valve.setPattern("%m %U");
+        tomcat.getHost().getPipeline().addValve(valve);
+
+        tomcat.start();
+
+        ByteChunk res = new ByteChunk();
+        int rc = getUrl("http://localhost:" + getPort() + "/test", res, null);
+        Assert.assertEquals(HttpServletResponse.SC_OK, rc);
+
+        tomcat.stop();
+
+        Assert.assertEquals(Arrays.asList("GET /test"), abstractMessages);
+        Assert.assertEquals(Arrays.asList("GET /test"), messages);
+    }
+
+    private static void configure(AccessLogValve valve, File logDir,
+            String prefix, String encoding) {
+        valve.setDirectory(logDir.getAbsolutePath());
+        valve.setPrefix(prefix);
+        valve.setSuffix(".log");
+        valve.setRotatable(false);
+        valve.setEncoding(encoding);
+        valve.setPattern(PATTERN);
+    }
+
+    private static final class AttributeServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            req.setAttribute("foo", ATTRIBUTE_VALUE);
+            req.getSession().setAttribute("bar", Integer.valueOf(42));
+            resp.addHeader("X-Res", "a");
+            resp.addHeader("X-Res", "b");
+            resp.setContentType("text/plain");
+            resp.getWriter().print("OK");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.valves;
+
+import java.io.CharArrayWriter;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+
+public class TestAccessLogValveAsync extends TomcatBaseTest {
+
+    private static final int REQUEST_COUNT = 200;
+
+    @Test
+    public void testAsyncLogging() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "hello", new HelloWorldServlet());
+        ctx.addServletMapping("/", "hello");
+
+        File logDir = new File(getTemporaryDirectory(), "async-logs");
+        addDeleteOnTearDown(logDir);
+
+        AccessLogValve valve = new AccessLogValve();
+        valve.setDirectory(logDir.getAbsolutePath());
+        valve.setPrefix("access");
+        valve.setSuffix(".log");
+        valve.setRotatable(false);
+        valve.setPattern("%r %s");
+        valve.setAsyncLogging(true);
+        valve.setAsyncQueueSize(16);
+        tomcat.getHost().getPipeline().addValve(valve);
+
+        tomcat.start();
+
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            ByteChunk res = getUrl("http://localhost:" + getPort() + "/test?i=" + i);
+            Assert.assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        }
+
+        tomcat.stop();
+
+        Assert.assertEquals(0, valve.getAsyncDroppedCount());
+        Assert.assertEquals(REQUEST_COUNT, valve.getAsyncWrittenCount());
+
+        List<String> lines = Files.readAllLines(
+                new File(logDir, "access.log").toPath(), StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(REQUEST_COUNT, lines.size());
+        for (int i = 0; i < REQUEST_COUNT; i++) {
+            Assert.assertEquals("GET /test?i=" + i + " HTTP/1.1 200", lines.get(i));
+        }
+    }
+
+    @Test
+    public void testStopDrainsQueue() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.addContext("", null);
+
+        File logDir = new File(getTemporaryDirectory(), "async-logs-stop");
+        addDeleteOnTearDown(logDir);
+
+        AccessLogValve valve = new AccessLogValve();
+        valve.setDirectory(logDir.getAbsolutePath());
+        valve.setPrefix("access");
+        valve.setSuffix(".log");
+        valve.setRotatable(false);
+        valve.setAsyncLogging(true);
+        valve.setAsyncQueueSize(65536);
+        tomcat.getHost().getPipeline().addValve(valve);
+
+        tomcat.start();
+
+        int count = 50000;
+        // Holding the valve's monitor blocks the writer so the messages are
+        // still queued when the valve is stopped
+        synchronized (valve) {
+            for (int i = 0; i < count; i++) {
+                CharArrayWriter message = new CharArrayWriter();
+                message.append("message ").append(Integer.toString(i));
+                valve.log(message);
+            }
+            Assert.assertTrue(valve.getAsyncQueuedCount() > 0);
+
+            long start = System.nanoTime();
+            valve.stop();
+            Assert.assertTrue(System.nanoTime() - start < 5000000000L);
+        }
+
+        Assert.assertEquals(0, valve.getAsyncDroppedCount());
+        Assert.assertEquals(count, valve.getAsyncWrittenCount());
+
+        List<String> lines = Files.readAllLines(
+                new File(logDir, "access.log").toPath(), StandardCharsets.ISO_8859_1);
+        Assert.assertEquals(count, lines.size());
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals("message " + i, lines.get(i));
+        }
+    }
+
+
+    @Test
+    public void testNoReopenAfterStop() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        tomcat.addContext("", null);
+
+        File logDir = new File(getTemporaryDirectory(), "async-logs-reopen");
+        addDeleteOnTearDown(logDir);
+
+        AccessLogValve valve = new AccessLogValve();
+        valve.setDirectory(logDir.getAbsolutePath());
+        valve.setPrefix("access");
+        valve.setSuffix(".log");
+        valve.setAsyncLogging(true);
+        tomcat.getHost().getPipeline().addValve(valve);
+
+        tomcat.start();
+        valve.stop();
+
+        File[] files = logDir.listFiles();
+        Assert.assertNotNull(files);
+        for (File file : files) {
+            Assert.assertTrue(file.delete());
+        }
+
+        // Rotation is only checked once a second. Stopping cleared the date
+        // stamp so, if permitted, this would re-open the log file.
+        Thread.sleep(1100);
+        valve.rotate();
+
+        Assert.assertEquals(0, logDir.listFiles().length);
+    }
+}
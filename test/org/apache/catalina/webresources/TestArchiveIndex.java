@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import org.apache.catalina.LifecycleException;
+import org.apache.catalina.WebResource;
+import org.apache.catalina.WebResourceRoot;
+import org.apache.catalina.startup.LoggingBaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class TestArchiveIndex extends LoggingBaseTest {
+
+    @Test
+    public void testSharedIndex() throws Exception {
+        File jar = new File(getTemporaryDirectory(), "shared.jar");
+        try (FileOutputStream fos = new FileOutputStream(jar)) {
+            writeJar(fos, "a");
+        }
+        WebResourceRoot root = new TesterWebResourceRoot();
+        int count = ArchiveIndex.getIndexCount();
+
+        JarResourceSet classes =
+                new JarResourceSet(root, "/WEB-INF/classes", jar.getAbsolutePath(), "/");
+        JarResourceSet resources = new JarResourceSet(root, "/",
+                jar.getAbsolutePath(), "/META-INF/resources");
+
+        Assert.assertSame(classes.getArchiveIndex(), resources.getArchiveIndex());
+        Assert.assertEquals(count + 1, ArchiveIndex.getIndexCount());
+
+        assertEntries(classes, resources);
+
+        release(classes);
+        Assert.assertEquals(count + 1, ArchiveIndex.getIndexCount());
+        Assert.assertTrue(resources.getResource("/a.txt").exists());
+        release(resources);
+        Assert.assertEquals(count, ArchiveIndex.getIndexCount());
+    }
+
+
+    @Test
+    public void testSharedNestedIndex() throws Exception {
+        File war = new File(getTemporaryDirectory(), "shared.war");
+        try (JarOutputStream jos = new JarOutputStream(new FileOutputStream(war))) {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            writeJar(baos, "a");
+            jos.putNextEntry(new JarEntry("WEB-INF/lib/nested.jar"));
+            jos.write(baos.toByteArray());
+            jos.closeEntry();
+        }
+        WebResourceRoot root = new TesterWebResourceRoot();
+        int count = ArchiveIndex.getIndexCount();
+
+        JarWarResourceSet classes = new JarWarResourceSet(root, "/WEB-INF/classes",
+                war.getAbsolutePath(), "WEB-INF/lib/nested.jar", "/");
+        JarWarResourceSet resources = new JarWarResourceSet(root, "/",
+                war.getAbsolutePath(), "WEB-INF/lib/nested.jar", "/META-INF/resources");
+
+        Assert.assertSame(classes.getArchiveIndex(), resources.getArchiveIndex());
+        Assert.assertEquals(count + 1, ArchiveIndex.getIndexCount());
+
+        assertEntries(classes, resources);
+
+        release(classes);
+        release(resources);
+        Assert.assertEquals(count, ArchiveIndex.getIndexCount());
+    }
+
+
+    @Test
+    public void testModifiedArchive() throws Exception {
+        File jar = new File(getTemporaryDirectory(), "modified.jar");
+        try (FileOutputStream fos = new FileOutputStream(jar)) {
+            writeJar(fos, "a");
+        }
+        WebResourceRoot root = new TesterWebResourceRoot();
+        int count = ArchiveIndex.getIndexCount();
+
+        JarResourceSet original =
+                new JarResourceSet(root, "/", jar.getAbsolutePath(), "/");
+        Assert.assertFalse(
+                original.getResource("/META-INF/resources/bb.txt").exists());
+
+        try (FileOutputStream fos = new FileOutputStream(jar)) {
+            writeJar(fos, "bb");
+        }
+        JarResourceSet modified =
+                new JarResourceSet(root, "/", jar.getAbsolutePath(), "/");
+        Assert.assertNotSame(original.getArchiveIndex(), modified.getArchiveIndex());
+        Assert.assertTrue(
+                modified.getResource("/META-INF/resources/bb.txt").exists());
+
+        // Releasing the stale index must not remove the current one
+        release(original);
+        Assert.assertEquals(count + 1, ArchiveIndex.getIndexCount());
+        release(modified);
+        Assert.assertEquals(count, ArchiveIndex.getIndexCount());
+    }
+
+
+    private static void assertEntries(AbstractArchiveResourceSet classes,
+            AbstractArchiveResourceSet resources) {
+        WebResource resource = resources.getResource("/a.txt");
+        Assert.assertTrue(resource.exists());
+        Assert.assertEquals(1, resource.getContentLength());
+        Assert.assertTrue(resources.getResource("/dir").isDirectory());
+        Assert.assertFalse(resources.getResource("/missing.txt").exists());
+        Assert.assertTrue(classes.getResource(
+                "/WEB-INF/classes/org/apache/Test.class").exists());
+
+        String[] names = resources.list("/");
+        Arrays.sort(names);
+        Assert.assertArrayEquals(new String[] { "a.txt", "dir" }, names);
+        Assert.assertArrayEquals(new String[] { "b.txt" }, resources.list("/dir"));
+        Assert.assertEquals(2, resources.listWebAppPaths("/").size());
+        Assert.assertTrue(classes.listWebAppPaths("/WEB-INF/classes/org/apache/")
+                .contains("/WEB-INF/classes/org/apache/Test.class"));
+    }
+
+
+    private static void release(AbstractArchiveResourceSet resourceSet)
+            throws LifecycleException {
+        resourceSet.stop();
+        resourceSet.destroy();
+    }
+
+
+    private static void writeJar(OutputStream os, String name)
+            throws IOException {
+        JarOutputStream jos = new JarOutputStream(os);
+        jos.putNextEntry(new JarEntry("META-INF/resources/" + name + ".txt"));
+        jos.write(name.getBytes(StandardCharsets.UTF_8), 0, 1);
+        jos.closeEntry();
+        jos.putNextEntry(new JarEntry("META-INF/resources/dir/"));
+        jos.closeEntry();
+        jos.putNextEntry(new JarEntry("META-INF/resources/dir/b.txt"));
+        jos.write('b');
+        jos.closeEntry();
+        jos.putNextEntry(new JarEntry("org/apache/Test.class"));
+        jos.write('c');
+        jos.closeEntry();
+        jos.finish();
+    }
+}
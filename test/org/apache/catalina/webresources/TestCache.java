@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+
+public class TestCache extends TomcatBaseTest {
+
+    private static final String PATH = "/text.txt";
+
+
+    @Test
+    public void testEncodedSizeAccounting() throws Exception {
+        Cache cache = createCache();
+        ContentEncoder encoder = new GzipContentEncoder();
+
+        // Encoded versions count towards the cache size and are removed with
+        // the entry
+        CachedResource entry = (CachedResource) cache.getResource(PATH, false);
+        long size = cache.getSize();
+        Assert.assertTrue(size > 0);
+        Assert.assertNotNull(entry.getEncodedResource(encoder));
+        Assert.assertTrue(cache.getSize() > size);
+        cache.removeCacheEntry(PATH);
+        Assert.assertEquals(0, cache.getSize());
+
+        // The entry is removed while the content is being encoded
+        entry = (CachedResource) cache.getResource(PATH, false);
+        cache.removeCacheEntry(PATH);
+        Assert.assertEquals(0, cache.getSize());
+        Assert.assertNotNull(entry.getEncodedResource(encoder));
+        Assert.assertEquals(0, cache.getSize());
+    }
+
+
+    private Cache createCache() throws Exception {
+        File appDir = new File(getTemporaryDirectory(), "cache-app");
+        Assert.assertTrue(appDir.mkdirs());
+        addDeleteOnTearDown(appDir);
+
+        // Random letters so the gzip version is several KB
+        byte[] content = new byte[64 * 1024];
+        Random random = new Random(0);
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) ('a' + random.nextInt(26));
+        }
+        try (OutputStream os = new FileOutputStream(new File(appDir, PATH.substring(1)))) {
+            os.write(content);
+        }
+
+        Tomcat tomcat = getTomcatInstance();
+        Context ctxt = tomcat.addContext("", appDir.getAbsolutePath());
+        tomcat.start();
+
+        return new Cache((StandardRoot) ctxt.getResources());
+    }
+}
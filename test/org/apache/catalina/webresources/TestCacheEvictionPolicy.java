@@ -0,0 +1,160 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+public class TestCacheEvictionPolicy {
+
+    // Each entry without content has a weight of 500
+    private static final int ENTRY_WEIGHT = 500;
+
+
+    @Test
+    public void testEvictOrderWithinWindow() {
+        CacheEvictionPolicy policy = new CacheEvictionPolicy(100 * ENTRY_WEIGHT);
+        CachedResource first = createEntry("/first");
+        CachedResource second = createEntry("/second");
+        policy.add(first);
+        policy.add(second);
+
+        Assert.assertSame(first, policy.evict());
+        Assert.assertSame(second, policy.evict());
+        Assert.assertNull(policy.evict());
+    }
+
+
+    @Test
+    public void testRemove() {
+        CacheEvictionPolicy policy = new CacheEvictionPolicy(100 * ENTRY_WEIGHT);
+        CachedResource first = createEntry("/first");
+        CachedResource second = createEntry("/second");
+        policy.add(first);
+        policy.add(second);
+        policy.remove(first);
+
+        Assert.assertSame(second, policy.evict());
+        Assert.assertNull(policy.evict());
+
+        // An entry removed before it is added must not be tracked
+        CachedResource third = createEntry("/third");
+        policy.remove(third);
+        policy.add(third);
+        Assert.assertNull(policy.evict());
+    }
+
+
+    @Test
+    public void testScanResistance() {
+        SimulatedCache cache = new SimulatedCache(100);
+
+        // Establish a frequently used set of resources
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 50; j++) {
+                cache.get("/hot/" + j);
+            }
+        }
+
+        // A scan of resources that are only used once
+        for (int i = 0; i < 1000; i++) {
+            cache.get("/scan/" + i);
+        }
+
+        int retained = 0;
+        for (int j = 0; j < 50; j++) {
+            if (cache.contains("/hot/" + j)) {
+                retained++;
+            }
+        }
+        Assert.assertTrue("Only " + retained + " hot entries retained", retained >= 45);
+        Assert.assertTrue(cache.size() <= 100);
+    }
+
+
+    @Test
+    public void testAdaptsToNewHotSet() {
+        SimulatedCache cache = new SimulatedCache(100);
+
+        for (int i = 0; i < 5; i++) {
+            for (int j = 0; j < 50; j++) {
+                cache.get("/old/" + j);
+            }
+        }
+        // A new set of resources becomes popular
+        for (int i = 0; i < 20; i++) {
+            for (int j = 0; j < 50; j++) {
+                cache.get("/new/" + j);
+            }
+        }
+
+        int retained = 0;
+        for (int j = 0; j < 50; j++) {
+            if (cache.contains("/new/" + j)) {
+                retained++;
+            }
+        }
+        Assert.assertTrue("Only " + retained + " new entries retained", retained >= 45);
+    }
+
+
+    private static CachedResource createEntry(String path) {
+        return new CachedResource(null, null, path, 0, 0);
+    }
+
+
+    /*
+     * Minimal version of the logic in Cache that uses the policy
+     */
+    private static class SimulatedCache {
+
+        private final Map<String,CachedResource> entries = new HashMap<>();
+        private final CacheEvictionPolicy policy;
+        private final int maxEntries;
+
+        public SimulatedCache(int maxEntries) {
+            this.maxEntries = maxEntries;
+            policy = new CacheEvictionPolicy(maxEntries * ENTRY_WEIGHT);
+        }
+
+        public void get(String path) {
+            CachedResource entry = entries.get(path);
+            if (entry == null) {
+                entry = createEntry(path);
+                entries.put(path, entry);
+                policy.add(entry);
+                while (entries.size() > maxEntries) {
+                    CachedResource victim = policy.evict();
+                    entries.remove(victim.getWebappPath());
+                }
+            } else {
+                policy.access(entry);
+            }
+        }
+
+        public boolean contains(String path) {
+            return entries.containsKey(path);
+        }
+
+        public int size() {
+            return entries.size();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.catalina.webresources;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Compares the hit ratio and cost of {@link CacheEvictionPolicy} with the
+ * previous approach of evicting entries in hash order when the cache is full,
+ * using a Zipf distributed trace of requests interrupted by scans of
+ * resources that are only requested once.
+ */
+public class TesterCacheEvictionPolicyPerformance {
+
+    private static final int ENTRY_WEIGHT = 500;
+    private static final int RESOURCES = 20000;
+    private static final int CACHE_ENTRIES = 1000;
+    private static final int REQUESTS = 2000000;
+
+
+    @Test
+    public void testCompareHitRatio() {
+        String[] trace = createTrace();
+
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            double policyHitRatio = runPolicy(trace);
+            long policyTime = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            double unorderedHitRatio = runUnordered(trace);
+            long unorderedTime = System.nanoTime() - start;
+
+            System.out.println(String.format(
+                    "W-TinyLFU: hit ratio %.3f in %dms, unordered: hit ratio %.3f in %dms",
+                    Double.valueOf(policyHitRatio), Long.valueOf(policyTime / 1000000),
+                    Double.valueOf(unorderedHitRatio), Long.valueOf(unorderedTime / 1000000)));
+        }
+    }
+
+
+    private static String[] createTrace() {
+        Random random = new Random(1);
+
+        // Zipf distribution with an exponent of 1
+        double[] cumulative = new double[RESOURCES];
+        double total = 0;
+        for (int i = 0; i < RESOURCES; i++) {
+            total += 1.0 / (i + 1);
+            cumulative[i] = total;
+        }
+
+        String[] paths = new String[RESOURCES];
+        for (int i = 0; i < RESOURCES; i++) {
+            paths[i] = "/resource/" + i;
+        }
+
+        String[] trace = new String[REQUESTS];
+        int scan = 0;
+        for (int i = 0; i < REQUESTS; i++) {
+            if (i % 100000 < 5000) {
+                trace[i] = "/scan/" + scan++;
+            } else {
+                double value = random.nextDouble() * total;
+                int low = 0;
+                int high = RESOURCES - 1;
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (cumulative[mid] < value) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                trace[i] = paths[low];
+            }
+        }
+        return trace;
+    }
+
+
+    private static double runPolicy(String[] trace) {
+        ConcurrentMap<String,CachedResource> entries = new ConcurrentHashMap<>();
+        CacheEvictionPolicy policy = new CacheEvictionPolicy(CACHE_ENTRIES * ENTRY_WEIGHT);
+        int hits = 0;
+        for (String path : trace) {
+            CachedResource entry = entries.get(path);
+            if (entry == null) {
+                entry = new CachedResource(null, null, path, 0, 0);
+                entries.put(path, entry);
+                policy.add(entry);
+                while (entries.size() > CACHE_ENTRIES) {
+                    CachedResource victim = policy.evict();
+                    entries.remove(victim.getWebappPath(), victim);
+                }
+            } else {
+                hits++;
+                policy.access(entry);
+            }
+        }
+        return (double) hits / trace.length;
+    }
+
+
+    /*
+     * The approach used before the eviction policy was introduced: when the
+     * cache is full, free 5% of the space by evicting entries in the order
+     * they are returned by the map.
+     */
+    private static double runUnordered(String[] trace) {
+        ConcurrentMap<String,CachedResource> entries = new ConcurrentHashMap<>();
+        int hits = 0;
+        int target = CACHE_ENTRIES * 95 / 100;
+        for (String path : trace) {
+            CachedResource entry = entries.get(path);
+            if (entry == null) {
+                entry = new CachedResource(null, null, path, 0, 0);
+                entries.put(path, entry);
+                if (entries.size() > CACHE_ENTRIES) {
+                    Iterator<CachedResource> iter = entries.values().iterator();
+                    while (entries.size() > target && iter.hasNext()) {
+                        iter.next();
+                        iter.remove();
+                    }
+                }
+            } else {
+                hits++;
+            }
+        }
+        return (double) hits / trace.length;
+    }
+}
@@ -17,13 +17,23 @@
 
 package org.apache.coyote.http11.filters;
 
+import org.apache.coyote.OutputBuffer;
 import org.apache.coyote.Response;
+import org.apache.coyote.http11.OutputFilter;
 import org.apache.tomcat.util.buf.ByteChunk;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -84,4 +94,124 @@ public class TestGzipOutputFilter {
         // most of the data should have been flushed out
         assertTrue(dataFound.length >= (dataExpected.length - 20));
     }
+
+
+    /*
+     * Check that a filter using pooled deflaters produces valid gzip data for
+     * several responses in a row, including responses that are larger than
+     * the filter's internal buffer, and a response that is abandoned without
+     * end() being called.
+     */
+    @Test
+    public void testPooledDeflaterReuse() throws Exception {
+        DeflaterPool pool = new DeflaterPool(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, 1);
+        GzipOutputFilter gf = new GzipOutputFilter(pool);
+        CapturingOutputFilter next = new CapturingOutputFilter();
+        gf.setBuffer(next);
+
+        Random random = new Random(42);
+        int[] sizes = new int[] { 0, 10, 100 * 1024, 1000 };
+        for (int size : sizes) {
+            byte[] data = new byte[size];
+            for (int i = 0; i < size; i++) {
+                // Some repetition so the data compresses
+                data[i] = (byte) ('a' + random.nextInt(8));
+            }
+
+            // Write the response in several chunks
+            int pos = 0;
+            while (pos < size) {
+                int len = Math.min(3000, size - pos);
+                ByteChunk chunk = new ByteChunk();
+                chunk.setBytes(data, pos, len);
+                gf.doWrite(chunk);
+                pos += len;
+            }
+            gf.end();
+            gf.recycle();
+
+            assertArrayEquals(data, gunzip(next.toByteArray()));
+            next.reset();
+
+            // Abandoned response
+            ByteChunk chunk = new ByteChunk();
+            chunk.setBytes(data, 0, Math.min(10, size));
+            gf.doWrite(chunk);
+            gf.recycle();
+            next.reset();
+        }
+
+        pool.clear();
+    }
+
+
+    /*
+     * A deflater that is still borrowed when the pool is cleared must be
+     * ended, rather than pooled, when it is released.
+     */
+    @Test
+    public void testReleaseAfterClear() throws Exception {
+        DeflaterPool pool = new DeflaterPool(Deflater.BEST_SPEED, Deflater.DEFAULT_STRATEGY, 1);
+        Deflater borrowed = pool.borrow();
+        pool.clear();
+        pool.release(borrowed);
+
+        Assert.assertNotSame(borrowed, pool.borrow());
+        try {
+            borrowed.setInput(new byte[1]);
+            borrowed.deflate(new byte[16]);
+            Assert.fail("Released deflater was not ended");
+        } catch (NullPointerException expected) {
+            // Deflater has been closed
+        }
+    }
+
+
+    private static byte[] gunzip(byte[] compressed) throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try (InputStream is = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            byte[] buf = new byte[1024];
+            int read;
+            while ((read = is.read(buf)) > 0) {
+                result.write(buf, 0, read);
+            }
+        }
+        return result.toByteArray();
+    }
+
+
+    private static class CapturingOutputFilter extends ByteArrayOutputStream
+            implements OutputFilter {
+
+        @Override
+        public int doWrite(ByteChunk chunk) throws IOException {
+            write(chunk.getBytes(), chunk.getStart(), chunk.getLength());
+            return chunk.getLength();
+        }
+
+        @Override
+        public long getBytesWritten() {
+            return size();
+        }
+
+        @Override
+        public void setResponse(Response response) {
+            // NO-OP
+        }
+
+        @Override
+        public void recycle() {
+            reset();
+        }
+
+        @Override
+        public void setBuffer(OutputBuffer buffer) {
+            // NO-OP
+        }
+
+        @Override
+        public long end() throws IOException {
+            return size();
+        }
+    }
 }
@@ -69,6 +69,31 @@ public class TestHpack {
         Assert.assertEquals("value2", headers2.getHeader("header2"));
     }
 
+    @Test
+    public void testEncodeWithEviction() throws Exception {
+        // Small table so that entries are evicted and names are re-used from
+        // the dynamic table
+        HpackEncoder encoder = new HpackEncoder(128);
+        HpackDecoder decoder = new HpackDecoder(128);
+        MimeHeaders headers2 = new MimeHeaders();
+        decoder.setHeaderEmitter(new HeadersListener(headers2));
+        ByteBuffer output = ByteBuffer.allocate(512);
+        for (int i = 0; i < 100; i++) {
+            MimeHeaders headers = new MimeHeaders();
+            headers.setValue(":status").setString("200");
+            headers.setValue("header" + (i % 3)).setString("value" + (i % 7));
+            headers.setValue("x-request").setString(Integer.toString(i));
+            output.clear();
+            Assert.assertEquals(HpackEncoder.State.COMPLETE, encoder.encode(headers, output));
+            output.flip();
+            headers2.recycle();
+            decoder.decode(output);
+            Assert.assertEquals("200", headers2.getHeader(":status"));
+            Assert.assertEquals("value" + (i % 7), headers2.getHeader("header" + (i % 3)));
+            Assert.assertEquals(Integer.toString(i), headers2.getHeader("x-request"));
+        }
+    }
+
     private static class HeadersListener implements HpackDecoder.HeaderEmitter {
         private final MimeHeaders headers;
         public HeadersListener(MimeHeaders headers) {
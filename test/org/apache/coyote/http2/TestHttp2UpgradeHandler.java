@@ -0,0 +1,114 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Tests for the write queue and connection flow control in
+ * {@link Http2UpgradeHandler} when many streams write concurrently.
+ */
+public class TestHttp2UpgradeHandler extends Http2TestBase {
+
+    private static final int STREAM_COUNT = 20;
+    // Size of the body written by the test servlet
+    private static final int BODY_SIZE = 8 * 1024;
+
+
+    @Test
+    public void testConcurrentStreams() throws Exception {
+        http2Connect();
+
+        // Make sure the connection window is not the limiting factor
+        sendWindowUpdate(0, STREAM_COUNT * BODY_SIZE);
+
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            sendSimpleGetRequest(3 + i * 2);
+        }
+
+        Map<Integer,Integer> bodySizes = readResponses();
+        assertComplete(bodySizes);
+    }
+
+
+    @Test
+    public void testConcurrentStreamsBackLog() throws Exception {
+        http2Connect();
+
+        // The initial request has used 8k of the 64k - 1 connection window so
+        // the concurrent requests will exhaust it and have to wait in the
+        // backlog until the connection window is increased.
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            sendSimpleGetRequest(3 + i * 2);
+        }
+
+        // Release the connection window in small increments so the backlog is
+        // allocated in several rounds
+        int remaining = STREAM_COUNT * BODY_SIZE;
+        while (remaining > 0) {
+            sendWindowUpdate(0, 4 * 1024);
+            remaining -= 4 * 1024;
+        }
+
+        Map<Integer,Integer> bodySizes = readResponses();
+        assertComplete(bodySizes);
+    }
+
+
+    /*
+     * Reads frames until every stream has ended and returns the total body
+     * size received for each stream.
+     */
+    private Map<Integer,Integer> readResponses() throws Exception {
+        Map<Integer,Integer> bodySizes = new HashMap<>();
+        int ended = 0;
+        while (ended < STREAM_COUNT) {
+            parser.readFrame(true);
+            String trace = output.getTrace();
+            output.clearTrace();
+            Assert.assertFalse(trace, trace.contains("-RST-") || trace.contains("-Goaway-"));
+            for (String line : trace.split("\n")) {
+                String[] parts = line.split("-", 3);
+                Integer streamId = Integer.valueOf(parts[0]);
+                if ("Body".equals(parts[1])) {
+                    Integer size = bodySizes.get(streamId);
+                    int total = Integer.parseInt(parts[2]) + (size == null ? 0 : size.intValue());
+                    bodySizes.put(streamId, Integer.valueOf(total));
+                } else if ("EndOfStream".equals(parts[1])) {
+                    ended++;
+                } else if ("Header".equals(parts[1]) && parts[2].startsWith("[:status]")) {
+                    Assert.assertEquals(line, "[:status]-[200]", parts[2]);
+                }
+            }
+        }
+        return bodySizes;
+    }
+
+
+    private void assertComplete(Map<Integer,Integer> bodySizes) {
+        Assert.assertEquals(STREAM_COUNT, bodySizes.size());
+        for (int i = 0; i < STREAM_COUNT; i++) {
+            Integer streamId = Integer.valueOf(3 + i * 2);
+            Assert.assertEquals(streamId.toString(),
+                    Integer.valueOf(BODY_SIZE), bodySizes.get(streamId));
+        }
+    }
+}
@@ -0,0 +1,297 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import org.apache.coyote.http2.HpackEncoder.HpackHeaderFunction;
+import org.apache.coyote.http2.HpackEncoder.State;
+import org.apache.tomcat.util.http.MimeHeaders;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * The HPACK encoder as it was before the dynamic table was moved to a ring
+ * buffer, kept so that {@link TesterHpackEncoderPerformance} can compare the
+ * two implementations. Table size updates are not supported.
+ */
+public class TesterHpackEncoderBaseline {
+
+    private static final Map<String, TableEntry[]> ENCODING_STATIC_TABLE;
+
+    static {
+        Map<String, TableEntry[]> map = new HashMap<>();
+        for (int i = 1; i < Hpack.STATIC_TABLE.length; ++i) {
+            Hpack.HeaderField m = Hpack.STATIC_TABLE[i];
+            TableEntry[] existing = map.get(m.name);
+            if (existing == null) {
+                map.put(m.name, new TableEntry[]{new TableEntry(m.name, m.value, i)});
+            } else {
+                TableEntry[] newEntry = new TableEntry[existing.length + 1];
+                System.arraycopy(existing, 0, newEntry, 0, existing.length);
+                newEntry[existing.length] = new TableEntry(m.name, m.value, i);
+                map.put(m.name, newEntry);
+            }
+        }
+        ENCODING_STATIC_TABLE = Collections.unmodifiableMap(map);
+    }
+
+    private final Deque<TableEntry> evictionQueue = new ArrayDeque<>();
+    private final Map<String, List<TableEntry>> dynamicTable = new HashMap<>(); //TODO: use a custom data structure to reduce allocations
+    private final HpackHeaderFunction hpackHeaderFunction;
+    private int headersIterator = -1;
+    private boolean firstPass = true;
+    private MimeHeaders currentHeaders;
+    private int entryPositionCounter;
+    /**
+     * The maximum table size
+     */
+    private int maxTableSize;
+    /**
+     * The current table size
+     */
+    private int currentTableSize;
+
+    public TesterHpackEncoderBaseline(int maxTableSize) {
+        this.maxTableSize = maxTableSize;
+        this.hpackHeaderFunction = HpackEncoder.DEFAULT_HEADER_FUNCTION;
+    }
+
+    /**
+     * Encodes the headers into a buffer.
+     *
+     * @param headers The headers to encode
+     * @param target  The buffer to which to write the encoded headers
+     *
+     * @return The state of the encoding process
+     */
+    public State encode(MimeHeaders headers, ByteBuffer target) {
+        int it = headersIterator;
+        if (headersIterator == -1) {
+            //new headers map
+            it = 0;
+            currentHeaders = headers;
+        } else {
+            if (headers != currentHeaders) {
+                throw new IllegalStateException();
+            }
+        }
+        while (it < currentHeaders.size()) {
+            // FIXME: Review lowercase policy
+            String headerName = headers.getName(it).toString().toLowerCase(Locale.US);
+            boolean skip = false;
+            if (firstPass) {
+                if (headerName.charAt(0) != ':') {
+                    skip = true;
+                }
+            } else {
+                if (headerName.charAt(0) == ':') {
+                    skip = true;
+                }
+            }
+            if (!skip) {
+
+                    int required = 11 + headerName.length(); //we use 11 to make sure we have enough room for the variable length integers
+
+                    String val = headers.getValue(it).toString();
+                    TableEntry tableEntry = findInTable(headerName, val);
+
+                    required += (1 + val.length());
+
+                    if (target.remaining() < required) {
+                        this.headersIterator = it;
+                        return State.UNDERFLOW;
+                    }
+                    boolean canIndex = hpackHeaderFunction.shouldUseIndexing(headerName, val) && (headerName.length() + val.length() + 32) < maxTableSize; //only index if it will fit
+                    if (tableEntry == null && canIndex) {
+                        //add the entry to the dynamic table
+                        target.put((byte) (1 << 6));
+                        writeHuffmanEncodableName(target, headerName);
+                        writeHuffmanEncodableValue(target, headerName, val);
+                        addToDynamicTable(headerName, val);
+                    } else if (tableEntry == null) {
+                        //literal never indexed
+                        target.put((byte) (1 << 4));
+                        writeHuffmanEncodableName(target, headerName);
+                        writeHuffmanEncodableValue(target, headerName, val);
+                    } else {
+                        //so we know something is already in the table
+                        if (val.equals(tableEntry.value)) {
+                            //the whole thing is in the table
+                            target.put((byte) (1 << 7));
+                            Hpack.encodeInteger(target, tableEntry.getPosition(), 7);
+                        } else {
+                            if (canIndex) {
+                                //add the entry to the dynamic table
+                                target.put((byte) (1 << 6));
+                                Hpack.encodeInteger(target, tableEntry.getPosition(), 6);
+                                writeHuffmanEncodableValue(target, headerName, val);
+                                addToDynamicTable(headerName, val);
+
+                            } else {
+                                target.put((byte) (1 << 4));
+                                Hpack.encodeInteger(target, tableEntry.getPosition(), 4);
+                                writeHuffmanEncodableValue(target, headerName, val);
+                            }
+                        }
+                    }
+
+            }
+            if (++it == currentHeaders.size() && firstPass) {
+                firstPass = false;
+                it = 0;
+            }
+        }
+        headersIterator = -1;
+        firstPass = true;
+        return State.COMPLETE;
+    }
+
+    private void writeHuffmanEncodableName(ByteBuffer target, String headerName) {
+        if (hpackHeaderFunction.shouldUseHuffman(headerName)) {
+            if(HPackHuffman.encode(target, headerName, true)) {
+                return;
+            }
+        }
+        target.put((byte) 0); //to use encodeInteger we need to place the first byte in the buffer.
+        Hpack.encodeInteger(target, headerName.length(), 7);
+        for (int j = 0; j < headerName.length(); ++j) {
+            target.put(Hpack.toLower((byte) headerName.charAt(j)));
+        }
+
+    }
+
+    private void writeHuffmanEncodableValue(ByteBuffer target, String headerName, String val) {
+        if (hpackHeaderFunction.shouldUseHuffman(headerName, val)) {
+            if (!HPackHuffman.encode(target, val, false)) {
+                writeValueString(target, val);
+            }
+        } else {
+            writeValueString(target, val);
+        }
+    }
+
+    private void writeValueString(ByteBuffer target, String val) {
+        target.put((byte) 0); //to use encodeInteger we need to place the first byte in the buffer.
+        Hpack.encodeInteger(target, val.length(), 7);
+        for (int j = 0; j < val.length(); ++j) {
+            target.put((byte) val.charAt(j));
+        }
+    }
+
+    private void addToDynamicTable(String headerName, String val) {
+        int pos = entryPositionCounter++;
+        DynamicTableEntry d = new DynamicTableEntry(headerName, val, -pos);
+        List<TableEntry> existing = dynamicTable.get(headerName);
+        if (existing == null) {
+            dynamicTable.put(headerName, existing = new ArrayList<>(1));
+        }
+        existing.add(d);
+        evictionQueue.add(d);
+        currentTableSize += d.size;
+        runEvictionIfRequired();
+        if (entryPositionCounter == Integer.MAX_VALUE) {
+            //prevent rollover
+            preventPositionRollover();
+        }
+
+    }
+
+
+    private void preventPositionRollover() {
+        //if the position counter is about to roll over we iterate all the table entries
+        //and set their position to their actual position
+        for (Map.Entry<String, List<TableEntry>> entry : dynamicTable.entrySet()) {
+            for (TableEntry t : entry.getValue()) {
+                t.position = t.getPosition();
+            }
+        }
+        entryPositionCounter = 0;
+    }
+
+    private void runEvictionIfRequired() {
+
+        while (currentTableSize > maxTableSize) {
+            TableEntry next = evictionQueue.poll();
+            if (next == null) {
+                return;
+            }
+            currentTableSize -= next.size;
+            List<TableEntry> list = dynamicTable.get(next.name);
+            list.remove(next);
+            if (list.isEmpty()) {
+                dynamicTable.remove(next.name);
+            }
+        }
+    }
+
+    private TableEntry findInTable(String headerName, String value) {
+        TableEntry[] staticTable = ENCODING_STATIC_TABLE.get(headerName);
+        if (staticTable != null) {
+            for (TableEntry st : staticTable) {
+                if (st.value != null && st.value.equals(value)) { //todo: some form of lookup?
+                    return st;
+                }
+            }
+        }
+        List<TableEntry> dynamic = dynamicTable.get(headerName);
+        if (dynamic != null) {
+            for (TableEntry st : dynamic) {
+                if (st.value.equals(value)) { //todo: some form of lookup?
+                    return st;
+                }
+            }
+        }
+        if (staticTable != null) {
+            return staticTable[0];
+        }
+        return null;
+    }
+
+    static class TableEntry {
+        final String name;
+        final String value;
+        final int size;
+        int position;
+
+        TableEntry(String name, String value, int position) {
+            this.name = name;
+            this.value = value;
+            this.position = position;
+            if (value != null) {
+                this.size = 32 + name.length() + value.length();
+            } else {
+                this.size = -1;
+            }
+        }
+
+        public int getPosition() {
+            return position;
+        }
+    }
+
+    class DynamicTableEntry extends TableEntry {
+
+        DynamicTableEntry(String name, String value, int position) {
+            super(name, value, position);
+        }
+
+        @Override
+        public int getPosition() {
+            return super.getPosition() + entryPositionCounter + Hpack.STATIC_TABLE_LENGTH;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.coyote.http2;
+
+import org.apache.tomcat.util.http.MimeHeaders;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compares {@link HpackEncoder} with {@link TesterHpackEncoderBaseline}, the
+ * implementation it replaced.
+ */
+public class TesterHpackEncoderPerformance {
+
+    private static final int LOOPS = 1000000;
+
+    @Test
+    public void testEncodeResponseHeaders() {
+        MimeHeaders headers = createHeaders();
+
+        // Warm up
+        doTestEncode(new HpackEncoder(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, false);
+        doTestEncodeBaseline(new TesterHpackEncoderBaseline(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, false);
+
+        long current = doTestEncode(
+                new HpackEncoder(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, false);
+        long baseline = doTestEncodeBaseline(
+                new TesterHpackEncoderBaseline(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, false);
+        System.out.println("Table hits: current [" + current + "]ns, baseline [" +
+                baseline + "]ns");
+    }
+
+    /*
+     * The request ID is different for every response so every header block
+     * adds an entry to the dynamic table and, once it is full, evicts one.
+     */
+    @Test
+    public void testEncodeResponseHeadersTableChurn() {
+        MimeHeaders headers = createHeaders();
+
+        // Warm up
+        doTestEncode(new HpackEncoder(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, true);
+        doTestEncodeBaseline(new TesterHpackEncoderBaseline(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, true);
+
+        long current = doTestEncode(
+                new HpackEncoder(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, true);
+        long baseline = doTestEncodeBaseline(
+                new TesterHpackEncoderBaseline(Hpack.DEFAULT_TABLE_SIZE), headers, LOOPS, true);
+        System.out.println("Table churn: current [" + current + "]ns, baseline [" +
+                baseline + "]ns");
+    }
+
+    private static MimeHeaders createHeaders() {
+        MimeHeaders headers = new MimeHeaders();
+        headers.setValue(":status").setString("200");
+        headers.setValue("content-type").setString("application/json;charset=UTF-8");
+        headers.setValue("content-length").setString("1234");
+        headers.setValue("date").setString("Mon, 01 Jan 2015 00:00:00 GMT");
+        headers.setValue("cache-control").setString("no-cache");
+        headers.setValue("server").setString("Apache-Coyote/1.1");
+        headers.setValue("vary").setString("Accept-Encoding");
+        headers.setValue("x-request-id").setString("0123456789abcdef");
+        return headers;
+    }
+
+    private static String[] createRequestIds(boolean churn) {
+        // Created up front so that neither encoder is timed creating them
+        String[] requestIds = new String[churn ? 1024 : 1];
+        for (int i = 0; i < requestIds.length; i++) {
+            requestIds[i] = String.format("%016x", Integer.valueOf(i));
+        }
+        return requestIds;
+    }
+
+    private static long doTestEncode(HpackEncoder encoder, MimeHeaders headers,
+            int loops, boolean churn) {
+        String[] requestIds = createRequestIds(churn);
+        ByteBuffer target = ByteBuffer.allocate(1024);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < loops; i++) {
+            headers.setValue("x-request-id").setString(requestIds[i % requestIds.length]);
+            target.clear();
+            encoder.encode(headers, target);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long doTestEncodeBaseline(TesterHpackEncoderBaseline encoder,
+            MimeHeaders headers, int loops, boolean churn) {
+        String[] requestIds = createRequestIds(churn);
+        ByteBuffer target = ByteBuffer.allocate(1024);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < loops; i++) {
+            headers.setValue("x-request-id").setString(requestIds[i % requestIds.length]);
+            target.clear();
+            encoder.encode(headers, target);
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestBoundedMpscQueue {
+
+    @Test
+    public void testPollEmpty() {
+        BoundedMpscQueue<Object> queue = new BoundedMpscQueue<>(4);
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testCapacityRoundedUp() {
+        Assert.assertEquals(1, new BoundedMpscQueue<>(1).capacity());
+        Assert.assertEquals(8, new BoundedMpscQueue<>(5).capacity());
+        Assert.assertEquals(8, new BoundedMpscQueue<>(8).capacity());
+    }
+
+    @Test
+    public void testOfferPollOrderWithWrap() {
+        BoundedMpscQueue<Integer> queue = new BoundedMpscQueue<>(4);
+
+        int next = 0;
+        int expected = 0;
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 3; j++) {
+                Assert.assertTrue(queue.offer(Integer.valueOf(next++)));
+            }
+            for (int j = 0; j < 3; j++) {
+                Assert.assertEquals(expected++, queue.poll().intValue());
+            }
+        }
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testFull() {
+        BoundedMpscQueue<Object> queue = new BoundedMpscQueue<>(4);
+        Object o = new Object();
+        for (int i = 0; i < 4; i++) {
+            Assert.assertTrue(queue.offer(o));
+        }
+        Assert.assertFalse(queue.offer(o));
+        Assert.assertEquals(4, queue.size());
+
+        Assert.assertSame(o, queue.poll());
+        Assert.assertTrue(queue.offer(o));
+        Assert.assertFalse(queue.offer(o));
+    }
+
+    @Test
+    public void testSlotsReusedInPlace() {
+        BoundedMpscQueue<StringBuilder> queue = new BoundedMpscQueue<>(2);
+
+        for (int i = 0; i < 10; i++) {
+            long sequence = queue.claim();
+            Assert.assertEquals(i, sequence);
+            StringBuilder sb = queue.get(sequence);
+            if (i < 2) {
+                Assert.assertNull(sb);
+                sb = new StringBuilder();
+                queue.set(sequence, sb);
+            } else {
+                // Left in the slot by the consumer
+                Assert.assertEquals(0, sb.length());
+            }
+            sb.append(i);
+            queue.publish(sequence);
+
+            StringBuilder head = queue.peek();
+            Assert.assertSame(sb, head);
+            Assert.assertEquals(Integer.toString(i), head.toString());
+            head.setLength(0);
+            queue.release();
+            Assert.assertNull(queue.peek());
+        }
+    }
+
+    @Test
+    public void testClaimWhenFull() {
+        BoundedMpscQueue<Object> queue = new BoundedMpscQueue<>(2);
+        long first = queue.claim();
+        long second = queue.claim();
+        Assert.assertEquals(-1, queue.claim());
+
+        // Slots are published in order
+        queue.set(second, "b");
+        queue.publish(second);
+        Assert.assertNull(queue.peek());
+        queue.set(first, "a");
+        queue.publish(first);
+
+        Assert.assertEquals("a", queue.poll());
+        Assert.assertEquals(2, queue.claim());
+        Assert.assertEquals("b", queue.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final BoundedMpscQueue<Integer> queue = new BoundedMpscQueue<>(64);
+        final int producers = 4;
+        final int count = 100000;
+
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            final int id = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < count; j++) {
+                        Integer value = Integer.valueOf(id * count + j);
+                        while (!queue.offer(value)) {
+                            Thread.yield();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        // Values from each producer must arrive in order
+        int[] last = new int[producers];
+        for (int i = 0; i < producers; i++) {
+            last[i] = -1;
+        }
+        int received = 0;
+        while (received < producers * count) {
+            Integer value = queue.poll();
+            if (value == null) {
+                Thread.yield();
+                continue;
+            }
+            int id = value.intValue() / count;
+            int seq = value.intValue() % count;
+            Assert.assertEquals(last[id] + 1, seq);
+            last[id] = seq;
+            received++;
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertNull(queue.poll());
+    }
+}
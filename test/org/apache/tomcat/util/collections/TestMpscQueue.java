@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.collections;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMpscQueue {
+
+    @Test
+    public void testPollEmpty() {
+        MpscQueue<Object> queue = new MpscQueue<>();
+        Assert.assertNull(queue.poll());
+        Assert.assertTrue(queue.isEmpty());
+    }
+
+    @Test
+    public void testOfferPollOrder() {
+        MpscQueue<Integer> queue = new MpscQueue<>();
+
+        int next = 0;
+        int expected = 0;
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < i; j++) {
+                queue.offer(Integer.valueOf(next++));
+            }
+            for (int j = 0; j < i; j++) {
+                Assert.assertEquals(expected++, queue.poll().intValue());
+            }
+            Assert.assertTrue(queue.isEmpty());
+        }
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testClear() {
+        MpscQueue<Object> queue = new MpscQueue<>();
+        for (int i = 0; i < 10; i++) {
+            queue.offer(new Object());
+        }
+        Assert.assertFalse(queue.isEmpty());
+        queue.clear();
+        Assert.assertTrue(queue.isEmpty());
+        Assert.assertNull(queue.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws Exception {
+        final int producers = 4;
+        final int perProducer = 100000;
+        final MpscQueue<Integer> queue = new MpscQueue<>();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[producers];
+        for (int i = 0; i < producers; i++) {
+            final int base = i * perProducer;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < perProducer; j++) {
+                        queue.offer(Integer.valueOf(base + j));
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+
+        // Values from each producer must arrive in the order they were added
+        int[] last = new int[producers];
+        for (int i = 0; i < producers; i++) {
+            last[i] = i * perProducer - 1;
+        }
+        Set<Integer> seen = new HashSet<>();
+        int received = 0;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (received < producers * perProducer) {
+            Integer value = queue.poll();
+            if (value == null) {
+                Assert.assertTrue(System.currentTimeMillis() < deadline);
+                Thread.yield();
+                continue;
+            }
+            int producer = value.intValue() / perProducer;
+            Assert.assertEquals(last[producer] + 1, value.intValue());
+            last[producer] = value.intValue();
+            Assert.assertTrue(seen.add(value));
+            received++;
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        Assert.assertNull(queue.poll());
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.descriptor.web;
+
+import org.apache.catalina.startup.LoggingBaseTest;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TestFragmentJarScannerCallback extends LoggingBaseTest {
+
+    private static final int FRAGMENT_COUNT = 20;
+
+    @Test
+    public void testParallelMatchesSerial() throws Exception {
+        File[] dirs = createFragmentDirs(false);
+
+        FragmentJarScannerCallback serial = new FragmentJarScannerCallback(
+                new WebXmlParser(false, false, true), false, true);
+        scan(serial, dirs);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FragmentJarScannerCallback parallel =
+                    new FragmentJarScannerCallback(
+                            new WebXmlParser(false, false, true), false, true,
+                            executor);
+            scan(parallel, dirs);
+
+            assertTrue(serial.isOk());
+            assertTrue(parallel.isOk());
+
+            Map<String,WebXml> expected = serial.getFragments();
+            Map<String,WebXml> actual = parallel.getFragments();
+            assertEquals(FRAGMENT_COUNT + 1, expected.size());
+            assertEquals(expected.keySet(), actual.keySet());
+            for (Map.Entry<String,WebXml> entry : expected.entrySet()) {
+                WebXml fragment = actual.get(entry.getKey());
+                assertEquals(entry.getValue().getURL(), fragment.getURL());
+                assertEquals(entry.getValue().getJarName(),
+                        fragment.getJarName());
+                assertEquals(entry.getValue().getServletMappings(),
+                        fragment.getServletMappings());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    @Test
+    public void testParallelInvalidFragment() throws Exception {
+        File[] dirs = createFragmentDirs(true);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            FragmentJarScannerCallback parallel =
+                    new FragmentJarScannerCallback(
+                            new WebXmlParser(false, false, true), false, true,
+                            executor);
+            scan(parallel, dirs);
+
+            assertFalse(parallel.isOk());
+            assertEquals(FRAGMENT_COUNT + 1, parallel.getFragments().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+
+    private void scan(FragmentJarScannerCallback callback, File[] dirs)
+            throws IOException {
+        for (File dir : dirs) {
+            callback.scan(dir, null, true);
+        }
+    }
+
+
+    private File[] createFragmentDirs(boolean invalid) throws IOException {
+        // One extra directory with no web-fragment.xml
+        File[] dirs = new File[FRAGMENT_COUNT + 1];
+        for (int i = 0; i < FRAGMENT_COUNT; i++) {
+            dirs[i] = new File(getTemporaryDirectory(), "fragment" + i);
+            File metaInf = new File(dirs[i], "META-INF");
+            assertTrue(metaInf.mkdirs());
+            String content;
+            if (invalid && i == FRAGMENT_COUNT / 2) {
+                content = "<web-fragment><name>broken";
+            } else {
+                content = "<web-fragment>" +
+                        "<name>fragment" + i + "</name>" +
+                        "<servlet><servlet-name>servlet" + i +
+                        "</servlet-name><servlet-class>Servlet" + i +
+                        "</servlet-class></servlet>" +
+                        "<servlet-mapping><servlet-name>servlet" + i +
+                        "</servlet-name><url-pattern>/servlet" + i +
+                        "</url-pattern></servlet-mapping>" +
+                        "</web-fragment>";
+            }
+            try (Writer w = new OutputStreamWriter(new FileOutputStream(
+                    new File(metaInf, "web-fragment.xml")),
+                    StandardCharsets.UTF_8)) {
+                w.write(content);
+            }
+        }
+        dirs[FRAGMENT_COUNT] = new File(getTemporaryDirectory(), "plain");
+        assertTrue(dirs[FRAGMENT_COUNT].mkdirs());
+        return dirs;
+    }
+}
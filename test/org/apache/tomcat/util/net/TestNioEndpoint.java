@@ -0,0 +1,295 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardSocketOptions;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManager;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import org.junit.Assume;
+import org.junit.Test;
+
+import org.apache.catalina.Context;
+import org.apache.catalina.connector.Connector;
+import org.apache.catalina.startup.Tomcat;
+import org.apache.catalina.startup.TomcatBaseTest;
+import org.apache.tomcat.util.buf.ByteChunk;
+import org.apache.tomcat.util.modeler.Registry;
+import org.apache.tomcat.util.threads.VirtualThreadExecutor;
+import org.apache.tomcat.util.threads.WorkStealingExecutor;
+
+public class TestNioEndpoint extends TomcatBaseTest {
+
+    @Test
+    public void testMultipleListeners() throws Exception {
+        Assume.assumeTrue("Only applies to the NIO connector",
+                getProtocol().contains("Nio") && !getProtocol().contains("Nio2"));
+        Assume.assumeTrue("SO_REUSEPORT is not available", isReusePortAvailable());
+
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        connector.setAttribute("listenerCount", "4");
+        connector.setAttribute("pollerThreadCount", "2");
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "tester", new HelloWorldServlet());
+        ctx.addServletMapping("/", "tester");
+
+        tomcat.start();
+
+        assertEquals(4, countAcceptorThreads(connector));
+        // Raised so that every listener has a poller
+        assertEquals(Integer.valueOf(4), connector.getProperty("pollerThreadCount"));
+
+        for (int i = 0; i < 40; i++) {
+            ByteChunk res = getUrl("http://localhost:" + getPort() + "/");
+            assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        }
+
+        long start = System.nanoTime();
+        connector.stop();
+        long elapsed = (System.nanoTime() - start) / 1000000;
+        assertTrue("Stop took " + elapsed + "ms", elapsed < 5000);
+        assertEquals(0, countAcceptorThreads(connector));
+    }
+
+
+    @Test
+    public void testPollerMBeans() throws Exception {
+        Assume.assumeTrue("Only applies to the NIO connector",
+                getProtocol().contains("Nio") && !getProtocol().contains("Nio2"));
+
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        connector.setAttribute("pollerThreadCount", "2");
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "tester", new HelloWorldServlet());
+        ctx.addServletMapping("/", "tester");
+
+        tomcat.start();
+
+        for (int i = 0; i < 10; i++) {
+            ByteChunk res = getUrl("http://localhost:" + getPort() + "/");
+            assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        }
+
+        MBeanServer mbeanServer = Registry.getRegistry(null, null).getMBeanServer();
+        Set<ObjectName> pollers = mbeanServer.queryNames(
+                new ObjectName("*:type=Poller,*"), null);
+        assertEquals(2, pollers.size());
+
+        long events = 0;
+        long loops = 0;
+        for (ObjectName poller : pollers) {
+            events += ((Long) mbeanServer.getAttribute(poller, "eventCount")).longValue();
+            loops += ((Long) mbeanServer.getAttribute(poller, "loopCount")).longValue();
+            mbeanServer.getAttribute(poller, "wakeupCount");
+            mbeanServer.getAttribute(poller, "maxLoopTime");
+        }
+        // At least the registration of the connection
+        assertTrue(events > 0);
+        assertTrue(loops > 0);
+
+        connector.stop();
+        assertEquals(0, mbeanServer.queryNames(
+                new ObjectName("*:type=Poller,*"), null).size());
+    }
+
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        connector.setAttribute("useVirtualThreads", "true");
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "tester", new HelloWorldServlet());
+        ctx.addServletMapping("/", "tester");
+
+        tomcat.start();
+
+        // Falls back to the thread pool if virtual threads are not available
+        for (int i = 0; i < 10; i++) {
+            ByteChunk res = getUrl("http://localhost:" + getPort() + "/");
+            assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        }
+
+        Object executor = connector.getProtocolHandler().getExecutor();
+        boolean virtual = executor instanceof VirtualThreadExecutor;
+        boolean expected = VirtualThreadExecutor.isSupported() &&
+                !getProtocol().contains("Nio2");
+        assertEquals(Boolean.valueOf(expected), Boolean.valueOf(virtual));
+    }
+
+
+    @Test
+    public void testWorkStealing() throws Exception {
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        connector.setAttribute("useWorkStealing", "true");
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "tester", new HelloWorldServlet());
+        ctx.addServletMapping("/", "tester");
+
+        tomcat.start();
+
+        for (int i = 0; i < 10; i++) {
+            ByteChunk res = getUrl("http://localhost:" + getPort() + "/");
+            assertEquals(HelloWorldServlet.RESPONSE_TEXT, res.toString());
+        }
+
+        WorkStealingExecutor executor =
+                (WorkStealingExecutor) connector.getProtocolHandler().getExecutor();
+        // Keep-alive requests may be processed by the same task
+        assertTrue(executor.getCompletedTaskCount() > 0);
+        if (!getProtocol().contains("Nio2")) {
+            assertEquals(connector.getProperty("pollerThreadCount"),
+                    Integer.valueOf(executor.getLaneCount()));
+        }
+    }
+
+
+    @Test
+    public void testLargeChunkedWrites() throws Exception {
+        doTestLargeChunkedWrites(false);
+    }
+
+
+    @Test
+    public void testLargeChunkedWritesTls() throws Exception {
+        doTestLargeChunkedWrites(true);
+    }
+
+
+    /*
+     * Chunks much larger than the socket write buffer and the socket send
+     * buffer are written with gathering writes that only partly complete.
+     */
+    private void doTestLargeChunkedWrites(boolean tls) throws Exception {
+        Assume.assumeTrue("Only applies to the NIO connector",
+                getProtocol().contains("Nio") && !getProtocol().contains("Nio2"));
+
+        Tomcat tomcat = getTomcatInstance();
+        Connector connector = tomcat.getConnector();
+        connector.setAttribute("socket.txBufSize", "8192");
+        connector.setAttribute("socket.appWriteBufSize", "4096");
+        if (tls) {
+            // Only the transfer is of interest, not the certificates
+            SSLContext sc = SSLContext.getInstance("TLS");
+            sc.init(null, new TrustManager[] { new TesterSupport.TrustAllCerts() }, null);
+            HttpsURLConnection.setDefaultSSLSocketFactory(sc.getSocketFactory());
+            TesterSupport.initSsl(tomcat);
+        }
+
+        Context ctx = tomcat.addContext("", null);
+        Tomcat.addServlet(ctx, "large", new LargeChunkedServlet());
+        ctx.addServletMapping("/", "large");
+
+        tomcat.start();
+
+        ByteChunk res = new ByteChunk();
+        res.setLimit(-1);
+        Map<String,List<String>> headers = new HashMap<>();
+        int rc = getUrl((tls ? "https" : "http") + "://localhost:" + getPort() + "/",
+                res, headers);
+
+        assertEquals(HttpServletResponse.SC_OK, rc);
+        assertEquals("chunked", headers.get("Transfer-Encoding").get(0));
+        assertEquals(LargeChunkedServlet.WRITES * LargeChunkedServlet.WRITE_SIZE,
+                res.getLength());
+        byte[] body = res.getBuffer();
+        for (int i = 0; i < res.getLength(); i++) {
+            if (body[res.getStart() + i] != (byte) (i % 251)) {
+                fail("Unexpected byte at position [" + i + "]");
+            }
+        }
+    }
+
+
+    private static class LargeChunkedServlet extends HttpServlet {
+
+        private static final long serialVersionUID = 1L;
+
+        private static final int WRITES = 64;
+        private static final int WRITE_SIZE = 64 * 1024;
+
+        @Override
+        protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+                throws ServletException, IOException {
+            resp.setContentType("application/octet-stream");
+            byte[] data = new byte[WRITE_SIZE];
+            OutputStream os = resp.getOutputStream();
+            int pos = 0;
+            for (int i = 0; i < WRITES; i++) {
+                for (int j = 0; j < WRITE_SIZE; j++) {
+                    data[j] = (byte) (pos++ % 251);
+                }
+                os.write(data);
+            }
+        }
+    }
+
+
+    private static boolean isReusePortAvailable() {
+        try {
+            StandardSocketOptions.class.getField("SO_REUSEPORT");
+            return true;
+        } catch (NoSuchFieldException e) {
+            return false;
+        }
+    }
+
+
+    private static int countAcceptorThreads(Connector connector) throws Exception {
+        // Give acceptors that are shutting down a moment to exit
+        int count = 0;
+        for (int i = 0; i < 20; i++) {
+            count = 0;
+            for (Thread t : Thread.getAllStackTraces().keySet()) {
+                if (t.isAlive() && t.getName().startsWith("http-nio-") &&
+                        t.getName().contains("-Acceptor-")) {
+                    count++;
+                }
+            }
+            if (count == 0 || connector.getState().isAvailable()) {
+                break;
+            }
+            Thread.sleep(50);
+        }
+        return count;
+    }
+}
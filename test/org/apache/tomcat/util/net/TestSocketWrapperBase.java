@@ -0,0 +1,305 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one or more
+ *  contributor license agreements.  See the NOTICE file distributed with
+ *  this work for additional information regarding copyright ownership.
+ *  The ASF licenses this file to You under the Apache License, Version 2.0
+ *  (the "License"); you may not use this file except in compliance with
+ *  the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package org.apache.tomcat.util.net;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import org.junit.Test;
+
+public class TestSocketWrapperBase {
+
+    private static final int WRITE_BUFFER_SIZE = 16;
+
+
+    @Test
+    public void testSmallWriteIsBuffered() throws Exception {
+        TesterSocketWrapper wrapper = new TesterSocketWrapper(Integer.MAX_VALUE);
+
+        ByteBuffer[] srcs = createBuffers(3, 4, 2);
+        byte[] expected = toBytes(srcs);
+        wrapper.write(true, srcs, 0, srcs.length);
+
+        assertEquals(0, wrapper.gatheringWrites);
+        assertEquals(0, wrapper.socketWrites);
+        assertConsumed(srcs);
+
+        wrapper.flush(true);
+        assertArrayEquals(expected, wrapper.written.toByteArray());
+    }
+
+
+    @Test
+    public void testLargeWriteIsGathered() throws Exception {
+        TesterSocketWrapper wrapper = new TesterSocketWrapper(Integer.MAX_VALUE);
+
+        // Already in the socket write buffer
+        byte[] buffered = new byte[] { 'a', 'b', 'c' };
+        wrapper.write(true, buffered, 0, buffered.length);
+
+        // Chunk header, data and trailer
+        ByteBuffer[] srcs = createBuffers(5, 100, 2);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(buffered);
+        expected.write(toBytes(srcs));
+        wrapper.write(true, srcs, 0, srcs.length);
+
+        assertEquals(1, wrapper.gatheringWrites);
+        assertConsumed(srcs);
+
+        wrapper.flush(true);
+        assertArrayEquals(expected.toByteArray(), wrapper.written.toByteArray());
+    }
+
+
+    @Test
+    public void testGatheringWriteWithOffset() throws Exception {
+        TesterSocketWrapper wrapper = new TesterSocketWrapper(Integer.MAX_VALUE);
+
+        ByteBuffer[] srcs = createBuffers(10, 40, 30, 10);
+        ByteBuffer[] included = new ByteBuffer[] { srcs[1], srcs[2] };
+        byte[] expected = toBytes(included);
+        wrapper.write(true, srcs, 1, 2);
+
+        assertConsumed(included);
+        assertEquals(10, srcs[0].remaining());
+        assertEquals(10, srcs[3].remaining());
+
+        wrapper.flush(true);
+        assertArrayEquals(expected, wrapper.written.toByteArray());
+    }
+
+
+    @Test
+    public void testGatheringPartialWrites() throws Exception {
+        // Each write to the socket only takes a few bytes
+        TesterSocketWrapper wrapper = new TesterSocketWrapper(7);
+
+        byte[] buffered = new byte[] { 'x', 'y' };
+        wrapper.write(true, buffered, 0, buffered.length);
+
+        ByteBuffer[] srcs = createBuffers(3, 1000, 2, 0, 500);
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(buffered);
+        expected.write(toBytes(srcs));
+        wrapper.write(true, srcs, 0, srcs.length);
+
+        assertEquals(1, wrapper.gatheringWrites);
+        assertConsumed(srcs);
+        // Anything left over must fit in the socket write buffer
+        assertFalse(wrapper.getSocketBufferHandler().getWriteBuffer().remaining() == 0);
+
+        wrapper.flush(true);
+        assertArrayEquals(expected.toByteArray(), wrapper.written.toByteArray());
+    }
+
+
+    @Test
+    public void testNonBlockingWrite() throws Exception {
+        TesterSocketWrapper wrapper = new TesterSocketWrapper(7);
+
+        ByteBuffer[] srcs = createBuffers(3, 1000, 2);
+        byte[] expected = toBytes(srcs);
+        wrapper.write(false, srcs, 0, srcs.length);
+
+        // Non-blocking writes are never gathered
+        assertEquals(0, wrapper.gatheringWrites);
+        assertConsumed(srcs);
+
+        wrapper.flush(true);
+        assertArrayEquals(expected, wrapper.written.toByteArray());
+    }
+
+
+    private static ByteBuffer[] createBuffers(int... sizes) {
+        ByteBuffer[] result = new ByteBuffer[sizes.length];
+        int value = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            byte[] data = new byte[sizes[i]];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte) (value++ % 251);
+            }
+            result[i] = ByteBuffer.wrap(data);
+        }
+        return result;
+    }
+
+
+    private static byte[] toBytes(ByteBuffer[] buffers) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (ByteBuffer buffer : buffers) {
+            ByteBuffer copy = buffer.duplicate();
+            while (copy.hasRemaining()) {
+                result.write(copy.get());
+            }
+        }
+        return result.toByteArray();
+    }
+
+
+    private static void assertConsumed(ByteBuffer[] buffers) {
+        for (ByteBuffer buffer : buffers) {
+            assertEquals(0, buffer.remaining());
+        }
+    }
+
+
+    /*
+     * Writes to a byte array taking at most maxWrite bytes from the socket
+     * write buffer each time.
+     */
+    private static class TesterSocketWrapper extends SocketWrapperBase<Object> {
+
+        private final int maxWrite;
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private int socketWrites = 0;
+        private int gatheringWrites = 0;
+
+        public TesterSocketWrapper(int maxWrite) {
+            super(new Object(), null);
+            this.maxWrite = maxWrite;
+            socketBufferHandler = new SocketBufferHandler(
+                    WRITE_BUFFER_SIZE, WRITE_BUFFER_SIZE, false);
+        }
+
+        @Override
+        protected void doWriteInternal(boolean block) throws IOException {
+            socketBufferHandler.configureWriteBufferForRead();
+            ByteBuffer writeBuffer = socketBufferHandler.getWriteBuffer();
+            do {
+                int len = Math.min(maxWrite, writeBuffer.remaining());
+                for (int i = 0; i < len; i++) {
+                    written.write(writeBuffer.get());
+                }
+                socketWrites++;
+            } while (block && writeBuffer.hasRemaining());
+        }
+
+        @Override
+        protected void doWriteGathering(ByteBuffer[] srcs, int offset, int length)
+                throws IOException {
+            gatheringWrites++;
+            super.doWriteGathering(srcs, offset, length);
+        }
+
+        @Override
+        protected void populateRemoteHost() {
+            // NO-OP
+        }
+
+        @Override
+        protected void populateRemoteAddr() {
+            // NO-OP
+        }
+
+        @Override
+        protected void populateRemotePort() {
+            // NO-OP
+        }
+
+        @Override
+        protected void populateLocalName() {
+            // NO-OP
+        }
+
+        @Override
+        protected void populateLocalAddr() {
+            // NO-OP
+        }
+
+        @Override
+        protected void populateLocalPort() {
+            // NO-OP
+        }
+
+        @Override
+        public boolean isReadPending() {
+            return false;
+        }
+
+        @Override
+        public boolean isWritePending() {
+            return false;
+        }
+
+        @Override
+        public int read(boolean block, byte[] b, int off, int len) throws IOException {
+            return -1;
+        }
+
+        @Override
+        public boolean isReadyForRead() throws IOException {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            // NO-OP
+        }
+
+        @Override
+        public void registerReadInterest() {
+            // NO-OP
+        }
+
+        @Override
+        public void registerWriteInterest() {
+            // NO-OP
+        }
+
+        @Override
+        public SendfileDataBase createSendfileData(String filename, long pos, long length) {
+            return null;
+        }
+
+        @Override
+        public SendfileState processSendfile(SendfileDataBase sendfileData) {
+            return null;
+        }
+
+        @Override
+        public void doClientAuth(SSLSupport sslSupport) {
+            // NO-OP
+        }
+
+        @Override
+        public SSLSupport getSslSupport(String clientCertProvider) {
+            return null;
+        }
+
+        @Override
+        public <A> CompletionState read(ByteBuffer[] dsts, int offset, int length,
+                boolean block, long timeout, TimeUnit unit, A attachment,
+                CompletionCheck check, CompletionHandler<Long, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <A> CompletionState write(ByteBuffer[] srcs, int offset, int length,
+                boolean block, long timeout, TimeUnit unit, A attachment,
+                CompletionCheck check, CompletionHandler<Long, ? super A> handler) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
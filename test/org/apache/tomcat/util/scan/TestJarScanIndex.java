@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.scan;
+
+import org.apache.catalina.startup.LoggingBaseTest;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+public class TestJarScanIndex extends LoggingBaseTest {
+
+    private static final String FINGERPRINT = "test-1";
+
+    @Test
+    public void testUnchangedJar() throws Exception {
+        File jar = createJar("a.jar", "a");
+        File indexFile = new File(getTemporaryDirectory(), "test.idx");
+        URL url = jarUrl(jar);
+        List<String> values = Arrays.asList("one", "two");
+
+        JarScanIndex index = new JarScanIndex(indexFile, FINGERPRINT);
+        Assert.assertNull(index.get(url));
+        index.put(url, values);
+        index.store();
+        Assert.assertTrue(indexFile.isFile());
+
+        index = new JarScanIndex(indexFile, FINGERPRINT);
+        Assert.assertEquals(values, index.get(url));
+        // file: URLs identify the same JAR
+        Assert.assertEquals(values, index.get(jar.toURI().toURL()));
+    }
+
+
+    @Test
+    public void testChangedJar() throws Exception {
+        File jar = createJar("b.jar", "b");
+        File indexFile = new File(getTemporaryDirectory(), "test.idx");
+        URL url = jarUrl(jar);
+
+        JarScanIndex index = new JarScanIndex(indexFile, FINGERPRINT);
+        index.put(url, Arrays.asList("one"));
+        index.store();
+
+        // Same size, different content
+        createJar("b.jar", "c");
+
+        index = new JarScanIndex(indexFile, FINGERPRINT);
+        Assert.assertNull(index.get(url));
+    }
+
+
+    @Test
+    public void testDifferentFingerprint() throws Exception {
+        File jar = createJar("d.jar", "d");
+        File indexFile = new File(getTemporaryDirectory(), "test.idx");
+        URL url = jarUrl(jar);
+
+        JarScanIndex index = new JarScanIndex(indexFile, FINGERPRINT);
+        index.put(url, Arrays.asList("one"));
+        index.store();
+
+        index = new JarScanIndex(indexFile, "test-2");
+        Assert.assertNull(index.get(url));
+    }
+
+
+    @Test
+    public void testRemovedJarDropped() throws Exception {
+        File jar1 = createJar("e.jar", "e");
+        File jar2 = createJar("f.jar", "f");
+        File indexFile = new File(getTemporaryDirectory(), "test.idx");
+
+        JarScanIndex index = new JarScanIndex(indexFile, FINGERPRINT);
+        index.put(jarUrl(jar1), Arrays.asList("one"));
+        index.put(jarUrl(jar2), Arrays.asList("two"));
+        index.store();
+
+        // Only the first JAR is seen by the next scan
+        index = new JarScanIndex(indexFile, FINGERPRINT);
+        Assert.assertNotNull(index.get(jarUrl(jar1)));
+        index.store();
+
+        index = new JarScanIndex(indexFile, FINGERPRINT);
+        Assert.assertNotNull(index.get(jarUrl(jar1)));
+        Assert.assertNull(index.get(jarUrl(jar2)));
+    }
+
+
+    @Test
+    public void testCorruptIndex() throws Exception {
+        File jar = createJar("g.jar", "g");
+        File indexFile = new File(getTemporaryDirectory(), "test.idx");
+        try (FileOutputStream fos = new FileOutputStream(indexFile)) {
+            fos.write(new byte[] { 0, 0, 0, 1, 0 });
+        }
+
+        JarScanIndex index = new JarScanIndex(indexFile, FINGERPRINT);
+        Assert.assertNull(index.get(jarUrl(jar)));
+    }
+
+
+    @Test
+    public void testNotIndexable() throws Exception {
+        File indexFile = new File(getTemporaryDirectory(), "test.idx");
+        JarScanIndex index = new JarScanIndex(indexFile, FINGERPRINT);
+        URL url = new URL("http://localhost/test.jar");
+        index.put(url, Arrays.asList("one"));
+        Assert.assertNull(index.get(url));
+        Assert.assertNull(index.get(getTemporaryDirectory().toURI().toURL()));
+    }
+
+
+    private File createJar(String name, String content) throws IOException {
+        File jar = new File(getTemporaryDirectory(), name);
+        try (JarOutputStream jos =
+                new JarOutputStream(new FileOutputStream(jar))) {
+            JarEntry entry = new JarEntry("content.txt");
+            // Fixed time so JARs with the same content are identical
+            entry.setTime(0);
+            jos.putNextEntry(entry);
+            jos.write(content.getBytes("UTF-8"));
+            jos.closeEntry();
+        }
+        return jar;
+    }
+
+
+    private static URL jarUrl(File jar) throws IOException {
+        return new URL("jar:" + jar.toURI().toURL() + "!/");
+    }
+}
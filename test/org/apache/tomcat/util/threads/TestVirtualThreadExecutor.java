@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+public class TestVirtualThreadExecutor {
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testNotSupported() {
+        Assume.assumeFalse(VirtualThreadExecutor.isSupported());
+        new VirtualThreadExecutor("test-");
+    }
+
+
+    @Test
+    public void testManyBlockingTasks() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test-");
+        final int count = 5000;
+        final CountDownLatch started = new CountDownLatch(count);
+        final CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < count; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+            });
+        }
+
+        // Far more tasks than platform threads can block at the same time
+        Assert.assertTrue(started.await(30, TimeUnit.SECONDS));
+        Assert.assertEquals(count, executor.getActiveCount());
+        Assert.assertEquals(count, executor.getLargestPoolSize());
+
+        release.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(count, executor.getCompletedTaskCount());
+        Assert.assertEquals(0, executor.getPoolSize());
+    }
+
+
+    @Test
+    public void testShutdownNow() throws Exception {
+        Assume.assumeTrue(VirtualThreadExecutor.isSupported());
+
+        VirtualThreadExecutor executor = new VirtualThreadExecutor("test-");
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    Thread.sleep(60000);
+                } catch (InterruptedException e) {
+                    // Expected
+                }
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+
+        executor.shutdownNow();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertTrue(executor.isTerminated());
+
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    // NO-OP
+                }
+            });
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+}
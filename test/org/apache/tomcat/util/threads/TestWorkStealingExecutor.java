@@ -0,0 +1,308 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.tomcat.util.threads;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestWorkStealingExecutor {
+
+    private static WorkStealingExecutor createExecutor(int lanes, int core,
+            int max, long keepAliveMillis) {
+        return new WorkStealingExecutor(lanes, core, max, keepAliveMillis,
+                TimeUnit.MILLISECONDS, new TaskThreadFactory("test-", true,
+                        Thread.NORM_PRIORITY));
+    }
+
+
+    @Test
+    public void testManySubmitters() throws Exception {
+        final WorkStealingExecutor executor = createExecutor(4, 2, 8, 60000);
+        final int submitters = 4;
+        final int perSubmitter = 20000;
+        final CountDownLatch done = new CountDownLatch(submitters * perSubmitter);
+        final AtomicInteger ran = new AtomicInteger(0);
+
+        Thread[] threads = new Thread[submitters];
+        for (int i = 0; i < submitters; i++) {
+            final int lane = i;
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    executor.bindCurrentThread(lane);
+                    for (int j = 0; j < perSubmitter; j++) {
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                ran.incrementAndGet();
+                                done.countDown();
+                            }
+                        });
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        Assert.assertTrue(done.await(60, TimeUnit.SECONDS));
+        Assert.assertEquals(submitters * perSubmitter, ran.get());
+        Assert.assertTrue(executor.getLargestPoolSize() <= 8);
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(submitters * perSubmitter, executor.getCompletedTaskCount());
+        Assert.assertEquals(0, executor.getPoolSize());
+    }
+
+
+    @Test
+    public void testMaxThreadsAndStealing() throws Exception {
+        WorkStealingExecutor executor = createExecutor(4, 0, 3, 60000);
+        // Everything is submitted to one lane
+        executor.bindCurrentThread(0);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(3);
+        final CountDownLatch done = new CountDownLatch(6);
+        for (int i = 0; i < 6; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    done.countDown();
+                }
+            });
+        }
+
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(3, executor.getPoolSize());
+        Assert.assertEquals(3, executor.getActiveCount());
+        Assert.assertEquals(3, executor.getQueueSize());
+
+        release.countDown();
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(3, executor.getLargestPoolSize());
+        Assert.assertEquals(0, executor.getQueueSize());
+
+        executor.shutdownNow();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    public void testIdleThreadsRetire() throws Exception {
+        WorkStealingExecutor executor = createExecutor(2, 1, 4, 100);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                }
+            });
+        }
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(4, executor.getPoolSize());
+        release.countDown();
+
+        // Threads above the core size exit once idle for the keep alive time
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getPoolSize() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, executor.getPoolSize());
+        Thread.sleep(300);
+        Assert.assertEquals(1, executor.getPoolSize());
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    public void testPrestartAndResize() throws Exception {
+        WorkStealingExecutor executor = createExecutor(2, 3, 5, 100);
+        executor.prestartAllCoreThreads();
+        Assert.assertEquals(3, executor.getPoolSize());
+
+        Assert.assertTrue(executor.resizePool(1, 5));
+        long deadline = System.currentTimeMillis() + 10000;
+        while (executor.getPoolSize() > 1 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20);
+        }
+        Assert.assertEquals(1, executor.getPoolSize());
+        Assert.assertFalse(executor.resizePool(3, 2));
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    public void testQueueFullAndShutdownNow() throws Exception {
+        WorkStealingExecutor executor = createExecutor(1, 0, 1, 60000);
+        executor.setMaxQueueSize(2);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        Runnable blocker = new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Expected
+                }
+            }
+        };
+        final AtomicInteger ran = new AtomicInteger(0);
+        Runnable noop = new Runnable() {
+            @Override
+            public void run() {
+                ran.incrementAndGet();
+            }
+        };
+        executor.execute(blocker);
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        executor.execute(noop);
+        executor.execute(noop);
+        try {
+            executor.execute(noop);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+
+        List<Runnable> pending = executor.shutdownNow();
+        Assert.assertEquals(2, pending.size());
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, ran.get());
+        Assert.assertEquals(0, executor.getQueueSize());
+        try {
+            executor.execute(noop);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+    }
+
+
+    @Test
+    public void testExecuteTimeout() throws Exception {
+        WorkStealingExecutor executor = createExecutor(1, 0, 1, 60000);
+        executor.setMaxQueueSize(1);
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch started = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+            }
+        });
+        Assert.assertTrue(started.await(10, TimeUnit.SECONDS));
+        final CountDownLatch done = new CountDownLatch(2);
+        Runnable task = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+        executor.execute(task);
+
+        // Queue is full and nothing frees it
+        long start = System.nanoTime();
+        try {
+            executor.execute(task, 200, TimeUnit.MILLISECONDS);
+            Assert.fail();
+        } catch (RejectedExecutionException e) {
+            // Expected
+        }
+        Assert.assertTrue(System.nanoTime() - start >=
+                TimeUnit.MILLISECONDS.toNanos(200));
+
+        // Space becomes available before the timeout expires
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                release.countDown();
+            }
+        }.start();
+        executor.execute(task, 10, TimeUnit.SECONDS);
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    }
+
+
+    @Test
+    public void testFatalErrorReleasesThread() throws Exception {
+        WorkStealingExecutor executor = createExecutor(1, 0, 1, 60000);
+
+        // ExceptionUtils rethrows VirtualMachineErrors so this ends the thread
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                throw new InternalError();
+            }
+        });
+
+        // The only place in the pool must have been given up
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        });
+        Assert.assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+        Assert.assertEquals(0, executor.getPoolSize());
+    }
+}